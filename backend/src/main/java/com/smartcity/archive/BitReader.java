@@ -0,0 +1,48 @@
+/*
+ * Copyright 2025 Haui.HIT - H2K
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.smartcity.archive;
+
+/**
+ * Bit-level input (MSB first) dùng cho Gorilla decoder
+ */
+class BitReader {
+
+    private final byte[] buffer;
+    private long bitPosition;
+
+    BitReader(byte[] buffer) {
+        this.buffer = buffer;
+    }
+
+    boolean readBit() {
+        int index = (int) (bitPosition >>> 3);
+        if (index >= buffer.length) {
+            throw new IllegalStateException("Unexpected end of compressed block");
+        }
+        boolean bit = (buffer[index] & (0x80 >>> (bitPosition & 7))) != 0;
+        bitPosition++;
+        return bit;
+    }
+
+    long readBits(int count) {
+        long value = 0;
+        for (int i = 0; i < count; i++) {
+            value = (value << 1) | (readBit() ? 1L : 0L);
+        }
+        return value;
+    }
+}
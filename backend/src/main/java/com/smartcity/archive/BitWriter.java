@@ -0,0 +1,66 @@
+/*
+ * Copyright 2025 Haui.HIT - H2K
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.smartcity.archive;
+
+import java.util.Arrays;
+
+/**
+ * Bit-level output buffer (MSB first) dùng cho Gorilla encoder
+ */
+class BitWriter {
+
+    private byte[] buffer;
+    private long bitPosition;
+
+    BitWriter(int initialBytes) {
+        this.buffer = new byte[Math.max(initialBytes, 16)];
+    }
+
+    void writeBit(boolean bit) {
+        ensureCapacity(1);
+        if (bit) {
+            int index = (int) (bitPosition >>> 3);
+            buffer[index] |= (byte) (0x80 >>> (bitPosition & 7));
+        }
+        bitPosition++;
+    }
+
+    /**
+     * Ghi {@code count} bit thấp của value (0..64 bit)
+     */
+    void writeBits(long value, int count) {
+        ensureCapacity(count);
+        for (int i = count - 1; i >= 0; i--) {
+            if (((value >>> i) & 1L) != 0) {
+                int index = (int) (bitPosition >>> 3);
+                buffer[index] |= (byte) (0x80 >>> (bitPosition & 7));
+            }
+            bitPosition++;
+        }
+    }
+
+    byte[] toByteArray() {
+        return Arrays.copyOf(buffer, (int) ((bitPosition + 7) >>> 3));
+    }
+
+    private void ensureCapacity(int bits) {
+        long requiredBytes = (bitPosition + bits + 7) >>> 3;
+        if (requiredBytes > buffer.length) {
+            buffer = Arrays.copyOf(buffer, (int) Math.max(requiredBytes, buffer.length * 2L));
+        }
+    }
+}
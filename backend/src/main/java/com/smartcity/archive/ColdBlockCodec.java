@@ -0,0 +1,198 @@
+/*
+ * Copyright 2025 Haui.HIT - H2K
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.smartcity.archive;
+
+import com.smartcity.model.CityData;
+import com.smartcity.model.ColdBlock;
+import com.smartcity.model.DataType;
+import com.smartcity.model.GeoPoint;
+import org.springframework.data.geo.Point;
+import org.springframework.data.mongodb.core.geo.GeoJsonMultiPoint;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Chuyển đổi readings của một sensor ↔ {@link ColdBlock}
+ * Field số trong payload được nén theo cột, field khác giữ nguyên trong "extras".
+ */
+public final class ColdBlockCodec {
+
+    /**
+     * NaN payload riêng đánh dấu reading không có metric này
+     */
+    private static final long ABSENT_BITS = 0x7FF0_0000_0000_0BADL;
+    private static final double ABSENT = Double.longBitsToDouble(ABSENT_BITS);
+
+    private ColdBlockCodec() {
+    }
+
+    /**
+     * Encode readings của cùng một sensor (thứ tự bất kỳ, sẽ được sort theo timestamp)
+     */
+    public static ColdBlock encode(String blockId, String sourceId, long windowStart, long windowEnd,
+                                   List<CityData> readings, boolean sealed) {
+        List<CityData> sorted = new ArrayList<>(readings);
+        sorted.sort(Comparator.comparingLong(ColdBlockCodec::timestampOf));
+
+        int count = sorted.size();
+        long[] timestamps = new long[count];
+        List<String> ids = new ArrayList<>(count);
+        Map<String, double[]> columns = new LinkedHashMap<>();
+        Set<String> integerMetrics = new LinkedHashSet<>();
+        Set<String> nonIntegerMetrics = new LinkedHashSet<>();
+        Map<String, Map<String, Object>> extras = new HashMap<>();
+
+        for (int i = 0; i < count; i++) {
+            CityData data = sorted.get(i);
+            timestamps[i] = timestampOf(data);
+            ids.add(data.getId());
+
+            if (data.getPayload() == null) {
+                continue;
+            }
+            for (Map.Entry<String, Object> field : data.getPayload().entrySet()) {
+                Object value = field.getValue();
+                if (value instanceof Number number) {
+                    double[] column = columns.computeIfAbsent(field.getKey(), key -> {
+                        double[] created = new double[count];
+                        Arrays.fill(created, ABSENT);
+                        return created;
+                    });
+                    column[i] = number.doubleValue();
+                    if (isIntegral(number)) {
+                        integerMetrics.add(field.getKey());
+                    } else {
+                        nonIntegerMetrics.add(field.getKey());
+                    }
+                } else {
+                    extras.computeIfAbsent(String.valueOf(i), key -> new LinkedHashMap<>())
+                            .put(field.getKey(), value);
+                }
+            }
+        }
+        integerMetrics.removeAll(nonIntegerMetrics);
+
+        Map<String, byte[]> metrics = new LinkedHashMap<>();
+        for (Map.Entry<String, double[]> column : columns.entrySet()) {
+            metrics.put(column.getKey(), GorillaEncoder.encodeValues(column.getValue(), count));
+        }
+
+        return ColdBlock.builder()
+                .id(blockId)
+                .sourceId(sourceId)
+                .windowStart(windowStart)
+                .windowEnd(windowEnd)
+                .minTimestamp(count > 0 ? timestamps[0] : windowStart)
+                .maxTimestamp(count > 0 ? timestamps[count - 1] : windowStart)
+                .count(count)
+                .sealed(sealed)
+                .ids(ids)
+                .timestamps(GorillaEncoder.encodeTimestamps(timestamps, count))
+                .metrics(metrics)
+                .integerMetrics(new ArrayList<>(integerMetrics))
+                .extras(extras.isEmpty() ? null : extras)
+                .locations(locationsOf(sorted))
+                .createdAt(System.currentTimeMillis())
+                .build();
+    }
+
+    /**
+     * Các vị trí phân biệt của readings (GeoJSON MultiPoint cho index 2dsphere của block); null nếu không có
+     */
+    public static GeoJsonMultiPoint locationsOf(List<CityData> readings) {
+        Set<Point> locations = new LinkedHashSet<>();
+        for (CityData data : readings) {
+            GeoPoint location = data.getLocation() != null ? data.getLocation() : GeoPoint.fromPayload(data.getPayload());
+            if (location != null) {
+                locations.add(new Point(location.lng(), location.lat()));
+            }
+        }
+        return locations.isEmpty() ? null : new GeoJsonMultiPoint(new ArrayList<>(locations));
+    }
+
+    /**
+     * Decode block thành danh sách CityData (tăng dần theo timestamp)
+     */
+    public static List<CityData> decode(ColdBlock block) {
+        int count = block.getCount();
+        long[] timestamps = GorillaDecoder.decodeTimestamps(block.getTimestamps(), count);
+
+        Map<String, double[]> columns = new LinkedHashMap<>();
+        if (block.getMetrics() != null) {
+            for (Map.Entry<String, byte[]> metric : block.getMetrics().entrySet()) {
+                columns.put(metric.getKey(), GorillaDecoder.decodeValues(metric.getValue(), count));
+            }
+        }
+        Set<String> integerMetrics = block.getIntegerMetrics() != null
+                ? new LinkedHashSet<>(block.getIntegerMetrics())
+                : Set.of();
+
+        List<CityData> readings = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            Map<String, Object> payload = new LinkedHashMap<>();
+            for (Map.Entry<String, double[]> column : columns.entrySet()) {
+                double value = column.getValue()[i];
+                if (Double.doubleToRawLongBits(value) == ABSENT_BITS) {
+                    continue;
+                }
+                payload.put(column.getKey(), integerMetrics.contains(column.getKey())
+                        ? toIntegral((long) value)
+                        : (Object) value);
+            }
+            if (block.getExtras() != null) {
+                Map<String, Object> extra = block.getExtras().get(String.valueOf(i));
+                if (extra != null) {
+                    payload.putAll(extra);
+                }
+            }
+
+            CityData data = new CityData();
+            data.setId(block.getIds().get(i));
+            data.setSourceId(block.getSourceId());
+            data.setTimestamp(timestamps[i]);
+            data.setPayload(payload);
+            data.setDataType(DataType.COLD);
+            data.normalizeLocation();
+            readings.add(data);
+        }
+        return readings;
+    }
+
+    private static long timestampOf(CityData data) {
+        return data.getTimestamp() != null ? data.getTimestamp() : 0L;
+    }
+
+    private static boolean isIntegral(Number number) {
+        return number instanceof Integer || number instanceof Long
+                || number instanceof Short || number instanceof Byte;
+    }
+
+    private static Object toIntegral(long value) {
+        if (value >= Integer.MIN_VALUE && value <= Integer.MAX_VALUE) {
+            return (int) value;
+        }
+        return value;
+    }
+}
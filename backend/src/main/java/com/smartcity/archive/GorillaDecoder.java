@@ -0,0 +1,93 @@
+/*
+ * Copyright 2025 Haui.HIT - H2K
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.smartcity.archive;
+
+/**
+ * Gorilla decoder - đối xứng với {@link GorillaEncoder}
+ */
+public final class GorillaDecoder {
+
+    private GorillaDecoder() {
+    }
+
+    public static long[] decodeTimestamps(byte[] data, int count) {
+        long[] timestamps = new long[count];
+        if (count == 0) {
+            return timestamps;
+        }
+
+        BitReader reader = new BitReader(data);
+        timestamps[0] = reader.readBits(64);
+        long previousDelta = 0;
+
+        for (int i = 1; i < count; i++) {
+            long deltaOfDelta;
+            if (!reader.readBit()) {
+                deltaOfDelta = 0;
+            } else if (!reader.readBit()) {
+                deltaOfDelta = reader.readBits(7) - 63;
+            } else if (!reader.readBit()) {
+                deltaOfDelta = reader.readBits(9) - 255;
+            } else if (!reader.readBit()) {
+                deltaOfDelta = reader.readBits(12) - 2047;
+            } else {
+                deltaOfDelta = reader.readBits(64);
+            }
+
+            long delta = previousDelta + deltaOfDelta;
+            timestamps[i] = timestamps[i - 1] + delta;
+            previousDelta = delta;
+        }
+        return timestamps;
+    }
+
+    public static double[] decodeValues(byte[] data, int count) {
+        double[] values = new double[count];
+        if (count == 0) {
+            return values;
+        }
+
+        BitReader reader = new BitReader(data);
+        long previousBits = reader.readBits(64);
+        values[0] = Double.longBitsToDouble(previousBits);
+        int previousLeading = 0;
+        int previousTrailing = 0;
+
+        for (int i = 1; i < count; i++) {
+            if (reader.readBit()) {
+                long xor;
+                if (!reader.readBit()) {
+                    int meaningful = 64 - previousLeading - previousTrailing;
+                    xor = reader.readBits(meaningful) << previousTrailing;
+                } else {
+                    int leading = (int) reader.readBits(5);
+                    int meaningful = (int) reader.readBits(6);
+                    if (meaningful == 0) {
+                        meaningful = 64;
+                    }
+                    int trailing = 64 - leading - meaningful;
+                    xor = reader.readBits(meaningful) << trailing;
+                    previousLeading = leading;
+                    previousTrailing = trailing;
+                }
+                previousBits ^= xor;
+            }
+            values[i] = Double.longBitsToDouble(previousBits);
+        }
+        return values;
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright 2025 Haui.HIT - H2K
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.smartcity.archive;
+
+/**
+ * Gorilla encoder (Facebook Gorilla TSDB, VLDB 2015)
+ * - Timestamps: delta-of-delta với các bucket 7/9/12/64 bit
+ * - Values: XOR với giá trị trước, chỉ lưu phần bit có nghĩa
+ *
+ * Timestamps là epoch millis nên bucket cuối dùng 64 bit (bản gốc dùng 32 bit cho giây).
+ */
+public final class GorillaEncoder {
+
+    private GorillaEncoder() {
+    }
+
+    /**
+     * Encode n timestamps đầu tiên (nên được sort tăng dần để nén tốt)
+     */
+    public static byte[] encodeTimestamps(long[] timestamps, int count) {
+        BitWriter writer = new BitWriter(count * 2 + 8);
+        if (count == 0) {
+            return writer.toByteArray();
+        }
+
+        writer.writeBits(timestamps[0], 64);
+        long previous = timestamps[0];
+        long previousDelta = 0;
+
+        for (int i = 1; i < count; i++) {
+            long delta = timestamps[i] - previous;
+            long deltaOfDelta = delta - previousDelta;
+
+            if (deltaOfDelta == 0) {
+                writer.writeBit(false);
+            } else if (deltaOfDelta >= -63 && deltaOfDelta <= 64) {
+                writer.writeBits(0b10, 2);
+                writer.writeBits(deltaOfDelta + 63, 7);
+            } else if (deltaOfDelta >= -255 && deltaOfDelta <= 256) {
+                writer.writeBits(0b110, 3);
+                writer.writeBits(deltaOfDelta + 255, 9);
+            } else if (deltaOfDelta >= -2047 && deltaOfDelta <= 2048) {
+                writer.writeBits(0b1110, 4);
+                writer.writeBits(deltaOfDelta + 2047, 12);
+            } else {
+                writer.writeBits(0b1111, 4);
+                writer.writeBits(deltaOfDelta, 64);
+            }
+
+            previous = timestamps[i];
+            previousDelta = delta;
+        }
+        return writer.toByteArray();
+    }
+
+    /**
+     * Encode n giá trị double bằng XOR compression
+     */
+    public static byte[] encodeValues(double[] values, int count) {
+        BitWriter writer = new BitWriter(count * 2 + 8);
+        if (count == 0) {
+            return writer.toByteArray();
+        }
+
+        long previousBits = Double.doubleToRawLongBits(values[0]);
+        writer.writeBits(previousBits, 64);
+        int previousLeading = -1;
+        int previousTrailing = 0;
+
+        for (int i = 1; i < count; i++) {
+            long bits = Double.doubleToRawLongBits(values[i]);
+            long xor = bits ^ previousBits;
+
+            if (xor == 0) {
+                writer.writeBit(false);
+            } else {
+                writer.writeBit(true);
+                int leading = Math.min(Long.numberOfLeadingZeros(xor), 31);
+                int trailing = Long.numberOfTrailingZeros(xor);
+
+                if (previousLeading >= 0 && leading >= previousLeading && trailing >= previousTrailing) {
+                    // Phần có nghĩa nằm gọn trong cửa sổ của giá trị trước
+                    writer.writeBit(false);
+                    writer.writeBits(xor >>> previousTrailing, 64 - previousLeading - previousTrailing);
+                } else {
+                    int meaningful = 64 - leading - trailing;
+                    writer.writeBit(true);
+                    writer.writeBits(leading, 5);
+                    writer.writeBits(meaningful == 64 ? 0 : meaningful, 6);
+                    writer.writeBits(xor >>> trailing, meaningful);
+                    previousLeading = leading;
+                    previousTrailing = trailing;
+                }
+            }
+            previousBits = bits;
+        }
+        return writer.toByteArray();
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright 2025 Haui.HIT - H2K
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.smartcity.cache;
+
+/**
+ * Count-Min Sketch có aging: ước lượng tần suất truy cập của key với bộ nhớ cố định.
+ * - Ước lượng không bao giờ thấp hơn tần suất thật (chỉ có thể cao hơn do va chạm hash)
+ * - Counter bão hoà ở maxCount
+ * - Sau mỗi resetAfter lần increment, mọi counter bị chia đôi để tần suất cũ phai dần
+ *
+ * Không thread-safe: caller tự đồng bộ.
+ */
+public class CountMinSketch {
+
+    private static final long[] SEEDS = {
+            0x9E3779B97F4A7C15L, 0xC2B2AE3D27D4EB4FL, 0x165667B19E3779F9L, 0xD6E8FEB86659FD93L
+    };
+
+    private final int[][] table;
+    private final int widthMask;
+    private final int maxCount;
+    private final long resetAfter;
+    private long additions;
+    private long resets;
+
+    /**
+     * @param expectedKeys Số key khác nhau cần theo dõi (width = power of two ≥ expectedKeys)
+     * @param maxCount Giá trị tối đa của một counter
+     * @param resetAfter Số increment giữa hai lần aging (0 = không aging)
+     */
+    public CountMinSketch(int expectedKeys, int maxCount, long resetAfter) {
+        int width = Integer.highestOneBit(Math.max(16, expectedKeys - 1) << 1);
+        this.table = new int[SEEDS.length][width];
+        this.widthMask = width - 1;
+        this.maxCount = Math.max(1, maxCount);
+        this.resetAfter = resetAfter;
+    }
+
+    /**
+     * Tăng tần suất của key
+     *
+     * @return ước lượng sau khi tăng
+     */
+    public int increment(Object key) {
+        long hash = spread(key.hashCode());
+        int estimate = Integer.MAX_VALUE;
+        for (int row = 0; row < table.length; row++) {
+            int index = index(hash, row);
+            if (table[row][index] < maxCount) {
+                table[row][index]++;
+            }
+            estimate = Math.min(estimate, table[row][index]);
+        }
+        if (resetAfter > 0 && ++additions >= resetAfter) {
+            age();
+        }
+        return estimate;
+    }
+
+    public int estimate(Object key) {
+        long hash = spread(key.hashCode());
+        int estimate = Integer.MAX_VALUE;
+        for (int row = 0; row < table.length; row++) {
+            estimate = Math.min(estimate, table[row][index(hash, row)]);
+        }
+        return estimate;
+    }
+
+    /**
+     * Chia đôi mọi counter
+     */
+    public void age() {
+        for (int[] row : table) {
+            for (int i = 0; i < row.length; i++) {
+                row[i] >>>= 1;
+            }
+        }
+        additions = 0;
+        resets++;
+    }
+
+    public long getResets() {
+        return resets;
+    }
+
+    private int index(long hash, int row) {
+        long h = (hash + SEEDS[row]) * SEEDS[row];
+        return (int) (h ^ (h >>> 32)) & widthMask;
+    }
+
+    private static long spread(int hashCode) {
+        long h = hashCode * 0x9E3779B97F4A7C15L;
+        return h ^ (h >>> 29);
+    }
+}
@@ -0,0 +1,584 @@
+/*
+ * Copyright 2025 Haui.HIT - H2K
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.smartcity.cache;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * State mới nhất theo (sensor, metric) trong mảng primitive, không có object theo từng sensor/reading:
+ * last value/timestamp, EWMA theo thời gian (half-life), count và min/max trên rolling window
+ * (ring gồm N bucket thời gian, bucket cũ bị ghi đè).
+ *
+ * - sensorId/metric được intern thành số; sensor chia theo page 1024 sensors cấp phát khi cần
+ * - Mỗi sensor có metricsPerSensor slot, slot giữ id metric toàn cục (tìm tuyến tính), nên bộ nhớ
+ *   theo số metric một sensor thực sự gửi chứ không theo tổng số tên metric:
+ *   mỗi sensor ≈ 25 + metricsPerSensor × (36 + 24 × buckets) bytes (8 slot, 6 buckets ≈ 1.4 KB,
+ *   ≈ 1.4 MB mỗi page, ≈ 145 MB với 100k sensors)
+ * - Ghi: StampedLock theo stripe của sensor; đọc: optimistic read copy sang {@link SensorView}
+ *   dùng lại theo thread, không cấp phát khi duyệt
+ * - Snapshot nhị phân (writeTo/readFrom) để khởi động lại không mất state
+ */
+public final class SensorStateTable {
+
+    private static final int PAGE_BITS = 10;
+    private static final int PAGE_SIZE = 1 << PAGE_BITS;
+    private static final int STRIPES = 64;
+    private static final int SNAPSHOT_MAGIC = 0x53535431; // "SST1"
+
+    private final int maxSensors;
+    private final int maxMetrics;
+    private final int metricsPerSensor;
+    private final int buckets;
+    private final long bucketMs;
+    private final double decayPerMs;
+
+    private final Map<String, Integer> sensorIds = new ConcurrentHashMap<>();
+    private final AtomicReferenceArray<String> sensorNames;
+    private final AtomicInteger nextSensor = new AtomicInteger();
+    private final Map<String, Integer> metricIds = new ConcurrentHashMap<>();
+    private final AtomicReferenceArray<String> metricNames;
+    private final AtomicInteger nextMetric = new AtomicInteger();
+    private final AtomicReferenceArray<Page> pages;
+    private final StampedLock[] locks = new StampedLock[STRIPES];
+    private final AtomicLong rejectedSensors = new AtomicLong();
+    private final AtomicLong rejectedMetrics = new AtomicLong();
+    private final ThreadLocal<SensorView> views;
+
+    private static final class Page {
+        final long[] lastSeen = new long[PAGE_SIZE];
+        final double[] lat = new double[PAGE_SIZE];
+        final double[] lng = new double[PAGE_SIZE];
+        final byte[] metricCount = new byte[PAGE_SIZE];
+
+        /** Id metric toàn cục của từng slot */
+        final int[] slotMetric;
+        final double[] last;
+        final long[] lastTimestamp;
+        final double[] ewma;
+        final long[] count;
+
+        final long[] bucketStart;
+        final double[] bucketMin;
+        final double[] bucketMax;
+
+        Page(int metricsPerSensor, int buckets) {
+            Arrays.fill(lat, Double.NaN);
+            Arrays.fill(lng, Double.NaN);
+            int slots = PAGE_SIZE * metricsPerSensor;
+            slotMetric = new int[slots];
+            last = new double[slots];
+            lastTimestamp = new long[slots];
+            ewma = new double[slots];
+            count = new long[slots];
+            bucketStart = new long[slots * buckets];
+            bucketMin = new double[slots * buckets];
+            bucketMax = new double[slots * buckets];
+        }
+    }
+
+    /**
+     * State của một sensor copy ra để đọc (dùng lại giữa các sensor, không giữ lại sau callback)
+     */
+    public static final class SensorView {
+        private String sensorId;
+        private long lastSeen;
+        private double lat;
+        private double lng;
+        private int metrics;
+        private final int[] metricIds;
+        private final double[] value;
+        private final long[] timestamp;
+        private final double[] ewma;
+        private final long[] count;
+        private final double[] min;
+        private final double[] max;
+        private final SensorStateTable table;
+
+        private SensorView(SensorStateTable table, int metricsPerSensor) {
+            this.table = table;
+            metricIds = new int[metricsPerSensor];
+            value = new double[metricsPerSensor];
+            timestamp = new long[metricsPerSensor];
+            ewma = new double[metricsPerSensor];
+            count = new long[metricsPerSensor];
+            min = new double[metricsPerSensor];
+            max = new double[metricsPerSensor];
+        }
+
+        public String getSensorId() {
+            return sensorId;
+        }
+
+        public long getLastSeen() {
+            return lastSeen;
+        }
+
+        /**
+         * NaN nếu sensor chưa gửi location
+         */
+        public double getLat() {
+            return lat;
+        }
+
+        public double getLng() {
+            return lng;
+        }
+
+        public int getMetricCount() {
+            return metrics;
+        }
+
+        public String getMetric(int i) {
+            return table.metricNames.get(metricIds[i]);
+        }
+
+        public double getValue(int i) {
+            return value[i];
+        }
+
+        public long getTimestamp(int i) {
+            return timestamp[i];
+        }
+
+        public double getEwma(int i) {
+            return ewma[i];
+        }
+
+        public long getCount(int i) {
+            return count[i];
+        }
+
+        /**
+         * NaN nếu không có reading nào trong rolling window
+         */
+        public double getMin(int i) {
+            return min[i];
+        }
+
+        public double getMax(int i) {
+            return max[i];
+        }
+    }
+
+    @FunctionalInterface
+    public interface Visitor {
+        void visit(SensorView view) throws IOException;
+    }
+
+    /**
+     * @param maxMetrics       Số tên metric khác nhau tối đa trên toàn bảng
+     * @param metricsPerSensor Số metric tối đa của một sensor (≤ 64)
+     * @param windowMs         Độ dài rolling window cho min/max
+     * @param buckets          Số bucket của rolling window
+     * @param ewmaHalfLifeMs   Reading cách nhau một half-life có trọng số 1/2
+     */
+    public SensorStateTable(int maxSensors, int maxMetrics, int metricsPerSensor, long windowMs, int buckets,
+                            long ewmaHalfLifeMs) {
+        if (maxSensors <= 0 || maxMetrics <= 0 || metricsPerSensor <= 0 || metricsPerSensor > 64
+                || buckets <= 0 || windowMs < buckets || ewmaHalfLifeMs <= 0) {
+            throw new IllegalArgumentException("Invalid sensor state table settings");
+        }
+        this.maxSensors = maxSensors;
+        this.maxMetrics = maxMetrics;
+        this.metricsPerSensor = metricsPerSensor;
+        this.buckets = buckets;
+        this.bucketMs = windowMs / buckets;
+        this.decayPerMs = Math.log(2) / ewmaHalfLifeMs;
+        this.sensorNames = new AtomicReferenceArray<>(maxSensors);
+        this.metricNames = new AtomicReferenceArray<>(maxMetrics);
+        this.pages = new AtomicReferenceArray<>((maxSensors + PAGE_SIZE - 1) / PAGE_SIZE);
+        for (int i = 0; i < STRIPES; i++) {
+            locks[i] = new StampedLock();
+        }
+        this.views = ThreadLocal.withInitial(() -> new SensorView(this, metricsPerSensor));
+    }
+
+    /**
+     * Cập nhật state từ một reading: mọi field số ở top-level của payload là một metric
+     * (bỏ qua và đếm vào rejectedMetrics khi hết tên metric hoặc sensor đã đủ metricsPerSensor)
+     *
+     * @param lat NaN nếu reading không có location
+     */
+    public void record(String sensorId, long timestamp, double lat, double lng, Map<String, Object> payload) {
+        int sensor = internSensor(sensorId);
+        if (sensor < 0) {
+            return;
+        }
+        Page page = pages.get(sensor >>> PAGE_BITS);
+        int local = sensor & (PAGE_SIZE - 1);
+        StampedLock lock = locks[sensor & (STRIPES - 1)];
+        long stamp = lock.writeLock();
+        try {
+            boolean newest = timestamp >= page.lastSeen[local];
+            if (newest) {
+                page.lastSeen[local] = timestamp;
+                if (!Double.isNaN(lat)) {
+                    page.lat[local] = lat;
+                    page.lng[local] = lng;
+                }
+            }
+            if (payload == null) {
+                return;
+            }
+            for (Map.Entry<String, Object> field : payload.entrySet()) {
+                if (!(field.getValue() instanceof Number number)) {
+                    continue;
+                }
+                double value = number.doubleValue();
+                if (Double.isNaN(value) || Double.isInfinite(value)) {
+                    continue;
+                }
+                int metric = internMetric(field.getKey());
+                int slot = metric >= 0 ? slotOf(page, local, metric) : -1;
+                if (slot >= 0) {
+                    update(page, slot, timestamp, value);
+                }
+            }
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Duyệt mọi sensor theo thứ tự intern; view chỉ hợp lệ trong callback
+     */
+    public void forEach(long now, Visitor visitor) throws IOException {
+        int sensors = nextSensor.get();
+        for (int sensor = 0; sensor < sensors; sensor++) {
+            SensorView view = read(sensor, now);
+            if (view != null) {
+                visitor.visit(view);
+            }
+        }
+    }
+
+    /**
+     * @return false nếu sensor chưa có state
+     */
+    public boolean visit(String sensorId, long now, Visitor visitor) throws IOException {
+        Integer sensor = sensorIds.get(sensorId);
+        SensorView view = sensor != null ? read(sensor, now) : null;
+        if (view == null) {
+            return false;
+        }
+        visitor.visit(view);
+        return true;
+    }
+
+    public int getSensorCount() {
+        return Math.min(nextSensor.get(), maxSensors);
+    }
+
+    public int getMetricCount() {
+        return Math.min(nextMetric.get(), maxMetrics);
+    }
+
+    public long getRejectedSensors() {
+        return rejectedSensors.get();
+    }
+
+    public long getRejectedMetrics() {
+        return rejectedMetrics.get();
+    }
+
+    /**
+     * Ghi snapshot: metrics, rồi từng sensor (mỗi sensor nhất quán dưới read lock của stripe)
+     */
+    public void writeTo(DataOutputStream out) throws IOException {
+        out.writeInt(SNAPSHOT_MAGIC);
+        out.writeInt(buckets);
+        out.writeLong(bucketMs);
+
+        int metrics = getMetricCount();
+        out.writeInt(metrics);
+        for (int metric = 0; metric < metrics; metric++) {
+            String name = metricNames.get(metric);
+            out.writeUTF(name != null ? name : "");
+        }
+
+        int sensors = getSensorCount();
+        int slotsWritten = 0;
+        out.writeInt(sensors);
+        for (int sensor = 0; sensor < sensors; sensor++) {
+            String name = sensorNames.get(sensor);
+            out.writeUTF(name != null ? name : "");
+            Page page = pages.get(sensor >>> PAGE_BITS);
+            int local = sensor & (PAGE_SIZE - 1);
+            StampedLock lock = locks[sensor & (STRIPES - 1)];
+            long stamp = lock.readLock();
+            try {
+                int present = page != null && name != null ? page.metricCount[local] : 0;
+                out.writeLong(page != null ? page.lastSeen[local] : 0L);
+                out.writeDouble(page != null ? page.lat[local] : Double.NaN);
+                out.writeDouble(page != null ? page.lng[local] : Double.NaN);
+                out.writeInt(present);
+                for (int i = 0; i < present; i++) {
+                    int slot = local * metricsPerSensor + i;
+                    out.writeInt(page.slotMetric[slot]);
+                    out.writeDouble(page.last[slot]);
+                    out.writeLong(page.lastTimestamp[slot]);
+                    out.writeDouble(page.ewma[slot]);
+                    out.writeLong(page.count[slot]);
+                    for (int b = 0; b < buckets; b++) {
+                        out.writeLong(page.bucketStart[slot * buckets + b]);
+                        out.writeDouble(page.bucketMin[slot * buckets + b]);
+                        out.writeDouble(page.bucketMax[slot * buckets + b]);
+                    }
+                    slotsWritten++;
+                }
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+        out.writeInt(slotsWritten);
+    }
+
+    /**
+     * Nạp snapshot vào bảng rỗng. Rolling buckets bị bỏ qua nếu cấu hình window khác lúc ghi.
+     *
+     * @return Số sensors đã nạp
+     * @throws IOException snapshot hỏng hoặc sai định dạng
+     */
+    public int readFrom(DataInputStream in) throws IOException {
+        if (in.readInt() != SNAPSHOT_MAGIC) {
+            throw new IOException("Not a sensor state snapshot");
+        }
+        int snapshotBuckets = in.readInt();
+        long snapshotBucketMs = in.readLong();
+        boolean sameWindow = snapshotBuckets == buckets && snapshotBucketMs == bucketMs;
+
+        int metrics = in.readInt();
+        int[] metricMap = new int[metrics];
+        for (int metric = 0; metric < metrics; metric++) {
+            String name = in.readUTF();
+            metricMap[metric] = name.isEmpty() ? -1 : internMetric(name);
+        }
+
+        int sensors = in.readInt();
+        int loaded = 0;
+        int slotsRead = 0;
+        for (int i = 0; i < sensors; i++) {
+            String name = in.readUTF();
+            long lastSeen = in.readLong();
+            double lat = in.readDouble();
+            double lng = in.readDouble();
+            int sensor = name.isEmpty() ? -1 : internSensor(name);
+            Page page = sensor >= 0 ? pages.get(sensor >>> PAGE_BITS) : null;
+            int local = sensor & (PAGE_SIZE - 1);
+            if (page != null) {
+                page.lastSeen[local] = lastSeen;
+                page.lat[local] = lat;
+                page.lng[local] = lng;
+                loaded++;
+            }
+            int present = in.readInt();
+            for (int m = 0; m < present; m++) {
+                int snapshotMetric = in.readInt();
+                double last = in.readDouble();
+                long lastTimestamp = in.readLong();
+                double ewma = in.readDouble();
+                long count = in.readLong();
+                int metric = snapshotMetric >= 0 && snapshotMetric < metrics ? metricMap[snapshotMetric] : -1;
+                int slot = page != null && metric >= 0 ? slotOf(page, local, metric) : -1;
+                boolean keep = slot >= 0;
+                if (keep) {
+                    page.last[slot] = last;
+                    page.lastTimestamp[slot] = lastTimestamp;
+                    page.ewma[slot] = ewma;
+                    page.count[slot] = count;
+                }
+                for (int b = 0; b < snapshotBuckets; b++) {
+                    long start = in.readLong();
+                    double min = in.readDouble();
+                    double max = in.readDouble();
+                    if (keep && sameWindow) {
+                        page.bucketStart[slot * buckets + b] = start;
+                        page.bucketMin[slot * buckets + b] = min;
+                        page.bucketMax[slot * buckets + b] = max;
+                    }
+                }
+                slotsRead++;
+            }
+        }
+        if (in.readInt() != slotsRead) {
+            throw new IOException("Truncated sensor state snapshot");
+        }
+        return loaded;
+    }
+
+    /**
+     * Slot của metric trong sensor, cấp slot mới nếu còn (gọi khi giữ write lock của stripe)
+     *
+     * @return -1 nếu sensor đã đủ metricsPerSensor
+     */
+    private int slotOf(Page page, int local, int metric) {
+        int base = local * metricsPerSensor;
+        int present = page.metricCount[local];
+        for (int i = 0; i < present; i++) {
+            if (page.slotMetric[base + i] == metric) {
+                return base + i;
+            }
+        }
+        if (present >= metricsPerSensor) {
+            rejectedMetrics.incrementAndGet();
+            return -1;
+        }
+        int slot = base + present;
+        page.slotMetric[slot] = metric;
+        page.metricCount[local] = (byte) (present + 1);
+        return slot;
+    }
+
+    private void update(Page page, int slot, long timestamp, double value) {
+        if (page.count[slot] == 0) {
+            page.last[slot] = value;
+            page.lastTimestamp[slot] = timestamp;
+            page.ewma[slot] = value;
+        } else if (timestamp >= page.lastTimestamp[slot]) {
+            // EWMA theo khoảng thời gian: reading cách nhau một half-life có trọng số 1/2
+            double alpha = 1 - Math.exp(-(timestamp - page.lastTimestamp[slot]) * decayPerMs);
+            page.ewma[slot] += alpha * (value - page.ewma[slot]);
+            page.last[slot] = value;
+            page.lastTimestamp[slot] = timestamp;
+        }
+        page.count[slot]++;
+
+        long start = Math.floorDiv(timestamp, bucketMs) * bucketMs;
+        int index = slot * buckets + (int) Math.floorMod(Math.floorDiv(timestamp, bucketMs), (long) buckets);
+        if (page.bucketStart[index] == start) {
+            page.bucketMin[index] = Math.min(page.bucketMin[index], value);
+            page.bucketMax[index] = Math.max(page.bucketMax[index], value);
+        } else if (page.bucketStart[index] < start) {
+            page.bucketStart[index] = start;
+            page.bucketMin[index] = value;
+            page.bucketMax[index] = value;
+        }
+        // bucketStart > start: reading cũ hơn cả rolling window, bỏ qua
+    }
+
+    private SensorView read(int sensor, long now) {
+        String name = sensorNames.get(sensor);
+        Page page = pages.get(sensor >>> PAGE_BITS);
+        if (name == null || page == null) {
+            return null;
+        }
+        SensorView view = views.get();
+        int local = sensor & (PAGE_SIZE - 1);
+        StampedLock lock = locks[sensor & (STRIPES - 1)];
+        long stamp = lock.tryOptimisticRead();
+        copy(page, local, now, view);
+        if (!lock.validate(stamp)) {
+            stamp = lock.readLock();
+            try {
+                copy(page, local, now, view);
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+        view.sensorId = name;
+        return view;
+    }
+
+    private void copy(Page page, int local, long now, SensorView view) {
+        view.lastSeen = page.lastSeen[local];
+        view.lat = page.lat[local];
+        view.lng = page.lng[local];
+        long windowStart = now - bucketMs * buckets;
+        int present = Math.min(page.metricCount[local], metricsPerSensor);
+        int n = 0;
+        for (int i = 0; i < present; i++) {
+            int slot = local * metricsPerSensor + i;
+            view.metricIds[n] = page.slotMetric[slot];
+            view.value[n] = page.last[slot];
+            view.timestamp[n] = page.lastTimestamp[slot];
+            view.ewma[n] = page.ewma[slot];
+            view.count[n] = page.count[slot];
+            double min = Double.NaN;
+            double max = Double.NaN;
+            for (int b = 0; b < buckets; b++) {
+                int index = slot * buckets + b;
+                if (page.bucketStart[index] + bucketMs > windowStart && page.bucketStart[index] <= now) {
+                    min = Double.isNaN(min) ? page.bucketMin[index] : Math.min(min, page.bucketMin[index]);
+                    max = Double.isNaN(max) ? page.bucketMax[index] : Math.max(max, page.bucketMax[index]);
+                }
+            }
+            view.min[n] = min;
+            view.max[n] = max;
+            n++;
+        }
+        view.metrics = n;
+    }
+
+    private int internSensor(String sensorId) {
+        Integer existing = sensorIds.get(sensorId);
+        if (existing != null) {
+            return existing;
+        }
+        // computeIfAbsent của các key khác nhau có thể chạy song song: cấp id tuần tự
+        Integer id = sensorIds.computeIfAbsent(sensorId, name -> {
+            synchronized (sensorNames) {
+                int next = nextSensor.get();
+                if (next >= maxSensors) {
+                    return null;
+                }
+                if (pages.get(next >>> PAGE_BITS) == null) {
+                    pages.set(next >>> PAGE_BITS, new Page(metricsPerSensor, buckets));
+                }
+                sensorNames.set(next, name);
+                nextSensor.set(next + 1);
+                return next;
+            }
+        });
+        if (id == null) {
+            rejectedSensors.incrementAndGet();
+            return -1;
+        }
+        return id;
+    }
+
+    private int internMetric(String metric) {
+        Integer existing = metricIds.get(metric);
+        if (existing != null) {
+            return existing;
+        }
+        Integer id = metricIds.computeIfAbsent(metric, name -> {
+            synchronized (metricNames) {
+                int next = nextMetric.get();
+                if (next >= maxMetrics) {
+                    return null;
+                }
+                metricNames.set(next, name);
+                nextMetric.set(next + 1);
+                return next;
+            }
+        });
+        if (id == null) {
+            rejectedMetrics.incrementAndGet();
+            return -1;
+        }
+        return id;
+    }
+}
@@ -0,0 +1,237 @@
+/*
+ * Copyright 2025 Haui.HIT - H2K
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.smartcity.cache;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
+
+/**
+ * Cache giới hạn số entry theo W-TinyLFU:
+ * - Window LRU (~1% capacity) nhận mọi entry mới, giữ các burst ngắn
+ * - Main SLRU: probation (20%) + protected (80%); entry probation được đọc lại thì lên protected
+ * - Khi main đầy, entry bị đẩy khỏi window chỉ được nhận nếu tần suất (CountMinSketch)
+ *   cao hơn victim ở đầu probation, nên một lần scan lớn không đẩy được các key đọc nhiều
+ *
+ * Mỗi entry có expiresAt (epoch millis); entry hết hạn coi như không có.
+ * Thread-safe bằng synchronized (các thao tác đều O(1)).
+ */
+public class TinyLfuCache<K, V> {
+
+    private enum Segment { WINDOW, PROBATION, PROTECTED }
+
+    private static final class Entry<V> {
+        V value;
+        long expiresAt;
+        Segment segment;
+
+        Entry(V value, long expiresAt) {
+            this.value = value;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    private final int maximumSize;
+    private final int windowMax;
+    private final int protectedMax;
+    private final CountMinSketch sketch;
+
+    private final Map<K, Entry<V>> data = new HashMap<>();
+    // Access order: phần tử đầu tiên là LRU
+    private final LinkedHashMap<K, Entry<V>> window = new LinkedHashMap<>(16, 0.75f, true);
+    private final LinkedHashMap<K, Entry<V>> probation = new LinkedHashMap<>(16, 0.75f, true);
+    private final LinkedHashMap<K, Entry<V>> protectedSegment = new LinkedHashMap<>(16, 0.75f, true);
+
+    private long evictions;
+    private long rejections;
+
+    public TinyLfuCache(int maximumSize) {
+        this.maximumSize = Math.max(2, maximumSize);
+        this.windowMax = Math.max(1, this.maximumSize / 100);
+        int mainMax = this.maximumSize - windowMax;
+        this.protectedMax = Math.max(1, mainMax * 8 / 10);
+        // Aging sau 10 x capacity lần truy cập; tần suất tối đa 15 như TinyLFU gốc
+        this.sketch = new CountMinSketch(this.maximumSize, 15, 10L * this.maximumSize);
+    }
+
+    /**
+     * @return value hoặc null nếu không có / đã hết hạn
+     */
+    public synchronized V get(K key, long now) {
+        sketch.increment(key);
+        Entry<V> entry = find(key);
+        if (entry == null) {
+            return null;
+        }
+        if (entry.expiresAt <= now) {
+            remove(key);
+            return null;
+        }
+        switch (entry.segment) {
+            case WINDOW -> window.get(key);
+            case PROTECTED -> protectedSegment.get(key);
+            case PROBATION -> {
+                probation.remove(key);
+                entry.segment = Segment.PROTECTED;
+                protectedSegment.put(key, entry);
+                if (protectedSegment.size() > protectedMax) {
+                    demoteProtectedLru();
+                }
+            }
+        }
+        return entry.value;
+    }
+
+    public synchronized void put(K key, V value, long expiresAt) {
+        Entry<V> existing = find(key);
+        if (existing != null) {
+            existing.value = value;
+            existing.expiresAt = expiresAt;
+            return;
+        }
+        sketch.increment(key);
+        Entry<V> entry = new Entry<>(value, expiresAt);
+        entry.segment = Segment.WINDOW;
+        data.put(key, entry);
+        window.put(key, entry);
+        if (window.size() > windowMax) {
+            admitWindowLru();
+        }
+    }
+
+    public synchronized boolean remove(K key) {
+        Entry<V> entry = data.remove(key);
+        if (entry == null) {
+            return false;
+        }
+        segmentOf(entry).remove(key);
+        return true;
+    }
+
+    public synchronized void clear() {
+        data.clear();
+        window.clear();
+        probation.clear();
+        protectedSegment.clear();
+    }
+
+    /**
+     * Xoá các entry đã hết hạn
+     *
+     * @return số entry bị xoá
+     */
+    public synchronized int removeExpired(long now) {
+        int removed = 0;
+        for (Map<K, Entry<V>> segment : segments()) {
+            Iterator<Map.Entry<K, Entry<V>>> it = segment.entrySet().iterator();
+            while (it.hasNext()) {
+                Map.Entry<K, Entry<V>> next = it.next();
+                if (next.getValue().expiresAt <= now) {
+                    data.remove(next.getKey());
+                    it.remove();
+                    removed++;
+                }
+            }
+        }
+        return removed;
+    }
+
+    public synchronized void forEach(BiConsumer<K, V> action) {
+        for (Map<K, Entry<V>> segment : segments()) {
+            segment.forEach((key, entry) -> action.accept(key, entry.value));
+        }
+    }
+
+    public synchronized int size() {
+        return data.size();
+    }
+
+    public int getMaximumSize() {
+        return maximumSize;
+    }
+
+    /**
+     * Số entry bị đẩy ra do đầy (bao gồm ứng viên bị từ chối ở admission)
+     */
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    public synchronized long getRejections() {
+        return rejections;
+    }
+
+    private Entry<V> find(K key) {
+        // Tra qua index để không đổi access order của các segment
+        return data.get(key);
+    }
+
+    private LinkedHashMap<K, Entry<V>> segmentOf(Entry<V> entry) {
+        return switch (entry.segment) {
+            case WINDOW -> window;
+            case PROBATION -> probation;
+            case PROTECTED -> protectedSegment;
+        };
+    }
+
+    private void admitWindowLru() {
+        Map.Entry<K, Entry<V>> candidate = pollFirst(window);
+        K candidateKey = candidate.getKey();
+        Entry<V> candidateEntry = candidate.getValue();
+
+        if (probation.size() + protectedSegment.size() < maximumSize - windowMax) {
+            candidateEntry.segment = Segment.PROBATION;
+            probation.put(candidateKey, candidateEntry);
+            return;
+        }
+
+        LinkedHashMap<K, Entry<V>> victimSegment = probation.isEmpty() ? protectedSegment : probation;
+        K victimKey = victimSegment.keySet().iterator().next();
+        evictions++;
+        if (sketch.estimate(candidateKey) > sketch.estimate(victimKey)) {
+            victimSegment.remove(victimKey);
+            data.remove(victimKey);
+            candidateEntry.segment = Segment.PROBATION;
+            probation.put(candidateKey, candidateEntry);
+        } else {
+            data.remove(candidateKey);
+            rejections++;
+        }
+    }
+
+    private void demoteProtectedLru() {
+        Map.Entry<K, Entry<V>> demoted = pollFirst(protectedSegment);
+        demoted.getValue().segment = Segment.PROBATION;
+        probation.put(demoted.getKey(), demoted.getValue());
+    }
+
+    private static <K, V> Map.Entry<K, V> pollFirst(LinkedHashMap<K, V> map) {
+        Iterator<Map.Entry<K, V>> it = map.entrySet().iterator();
+        Map.Entry<K, V> first = it.next();
+        Map.Entry<K, V> copy = Map.entry(first.getKey(), first.getValue());
+        it.remove();
+        return copy;
+    }
+
+    private List<LinkedHashMap<K, Entry<V>>> segments() {
+        return List.of(window, probation, protectedSegment);
+    }
+}
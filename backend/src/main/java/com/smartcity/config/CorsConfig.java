@@ -74,7 +74,8 @@ public class CorsConfig {
         config.setExposedHeaders(Arrays.asList(
             "Authorization",
             "Content-Type",
-            "X-Requested-With"
+            "X-Requested-With",
+            "Retry-After"
         ));
         
         // Max age for preflight requests
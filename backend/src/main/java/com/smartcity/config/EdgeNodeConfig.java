@@ -78,6 +78,11 @@ public class EdgeNodeConfig {
          */
         private String queueName;
         
+        /**
+         * Priority queue (optional): message được consume liên tục và ghi thẳng vào HOT tier (fast lane)
+         */
+        private String priorityQueueName;
+        
         /**
          * Username (optional, mặc định từ spring.rabbitmq)
          */
@@ -88,9 +93,42 @@ public class EdgeNodeConfig {
          */
         private String password;
         
+        /**
+         * Virtual host (optional, mặc định "/")
+         */
+        private String virtualHost;
+        
         /**
          * Enabled status (mặc định true)
          */
         private boolean enabled = true;
+        
+        /**
+         * Trọng số khi chia capacity ingestion giữa các node có backlog (mặc định 1)
+         */
+        private double weight = 1.0;
+        
+        /**
+         * Tỉ lệ capacity tối thiểu được đảm bảo khi node có backlog (0 - 1, mặc định 0)
+         */
+        private double minShare = 0.0;
+
+        /**
+         * Bản sao không có password (dùng khi lưu registry ra MongoDB)
+         */
+        public EdgeNode withoutPassword() {
+            EdgeNode copy = new EdgeNode();
+            copy.setName(name);
+            copy.setHost(host);
+            copy.setPort(port);
+            copy.setQueueName(queueName);
+            copy.setPriorityQueueName(priorityQueueName);
+            copy.setUsername(username);
+            copy.setVirtualHost(virtualHost);
+            copy.setEnabled(enabled);
+            copy.setWeight(weight);
+            copy.setMinShare(minShare);
+            return copy;
+        }
     }
 }
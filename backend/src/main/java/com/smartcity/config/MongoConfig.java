@@ -35,12 +35,22 @@ import com.mongodb.MongoClientSettings;
 import com.mongodb.MongoCredential;
 import com.mongodb.client.MongoClient;
 import com.mongodb.client.MongoClients;
+import com.smartcity.service.PartitionCatalog;
 import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Primary;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.CollectionOptions;
 import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.GeoSpatialIndexType;
+import org.springframework.data.mongodb.core.index.GeospatialIndex;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.index.IndexOperations;
+import org.springframework.data.mongodb.core.timeseries.Granularity;
+
 
 /**
  * MongoDB Multi-Datasource Configuration
@@ -70,6 +80,21 @@ public class MongoConfig {
     @Value("${mongodb.warm.authentication-database}")
     private String warmAuthDatabase;
 
+    @Value("${mongodb.warm.time-series.enabled:false}")
+    private boolean warmTimeSeriesEnabled;
+
+    @Value("${mongodb.warm.time-series.collection:city_data_ts}")
+    private String warmTimeSeriesCollection;
+
+    @Value("${mongodb.warm.time-series.granularity:seconds}")
+    private String warmTimeSeriesGranularity;
+
+    @Value("${mongodb.warm.partition.enabled:false}")
+    private boolean warmPartitionEnabled;
+
+    @Value("${mongodb.warm.partition.period:day}")
+    private String warmPartitionPeriod;
+
     @Value("${mongodb.cold.host}")
     private String coldHost;
 
@@ -88,6 +113,12 @@ public class MongoConfig {
     @Value("${mongodb.cold.authentication-database}")
     private String coldAuthDatabase;
 
+    @Value("${mongodb.cold.partition.enabled:false}")
+    private boolean coldPartitionEnabled;
+
+    @Value("${mongodb.cold.partition.period:week}")
+    private String coldPartitionPeriod;
+
     /**
      * MongoClient cho Warm Storage với authentication
      */
@@ -115,6 +146,133 @@ public class MongoConfig {
         return new MongoTemplate(warmMongoClient(), warmDatabase);
     }
 
+    /**
+     * Layout cho WARM tier
+     * Nếu bật time-series: tạo native time-series collection (MongoDB 5.0+) khi khởi động.
+     * Server cũ không hỗ trợ → fallback về collection "city_data" thông thường.
+     */
+    @Bean
+    public WarmStorageLayout warmStorageLayout() {
+        if (!warmTimeSeriesEnabled) {
+            log.info("WARM storage layout: documents ({})", WarmStorageLayout.LEGACY_COLLECTION);
+            return WarmStorageLayout.documents();
+        }
+
+        MongoTemplate template = warmMongoTemplate();
+        Granularity granularity = Granularity.valueOf(warmTimeSeriesGranularity.toUpperCase());
+
+        try {
+            Document existing = template.getDb()
+                    .listCollections()
+                    .filter(new Document("name", warmTimeSeriesCollection))
+                    .first();
+
+            if (existing == null) {
+                template.createCollection(warmTimeSeriesCollection, timeSeriesOptions(granularity));
+                log.info("Created WARM time-series collection '{}' (granularity={})",
+                        warmTimeSeriesCollection, granularity);
+            } else if (!"timeseries".equals(existing.getString("type"))) {
+                log.error("Collection '{}' exists but is not a time-series collection. "
+                        + "Falling back to documents layout", warmTimeSeriesCollection);
+                return WarmStorageLayout.documents();
+            }
+
+            Document options = existing != null ? existing.get("options", Document.class) : null;
+            if (options != null && options.containsKey("expireAfterSeconds")) {
+                log.warn("WARM time-series collection '{}' has expireAfterSeconds={}: readings may expire "
+                        + "before the lifecycle job copies them to COLD", warmTimeSeriesCollection,
+                        options.get("expireAfterSeconds"));
+            }
+            ensureGeoIndex(template, warmTimeSeriesCollection);
+            return WarmStorageLayout.timeSeries(warmTimeSeriesCollection, granularity.name());
+
+        } catch (Exception e) {
+            log.error("Cannot create WARM time-series collection '{}' (requires MongoDB 5.0+): {}. "
+                    + "Falling back to documents layout", warmTimeSeriesCollection, e.getMessage());
+            return WarmStorageLayout.documents();
+        }
+    }
+
+    /**
+     * Partition catalog cho WARM tier (mongodb.warm.partition.*)
+     * Partition mới dùng cùng layout với WARM: time-series collection hoặc collection thường có index.
+     * Layout time-series luôn được partition: trước MongoDB 7.0 không xóa được theo _id, lifecycle chỉ
+     * giải phóng WARM bằng cách drop partition đã copy và verify xong sang COLD.
+     */
+    @Bean(name = "warmPartitionCatalog")
+    public PartitionCatalog warmPartitionCatalog(WarmStorageLayout warmStorageLayout) {
+        MongoTemplate template = warmMongoTemplate();
+        String baseCollection = warmStorageLayout.getCollectionName();
+        if (!warmPartitionEnabled && !warmStorageLayout.isTimeSeries()) {
+            ensureGeoIndex(template, baseCollection);
+            return PartitionCatalog.disabled(template, baseCollection);
+        }
+        if (!warmPartitionEnabled) {
+            log.warn("WARM time-series layout requires partitioning: enabling {} partitions of '{}'",
+                    warmPartitionPeriod, baseCollection);
+        }
+
+        PartitionCatalog.Period period = PartitionCatalog.Period.valueOf(warmPartitionPeriod.trim().toUpperCase());
+        log.info("WARM partitioning enabled: {} partitions of '{}'", period, baseCollection);
+
+        if (warmStorageLayout.isTimeSeries()) {
+            Granularity granularity = Granularity.valueOf(warmStorageLayout.getGranularity());
+            return new PartitionCatalog(template, baseCollection, period, name -> {
+                if (!template.collectionExists(name)) {
+                    template.createCollection(name, timeSeriesOptions(granularity));
+                }
+                ensureGeoIndex(template, name);
+            });
+        }
+        return new PartitionCatalog(template, baseCollection, period, name -> ensureReadingIndexes(template, name));
+    }
+
+    /**
+     * Partition catalog cho COLD tier (mongodb.cold.partition.*, áp dụng cho storage-mode = documents)
+     */
+    @Bean(name = "coldPartitionCatalog")
+    public PartitionCatalog coldPartitionCatalog() {
+        MongoTemplate template = coldMongoTemplate();
+        if (!coldPartitionEnabled) {
+            return PartitionCatalog.disabled(template, WarmStorageLayout.LEGACY_COLLECTION);
+        }
+
+        PartitionCatalog.Period period = PartitionCatalog.Period.valueOf(coldPartitionPeriod.trim().toUpperCase());
+        log.info("COLD partitioning enabled: {} partitions of '{}'", period, WarmStorageLayout.LEGACY_COLLECTION);
+        return new PartitionCatalog(template, WarmStorageLayout.LEGACY_COLLECTION, period,
+                name -> ensureReadingIndexes(template, name));
+    }
+
+    private CollectionOptions timeSeriesOptions(Granularity granularity) {
+        return CollectionOptions.empty()
+                .timeSeries(CollectionOptions.TimeSeriesOptions.timeSeries("timestamp")
+                        .metaField("sourceId")
+                        .granularity(granularity));
+    }
+
+    /**
+     * Index cho partition dạng documents: query theo sensor + thời gian và quét theo thời gian
+     */
+    private void ensureReadingIndexes(MongoTemplate template, String collectionName) {
+        IndexOperations indexOps = template.indexOps(collectionName);
+        indexOps.ensureIndex(new Index().on("sourceId", Sort.Direction.ASC).on("timestamp", Sort.Direction.DESC));
+        indexOps.ensureIndex(new Index().on("timestamp", Sort.Direction.ASC));
+        ensureGeoIndex(template, collectionName);
+    }
+
+    /**
+     * Index 2dsphere trên location (GeoJSON Point) cho lọc bbox/bán kính.
+     * Best-effort: time-series collection cần MongoDB 6.0+, thiếu index thì $geoWithin vẫn chạy (scan)
+     */
+    private void ensureGeoIndex(MongoTemplate template, String collectionName) {
+        try {
+            template.indexOps(collectionName)
+                    .ensureIndex(new GeospatialIndex("location").typed(GeoSpatialIndexType.GEO_2DSPHERE));
+        } catch (Exception e) {
+            log.warn("Cannot create 2dsphere index on '{}': {}", collectionName, e.getMessage());
+        }
+    }
+
     /**
      * MongoClient cho Cold Storage với authentication
      */
@@ -0,0 +1,123 @@
+/*
+ * Copyright 2025 Haui.HIT - H2K
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.smartcity.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.smartcity.dto.MessageResponse;
+import com.smartcity.service.AdmissionControlService;
+import com.smartcity.service.AdmissionControlService.Decision;
+import jakarta.servlet.DispatcherType;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.security.authentication.AnonymousAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.HandlerInterceptor;
+
+/**
+ * Interceptor áp dụng admission control / rate limit cho /api/publish/**
+ * Request bị từ chối nhận 429 kèm header Retry-After.
+ * Bucket theo user đã xác thực, nếu không thì theo header client key (publish.rate-limit.client-key-header),
+ * cuối cùng theo IP (sau reverse proxy / NAT mọi client dùng chung một bucket nếu không gửi header).
+ * /api/publish/stream không được lấy mẫu latency / in-flight; client key được chuyển cho controller
+ * để mỗi chunk trả một token.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class PublishAdmissionInterceptor implements HandlerInterceptor {
+
+    /** Client key của stream ingest request đã admitted */
+    public static final String CLIENT_KEY_ATTRIBUTE = PublishAdmissionInterceptor.class.getName() + ".clientKey";
+
+    private static final String ADMITTED_AT_ATTRIBUTE = PublishAdmissionInterceptor.class.getName() + ".admittedAt";
+    private static final String STREAM_PATH = "/api/publish/stream";
+    private static final int MAX_CLIENT_KEY_LENGTH = 128;
+
+    private final AdmissionControlService admissionControlService;
+    private final ObjectMapper objectMapper;
+
+    @Value("${publish.rate-limit.client-key-header:X-API-Key}")
+    private String clientKeyHeader;
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler)
+            throws Exception {
+        // Async dispatch (group commit hoàn thành) đã được admit ở lần dispatch đầu
+        if (request.getDispatcherType() == DispatcherType.ASYNC || "OPTIONS".equals(request.getMethod())) {
+            return true;
+        }
+
+        String clientKey = resolveClientKey(request);
+        boolean stream = (request.getContextPath() + STREAM_PATH).equals(request.getRequestURI());
+        Decision decision = stream
+                ? admissionControlService.admitStream(clientKey)
+                : admissionControlService.admit(clientKey);
+        if (decision.admitted()) {
+            request.setAttribute(stream ? CLIENT_KEY_ATTRIBUTE : ADMITTED_AT_ATTRIBUTE,
+                    stream ? clientKey : System.currentTimeMillis());
+            return true;
+        }
+
+        log.debug("Publish rejected for {}: {} (retry after {}s)",
+                clientKey, decision.reason(), decision.retryAfterSeconds());
+
+        String message = AdmissionControlService.REASON_RATE_LIMITED.equals(decision.reason())
+                ? "Rate limit exceeded, retry later"
+                : "Ingestion pipeline overloaded, retry later";
+        response.setStatus(HttpStatus.TOO_MANY_REQUESTS.value());
+        response.setHeader(HttpHeaders.RETRY_AFTER, String.valueOf(decision.retryAfterSeconds()));
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        objectMapper.writeValue(response.getOutputStream(), new MessageResponse(message));
+        return false;
+    }
+
+    /**
+     * Gọi một lần khi request kết thúc; với group commit là ở cuối async dispatch
+     */
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler,
+                                Exception ex) {
+        Object admittedAt = request.getAttribute(ADMITTED_AT_ATTRIBUTE);
+        if (admittedAt instanceof Long start) {
+            request.removeAttribute(ADMITTED_AT_ATTRIBUTE);
+            admissionControlService.completed(System.currentTimeMillis() - start);
+        }
+    }
+
+    private String resolveClientKey(HttpServletRequest request) {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        if (authentication != null && authentication.isAuthenticated()
+                && !(authentication instanceof AnonymousAuthenticationToken)) {
+            return "user:" + authentication.getName();
+        }
+        String key = clientKeyHeader != null && !clientKeyHeader.isBlank()
+                ? request.getHeader(clientKeyHeader) : null;
+        if (key != null && !key.isBlank()) {
+            key = key.trim();
+            return "key:" + (key.length() > MAX_CLIENT_KEY_LENGTH ? key.substring(0, MAX_CLIENT_KEY_LENGTH) : key);
+        }
+        return "ip:" + request.getRemoteAddr();
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright 2025 Haui.HIT - H2K
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.smartcity.config;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+
+/**
+ * Scheduling Configuration
+ * Tách các job @Scheduled ra các scheduler pool riêng (@Scheduled(scheduler = ...)) để job nền chạy lâu
+ * không làm trễ ingestion:
+ * - ingestionScheduler: pull loop từ edge nodes
+ * - maintenanceScheduler: job chạy lâu (deferred drain, WARM → COLD lifecycle, COLD retention/compaction, geo backfill)
+ * - periodicScheduler: job ngắn chạy dày (rollup flush, sensor state snapshot, routing rules reload),
+ *   không phải chờ job maintenance chạy lâu nhả thread
+ * - taskScheduler (mặc định): monitor, cluster heartbeat, đồng bộ registry/consumers, các job nhẹ khác
+ */
+@Slf4j
+@Configuration
+public class SchedulingConfig {
+
+    public static final String INGESTION_SCHEDULER = "ingestionScheduler";
+    public static final String MAINTENANCE_SCHEDULER = "maintenanceScheduler";
+    public static final String PERIODIC_SCHEDULER = "periodicScheduler";
+
+    @Value("${scheduling.pools.ingestion.size:2}")
+    private int ingestionPoolSize;
+
+    @Value("${scheduling.pools.maintenance.size:2}")
+    private int maintenancePoolSize;
+
+    @Value("${scheduling.pools.periodic.size:2}")
+    private int periodicPoolSize;
+
+    @Value("${scheduling.pools.default.size:2}")
+    private int defaultPoolSize;
+
+    @Value("${scheduling.shutdown-timeout-seconds:30}")
+    private int shutdownTimeoutSeconds;
+
+    @Bean(name = INGESTION_SCHEDULER)
+    public ThreadPoolTaskScheduler ingestionScheduler() {
+        return scheduler("ingest-sched-", ingestionPoolSize);
+    }
+
+    @Bean(name = MAINTENANCE_SCHEDULER)
+    public ThreadPoolTaskScheduler maintenanceScheduler() {
+        return scheduler("maint-sched-", maintenancePoolSize);
+    }
+
+    @Bean(name = PERIODIC_SCHEDULER)
+    public ThreadPoolTaskScheduler periodicScheduler() {
+        return scheduler("periodic-sched-", periodicPoolSize);
+    }
+
+    /**
+     * Scheduler mặc định cho các @Scheduled không chỉ định scheduler
+     */
+    @Bean(name = "taskScheduler")
+    public ThreadPoolTaskScheduler taskScheduler() {
+        return scheduler("sched-", defaultPoolSize);
+    }
+
+    private ThreadPoolTaskScheduler scheduler(String threadNamePrefix, int poolSize) {
+        ThreadPoolTaskScheduler scheduler = new ThreadPoolTaskScheduler();
+        scheduler.setPoolSize(Math.max(1, poolSize));
+        scheduler.setThreadNamePrefix(threadNamePrefix);
+        scheduler.setErrorHandler(e -> log.error("Scheduled task failed on {}: {}",
+                Thread.currentThread().getName(), e.getMessage(), e));
+        scheduler.setWaitForTasksToCompleteOnShutdown(true);
+        scheduler.setAwaitTerminationSeconds(shutdownTimeoutSeconds);
+        log.info("Configured scheduler pool {} (size={})", threadNamePrefix, Math.max(1, poolSize));
+        return scheduler;
+    }
+}
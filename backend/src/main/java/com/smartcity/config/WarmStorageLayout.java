@@ -0,0 +1,60 @@
+/*
+ * Copyright 2025 Haui.HIT - H2K
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.smartcity.config;
+
+import lombok.Getter;
+
+/**
+ * Layout của WARM tier được MongoConfig quyết định lúc khởi động:
+ * - DOCUMENTS: collection thường "city_data", mỗi reading một document
+ * - TIME_SERIES: native time-series collection (timeField=timestamp, metaField=sourceId)
+ */
+@Getter
+public class WarmStorageLayout {
+
+    /**
+     * Collection mặc định của CityData (xem @Document trên CityData)
+     */
+    public static final String LEGACY_COLLECTION = "city_data";
+
+    public enum Mode {
+        DOCUMENTS,
+        TIME_SERIES
+    }
+
+    private final Mode mode;
+    private final String collectionName;
+    private final String granularity;
+
+    private WarmStorageLayout(Mode mode, String collectionName, String granularity) {
+        this.mode = mode;
+        this.collectionName = collectionName;
+        this.granularity = granularity;
+    }
+
+    public static WarmStorageLayout documents() {
+        return new WarmStorageLayout(Mode.DOCUMENTS, LEGACY_COLLECTION, null);
+    }
+
+    public static WarmStorageLayout timeSeries(String collectionName, String granularity) {
+        return new WarmStorageLayout(Mode.TIME_SERIES, collectionName, granularity);
+    }
+
+    public boolean isTimeSeries() {
+        return mode == Mode.TIME_SERIES;
+    }
+}
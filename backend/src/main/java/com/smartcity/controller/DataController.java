@@ -31,12 +31,19 @@
 package com.smartcity.controller;
 
 import com.smartcity.dto.DataPageResponse;
+import com.smartcity.dto.MessageResponse;
 import com.smartcity.model.DataType;
 import com.smartcity.service.CityDataQueryService;
+import com.smartcity.service.GeoFilter;
+import com.smartcity.service.LiveStreamService;
+import com.smartcity.service.RollupService;
+import com.smartcity.service.SensorStateService;
+import com.smartcity.service.TimeSeriesService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.http.CacheControl;
 import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.CrossOrigin;
@@ -45,7 +52,10 @@ import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.util.Map;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -59,15 +69,31 @@ import java.util.concurrent.TimeUnit;
 public class DataController {
 
     private final CityDataQueryService cityDataQueryService;
+    private final LiveStreamService liveStreamService;
+    private final RollupService rollupService;
+    private final TimeSeriesService timeSeriesService;
+    private final SensorStateService sensorStateService;
 
     @GetMapping
-    public ResponseEntity<DataPageResponse> getData(
+    public ResponseEntity<?> getData(
             @RequestParam(value = "type", required = false) DataType type,
             @RequestParam(value = "sensorId", required = false) String sensorId,
+            @RequestParam(value = "from", required = false) Long from,
+            @RequestParam(value = "to", required = false) Long to,
+            @RequestParam(value = "bbox", required = false) String bbox,
+            @RequestParam(value = "lat", required = false) Double lat,
+            @RequestParam(value = "lng", required = false) Double lng,
+            @RequestParam(value = "radius", required = false) Double radius,
             @RequestParam(value = "page", defaultValue = "0") int page,
             @RequestParam(value = "size", defaultValue = "20") int size
     ) {
-        DataPageResponse response = cityDataQueryService.fetchData(type, sensorId, page, size);
+        GeoFilter geo;
+        try {
+            geo = parseGeoFilter(bbox, lat, lng, radius);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(new MessageResponse(e.getMessage()));
+        }
+        DataPageResponse response = cityDataQueryService.fetchData(type, sensorId, from, to, geo, page, size);
         
         // Add cache headers for performance
         return ResponseEntity.ok()
@@ -76,6 +102,97 @@ public class DataController {
                 .body(response);
     }
 
+    /**
+     * Aggregates (count/min/max/avg/stddev) theo time bucket từ rollups 1m/1h, không đọc raw readings
+     */
+    @GetMapping("/aggregates")
+    public ResponseEntity<?> getAggregates(
+            @RequestParam("sensorId") String sensorId,
+            @RequestParam(value = "metric", required = false) String metric,
+            @RequestParam("from") long from,
+            @RequestParam("to") long to,
+            @RequestParam(value = "resolution", required = false) String resolution,
+            @RequestParam(value = "stepMs", required = false) Long stepMs
+    ) {
+        try {
+            RollupService.Resolution parsed = resolution != null ? RollupService.Resolution.fromLabel(resolution) : null;
+            return ResponseEntity.ok(rollupService.aggregate(sensorId, metric, from, to, parsed, stepMs));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(new MessageResponse(e.getMessage()));
+        }
+    }
+
+    /**
+     * Chuỗi [timestamp, value] của một metric, downsample (LTTB) về tối đa points điểm.
+     * Mặc định 24 giờ gần nhất.
+     */
+    @GetMapping("/series")
+    public ResponseEntity<?> getSeries(
+            @RequestParam("sensorId") String sensorId,
+            @RequestParam("metric") String metric,
+            @RequestParam(value = "from", required = false) Long from,
+            @RequestParam(value = "to", required = false) Long to,
+            @RequestParam(value = "points", required = false) Integer points
+    ) {
+        long end = to != null ? to : System.currentTimeMillis();
+        long start = from != null ? from : end - TimeUnit.DAYS.toMillis(1);
+        try {
+            return ResponseEntity.ok(timeSeriesService.series(sensorId, metric, start, end, points));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(new MessageResponse(e.getMessage()));
+        }
+    }
+
+    /**
+     * Server-Sent Events: readings ngay sau khi được lưu (event "readings"), thay cho polling /api/data
+     */
+    @GetMapping(value = "/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<SseEmitter> stream(
+            @RequestParam(value = "type", required = false) DataType type,
+            @RequestParam(value = "sensorId", required = false) String sensorId,
+            @RequestParam(value = "overflow", defaultValue = "DROP") LiveStreamService.Overflow overflow
+    ) {
+        SseEmitter emitter = liveStreamService.subscribe(type, sensorId, overflow);
+        if (emitter == null) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build();
+        }
+        return ResponseEntity.ok()
+                .cacheControl(CacheControl.noCache())
+                .header("X-Accel-Buffering", "no")
+                .body(emitter);
+    }
+
+    @GetMapping("/stream/stats")
+    public ResponseEntity<Map<String, Object>> streamStats() {
+        return ResponseEntity.ok(liveStreamService.getStats());
+    }
+
+    /**
+     * Giá trị mới nhất của mỗi sensor (last value, EWMA, rolling min/max theo metric), đọc từ sensor state store
+     * của instance này (X-Instance-Id); trong cluster chỉ gồm sensors mà instance này ingest
+     */
+    @GetMapping("/latest")
+    public ResponseEntity<?> getLatest(
+            @RequestParam(value = "sensorId", required = false) String sensorId,
+            @RequestParam(value = "metric", required = false) String metric
+    ) {
+        if (!sensorStateService.isEnabled()) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .body(new MessageResponse("Sensor state store is disabled"));
+        }
+        if (sensorId != null && !sensorStateService.hasSensor(sensorId)) {
+            return ResponseEntity.notFound()
+                    .header("X-Instance-Id", sensorStateService.getInstanceId())
+                    .build();
+        }
+        StreamingResponseBody body = output -> sensorStateService.writeLatest(output, sensorId, metric);
+        return ResponseEntity.ok()
+                .header("X-Instance-Id", sensorStateService.getInstanceId())
+                .contentType(MediaType.APPLICATION_JSON)
+                .cacheControl(CacheControl.noCache())
+                .body(body);
+    }
+
     @GetMapping("/{id}")
     public ResponseEntity<?> getById(@PathVariable String id) {
         log.info("Fetching record with ID: {}", id);
@@ -124,6 +241,26 @@ public class DataController {
         }
     }
     
+    /**
+     * bbox=minLng,minLat,maxLng,maxLat hoặc lat+lng+radius (mét); không có tham số nào → null
+     */
+    private GeoFilter parseGeoFilter(String bbox, Double lat, Double lng, Double radius) {
+        boolean circle = lat != null || lng != null || radius != null;
+        if (bbox != null && circle) {
+            throw new IllegalArgumentException("Chỉ dùng bbox hoặc lat/lng/radius");
+        }
+        if (bbox != null) {
+            return GeoFilter.bbox(bbox);
+        }
+        if (!circle) {
+            return null;
+        }
+        if (lat == null || lng == null || radius == null) {
+            throw new IllegalArgumentException("Lọc theo bán kính cần đủ lat, lng và radius");
+        }
+        return GeoFilter.radius(lat, lng, radius);
+    }
+
     /**
      * Generate ETag from response hash for cache validation
      */
@@ -0,0 +1,71 @@
+/*
+ * Copyright 2025 Haui.HIT - H2K
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.smartcity.controller;
+
+import com.smartcity.service.TierLifecycleService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.CrossOrigin;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Lifecycle Controller
+ * Theo dõi và kích hoạt migration WARM → COLD
+ */
+@Slf4j
+@RestController
+@RequestMapping("/api/lifecycle")
+@RequiredArgsConstructor
+@CrossOrigin(origins = {"http://localhost:3000", "http://localhost:3001"}, allowCredentials = "true")
+public class LifecycleController {
+
+    private final TierLifecycleService tierLifecycleService;
+
+    /**
+     * API: GET /api/lifecycle
+     * Tiến độ migration: checkpoint, số bản ghi đã chuyển, số bản ghi đang chờ, throttling
+     */
+    @GetMapping
+    public ResponseEntity<Map<String, Object>> getStatus() {
+        return ResponseEntity.ok(tierLifecycleService.getStatus());
+    }
+
+    /**
+     * API: POST /api/lifecycle/run
+     * Chạy ngay một lượt migration (bỏ qua nếu đang có lượt khác chạy)
+     */
+    @PostMapping("/run")
+    public ResponseEntity<Map<String, Object>> runNow() {
+        log.info("Manual lifecycle migration requested");
+
+        Map<String, Object> response = new HashMap<>();
+        long migrated = tierLifecycleService.runOnce();
+
+        response.put("migrated", migrated);
+        response.put("status", tierLifecycleService.getStatus());
+        response.put("timestamp", LocalDateTime.now().toString());
+        return ResponseEntity.ok(response);
+    }
+}
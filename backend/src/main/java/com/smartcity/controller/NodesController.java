@@ -31,7 +31,11 @@
 package com.smartcity.controller;
 
 import com.smartcity.config.EdgeNodeConfig;
+import com.smartcity.service.AdaptivePullController;
+import com.smartcity.service.EdgeConnectionManager;
+import com.smartcity.service.EdgeMonitor;
 import com.smartcity.service.EdgeNodeRegistry;
+import com.smartcity.service.FairPullScheduler;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.http.ResponseEntity;
 import org.springframework.http.HttpStatus;
@@ -61,9 +65,19 @@ import java.util.HashMap;
 public class NodesController {
 
     private final EdgeNodeRegistry edgeNodeRegistry;
+    private final AdaptivePullController adaptivePullController;
+    private final FairPullScheduler fairPullScheduler;
+    private final EdgeMonitor edgeMonitor;
+    private final EdgeConnectionManager edgeConnectionManager;
 
-    public NodesController(EdgeNodeRegistry edgeNodeRegistry) {
+    public NodesController(EdgeNodeRegistry edgeNodeRegistry, AdaptivePullController adaptivePullController,
+                           FairPullScheduler fairPullScheduler, EdgeMonitor edgeMonitor,
+                           EdgeConnectionManager edgeConnectionManager) {
         this.edgeNodeRegistry = edgeNodeRegistry;
+        this.adaptivePullController = adaptivePullController;
+        this.fairPullScheduler = fairPullScheduler;
+        this.edgeMonitor = edgeMonitor;
+        this.edgeConnectionManager = edgeConnectionManager;
     }
 
     /**
@@ -78,7 +92,9 @@ public class NodesController {
      *   port: number
      *   status: 'online' | 'offline'
      *   lastPing?: string
+     *   health?: { state, connected, queueDepth, consumers, messagesPerSecond, lastPullAt, ... }
      * }
+     * status/lastPing lấy từ EdgeMonitor (lần kiểm tra queue thành công gần nhất)
      * 
      * @return List of edge nodes
      */
@@ -98,9 +114,15 @@ public class NodesController {
                     nodeData.put("host", node.getHost());
                     nodeData.put("port", node.getPort());
                     nodeData.put("enabled", node.isEnabled());  // Add enabled field
-                    // Giả định node online nếu enabled
-                    nodeData.put("status", node.isEnabled() ? "online" : "offline");
-                    nodeData.put("lastPing", java.time.LocalDateTime.now().toString());
+                    nodeData.put("weight", node.getWeight());
+                    nodeData.put("minShare", node.getMinShare());
+                    Map<String, Object> health = edgeMonitor.getSnapshot(node.getName());
+                    nodeData.put("status", edgeMonitor.isOnline(node) ? "online" : "offline");
+                    Object lastSeenAt = health != null ? health.get("lastSeenAt") : null;
+                    nodeData.put("lastPing", lastSeenAt != null
+                            ? java.time.Instant.ofEpochMilli((Long) lastSeenAt).toString()
+                            : null);
+                    nodeData.put("health", health);
                     return nodeData;
                 })
                 .collect(Collectors.toList());
@@ -114,6 +136,59 @@ public class NodesController {
         }
     }
     
+    /**
+     * API: GET /api/nodes/ingestion
+     * Quyết định gần nhất của adaptive pull controller cho từng node
+     * (batch size, queue depth, latency từng stage, thời điểm pull kế tiếp)
+     */
+    @GetMapping("/ingestion")
+    public ResponseEntity<List<Map<String, Object>>> getIngestionDecisions() {
+        return ResponseEntity.ok(adaptivePullController.getDecisions());
+    }
+    
+    /**
+     * API: GET /api/nodes/fairness
+     * Share capacity ingestion cấu hình (weight, minShare) so với thực tế, cùng lag của từng node
+     */
+    @GetMapping("/fairness")
+    public ResponseEntity<Map<String, Object>> getFairness() {
+        return ResponseEntity.ok(fairPullScheduler.getShares(edgeNodeRegistry.getAllNodes()));
+    }
+    
+    /**
+     * API: GET /api/nodes/connections
+     * Connection đang mở tới từng node: địa chỉ, số lần kết nối lỗi liên tiếp, thời gian backoff còn lại
+     */
+    @GetMapping("/connections")
+    public ResponseEntity<Map<String, Object>> getConnections() {
+        return ResponseEntity.ok(edgeConnectionManager.getStates());
+    }
+    
+    /**
+     * API: GET /api/nodes/{name}/ingestion
+     */
+    @GetMapping("/{name}/ingestion")
+    public ResponseEntity<Map<String, Object>> getIngestionDecision(@PathVariable String name) {
+        Map<String, Object> decision = adaptivePullController.getDecision(name);
+        if (decision == null) {
+            return ResponseEntity.notFound().build();
+        }
+        return ResponseEntity.ok(decision);
+    }
+    
+    /**
+     * API: GET /api/nodes/{name}/health
+     * Queue depth, consumers, connection, lần pull gần nhất và messages/sec (snapshot của EdgeMonitor)
+     */
+    @GetMapping("/{name}/health")
+    public ResponseEntity<Map<String, Object>> getNodeHealth(@PathVariable String name) {
+        Map<String, Object> health = edgeMonitor.getSnapshot(name);
+        if (health == null) {
+            return ResponseEntity.notFound().build();
+        }
+        return ResponseEntity.ok(health);
+    }
+    
     /**
      * API: POST /api/nodes
      * Create new Edge Node
@@ -131,7 +206,14 @@ public class NodesController {
             newNode.setQueueName(request.getQueueName());
             newNode.setUsername(request.getUsername());
             newNode.setPassword(request.getPassword());
+            newNode.setVirtualHost(request.getVirtualHost());
             newNode.setEnabled(true); // Default to enabled
+            if (request.getWeight() != null) {
+                newNode.setWeight(request.getWeight());
+            }
+            if (request.getMinShare() != null) {
+                newNode.setMinShare(request.getMinShare());
+            }
             
             boolean added = edgeNodeRegistry.addNode(newNode);
             
@@ -244,6 +326,9 @@ public class NodesController {
         private String queueName;
         private String username;
         private String password;
+        private String virtualHost;
+        private Double weight;
+        private Double minShare;
         
         // Getters and Setters
         public String getName() { return name; }
@@ -263,5 +348,14 @@ public class NodesController {
         
         public String getPassword() { return password; }
         public void setPassword(String password) { this.password = password; }
+        
+        public String getVirtualHost() { return virtualHost; }
+        public void setVirtualHost(String virtualHost) { this.virtualHost = virtualHost; }
+        
+        public Double getWeight() { return weight; }
+        public void setWeight(Double weight) { this.weight = weight; }
+        
+        public Double getMinShare() { return minShare; }
+        public void setMinShare(Double minShare) { this.minShare = minShare; }
     }
 }
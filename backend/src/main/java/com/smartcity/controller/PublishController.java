@@ -16,20 +16,33 @@
 
 package com.smartcity.controller;
 
+import com.smartcity.config.PublishAdmissionInterceptor;
 import com.smartcity.dto.MessageResponse;
 import com.smartcity.dto.PublishDataRequest;
+import com.smartcity.dto.StreamIngestResponse;
 import com.smartcity.model.CityData;
 import com.smartcity.model.DataType;
 import com.smartcity.service.DataRoutingService;
+import com.smartcity.service.GroupCommitPublisher;
+import com.smartcity.service.StreamingIngestService;
+import jakarta.servlet.http.HttpServletRequest;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.zip.GZIPInputStream;
 
 /**
  * REST controller for publishing data to the Smart City Platform
@@ -43,6 +56,8 @@ import java.util.Map;
 public class PublishController {
 
     private final DataRoutingService dataRoutingService;
+    private final StreamingIngestService streamingIngestService;
+    private final GroupCommitPublisher groupCommitPublisher;
 
     private static final int MAX_BATCH_SIZE = 100;
 
@@ -96,6 +111,59 @@ public class PublishController {
         }
     }
 
+    /**
+     * Publish single data record qua group commit (opt-in)
+     * POST /api/publish?async=true
+     *
+     * Record được gom chung micro-batch với các publish đồng thời khác; response (id + tier)
+     * trả về khi batch được lưu xong, request thread không bị giữ trong lúc chờ.
+     */
+    @PostMapping(params = "async=true")
+    public CompletableFuture<ResponseEntity<?>> publishSingleGrouped(@RequestBody PublishDataRequest request) {
+        if (request.getSourceId() == null || request.getSourceId().isEmpty()) {
+            return CompletableFuture.completedFuture(ResponseEntity.badRequest()
+                    .body(new MessageResponse("Source ID is required")));
+        }
+
+        if (request.getPayload() == null || request.getPayload().isEmpty()) {
+            return CompletableFuture.completedFuture(ResponseEntity.badRequest()
+                    .body(new MessageResponse("Payload is required")));
+        }
+
+        if (!groupCommitPublisher.isEnabled()) {
+            return CompletableFuture.completedFuture(publishSingle(request));
+        }
+
+        CityData cityData = CityData.builder()
+                .sourceId(request.getSourceId())
+                .payload(request.getPayload())
+                .dataType(request.getDataType())
+                .timestamp(System.currentTimeMillis())
+                .build();
+
+        return groupCommitPublisher.submit(cityData)
+                .<ResponseEntity<?>>thenApply(stored -> {
+                    Map<String, Object> response = new HashMap<>();
+                    response.put("success", true);
+                    response.put("message", "Data published successfully");
+                    response.put("id", stored.getId());
+                    response.put("dataType", stored.getDataType());
+                    return ResponseEntity.ok(response);
+                })
+                .exceptionally(error -> {
+                    Throwable cause = error instanceof CompletionException && error.getCause() != null
+                            ? error.getCause()
+                            : error;
+                    if (cause instanceof RejectedExecutionException) {
+                        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                                .body(new MessageResponse("Publish queue is full, retry later"));
+                    }
+                    log.error("Error publishing data via group commit: {}", cause.getMessage());
+                    return ResponseEntity.internalServerError()
+                            .body(new MessageResponse("Failed to publish data: " + cause.getMessage()));
+                });
+    }
+
     /**
      * Publish batch data records
      * POST /api/publish/batch
@@ -169,4 +237,29 @@ public class PublishController {
                     .body(new MessageResponse("Failed to publish batch data: " + e.getMessage()));
         }
     }
+
+    /**
+     * Streaming bulk ingest (NDJSON - mỗi dòng một record như POST /api/publish, thêm "timestamp" tùy chọn)
+     * POST /api/publish/stream
+     *
+     * Body được đọc tăng dần và lưu theo chunk nên không giới hạn số record như /batch.
+     * Hỗ trợ "Content-Encoding: gzip".
+     */
+    @PostMapping(value = "/stream", consumes = {"application/x-ndjson", "application/jsonl", "text/plain"})
+    public ResponseEntity<StreamIngestResponse> publishStream(HttpServletRequest request) throws IOException {
+        log.info("Starting NDJSON stream ingest from {}", request.getRemoteAddr());
+
+        String encoding = request.getHeader(HttpHeaders.CONTENT_ENCODING);
+        try (InputStream body = "gzip".equalsIgnoreCase(encoding)
+                ? new GZIPInputStream(request.getInputStream())
+                : request.getInputStream()) {
+
+            StreamIngestResponse response = streamingIngestService.ingest(body,
+                    (String) request.getAttribute(PublishAdmissionInterceptor.CLIENT_KEY_ATTRIBUTE));
+            if (!response.success()) {
+                return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(response);
+            }
+            return ResponseEntity.ok(response);
+        }
+    }
 }
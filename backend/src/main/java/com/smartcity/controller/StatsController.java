@@ -31,7 +31,9 @@
 package com.smartcity.controller;
 
 import com.smartcity.model.CityData;
+import com.smartcity.service.ColdTierStore;
 import com.smartcity.service.MetricsService;
+import com.smartcity.service.WarmTierStore;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.data.mongodb.core.MongoTemplate;
@@ -62,16 +64,22 @@ public class StatsController {
     private final MongoTemplate coldMongoTemplate;
     private final RedisTemplate<String, Object> redisTemplate;
     private final MetricsService metricsService;
+    private final WarmTierStore warmTierStore;
+    private final ColdTierStore coldTierStore;
 
     public StatsController(
             @Qualifier("warmMongoTemplate") MongoTemplate warmMongoTemplate,
             @Qualifier("coldMongoTemplate") MongoTemplate coldMongoTemplate,
             RedisTemplate<String, Object> redisTemplate,
-            MetricsService metricsService) {
+            MetricsService metricsService,
+            WarmTierStore warmTierStore,
+            ColdTierStore coldTierStore) {
         this.warmMongoTemplate = warmMongoTemplate;
         this.coldMongoTemplate = coldMongoTemplate;
         this.redisTemplate = redisTemplate;
         this.metricsService = metricsService;
+        this.warmTierStore = warmTierStore;
+        this.coldTierStore = coldTierStore;
     }
 
     /**
@@ -100,9 +108,7 @@ public class StatsController {
         
         // 2. Thống kê MongoDB Warm - try separately
         try {
-            warmCount = warmMongoTemplate.count(
-                    new org.springframework.data.mongodb.core.query.Query(), 
-                    CityData.class);
+            warmCount = warmTierStore.countRange(null, null, null);
             log.info("Warm MongoDB count retrieved: {}", warmCount);
         } catch (Exception e) {
             log.warn("MongoDB Warm not available: {}", e.getMessage());
@@ -111,9 +117,7 @@ public class StatsController {
         
         // 3. Thống kê MongoDB Cold - try separately
         try {
-            coldCount = coldMongoTemplate.count(
-                    new org.springframework.data.mongodb.core.query.Query(), 
-                    CityData.class);
+            coldCount = coldTierStore.count(null, null, null);
             log.info("Cold MongoDB count retrieved: {}", coldCount);
         } catch (Exception e) {
             log.warn("MongoDB Cold not available: {}", e.getMessage());
@@ -161,6 +165,43 @@ public class StatsController {
         return ResponseEntity.ok(stats);
     }
 
+    /**
+     * API: GET /api/stats/storage
+     * So sánh storage/throughput giữa layout WARM "city_data" (documents)
+     * và time-series collection
+     * 
+     * @return collStats của từng layout và write throughput của layout đang chạy
+     */
+    @GetMapping("/storage")
+    public ResponseEntity<Map<String, Object>> getStorageComparison() {
+        try {
+            return ResponseEntity.ok(warmTierStore.storageComparison());
+        } catch (Exception e) {
+            log.error("Error building storage comparison: {}", e.getMessage(), e);
+            Map<String, Object> error = new HashMap<>();
+            error.put("error", "Failed to build storage comparison");
+            return ResponseEntity.internalServerError().body(error);
+        }
+    }
+
+    /**
+     * API: GET /api/stats/metrics
+     * Named counters/gauges của backend (admission control, pipeline depth, store latency, ...)
+     */
+    @GetMapping("/metrics")
+    public ResponseEntity<Map<String, Object>> getMetrics() {
+        return ResponseEntity.ok(metricsService.getMetricsSnapshot());
+    }
+
+    /**
+     * API: GET /api/stats/metrics/prometheus
+     * Cùng dữ liệu với /metrics theo Prometheus text exposition format
+     */
+    @GetMapping(value = "/metrics/prometheus", produces = "text/plain; version=0.0.4")
+    public ResponseEntity<String> getPrometheusMetrics() {
+        return ResponseEntity.ok(metricsService.toPrometheusText());
+    }
+
     /**
      * Đếm số lượng keys trong Redis với pattern "hot:citydata:*"
      * Sử dụng SCAN thay vì KEYS để tránh block Redis
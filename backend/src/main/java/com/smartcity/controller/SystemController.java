@@ -30,13 +30,20 @@
 
 package com.smartcity.controller;
 
+import com.smartcity.dto.MessageResponse;
+import com.smartcity.service.ClusterCoordinator;
+import com.smartcity.service.HotNearCache;
+import com.smartcity.service.RoutingRuleService;
+import com.smartcity.service.ScheduledJobRunner;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.CrossOrigin;
+import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 
+import java.io.UncheckedIOException;
 import java.time.LocalDateTime;
 import java.util.HashMap;
 import java.util.Map;
@@ -51,6 +58,68 @@ import java.util.Map;
 @CrossOrigin(origins = {"http://localhost:3000", "http://localhost:3001"}, allowCredentials = "true")
 public class SystemController {
 
+    private final ClusterCoordinator clusterCoordinator;
+    private final ScheduledJobRunner scheduledJobRunner;
+    private final HotNearCache hotNearCache;
+    private final RoutingRuleService routingRuleService;
+
+    public SystemController(ClusterCoordinator clusterCoordinator, ScheduledJobRunner scheduledJobRunner,
+                            HotNearCache hotNearCache, RoutingRuleService routingRuleService) {
+        this.clusterCoordinator = clusterCoordinator;
+        this.scheduledJobRunner = scheduledJobRunner;
+        this.hotNearCache = hotNearCache;
+        this.routingRuleService = routingRuleService;
+    }
+
+    /**
+     * API: GET /api/system/cluster
+     * Instance hiện tại, các members đang sống, leader và phân công edge nodes
+     */
+    @GetMapping("/cluster")
+    public ResponseEntity<Map<String, Object>> getClusterStatus() {
+        return ResponseEntity.ok(clusterCoordinator.getStatus());
+    }
+
+    /**
+     * API: GET /api/system/jobs
+     * Lượt chạy gần nhất của các job nền (đang chạy, thời điểm, thời gian chạy, kết quả)
+     */
+    @GetMapping("/jobs")
+    public ResponseEntity<Map<String, Object>> getJobs() {
+        return ResponseEntity.ok(scheduledJobRunner.getJobs());
+    }
+
+    /**
+     * API: GET /api/system/hot-cache
+     * Kích thước, hit ratio, evictions và invalidations của HOT near-cache trên instance này
+     */
+    @GetMapping("/hot-cache")
+    public ResponseEntity<Map<String, Object>> getHotCacheStats() {
+        return ResponseEntity.ok(hotNearCache.getStats());
+    }
+
+    /**
+     * API: GET /api/system/routing-rules
+     * Bộ rules phân loại tier đang dùng trên instance này, lỗi reload gần nhất và thống kê memo theo sourceId
+     */
+    @GetMapping("/routing-rules")
+    public ResponseEntity<Map<String, Object>> getRoutingRules() {
+        return ResponseEntity.ok(routingRuleService.getStatus());
+    }
+
+    /**
+     * API: POST /api/system/routing-rules/reload
+     * Đọc lại và compile rules ngay; rules sai cú pháp → 400, bộ rules cũ vẫn được dùng
+     */
+    @PostMapping("/routing-rules/reload")
+    public ResponseEntity<?> reloadRoutingRules() {
+        try {
+            return ResponseEntity.ok(routingRuleService.reload());
+        } catch (IllegalArgumentException | UncheckedIOException e) {
+            return ResponseEntity.badRequest().body(new MessageResponse(e.getMessage()));
+        }
+    }
+
     /**
      * API: POST /api/system/reset
      * Reset hệ thống (xóa dữ liệu, reset counters, etc.)
@@ -47,4 +47,10 @@ public class PublishDataRequest {
      * If not provided, will be auto-classified by the system
      */
     private DataType dataType;
+    
+    /**
+     * Thời gian ghi nhận (epoch milliseconds, optional)
+     * Dùng cho bulk ingest readings đã đo trước đó; nếu không có sẽ lấy thời điểm nhận
+     */
+    private Long timestamp;
 }
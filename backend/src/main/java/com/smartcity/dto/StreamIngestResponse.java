@@ -0,0 +1,42 @@
+/*
+ * Copyright 2025 Haui.HIT - H2K
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.smartcity.dto;
+
+import java.util.List;
+
+/**
+ * Kết quả của /api/publish/stream (NDJSON bulk ingest).
+ * committedThroughLine: mọi dòng hợp lệ tới dòng này đã được lưu - client có thể gửi lại từ dòng kế tiếp khi lỗi.
+ */
+public record StreamIngestResponse(
+        boolean success,
+        long totalLines,
+        long accepted,
+        long rejected,
+        int chunks,
+        long committedThroughLine,
+        long durationMs,
+        List<LineError> errors,
+        boolean errorsTruncated,
+        String message
+) {
+
+    /**
+     * Lỗi của một dòng: số dòng (bắt đầu từ 1) và byte offset của đầu dòng trong request body
+     */
+    public record LineError(long line, long offset, String error) {}
+}
@@ -0,0 +1,129 @@
+/*
+ * Copyright 2025 Haui.HIT - H2K
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.smartcity.grpc;
+
+import io.grpc.Server;
+import io.grpc.netty.shaded.io.grpc.netty.NettyServerBuilder;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * gRPC Ingest Server
+ * Chạy Netty gRPC server trên port riêng (grpc.ingest.port) song song với HTTP API,
+ * phục vụ IngestService cho các edge gateway.
+ */
+@Slf4j
+@Component
+public class GrpcIngestServer {
+
+    private final IngestStreamService ingestStreamService;
+
+    @Value("${grpc.ingest.enabled:true}")
+    private boolean enabled;
+
+    @Value("${grpc.ingest.port:9090}")
+    private int port;
+
+    @Value("${grpc.ingest.worker-threads:8}")
+    private int workerThreads;
+
+    @Value("${grpc.ingest.max-inbound-message-bytes:16777216}")
+    private int maxInboundMessageBytes;
+
+    @Value("${grpc.ingest.max-concurrent-streams:64}")
+    private int maxConcurrentStreams;
+
+    @Value("${grpc.ingest.keepalive-time-seconds:30}")
+    private long keepAliveTimeSeconds;
+
+    private Server server;
+    private ExecutorService workers;
+
+    public GrpcIngestServer(IngestStreamService ingestStreamService) {
+        this.ingestStreamService = ingestStreamService;
+    }
+
+    @PostConstruct
+    public void start() throws IOException {
+        if (!enabled) {
+            log.info("gRPC ingest server: DISABLED");
+            return;
+        }
+        workers = Executors.newFixedThreadPool(workerThreads, new WorkerThreadFactory());
+        ingestStreamService.setWorkerExecutor(workers);
+
+        server = NettyServerBuilder.forPort(port)
+                .addService(ingestStreamService)
+                .maxInboundMessageSize(maxInboundMessageBytes)
+                .maxConcurrentCallsPerConnection(maxConcurrentStreams)
+                .keepAliveTime(keepAliveTimeSeconds, TimeUnit.SECONDS)
+                .permitKeepAliveTime(Math.max(1, keepAliveTimeSeconds / 2), TimeUnit.SECONDS)
+                .permitKeepAliveWithoutCalls(true)
+                .build()
+                .start();
+        log.info("gRPC ingest server listening on port {} (worker-threads={}, max-inbound-message={} bytes)",
+                port, workerThreads, maxInboundMessageBytes);
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (server != null) {
+            server.shutdown();
+            try {
+                if (!server.awaitTermination(5, TimeUnit.SECONDS)) {
+                    server.shutdownNow();
+                }
+            } catch (InterruptedException e) {
+                server.shutdownNow();
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (workers != null) {
+            workers.shutdown();
+        }
+    }
+
+    public boolean isRunning() {
+        return server != null && !server.isShutdown();
+    }
+
+    public int getPort() {
+        return server != null ? server.getPort() : port;
+    }
+
+    private static class WorkerThreadFactory implements ThreadFactory {
+        private final AtomicInteger counter = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "grpc-ingest-worker-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
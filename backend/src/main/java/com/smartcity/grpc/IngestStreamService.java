@@ -0,0 +1,289 @@
+/*
+ * Copyright 2025 Haui.HIT - H2K
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.smartcity.grpc;
+
+import com.smartcity.grpc.ingest.BatchAck;
+import com.smartcity.grpc.ingest.Credit;
+import com.smartcity.grpc.ingest.IngestFrame;
+import com.smartcity.grpc.ingest.IngestReply;
+import com.smartcity.grpc.ingest.IngestServiceGrpc;
+import com.smartcity.grpc.ingest.Reading;
+import com.smartcity.grpc.ingest.ReadingBatch;
+import com.smartcity.model.CityData;
+import com.smartcity.model.DataType;
+import com.smartcity.service.DataRoutingService;
+import com.smartcity.service.MetricsService;
+import io.grpc.Status;
+import io.grpc.stub.ServerCallStreamObserver;
+import io.grpc.stub.StreamObserver;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * gRPC IngestService: StreamReadings (bidirectional streaming)
+ *
+ * Flow control theo credits:
+ * - Sau Hello, server gửi Credit(initial-credits) = số batch gateway được gửi mà chưa có ack
+ * - Mỗi batch được routeAndStore tuần tự theo stream; BatchAck chỉ gửi sau khi commit xong
+ *   và trả lại 1 credit
+ * - Ở tầng transport, server chỉ request() đúng số message đã cấp credit (disableAutoRequest),
+ *   nên gateway không tuân thủ credit cũng chỉ bị HTTP/2 flow control giữ lại
+ */
+@Slf4j
+@Component
+public class IngestStreamService extends IngestServiceGrpc.IngestServiceImplBase {
+
+    private final DataRoutingService dataRoutingService;
+    private final MetricsService metricsService;
+
+    @Value("${grpc.ingest.initial-credits:8}")
+    private int initialCredits;
+
+    @Value("${grpc.ingest.max-batch-readings:5000}")
+    private int maxBatchReadings;
+
+    private final AtomicInteger activeStreams = new AtomicInteger();
+
+    /** Worker pool dùng chung, được GrpcIngestServer gán khi start */
+    private volatile Executor workerExecutor = Runnable::run;
+
+    public IngestStreamService(DataRoutingService dataRoutingService, MetricsService metricsService) {
+        this.dataRoutingService = dataRoutingService;
+        this.metricsService = metricsService;
+    }
+
+    @PostConstruct
+    public void registerMetrics() {
+        metricsService.registerGauge("grpc.ingest.active_streams", activeStreams::get);
+    }
+
+    void setWorkerExecutor(Executor workerExecutor) {
+        this.workerExecutor = workerExecutor;
+    }
+
+    public int getActiveStreams() {
+        return activeStreams.get();
+    }
+
+    @Override
+    public StreamObserver<IngestFrame> streamReadings(StreamObserver<IngestReply> responseObserver) {
+        ServerCallStreamObserver<IngestReply> serverObserver = (ServerCallStreamObserver<IngestReply>) responseObserver;
+        serverObserver.disableAutoRequest();
+        GatewayStream stream = new GatewayStream(serverObserver);
+        serverObserver.setOnCancelHandler(stream::cancelled);
+        activeStreams.incrementAndGet();
+        metricsService.incrementCounter("grpc.ingest.streams.opened");
+        // Chỉ nhận Hello cho đến khi cấp credit
+        serverObserver.request(1);
+        return stream;
+    }
+
+    /**
+     * Trạng thái của một stream gateway. onNext chạy trên transport thread; batch được
+     * xử lý tuần tự qua chuỗi CompletableFuture trên worker pool.
+     */
+    private class GatewayStream implements StreamObserver<IngestFrame> {
+        private final ServerCallStreamObserver<IngestReply> responseObserver;
+        private final Object sendLock = new Object();
+        private CompletableFuture<Void> tail = CompletableFuture.completedFuture(null);
+        private String gatewayId;
+        private boolean closed;
+
+        GatewayStream(ServerCallStreamObserver<IngestReply> responseObserver) {
+            this.responseObserver = responseObserver;
+        }
+
+        @Override
+        public void onNext(IngestFrame frame) {
+            switch (frame.getFrameCase()) {
+                case HELLO -> onHello(frame.getHello().getGatewayId());
+                case BATCH -> onBatch(frame.getBatch());
+                default -> fail(Status.INVALID_ARGUMENT.withDescription("Empty frame"));
+            }
+        }
+
+        private void onHello(String id) {
+            if (gatewayId != null) {
+                fail(Status.FAILED_PRECONDITION.withDescription("Duplicate Hello"));
+                return;
+            }
+            gatewayId = id == null || id.isEmpty() ? "anonymous" : id;
+            log.info("gRPC ingest stream opened by gateway {}, credits={}", gatewayId, initialCredits);
+            send(IngestReply.newBuilder()
+                    .setCredit(Credit.newBuilder().setBatches(initialCredits))
+                    .build());
+            responseObserver.request(initialCredits);
+        }
+
+        private void onBatch(ReadingBatch batch) {
+            if (gatewayId == null) {
+                fail(Status.FAILED_PRECONDITION.withDescription("Hello must be sent before batches"));
+                return;
+            }
+            tail = tail.thenRunAsync(() -> process(batch), workerExecutor)
+                    .exceptionally(e -> {
+                        log.error("gRPC ingest worker failed for gateway {}: {}", gatewayId, e.getMessage(), e);
+                        return null;
+                    });
+        }
+
+        private void process(ReadingBatch batch) {
+            BatchAck.Builder ack = BatchAck.newBuilder()
+                    .setSequence(batch.getSequence())
+                    .setCredits(1);
+
+            if (batch.getReadingsCount() > maxBatchReadings) {
+                metricsService.incrementCounter("grpc.ingest.batches.failed");
+                sendAck(ack.setOk(false)
+                        .setRejected(batch.getReadingsCount())
+                        .setError("Batch exceeds " + maxBatchReadings + " readings"));
+                return;
+            }
+
+            long now = System.currentTimeMillis();
+            List<CityData> records = new ArrayList<>(batch.getReadingsCount());
+            int rejected = 0;
+            for (Reading reading : batch.getReadingsList()) {
+                CityData data = toCityData(reading, now);
+                if (data == null) {
+                    rejected++;
+                } else {
+                    records.add(data);
+                }
+            }
+
+            try {
+                dataRoutingService.routeAndStore(records);
+                metricsService.incrementCounter("grpc.ingest.batches");
+                metricsService.incrementCounter("grpc.ingest.readings.accepted", records.size());
+                metricsService.incrementCounter("grpc.ingest.readings.rejected", rejected);
+                ack.setOk(true).setAccepted(records.size()).setRejected(rejected);
+            } catch (Exception e) {
+                log.error("gRPC ingest batch {} from gateway {} failed: {}",
+                        batch.getSequence(), gatewayId, e.getMessage());
+                metricsService.incrementCounter("grpc.ingest.batches.failed");
+                ack.setOk(false).setRejected(batch.getReadingsCount())
+                        .setError("Failed to store batch: " + e.getMessage());
+            }
+            sendAck(ack);
+        }
+
+        private void sendAck(BatchAck.Builder ack) {
+            if (send(IngestReply.newBuilder().setAck(ack).build())) {
+                responseObserver.request(1);
+            }
+        }
+
+        @Override
+        public void onError(Throwable t) {
+            log.warn("gRPC ingest stream from gateway {} aborted: {}", gatewayId, Status.fromThrowable(t));
+            close();
+        }
+
+        @Override
+        public void onCompleted() {
+            // Ack hết các batch đang xử lý rồi mới đóng stream
+            tail.whenComplete((ignored, e) -> {
+                synchronized (sendLock) {
+                    if (!closed) {
+                        responseObserver.onCompleted();
+                    }
+                }
+                close();
+            });
+        }
+
+        void cancelled() {
+            log.debug("gRPC ingest stream from gateway {} cancelled", gatewayId);
+            close();
+        }
+
+        private void fail(Status status) {
+            synchronized (sendLock) {
+                if (!closed) {
+                    responseObserver.onError(status.asRuntimeException());
+                }
+            }
+            close();
+        }
+
+        private boolean send(IngestReply reply) {
+            synchronized (sendLock) {
+                if (closed) {
+                    return false;
+                }
+                try {
+                    responseObserver.onNext(reply);
+                    return true;
+                } catch (RuntimeException e) {
+                    // Stream đã bị cancel phía client
+                    log.debug("Dropping reply to gateway {}: {}", gatewayId, e.getMessage());
+                    return false;
+                }
+            }
+        }
+
+        private void close() {
+            synchronized (sendLock) {
+                if (closed) {
+                    return;
+                }
+                closed = true;
+            }
+            activeStreams.decrementAndGet();
+        }
+    }
+
+    /**
+     * Reading → CityData; null nếu thiếu sourceId hoặc không có metric/label nào
+     */
+    private static CityData toCityData(Reading reading, long receivedAt) {
+        if (reading.getSourceId().isEmpty()
+                || (reading.getMetricsCount() == 0 && reading.getLabelsCount() == 0)) {
+            return null;
+        }
+        Map<String, Object> payload = new LinkedHashMap<>(reading.getMetricsMap());
+        payload.putAll(reading.getLabelsMap());
+        return CityData.builder()
+                .id(reading.getId().isEmpty() ? null : reading.getId())
+                .sourceId(reading.getSourceId())
+                .payload(payload)
+                .dataType(toDataType(reading.getDataType()))
+                .timestamp(reading.getTimestamp() > 0 ? reading.getTimestamp() : receivedAt)
+                .build();
+    }
+
+    private static DataType toDataType(com.smartcity.grpc.ingest.DataType type) {
+        return switch (type) {
+            case HOT -> DataType.HOT;
+            case WARM -> DataType.WARM;
+            case COLD -> DataType.COLD;
+            default -> null;
+        };
+    }
+}
@@ -30,11 +30,12 @@
 
 package com.smartcity.model;
 
-import lombok.AllArgsConstructor;
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 import org.springframework.data.annotation.Id;
+import org.springframework.data.annotation.Transient;
 import org.springframework.data.mongodb.core.mapping.Document;
 
 import java.io.Serializable;
@@ -51,9 +52,7 @@ import java.util.UUID;
  * - MongoDB Cold (nếu dataType = COLD)
  */
 @Data
-@Builder
 @NoArgsConstructor
-@AllArgsConstructor
 @Document(collection = "city_data")
 public class CityData implements Serializable {
     
@@ -99,21 +98,66 @@ public class CityData implements Serializable {
      */
     private Long timestamp;
     
+    /**
+     * Vị trí GeoJSON chuẩn hoá từ payload.location (null nếu reading không có vị trí hợp lệ)
+     * Được index 2dsphere trên WARM/COLD để lọc theo bbox/bán kính
+     */
+    private GeoPoint location;
+
+    /**
+     * Id được tạo trong process này (không do sender gửi) nên chưa instance nào khác có thể đã cache
+     */
+    @Transient
+    @JsonIgnore
+    private transient boolean idGenerated;
+    
+    @Builder
+    public CityData(String id, String sourceId, Map<String, Object> payload, DataType dataType, Long timestamp,
+                    GeoPoint location) {
+        this.id = id;
+        this.sourceId = sourceId;
+        this.payload = payload;
+        this.dataType = dataType;
+        this.timestamp = timestamp;
+        this.location = location;
+    }
+
+    public CityData(String id, String sourceId, Map<String, Object> payload, DataType dataType, Long timestamp) {
+        this(id, sourceId, payload, dataType, timestamp, null);
+    }
+    
     /**
      * Tạo ID mới nếu chưa có (Pre-persist)
      */
     public void generateId() {
         if (this.id == null || this.id.isEmpty()) {
             this.id = UUID.randomUUID().toString();
+            this.idGenerated = true;
         }
     }
     
+    /**
+     * Chuẩn hoá location từ payload (payload là nguồn gốc, gọi lúc ingest và khi decode COLD block)
+     */
+    public void normalizeLocation() {
+        this.location = GeoPoint.fromPayload(payload);
+    }
+
+    /**
+     * Bản sao sang tier khác, giữ nguyên id và location (backup HOT → WARM, migration WARM → COLD).
+     * Bản gốc lưu trước khi có location (WARM cũ) → tính lại từ payload
+     */
+    public CityData copyAs(DataType targetType) {
+        return new CityData(id, sourceId, payload, targetType, timestamp,
+                location != null ? location : GeoPoint.fromPayload(payload));
+    }
+    
     /**
      * Builder pattern hỗ trợ tạo đối tượng với ID tự động
      */
     public static class CityDataBuilder {
         public CityData build() {
-            CityData cityData = new CityData(id, sourceId, payload, dataType, timestamp);
+            CityData cityData = new CityData(id, sourceId, payload, dataType, timestamp, location);
             cityData.generateId();
             return cityData;
         }
@@ -0,0 +1,99 @@
+/*
+ * Copyright 2025 Haui.HIT - H2K
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.smartcity.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.geo.GeoJsonMultiPoint;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Entity: ColdBlock
+ * Block nén Gorilla chứa các readings của MỘT sensor trong MỘT time window (COLD tier)
+ *
+ * - Block "open" (sealed=false): được ghi bởi mỗi lần storeColdData, có thể nhiều block/window
+ * - Block "sealed": compaction job gộp các open block của window đã đóng thành một block
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@Document(collection = "city_data_blocks")
+public class ColdBlock {
+
+    /**
+     * Sealed block: "{sourceId}:{windowStart}", open block: thêm hậu tố UUID
+     */
+    @Id
+    private String id;
+
+    private String sourceId;
+
+    /**
+     * Time window [windowStart, windowEnd) theo epoch millis
+     */
+    private Long windowStart;
+    private Long windowEnd;
+
+    private Long minTimestamp;
+    private Long maxTimestamp;
+
+    /**
+     * Số readings trong block
+     */
+    private int count;
+
+    private boolean sealed;
+
+    /**
+     * ID gốc của từng reading (cùng thứ tự với timestamps)
+     */
+    private List<String> ids;
+
+    /**
+     * Timestamps nén delta-of-delta
+     */
+    private byte[] timestamps;
+
+    /**
+     * Mỗi field số trong payload → chuỗi double nén XOR
+     */
+    private Map<String, byte[]> metrics;
+
+    /**
+     * Các metric có giá trị nguyên (khôi phục về Integer/Long khi decode)
+     */
+    private List<String> integerMetrics;
+
+    /**
+     * Các field không phải số (index reading → field → value), thường rỗng
+     */
+    private Map<String, Map<String, Object>> extras;
+
+    /**
+     * Các vị trí khác nhau của readings trong block (index 2dsphere, lọc block theo vùng trước khi decode)
+     */
+    private GeoJsonMultiPoint locations;
+
+    private Long createdAt;
+}
@@ -0,0 +1,49 @@
+/*
+ * Copyright 2025 Haui.HIT - H2K
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.smartcity.model;
+
+import com.smartcity.config.EdgeNodeConfig;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Entity: EdgeRegistrySnapshot
+ * Danh sách Edge Nodes sau lần thay đổi gần nhất qua /api/nodes, lưu trong MongoDB Warm
+ * để restart không quay lại topology cũ trong application.yml.
+ */
+@Data
+@NoArgsConstructor
+@Document(collection = "edge_registry")
+public class EdgeRegistrySnapshot {
+
+    @Id
+    private String id;
+
+    private List<EdgeNodeConfig.EdgeNode> nodes = new ArrayList<>();
+
+    private Long updatedAt;
+
+    public EdgeRegistrySnapshot(String id) {
+        this.id = id;
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright 2025 Haui.HIT - H2K
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.smartcity.model;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+import java.util.Map;
+
+/**
+ * GeoJSON Point { "type": "Point", "coordinates": [lng, lat] }
+ * Chuẩn hoá từ payload.location lúc ingest để WARM/COLD index 2dsphere và HOT index geohash.
+ * POJO thường (không dùng GeoJsonPoint) để serialize được qua Redis JSON.
+ */
+@Data
+@NoArgsConstructor
+public class GeoPoint implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private String type = "Point";
+
+    /**
+     * [lng, lat] theo thứ tự GeoJSON
+     */
+    private double[] coordinates;
+
+    public GeoPoint(double lng, double lat) {
+        this.coordinates = new double[]{lng, lat};
+    }
+
+    public double lng() {
+        return coordinates[0];
+    }
+
+    public double lat() {
+        return coordinates[1];
+    }
+
+    /**
+     * Đọc payload.location { lat, lng | lon } (số hoặc chuỗi số).
+     * Trả về null nếu thiếu hoặc ngoài khoảng hợp lệ (lat ±90, lng ±180).
+     */
+    public static GeoPoint fromPayload(Map<String, Object> payload) {
+        if (payload == null || !(payload.get("location") instanceof Map<?, ?> location)) {
+            return null;
+        }
+        Double lat = toDouble(location.get("lat"));
+        Double lng = toDouble(location.containsKey("lng") ? location.get("lng") : location.get("lon"));
+        if (lat == null || lng == null || !isValid(lat, lng)) {
+            return null;
+        }
+        return new GeoPoint(lng, lat);
+    }
+
+    public static boolean isValid(double lat, double lng) {
+        return lat >= -90 && lat <= 90 && lng >= -180 && lng <= 180;
+    }
+
+    private static Double toDouble(Object value) {
+        if (value instanceof Number number) {
+            return number.doubleValue();
+        }
+        if (value instanceof String str) {
+            try {
+                return Double.parseDouble(str.trim());
+            } catch (NumberFormatException ignored) {
+                return null;
+            }
+        }
+        return null;
+    }
+}
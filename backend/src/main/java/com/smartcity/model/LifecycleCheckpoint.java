@@ -0,0 +1,79 @@
+/*
+ * Copyright 2025 Haui.HIT - H2K
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.smartcity.model;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Entity: LifecycleCheckpoint
+ * Checkpoint của lifecycle migration (WARM → COLD), lưu trong MongoDB Warm
+ * để job có thể resume sau khi restart.
+ */
+@Data
+@NoArgsConstructor
+@Document(collection = "lifecycle_checkpoints")
+public class LifecycleCheckpoint {
+
+    @Id
+    private String id;
+
+    /**
+     * Collection WARM được migrate gần nhất (collection gốc hoặc một partition)
+     */
+    private String collection;
+
+    /**
+     * Vị trí keyset theo từng collection: collection gốc và partition dở dang không reset vị trí của nhau
+     */
+    private Map<String, Position> positions = new HashMap<>();
+
+    private long migratedTotal;
+
+    private long batchesCompleted;
+
+    private long partitionsDropped;
+
+    private long verificationFailures;
+
+    private Long updatedAt;
+
+    public LifecycleCheckpoint(String id) {
+        this.id = id;
+    }
+
+    public Position positionOf(String collection) {
+        return positions.computeIfAbsent(collection, name -> new Position());
+    }
+
+    /**
+     * Vị trí keyset (timestamp, _id) của reading cuối cùng đã migrate xong trong collection
+     */
+    @Data
+    @NoArgsConstructor
+    public static class Position {
+
+        private Long lastTimestamp;
+
+        private String lastId;
+    }
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright 2025 Haui.HIT - H2K
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.smartcity.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.util.Date;
+
+/**
+ * Entity: SensorRollup
+ * Tổng hợp readings của MỘT metric của MỘT sensor trong MỘT time bucket (1 phút hoặc 1 giờ), MongoDB Warm.
+ * Được cộng dồn ($inc/$min/$max) bởi RollupService nên nhiều backend instance cùng flush được.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@Document(collection = "sensor_rollups")
+public class SensorRollup {
+
+    /**
+     * "{sensorId}|{metric}|{resolution}|{bucketStart}"
+     */
+    @Id
+    private String id;
+
+    private String sensorId;
+
+    private String metric;
+
+    /**
+     * "1m" hoặc "1h"
+     */
+    private String resolution;
+
+    /**
+     * Bắt đầu bucket (epoch millis, chia hết cho độ dài bucket)
+     */
+    private Long bucketStart;
+
+    private long count;
+    private double min;
+    private double max;
+    private double sum;
+    private double sumSquares;
+
+    /**
+     * TTL index (null = giữ vĩnh viễn)
+     */
+    private Date expireAt;
+}
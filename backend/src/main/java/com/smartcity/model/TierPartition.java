@@ -0,0 +1,58 @@
+/*
+ * Copyright 2025 Haui.HIT - H2K
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.smartcity.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+/**
+ * Entity: TierPartition
+ * Một entry trong partition catalog của WARM/COLD tier (lưu trong chính database của tier đó).
+ * Mỗi partition là một collection chứa readings trong khoảng [rangeStart, rangeEnd).
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@Document(collection = "partition_catalog")
+public class TierPartition {
+
+    /**
+     * Tên collection của partition, VD: "city_data_20251204", "city_data_w20251201"
+     */
+    @Id
+    private String id;
+
+    /**
+     * Collection gốc được partition (VD: "city_data")
+     */
+    private String baseCollection;
+
+    /**
+     * DAY hoặc WEEK
+     */
+    private String period;
+
+    private Long rangeStart;
+    private Long rangeEnd;
+
+    private Long createdAt;
+}
@@ -0,0 +1,153 @@
+/*
+ * Copyright 2025 Haui.HIT - H2K
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.smartcity.routing;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Automaton Aho-Corasick (DFA đầy đủ, failure links đã được resolve vào bảng chuyển trạng thái)
+ * Một lần duyệt text tìm mọi keyword, không phân biệt hoa thường (so khớp theo Character.toLowerCase).
+ * Immutable sau khi build, thread-safe.
+ */
+public final class AhoCorasick {
+
+    /**
+     * Nhận một match: keyword thứ keywordIndex kết thúc tại vị trí end (inclusive) của text
+     */
+    @FunctionalInterface
+    public interface MatchListener {
+        void onMatch(int keywordIndex, int end);
+    }
+
+    private static final int[] NO_OUTPUT = new int[0];
+
+    private final int[] keywordLengths;
+    /** ASCII → symbol (0 = ký tự không có trong keyword nào) */
+    private final int[] asciiSymbols = new int[128];
+    private final Map<Character, Integer> otherSymbols = new HashMap<>();
+    private final int width;
+    private final int[] transitions;
+    private final int[][] outputs;
+
+    public AhoCorasick(List<String> keywords) {
+        keywordLengths = new int[keywords.size()];
+
+        // Alphabet chỉ gồm các ký tự xuất hiện trong keywords
+        int symbols = 1;
+        for (String keyword : keywords) {
+            for (int i = 0; i < keyword.length(); i++) {
+                char c = Character.toLowerCase(keyword.charAt(i));
+                if (symbolOf(c) == 0) {
+                    if (c < 128) {
+                        asciiSymbols[c] = symbols++;
+                    } else {
+                        otherSymbols.put(c, symbols++);
+                    }
+                }
+            }
+        }
+        width = symbols;
+
+        // Trie
+        List<int[]> trie = new ArrayList<>();
+        List<List<Integer>> nodeOutputs = new ArrayList<>();
+        trie.add(new int[width]);
+        nodeOutputs.add(new ArrayList<>());
+        for (int k = 0; k < keywords.size(); k++) {
+            String keyword = keywords.get(k);
+            if (keyword.isEmpty()) {
+                throw new IllegalArgumentException("Keyword rỗng");
+            }
+            keywordLengths[k] = keyword.length();
+            int node = 0;
+            for (int i = 0; i < keyword.length(); i++) {
+                int symbol = symbolOf(Character.toLowerCase(keyword.charAt(i)));
+                if (trie.get(node)[symbol] == 0) {
+                    trie.get(node)[symbol] = trie.size();
+                    trie.add(new int[width]);
+                    nodeOutputs.add(new ArrayList<>());
+                }
+                node = trie.get(node)[symbol];
+            }
+            nodeOutputs.get(node).add(k);
+        }
+
+        // BFS: failure links, gộp output và điền chuyển trạng thái còn thiếu (goto của failure)
+        int nodes = trie.size();
+        transitions = new int[nodes * width];
+        int[] failure = new int[nodes];
+        outputs = new int[nodes][];
+        ArrayDeque<Integer> queue = new ArrayDeque<>();
+        for (int symbol = 1; symbol < width; symbol++) {
+            int child = trie.get(0)[symbol];
+            transitions[symbol] = child;
+            if (child != 0) {
+                queue.add(child);
+            }
+        }
+        outputs[0] = NO_OUTPUT;
+        while (!queue.isEmpty()) {
+            int node = queue.poll();
+            List<Integer> merged = new ArrayList<>(nodeOutputs.get(node));
+            for (int inherited : outputs[failure[node]]) {
+                merged.add(inherited);
+            }
+            outputs[node] = merged.isEmpty() ? NO_OUTPUT : merged.stream().mapToInt(Integer::intValue).toArray();
+
+            for (int symbol = 1; symbol < width; symbol++) {
+                int child = trie.get(node)[symbol];
+                int fallback = transitions[failure[node] * width + symbol];
+                if (child != 0) {
+                    failure[child] = fallback;
+                    transitions[node * width + symbol] = child;
+                    queue.add(child);
+                } else {
+                    transitions[node * width + symbol] = fallback;
+                }
+            }
+        }
+    }
+
+    public int keywordLength(int keywordIndex) {
+        return keywordLengths[keywordIndex];
+    }
+
+    public int size() {
+        return keywordLengths.length;
+    }
+
+    public void scan(CharSequence text, MatchListener listener) {
+        int node = 0;
+        for (int i = 0; i < text.length(); i++) {
+            node = transitions[node * width + symbolOf(Character.toLowerCase(text.charAt(i)))];
+            for (int keyword : outputs[node]) {
+                listener.onMatch(keyword, i);
+            }
+        }
+    }
+
+    private int symbolOf(char c) {
+        if (c < 128) {
+            return asciiSymbols[c];
+        }
+        return otherSymbols.getOrDefault(c, 0);
+    }
+}
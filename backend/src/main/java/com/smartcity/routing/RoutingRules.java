@@ -0,0 +1,385 @@
+/*
+ * Copyright 2025 Haui.HIT - H2K
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.smartcity.routing;
+
+import com.smartcity.model.DataType;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Bộ rules phân loại tier đã compile (immutable, thread-safe, thay thế khi reload)
+ *
+ * DSL, mỗi dòng một rule, rule đầu tiên khớp quyết định tier:
+ * <pre>
+ * # comment
+ * HOT  when source contains emergency|alert|fire
+ * HOT  when temperature &gt; 35
+ * COLD when source startsWith archive- and battery &lt;= 10
+ * default WARM
+ * </pre>
+ * Điều kiện: source contains|startsWith|endsWith k1|k2 (không phân biệt hoa thường),
+ * &lt;metric&gt; &gt;|&gt;=|&lt;|&lt;=|==|!= &lt;số&gt; (payload.&lt;metric&gt; phải là số); nối bằng "and".
+ *
+ * Compile:
+ * - Mọi keyword của source → một automaton Aho-Corasick, sourceId được duyệt một lần
+ * - Ngưỡng của mỗi metric → decision table: các ngưỡng sort chia trục số thành slot,
+ *   một binary search cho biết mọi điều kiện trên metric đó đúng/sai
+ * - Theo sourceId: phần source được đánh giá một lần và memoize thành plan
+ *   (rules còn khả thi + tier fallback), mỗi record chỉ còn kiểm tra ngưỡng
+ */
+public final class RoutingRules {
+
+    private static final Pattern RULE = Pattern.compile("^(\\w+)\\s+when\\s+(.+)$", Pattern.CASE_INSENSITIVE);
+    private static final Pattern DEFAULT = Pattern.compile("^default\\s+(\\w+)$", Pattern.CASE_INSENSITIVE);
+    private static final Pattern AND = Pattern.compile("\\s+and\\s+", Pattern.CASE_INSENSITIVE);
+    private static final Pattern SOURCE = Pattern.compile(
+            "^source\\s+(contains|startsWith|endsWith)\\s+(\\S+)$", Pattern.CASE_INSENSITIVE);
+    private static final Pattern THRESHOLD = Pattern.compile("^([\\w.\\-]+)\\s*(>=|<=|==|!=|>|<)\\s*(\\S+)$");
+
+    private enum SourceOp { CONTAINS, STARTS_WITH, ENDS_WITH }
+
+    private enum Op { GT, GE, LT, LE, EQ, NE }
+
+    private record Rule(DataType tier, String text, int[] sourceConditions, int[] metricConditions) {
+    }
+
+    /**
+     * Kết quả đánh giá phần source cho một sourceId
+     */
+    private record Plan(int[] candidates, DataType fallback) {
+    }
+
+    private final List<Rule> rules;
+    private final DataType defaultTier;
+    private final int sourceConditionCount;
+    private final AhoCorasick matcher;
+    private final int[] keywordCondition;
+    private final SourceOp[] keywordOp;
+
+    private final String[] metrics;
+    private final double[][] thresholds;
+    private final int[] conditionMetric;
+    private final boolean[][] conditionSlots;
+
+    private final int maxPlans;
+    private final Map<String, Plan> plans = new ConcurrentHashMap<>();
+    private final LongAdder planHits = new LongAdder();
+    private final LongAdder planMisses = new LongAdder();
+
+    private RoutingRules(List<Rule> rules, DataType defaultTier,
+                         List<String> keywords, List<Integer> keywordConditions, List<SourceOp> keywordOps,
+                         int sourceConditionCount, List<String> metricNames, List<Integer> conditionMetrics,
+                         List<Op> conditionOps, List<Double> conditionValues, int maxPlans) {
+        this.rules = rules;
+        this.defaultTier = defaultTier;
+        this.sourceConditionCount = sourceConditionCount;
+        this.matcher = new AhoCorasick(keywords);
+        this.keywordCondition = keywordConditions.stream().mapToInt(Integer::intValue).toArray();
+        this.keywordOp = keywordOps.toArray(new SourceOp[0]);
+        this.maxPlans = maxPlans;
+
+        this.metrics = metricNames.toArray(new String[0]);
+        this.thresholds = new double[metrics.length][];
+        List<TreeSet<Double>> distinct = new ArrayList<>();
+        for (int m = 0; m < metrics.length; m++) {
+            distinct.add(new TreeSet<>());
+        }
+        for (int c = 0; c < conditionMetrics.size(); c++) {
+            distinct.get(conditionMetrics.get(c)).add(conditionValues.get(c));
+        }
+        for (int m = 0; m < metrics.length; m++) {
+            thresholds[m] = distinct.get(m).stream().mapToDouble(Double::doubleValue).toArray();
+        }
+
+        this.conditionMetric = conditionMetrics.stream().mapToInt(Integer::intValue).toArray();
+        this.conditionSlots = new boolean[conditionMetric.length][];
+        for (int c = 0; c < conditionMetric.length; c++) {
+            double[] bounds = thresholds[conditionMetric[c]];
+            boolean[] slots = new boolean[bounds.length * 2 + 1];
+            for (int slot = 0; slot < slots.length; slot++) {
+                slots[slot] = test(conditionOps.get(c), signAgainst(bounds, slot, conditionValues.get(c)));
+            }
+            conditionSlots[c] = slots;
+        }
+    }
+
+    /**
+     * Parse và compile DSL
+     *
+     * @throws IllegalArgumentException rule sai cú pháp (kèm số dòng)
+     */
+    public static RoutingRules parse(String text, int maxPlans) {
+        List<Rule> rules = new ArrayList<>();
+        DataType defaultTier = null;
+        List<String> keywords = new ArrayList<>();
+        List<Integer> keywordConditions = new ArrayList<>();
+        List<SourceOp> keywordOps = new ArrayList<>();
+        int sourceConditions = 0;
+        List<String> metricNames = new ArrayList<>();
+        List<Integer> conditionMetrics = new ArrayList<>();
+        List<Op> conditionOps = new ArrayList<>();
+        List<Double> conditionValues = new ArrayList<>();
+
+        String[] lines = text.split("\\R");
+        for (int n = 0; n < lines.length; n++) {
+            String line = stripComment(lines[n]);
+            if (line.isEmpty()) {
+                continue;
+            }
+            String location = "line " + (n + 1) + ": ";
+            if (defaultTier != null) {
+                throw new IllegalArgumentException(location + "rule sau 'default' không bao giờ được dùng");
+            }
+            Matcher defaultMatch = DEFAULT.matcher(line);
+            if (defaultMatch.matches()) {
+                defaultTier = parseTier(defaultMatch.group(1), location);
+                continue;
+            }
+            Matcher ruleMatch = RULE.matcher(line);
+            if (!ruleMatch.matches()) {
+                throw new IllegalArgumentException(location + "cần '<TIER> when <điều kiện>' hoặc 'default <TIER>'");
+            }
+            DataType tier = parseTier(ruleMatch.group(1), location);
+            List<Integer> ruleSource = new ArrayList<>();
+            List<Integer> ruleMetric = new ArrayList<>();
+            for (String condition : AND.split(ruleMatch.group(2).trim())) {
+                Matcher source = SOURCE.matcher(condition.trim());
+                Matcher threshold = THRESHOLD.matcher(condition.trim());
+                if (source.matches()) {
+                    SourceOp op = switch (source.group(1).toLowerCase(Locale.ROOT)) {
+                        case "startswith" -> SourceOp.STARTS_WITH;
+                        case "endswith" -> SourceOp.ENDS_WITH;
+                        default -> SourceOp.CONTAINS;
+                    };
+                    for (String keyword : source.group(2).split("\\|")) {
+                        if (keyword.isBlank()) {
+                            throw new IllegalArgumentException(location + "keyword rỗng trong '" + condition + "'");
+                        }
+                        keywords.add(keyword.trim().toLowerCase(Locale.ROOT));
+                        keywordConditions.add(sourceConditions);
+                        keywordOps.add(op);
+                    }
+                    ruleSource.add(sourceConditions++);
+                } else if (threshold.matches()) {
+                    double value;
+                    try {
+                        value = Double.parseDouble(threshold.group(3));
+                    } catch (NumberFormatException e) {
+                        throw new IllegalArgumentException(location + "ngưỡng không phải số: " + threshold.group(3));
+                    }
+                    if (Double.isNaN(value)) {
+                        throw new IllegalArgumentException(location + "ngưỡng không phải số: " + threshold.group(3));
+                    }
+                    int metric = metricNames.indexOf(threshold.group(1));
+                    if (metric < 0) {
+                        metric = metricNames.size();
+                        metricNames.add(threshold.group(1));
+                    }
+                    ruleMetric.add(conditionMetrics.size());
+                    conditionMetrics.add(metric);
+                    conditionOps.add(parseOp(threshold.group(2)));
+                    conditionValues.add(value);
+                } else {
+                    throw new IllegalArgumentException(location + "điều kiện không hợp lệ: '" + condition.trim() + "'");
+                }
+            }
+            rules.add(new Rule(tier, line,
+                    ruleSource.stream().mapToInt(Integer::intValue).toArray(),
+                    ruleMetric.stream().mapToInt(Integer::intValue).toArray()));
+        }
+
+        return new RoutingRules(rules, defaultTier != null ? defaultTier : DataType.WARM,
+                keywords, keywordConditions, keywordOps, sourceConditions,
+                metricNames, conditionMetrics, conditionOps, conditionValues, maxPlans);
+    }
+
+    /**
+     * Tier cho reading chưa có dataType (không có sourceId → tier default, không xét rule nào)
+     */
+    public DataType classify(String sourceId, Map<String, Object> payload) {
+        if (sourceId == null) {
+            return defaultTier;
+        }
+        Plan plan = plans.get(sourceId);
+        if (plan == null) {
+            planMisses.increment();
+            plan = plan(sourceId);
+            if (plans.size() >= maxPlans) {
+                // sourceId cardinality cao bất thường: bỏ memo thay vì giữ vô hạn
+                plans.clear();
+            }
+            plans.put(sourceId, plan);
+        } else {
+            planHits.increment();
+        }
+
+        if (plan.candidates().length == 0) {
+            return plan.fallback();
+        }
+        int[] slots = new int[metrics.length];
+        Arrays.fill(slots, Integer.MIN_VALUE);
+        for (int ruleIndex : plan.candidates()) {
+            Rule rule = rules.get(ruleIndex);
+            boolean matched = true;
+            for (int condition : rule.metricConditions()) {
+                int metric = conditionMetric[condition];
+                if (slots[metric] == Integer.MIN_VALUE) {
+                    slots[metric] = slotOf(metric, payload != null ? payload.get(metrics[metric]) : null);
+                }
+                if (slots[metric] < 0 || !conditionSlots[condition][slots[metric]]) {
+                    matched = false;
+                    break;
+                }
+            }
+            if (matched) {
+                return rule.tier();
+            }
+        }
+        return plan.fallback();
+    }
+
+    public List<String> getRules() {
+        List<String> texts = new ArrayList<>(rules.size() + 1);
+        rules.forEach(rule -> texts.add(rule.text()));
+        texts.add("default " + defaultTier);
+        return Collections.unmodifiableList(texts);
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("ruleCount", rules.size());
+        stats.put("keywords", matcher.size());
+        stats.put("metrics", Arrays.asList(metrics));
+        stats.put("memoizedSources", plans.size());
+        stats.put("memoHits", planHits.sum());
+        stats.put("memoMisses", planMisses.sum());
+        return stats;
+    }
+
+    private Plan plan(String sourceId) {
+        boolean[] satisfied = new boolean[sourceConditionCount];
+        if (sourceConditionCount > 0) {
+            int length = sourceId.length();
+            matcher.scan(sourceId, (keyword, end) -> {
+                int start = end - matcher.keywordLength(keyword) + 1;
+                boolean hit = switch (keywordOp[keyword]) {
+                    case CONTAINS -> true;
+                    case STARTS_WITH -> start == 0;
+                    case ENDS_WITH -> end == length - 1;
+                };
+                if (hit) {
+                    satisfied[keywordCondition[keyword]] = true;
+                }
+            });
+        }
+
+        List<Integer> candidates = new ArrayList<>();
+        DataType fallback = defaultTier;
+        for (int r = 0; r < rules.size(); r++) {
+            Rule rule = rules.get(r);
+            boolean sourceMatched = true;
+            for (int condition : rule.sourceConditions()) {
+                if (!satisfied[condition]) {
+                    sourceMatched = false;
+                    break;
+                }
+            }
+            if (!sourceMatched) {
+                continue;
+            }
+            if (rule.metricConditions().length == 0) {
+                fallback = rule.tier();
+                break;
+            }
+            candidates.add(r);
+        }
+        return new Plan(candidates.stream().mapToInt(Integer::intValue).toArray(), fallback);
+    }
+
+    /**
+     * Slot của giá trị trong decision table của metric: 2i+1 = bằng ngưỡng i, 2i = giữa ngưỡng i-1 và i.
+     * -1 nếu thiếu hoặc không phải số (mọi điều kiện trên metric đều sai)
+     */
+    private int slotOf(int metric, Object raw) {
+        if (!(raw instanceof Number number)) {
+            return -1;
+        }
+        double value = number.doubleValue();
+        if (Double.isNaN(value)) {
+            return -1;
+        }
+        int index = Arrays.binarySearch(thresholds[metric], value);
+        return index >= 0 ? index * 2 + 1 : (-index - 1) * 2;
+    }
+
+    /**
+     * Dấu của (v - c) với mọi v trong slot; c luôn là một trong các ngưỡng
+     */
+    private static int signAgainst(double[] bounds, int slot, double c) {
+        if (slot % 2 == 1) {
+            return Double.compare(bounds[slot / 2], c);
+        }
+        int upper = slot / 2;
+        return upper < bounds.length && c >= bounds[upper] ? -1 : 1;
+    }
+
+    private static boolean test(Op op, int sign) {
+        return switch (op) {
+            case GT -> sign > 0;
+            case GE -> sign >= 0;
+            case LT -> sign < 0;
+            case LE -> sign <= 0;
+            case EQ -> sign == 0;
+            case NE -> sign != 0;
+        };
+    }
+
+    private static Op parseOp(String op) {
+        return switch (op) {
+            case ">" -> Op.GT;
+            case ">=" -> Op.GE;
+            case "<" -> Op.LT;
+            case "<=" -> Op.LE;
+            case "==" -> Op.EQ;
+            default -> Op.NE;
+        };
+    }
+
+    private static DataType parseTier(String value, String location) {
+        try {
+            return DataType.valueOf(value.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException(location + "tier không hợp lệ: " + value);
+        }
+    }
+
+    private static String stripComment(String line) {
+        int hash = line.indexOf('#');
+        return (hash >= 0 ? line.substring(0, hash) : line).trim();
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright 2025 Haui.HIT - H2K
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.smartcity.security;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Predicate;
+
+/**
+ * LRU cache có giới hạn số entry, mỗi entry hết hạn tại một thời điểm riêng (epoch ms).
+ * Dùng cho các lookup trên đường xác thực của mỗi request (token đã verify, user principal).
+ */
+public class BoundedExpiringCache<K, V> {
+
+    private final int maxEntries;
+    private final Map<K, Entry<V>> entries;
+
+    public BoundedExpiringCache(int maxEntries) {
+        this.maxEntries = Math.max(1, maxEntries);
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, Entry<V>> eldest) {
+                return size() > BoundedExpiringCache.this.maxEntries;
+            }
+        };
+    }
+
+    /**
+     * @return value còn hạn, null nếu không có hoặc đã hết hạn
+     */
+    public synchronized V get(K key) {
+        Entry<V> entry = entries.get(key);
+        if (entry == null) {
+            return null;
+        }
+        if (System.currentTimeMillis() >= entry.expiresAt) {
+            entries.remove(key);
+            return null;
+        }
+        return entry.value;
+    }
+
+    public synchronized void put(K key, V value, long expiresAt) {
+        if (System.currentTimeMillis() < expiresAt) {
+            entries.put(key, new Entry<>(value, expiresAt));
+        }
+    }
+
+    public synchronized void remove(K key) {
+        entries.remove(key);
+    }
+
+    /**
+     * Xoá các entry có value khớp điều kiện (VD: mọi token của một user)
+     */
+    public synchronized void removeIf(Predicate<V> predicate) {
+        entries.values().removeIf(entry -> predicate.test(entry.value));
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    private record Entry<V>(V value, long expiresAt) {
+    }
+}
@@ -47,10 +47,10 @@ public class AuthTokenFilter extends OncePerRequestFilter {
             throws ServletException, IOException {
         try {
             String jwt = parseJwt(request);
-            if (jwt != null && jwtUtils.validateJwtToken(jwt)) {
-                String username = jwtUtils.getUserNameFromJwtToken(jwt);
-
-                UserDetails userDetails = userDetailsService.loadUserByUsername(username);
+            String username = jwt != null ? jwtUtils.getVerifiedUserName(jwt) : null;
+            if (username != null) {
+                // Token và principal đều được cache: request polling không parse lại JWT, không query MongoDB
+                UserDetails userDetails = userDetailsService.loadCachedUserByUsername(username);
                 UsernamePasswordAuthenticationToken authentication =
                         new UsernamePasswordAuthenticationToken(
                                 userDetails,
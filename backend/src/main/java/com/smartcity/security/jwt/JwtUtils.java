@@ -16,18 +16,26 @@
 
 package com.smartcity.security.jwt;
 
+import com.smartcity.security.BoundedExpiringCache;
 import com.smartcity.security.services.UserDetailsImpl;
+import com.smartcity.service.MetricsService;
 import io.jsonwebtoken.*;
 import io.jsonwebtoken.io.Decoders;
 import io.jsonwebtoken.security.Keys;
+import jakarta.annotation.PostConstruct;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.security.core.Authentication;
 import org.springframework.stereotype.Component;
 
+import java.nio.charset.StandardCharsets;
 import java.security.Key;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.Date;
+import java.util.HexFormat;
 
 @Component
 public class JwtUtils {
@@ -39,6 +47,27 @@ public class JwtUtils {
     @Value("${smartcity.app.jwtExpirationMs:86400000}")
     private int jwtExpirationMs;
 
+    @Value("${smartcity.app.tokenCacheMaxEntries:10000}")
+    private int tokenCacheMaxEntries;
+
+    @Autowired
+    private MetricsService metricsService;
+
+    // Key và parser dựng một lần, dùng chung cho mọi request
+    private Key signingKey;
+    private JwtParser parser;
+
+    // SHA-256 của token đã verify → subject, giữ tới thời điểm token hết hạn
+    private BoundedExpiringCache<String, String> verifiedTokens;
+
+    @PostConstruct
+    public void init() {
+        signingKey = Keys.hmacShaKeyFor(Decoders.BASE64.decode(jwtSecret));
+        parser = Jwts.parserBuilder().setSigningKey(signingKey).build();
+        verifiedTokens = new BoundedExpiringCache<>(tokenCacheMaxEntries);
+        metricsService.registerGauge("auth.token_cache.size", verifiedTokens::size);
+    }
+
     public String generateJwtToken(Authentication authentication) {
 
         UserDetailsImpl userPrincipal = (UserDetailsImpl) authentication.getPrincipal();
@@ -47,23 +76,53 @@ public class JwtUtils {
                 .setSubject((userPrincipal.getUsername()))
                 .setIssuedAt(new Date())
                 .setExpiration(new Date((new Date()).getTime() + jwtExpirationMs))
-                .signWith(key(), SignatureAlgorithm.HS256)
+                .signWith(signingKey, SignatureAlgorithm.HS256)
                 .compact();
     }
 
-    private Key key() {
-        return Keys.hmacShaKeyFor(Decoders.BASE64.decode(jwtSecret));
+    /**
+     * Verify token và trả về username; token đã verify được cache tới khi hết hạn
+     * nên các request tiếp theo với cùng token không parse/verify lại
+     *
+     * @return username, null nếu token không hợp lệ
+     */
+    public String getVerifiedUserName(String authToken) {
+        String tokenHash = hash(authToken);
+        String cached = verifiedTokens.get(tokenHash);
+        if (cached != null) {
+            metricsService.incrementCounter("auth.token_cache.hits");
+            return cached;
+        }
+        metricsService.incrementCounter("auth.token_cache.misses");
+
+        Claims claims = parseClaims(authToken);
+        if (claims == null) {
+            return null;
+        }
+        if (claims.getExpiration() != null) {
+            verifiedTokens.put(tokenHash, claims.getSubject(), claims.getExpiration().getTime());
+        }
+        return claims.getSubject();
+    }
+
+    /**
+     * Bỏ các token đã cache của user (VD: sau khi đổi mật khẩu hoặc role)
+     */
+    public void evictTokensOf(String username) {
+        verifiedTokens.removeIf(username::equals);
     }
 
     public String getUserNameFromJwtToken(String token) {
-        return Jwts.parserBuilder().setSigningKey(key()).build()
-                .parseClaimsJws(token).getBody().getSubject();
+        return parser.parseClaimsJws(token).getBody().getSubject();
     }
 
     public boolean validateJwtToken(String authToken) {
+        return parseClaims(authToken) != null;
+    }
+
+    private Claims parseClaims(String authToken) {
         try {
-            Jwts.parserBuilder().setSigningKey(key()).build().parseClaimsJws(authToken);
-            return true;
+            return parser.parseClaimsJws(authToken).getBody();
         } catch (MalformedJwtException e) {
             logger.error("Invalid JWT token: {}", e.getMessage());
         } catch (ExpiredJwtException e) {
@@ -72,8 +131,19 @@ public class JwtUtils {
             logger.error("JWT token is unsupported: {}", e.getMessage());
         } catch (IllegalArgumentException e) {
             logger.error("JWT claims string is empty: {}", e.getMessage());
+        } catch (JwtException e) {
+            logger.error("Invalid JWT signature: {}", e.getMessage());
         }
 
-        return false;
+        return null;
+    }
+
+    private static String hash(String token) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(token.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
     }
 }
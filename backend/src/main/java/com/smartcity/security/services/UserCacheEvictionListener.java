@@ -0,0 +1,51 @@
+/*
+ * Copyright 2025 Haui.HIT - H2K
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.smartcity.security.services;
+
+import com.smartcity.model.User;
+import com.smartcity.security.jwt.JwtUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.mongodb.core.mapping.event.AbstractMongoEventListener;
+import org.springframework.data.mongodb.core.mapping.event.AfterDeleteEvent;
+import org.springframework.data.mongodb.core.mapping.event.AfterSaveEvent;
+import org.springframework.stereotype.Component;
+
+/**
+ * Evict cache xác thực khi User thay đổi (mật khẩu, roles, ...) qua MongoTemplate/UserRepository
+ */
+@Component
+public class UserCacheEvictionListener extends AbstractMongoEventListener<User> {
+    @Autowired
+    UserDetailsServiceImpl userDetailsService;
+
+    @Autowired
+    JwtUtils jwtUtils;
+
+    @Override
+    public void onAfterSave(AfterSaveEvent<User> event) {
+        String username = event.getSource().getUsername();
+        userDetailsService.evictUser(username);
+        jwtUtils.evictTokensOf(username);
+    }
+
+    @Override
+    public void onAfterDelete(AfterDeleteEvent<User> event) {
+        // Delete event chỉ có _id: bỏ toàn bộ cache user
+        userDetailsService.evictAllUsers();
+    }
+}
@@ -18,7 +18,11 @@ package com.smartcity.security.services;
 
 import com.smartcity.model.User;
 import com.smartcity.repository.UserRepository;
+import com.smartcity.security.BoundedExpiringCache;
+import com.smartcity.service.MetricsService;
+import jakarta.annotation.PostConstruct;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
@@ -30,6 +34,24 @@ public class UserDetailsServiceImpl implements UserDetailsService {
     @Autowired
     UserRepository userRepository;
 
+    @Autowired
+    MetricsService metricsService;
+
+    @Value("${smartcity.app.userCacheTtlMs:60000}")
+    private long userCacheTtlMs;
+
+    @Value("${smartcity.app.userCacheMaxEntries:1000}")
+    private int userCacheMaxEntries;
+
+    // Principal cho AuthTokenFilter; bị evict khi User được lưu/xoá (UserCacheEvictionListener)
+    private BoundedExpiringCache<String, UserDetails> userCache;
+
+    @PostConstruct
+    public void init() {
+        userCache = new BoundedExpiringCache<>(userCacheMaxEntries);
+        metricsService.registerGauge("auth.user_cache.size", userCache::size);
+    }
+
     @Override
     @Transactional
     public UserDetails loadUserByUsername(String username) throws UsernameNotFoundException {
@@ -38,4 +60,28 @@ public class UserDetailsServiceImpl implements UserDetailsService {
 
         return UserDetailsImpl.build(user);
     }
+
+    /**
+     * Như loadUserByUsername nhưng đọc từ cache (tối đa userCacheTtlMs) - dùng cho request đã có JWT.
+     * Đăng nhập (/api/auth/signin) vẫn luôn đọc MongoDB để kiểm tra mật khẩu mới nhất.
+     */
+    public UserDetails loadCachedUserByUsername(String username) throws UsernameNotFoundException {
+        UserDetails cached = userCache.get(username);
+        if (cached != null) {
+            metricsService.incrementCounter("auth.user_cache.hits");
+            return cached;
+        }
+        metricsService.incrementCounter("auth.user_cache.misses");
+        UserDetails userDetails = loadUserByUsername(username);
+        userCache.put(username, userDetails, System.currentTimeMillis() + userCacheTtlMs);
+        return userDetails;
+    }
+
+    public void evictUser(String username) {
+        userCache.remove(username);
+    }
+
+    public void evictAllUsers() {
+        userCache.clear();
+    }
 }
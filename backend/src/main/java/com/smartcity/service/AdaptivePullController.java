@@ -0,0 +1,272 @@
+/*
+ * Copyright 2025 Haui.HIT - H2K
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.smartcity.service;
+
+import com.smartcity.service.SystemHealthService.HealthStatus;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Adaptive Pull Controller
+ * Điều chỉnh batch size và nhịp pull riêng cho từng edge node (AIMD):
+ * - Còn backlog và một lượt pull → classify → store nhanh hơn target: tăng batch size thêm increase-step
+ * - Lượt pull chậm hơn target, store latency cao hoặc hệ thống không UP: giảm batch size theo decrease-factor
+ * - Còn backlog: lượt pull kế tiếp chạy ngay ở tick sau
+ * - Queue rỗng: giãn dần khoảng cách pull (x2) tới max-idle-interval-ms
+ *
+ * Khi adaptive bị tắt: batch size cố định = ingestion.batch.size, pull mỗi ingestion.schedule.fixed-rate.
+ */
+@Slf4j
+@Component
+public class AdaptivePullController {
+
+    public enum Decision { GROW, HOLD, SHRINK, DRAIN, IDLE, BACKOFF, STATIC }
+
+    private final MetricsService metricsService;
+    private final SystemHealthService healthService;
+
+    @Value("${ingestion.adaptive.enabled:true}")
+    private boolean enabled;
+
+    @Value("${ingestion.batch.size}")
+    private int initialBatchSize;
+
+    @Value("${ingestion.batch.max-size}")
+    private int maxBatchSize;
+
+    @Value("${ingestion.adaptive.min-batch-size:100}")
+    private int minBatchSize;
+
+    @Value("${ingestion.adaptive.increase-step:500}")
+    private int increaseStep;
+
+    @Value("${ingestion.adaptive.decrease-factor:0.5}")
+    private double decreaseFactor;
+
+    @Value("${ingestion.adaptive.target-cycle-ms:1000}")
+    private long targetCycleMs;
+
+    @Value("${ingestion.schedule.fixed-rate}")
+    private long baseIntervalMs;
+
+    @Value("${ingestion.adaptive.max-idle-interval-ms:15000}")
+    private long maxIdleIntervalMs;
+
+    private final Map<String, NodeState> states = new ConcurrentHashMap<>();
+
+    public AdaptivePullController(MetricsService metricsService, SystemHealthService healthService) {
+        this.metricsService = metricsService;
+        this.healthService = healthService;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public boolean isDue(String node, long now) {
+        return state(node).nextPullAt <= now;
+    }
+
+    public int batchSizeFor(String node) {
+        return state(node).batchSize;
+    }
+
+    /**
+     * Queue rỗng (passive declare trả về 0): không pull, giãn nhịp
+     */
+    public void recordIdle(String node, long now) {
+        NodeState state = state(node);
+        synchronized (state) {
+            state.queueDepth = 0;
+            state.lastPullAt = now;
+            if (!enabled) {
+                schedule(state, now, baseIntervalMs, Decision.STATIC, "Static schedule");
+                return;
+            }
+            state.idleStreak++;
+            long interval = Math.min(maxIdleIntervalMs, baseIntervalMs << Math.min(state.idleStreak - 1, 10));
+            schedule(state, now, interval, Decision.IDLE, "Queue empty");
+        }
+    }
+
+    /**
+     * Ghi nhận một lượt pull và quyết định batch size / thời điểm pull kế tiếp
+     *
+     * @param queueDepth độ sâu queue trước khi pull (-1 nếu không biết)
+     * @param messages   số AMQP messages đã nhận
+     * @param readings   số readings đã decode
+     * @return true nếu queue còn backlog sau lượt pull
+     */
+    public boolean recordPull(String node, long now, long queueDepth, int messages, int readings,
+                           long pullMs, long classifyMs, long storeMs) {
+        NodeState state = state(node);
+        synchronized (state) {
+            state.lastPullAt = now;
+            state.queueDepth = queueDepth;
+            state.lastMessages = messages;
+            state.lastReadings = readings;
+            state.lastPullMs = pullMs;
+            state.lastClassifyMs = classifyMs;
+            state.lastStoreMs = storeMs;
+            state.pulls++;
+            state.idleStreak = 0;
+
+            // queueDepth đếm messages; không biết depth thì coi batch đầy là còn backlog
+            boolean backlog = queueDepth >= 0 ? queueDepth > messages : readings >= state.batchSize;
+            if (!enabled) {
+                schedule(state, now, baseIntervalMs, Decision.STATIC, "Static schedule");
+                return backlog;
+            }
+
+            long cycleMs = pullMs + classifyMs + storeMs;
+            HealthStatus health = healthService.getCurrentHealth();
+            long storeLatency = metricsService.getStoreLatencyMs();
+
+            if (health != HealthStatus.UP || cycleMs > targetCycleMs || storeLatency > targetCycleMs) {
+                int previous = state.batchSize;
+                state.batchSize = Math.max(minBatchSize, (int) (state.batchSize * decreaseFactor));
+                metricsService.incrementCounter("ingestion.adaptive.shrink");
+                String reason = health != HealthStatus.UP
+                        ? "Health " + health
+                        : "Cycle " + cycleMs + "ms / store latency " + storeLatency + "ms over target " + targetCycleMs + "ms";
+                // Vẫn drain backlog, nhưng với batch nhỏ hơn và nhường một base interval khi hệ thống không UP
+                long interval = backlog && health == HealthStatus.UP ? 0 : baseIntervalMs;
+                schedule(state, now, interval, Decision.SHRINK, reason + " (" + previous + " → " + state.batchSize + ")");
+            } else if (backlog && readings >= state.batchSize) {
+                int previous = state.batchSize;
+                state.batchSize = Math.min(maxBatchSize, state.batchSize + increaseStep);
+                if (state.batchSize > previous) {
+                    metricsService.incrementCounter("ingestion.adaptive.grow");
+                    schedule(state, now, 0, Decision.GROW,
+                            "Backlog " + queueDepth + ", cycle " + cycleMs + "ms (" + previous + " → " + state.batchSize + ")");
+                } else {
+                    schedule(state, now, 0, Decision.DRAIN, "Backlog " + queueDepth + " at max batch size");
+                }
+            } else if (backlog) {
+                schedule(state, now, 0, Decision.DRAIN, "Backlog " + queueDepth);
+            } else {
+                schedule(state, now, baseIntervalMs, Decision.HOLD, "Queue drained");
+            }
+            return backlog;
+        }
+    }
+
+    /**
+     * Lượt pull lỗi (broker không kết nối được, ...): backoff như queue rỗng
+     */
+    public void recordFailure(String node, long now, String error) {
+        NodeState state = state(node);
+        synchronized (state) {
+            state.lastPullAt = now;
+            state.failures++;
+            state.idleStreak++;
+            long interval = enabled
+                    ? Math.min(maxIdleIntervalMs, baseIntervalMs << Math.min(state.idleStreak - 1, 10))
+                    : baseIntervalMs;
+            schedule(state, now, interval, Decision.BACKOFF, error);
+        }
+    }
+
+    /**
+     * Bỏ state của các node không còn trong registry
+     */
+    public void retainNodes(Collection<String> nodes) {
+        states.keySet().retainAll(nodes);
+    }
+
+    /**
+     * Quyết định gần nhất của từng node (cho NodesController)
+     */
+    public List<Map<String, Object>> getDecisions() {
+        List<Map<String, Object>> decisions = new ArrayList<>();
+        states.forEach((node, state) -> decisions.add(describe(node, state)));
+        decisions.sort((a, b) -> ((String) a.get("node")).compareTo((String) b.get("node")));
+        return decisions;
+    }
+
+    public Map<String, Object> getDecision(String node) {
+        NodeState state = states.get(node);
+        return state != null ? describe(node, state) : null;
+    }
+
+    private Map<String, Object> describe(String node, NodeState state) {
+        synchronized (state) {
+            Map<String, Object> decision = new LinkedHashMap<>();
+            decision.put("node", node);
+            decision.put("adaptive", enabled);
+            decision.put("batchSize", state.batchSize);
+            decision.put("decision", state.decision);
+            decision.put("reason", state.reason);
+            decision.put("queueDepth", state.queueDepth);
+            decision.put("lastPullAt", state.lastPullAt);
+            decision.put("nextPullAt", state.nextPullAt);
+            decision.put("lastMessages", state.lastMessages);
+            decision.put("lastReadings", state.lastReadings);
+            decision.put("lastPullMs", state.lastPullMs);
+            decision.put("lastClassifyMs", state.lastClassifyMs);
+            decision.put("lastStoreMs", state.lastStoreMs);
+            decision.put("pulls", state.pulls);
+            decision.put("failures", state.failures);
+            return decision;
+        }
+    }
+
+    private void schedule(NodeState state, long now, long intervalMs, Decision decision, String reason) {
+        state.nextPullAt = now + intervalMs;
+        if (state.decision != decision) {
+            log.debug("[{}] - Adaptive pull: {} → {} ({})", state.node, state.decision, decision, reason);
+        }
+        state.decision = decision;
+        state.reason = reason;
+    }
+
+    private NodeState state(String node) {
+        return states.computeIfAbsent(node, k -> new NodeState(k, Math.min(initialBatchSize, maxBatchSize)));
+    }
+
+    private static class NodeState {
+        private final String node;
+        private int batchSize;
+        private Decision decision = Decision.HOLD;
+        private String reason = "Not pulled yet";
+        private long queueDepth = -1;
+        private long lastPullAt;
+        private long nextPullAt;
+        private int lastMessages;
+        private int lastReadings;
+        private long lastPullMs;
+        private long lastClassifyMs;
+        private long lastStoreMs;
+        private long pulls;
+        private long failures;
+        private int idleStreak;
+
+        NodeState(String node, int batchSize) {
+            this.node = node;
+            this.batchSize = batchSize;
+        }
+    }
+}
@@ -0,0 +1,270 @@
+/*
+ * Copyright 2025 Haui.HIT - H2K
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.smartcity.service;
+
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Admission Control Service cho các publish endpoint
+ * - Token bucket theo client (user đã xác thực, header client key, hoặc IP nếu anonymous)
+ * - Admission control theo tín hiệu của chính HTTP publish: số request đang xử lý, latency (EWMA)
+ *   và độ đầy group-commit queue. Tải từ RabbitMQ edge / gRPC không làm /api/publish bị 429,
+ *   nhưng storage chậm làm latency publish tăng nên burst từ API vẫn bị chặn trước khi làm đói ingestion
+ * - Stream ingest (/api/publish/stream) không tính vào in-flight / latency; trả một token cho mỗi chunk
+ *   (như một /batch) và bị chờ thay vì bị từ chối giữa chừng
+ */
+@Slf4j
+@Service
+public class AdmissionControlService {
+
+    public static final String REASON_RATE_LIMITED = "rate_limited";
+    public static final String REASON_OVERLOADED = "overloaded";
+
+    private static final long IDLE_BUCKET_TTL_MS = TimeUnit.MINUTES.toMillis(10);
+    private static final double LATENCY_EWMA_ALPHA = 0.2;
+    /** Đang từ chối hết thì không có mẫu mới: latency cũ hơn mức này không còn tính */
+    private static final long LATENCY_STALE_AFTER_MS = 5000;
+
+    private final MetricsService metricsService;
+    private final GroupCommitPublisher groupCommitPublisher;
+
+    @Value("${publish.rate-limit.enabled:true}")
+    private boolean rateLimitEnabled;
+
+    @Value("${publish.rate-limit.capacity:200}")
+    private double bucketCapacity;
+
+    @Value("${publish.rate-limit.refill-per-second:50}")
+    private double refillPerSecond;
+
+    @Value("${publish.admission.enabled:true}")
+    private boolean admissionEnabled;
+
+    @Value("${publish.admission.max-latency-ms:1500}")
+    private long maxLatencyMs;
+
+    @Value("${publish.admission.max-in-flight:32}")
+    private int maxInFlight;
+
+    @Value("${publish.admission.max-group-commit-queue-ratio:0.8}")
+    private double maxGroupCommitQueueRatio;
+
+    private final Map<String, TokenBucket> buckets = new ConcurrentHashMap<>();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private double latencyEwmaMs;
+    private long lastLatencyAt;
+
+    public AdmissionControlService(MetricsService metricsService, GroupCommitPublisher groupCommitPublisher) {
+        this.metricsService = metricsService;
+        this.groupCommitPublisher = groupCommitPublisher;
+    }
+
+    @PostConstruct
+    public void registerGauges() {
+        metricsService.registerGauge("publish.rate_limit.tracked_clients", buckets::size);
+        metricsService.registerGauge("publish.group_commit.queue_depth", groupCommitPublisher::getQueueDepth);
+        metricsService.registerGauge("publish.admission.in_flight", inFlight::get);
+        metricsService.registerGauge("publish.admission.latency_ms", this::getLatencyMs);
+    }
+
+    /**
+     * Quyết định cho một publish request
+     *
+     * @param clientKey Định danh client ("user:alice", "key:gateway-7", "ip:10.0.0.5")
+     * @return Khi admitted, caller phải gọi {@link #completed(long)} lúc request kết thúc
+     */
+    public Decision admit(String clientKey) {
+        Decision decision = decide(clientKey);
+        if (decision.admitted()) {
+            inFlight.incrementAndGet();
+        }
+        return decision;
+    }
+
+    /**
+     * Quyết định cho một stream ingest request: như {@link #admit} (token đầu trả cho chunk đầu tiên)
+     * nhưng không giữ slot in-flight và không gọi {@link #completed(long)}
+     */
+    public Decision admitStream(String clientKey) {
+        return decide(clientKey);
+    }
+
+    /**
+     * Chờ tới khi stream được lưu thêm một chunk: pipeline hết quá tải và client có token
+     *
+     * @throws InterruptedException thread bị ngắt khi đang chờ
+     */
+    public void awaitChunk(String clientKey) throws InterruptedException {
+        while (true) {
+            Decision decision = decide(clientKey);
+            if (decision.admitted()) {
+                return;
+            }
+            metricsService.incrementCounter("publish.admission.stream_waits");
+            TimeUnit.MILLISECONDS.sleep(decision.waitMs());
+        }
+    }
+
+    private Decision decide(String clientKey) {
+        // Global trước: request bị từ chối vì quá tải không tiêu token của client
+        if (admissionEnabled) {
+            Decision overload = checkOverload();
+            if (overload != null) {
+                metricsService.incrementCounter("publish.admission.rejected." + REASON_OVERLOADED);
+                return overload;
+            }
+        }
+
+        if (rateLimitEnabled) {
+            TokenBucket bucket = buckets.computeIfAbsent(clientKey,
+                    k -> new TokenBucket(bucketCapacity, refillPerSecond));
+            long waitMs = bucket.tryConsume();
+            if (waitMs > 0) {
+                metricsService.incrementCounter("publish.admission.rejected." + REASON_RATE_LIMITED);
+                return Decision.reject(REASON_RATE_LIMITED, waitMs);
+            }
+        }
+
+        metricsService.incrementCounter("publish.admission.accepted");
+        return Decision.ADMITTED;
+    }
+
+    /**
+     * Publish request đã admitted kết thúc (kể cả lỗi)
+     *
+     * @param latencyMs Thời gian từ lúc admit tới khi response hoàn tất
+     */
+    public void completed(long latencyMs) {
+        inFlight.decrementAndGet();
+        synchronized (this) {
+            latencyEwmaMs = lastLatencyAt == 0
+                    ? latencyMs
+                    : LATENCY_EWMA_ALPHA * latencyMs + (1 - LATENCY_EWMA_ALPHA) * latencyEwmaMs;
+            lastLatencyAt = System.currentTimeMillis();
+        }
+    }
+
+    /**
+     * Latency gần đây của publish requests (EWMA, ms); 0 nếu không có mẫu nào gần đây
+     */
+    public synchronized long getLatencyMs() {
+        if (System.currentTimeMillis() - lastLatencyAt > LATENCY_STALE_AFTER_MS) {
+            return 0;
+        }
+        return (long) latencyEwmaMs;
+    }
+
+    private Decision checkOverload() {
+        long latency = getLatencyMs();
+        if (maxLatencyMs > 0 && latency > maxLatencyMs) {
+            // Chờ khoảng vài lần latency hiện tại để pipeline xả bớt
+            return Decision.reject(REASON_OVERLOADED, latency * 2);
+        }
+
+        if (maxInFlight > 0 && inFlight.get() >= maxInFlight) {
+            return Decision.reject(REASON_OVERLOADED, 1000);
+        }
+
+        int capacity = groupCommitPublisher.getQueueCapacity();
+        if (groupCommitPublisher.isEnabled() && capacity > 0
+                && groupCommitPublisher.getQueueDepth() >= capacity * maxGroupCommitQueueRatio) {
+            return Decision.reject(REASON_OVERLOADED, 1000);
+        }
+        return null;
+    }
+
+    /**
+     * Dọn bucket của client không hoạt động (bucket đã đầy lại thì không cần giữ)
+     */
+    @Scheduled(fixedDelay = 60000)
+    public void evictIdleBuckets() {
+        long now = System.nanoTime();
+        buckets.values().removeIf(bucket -> bucket.isIdleSince(now, IDLE_BUCKET_TTL_MS));
+    }
+
+    /**
+     * Kết quả admission: admitted, hoặc reject kèm lý do và thời gian nên chờ
+     */
+    public record Decision(boolean admitted, String reason, long waitMs) {
+        static final Decision ADMITTED = new Decision(true, null, 0);
+
+        static Decision reject(String reason, long waitMs) {
+            return new Decision(false, reason, Math.max(1, waitMs));
+        }
+
+        /**
+         * Giá trị cho header Retry-After (giây, làm tròn lên)
+         */
+        public long retryAfterSeconds() {
+            return Math.max(1, (waitMs + 999) / 1000);
+        }
+    }
+
+    /**
+     * Token bucket refill liên tục (lazy, tính theo thời gian đã trôi qua)
+     */
+    private static class TokenBucket {
+        private final double capacity;
+        private final double refillPerNano;
+        private double tokens;
+        private long lastRefill;
+        private volatile long lastUsed;
+
+        TokenBucket(double capacity, double refillPerSecond) {
+            this.capacity = capacity;
+            this.refillPerNano = refillPerSecond / 1e9;
+            this.tokens = capacity;
+            this.lastRefill = System.nanoTime();
+            this.lastUsed = lastRefill;
+        }
+
+        /**
+         * @return 0 nếu lấy được token, ngược lại số ms cần chờ tới khi có token
+         */
+        synchronized long tryConsume() {
+            long now = System.nanoTime();
+            lastUsed = now;
+            refill(now);
+            if (tokens >= 1) {
+                tokens -= 1;
+                return 0;
+            }
+            if (refillPerNano <= 0) {
+                return TimeUnit.HOURS.toMillis(1);
+            }
+            return (long) Math.ceil((1 - tokens) / refillPerNano / 1e6);
+        }
+
+        boolean isIdleSince(long now, long ttlMs) {
+            return TimeUnit.NANOSECONDS.toMillis(now - lastUsed) >= ttlMs;
+        }
+
+        private void refill(long now) {
+            tokens = Math.min(capacity, tokens + (now - lastRefill) * refillPerNano);
+            lastRefill = now;
+        }
+    }
+}
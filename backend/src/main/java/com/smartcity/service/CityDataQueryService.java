@@ -38,19 +38,17 @@ import com.smartcity.model.DataType;
 import java.time.Instant;
 import java.time.ZoneOffset;
 import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.Objects;
 import java.util.Set;
 import java.util.stream.Collectors;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.beans.factory.annotation.Qualifier;
-import org.springframework.data.mongodb.core.MongoTemplate;
 import org.springframework.data.mongodb.core.query.Criteria;
-import org.springframework.data.mongodb.core.query.Query;
 import org.springframework.data.domain.Sort;
 import org.springframework.data.redis.core.RedisTemplate;
 import org.springframework.stereotype.Service;
@@ -63,24 +61,34 @@ import org.springframework.util.StringUtils;
 @Service
 public class CityDataQueryService {
 
-    private static final String HOT_KEY_PATTERN = "hot:citydata:*";
+    private static final String HOT_KEY_PATTERN = HotNearCache.KEY_PREFIX + "*";
+    private static final int HOT_MULTI_GET_CHUNK = 1000;
     private static final DateTimeFormatter ISO_FORMATTER = DateTimeFormatter.ISO_INSTANT;
 
-    private final MongoTemplate warmMongoTemplate;
-    private final MongoTemplate coldMongoTemplate;
     private final RedisTemplate<String, Object> redisTemplate;
     private final ObjectMapper objectMapper;
+    private final WarmTierStore warmTierStore;
+    private final ColdTierStore coldTierStore;
+    private final HotNearCache hotNearCache;
+    private final ReadPromotionService readPromotionService;
+    private final HotGeoIndex hotGeoIndex;
 
     public CityDataQueryService(
-            @Qualifier("warmMongoTemplate") MongoTemplate warmMongoTemplate,
-            @Qualifier("coldMongoTemplate") MongoTemplate coldMongoTemplate,
             RedisTemplate<String, Object> redisTemplate,
-            ObjectMapper objectMapper
+            ObjectMapper objectMapper,
+            WarmTierStore warmTierStore,
+            ColdTierStore coldTierStore,
+            HotNearCache hotNearCache,
+            ReadPromotionService readPromotionService,
+            HotGeoIndex hotGeoIndex
     ) {
-        this.warmMongoTemplate = warmMongoTemplate;
-        this.coldMongoTemplate = coldMongoTemplate;
         this.redisTemplate = redisTemplate;
         this.objectMapper = objectMapper;
+        this.warmTierStore = warmTierStore;
+        this.coldTierStore = coldTierStore;
+        this.hotNearCache = hotNearCache;
+        this.readPromotionService = readPromotionService;
+        this.hotGeoIndex = hotGeoIndex;
     }
 
     /**
@@ -88,28 +96,47 @@ public class CityDataQueryService {
      * If requestedType is null, fetches from ALL storage tiers.
      */
     public DataPageResponse fetchData(DataType requestedType, String sensorId, int page, int size) {
+        return fetchData(requestedType, sensorId, null, null, page, size);
+    }
+
+    /**
+     * Fetches data within an optional time range [from, to] (epoch millis).
+     * WARM/COLD only read the partitions that overlap the range.
+     */
+    public DataPageResponse fetchData(DataType requestedType, String sensorId, Long from, Long to,
+                                      int page, int size) {
+        return fetchData(requestedType, sensorId, from, to, null, page, size);
+    }
+
+    /**
+     * Fetches data within an optional time range and area (bbox/radius, null = anywhere).
+     * The geo predicate is pushed down to each tier: GEOSEARCH on HOT, 2dsphere $geoWithin on WARM/COLD.
+     */
+    public DataPageResponse fetchData(DataType requestedType, String sensorId, Long from, Long to,
+                                      GeoFilter geo, int page, int size) {
         int safePage = Math.max(page, 0);
         int safeSize = Math.min(Math.max(size, 1), 100);
+        TimeRange range = new TimeRange(from, to);
 
-        log.debug("Fetching data | type={}, sensorId={}, page={}, size={}",
-                requestedType, sensorId, safePage, safeSize);
+        log.debug("Fetching data | type={}, sensorId={}, from={}, to={}, geo={}, page={}, size={}",
+                requestedType, sensorId, from, to, geo, safePage, safeSize);
 
         DataSlice slice;
         
         // If no type specified, fetch from all storage tiers
         if (requestedType == null) {
-            slice = fetchAllTypes(sensorId, safePage, safeSize);
+            slice = fetchAllTypes(sensorId, range, geo, safePage, safeSize);
         } else {
             // Fetch from specific storage tier
             switch (requestedType) {
                 case HOT:
-                    slice = fetchHotSlice(sensorId, safePage, safeSize);
+                    slice = fetchHotSlice(sensorId, range, geo, safePage, safeSize);
                     break;
                 case COLD:
-                    slice = fetchMongoSlice(coldMongoTemplate, DataType.COLD, sensorId, safePage, safeSize);
+                    slice = fetchColdSlice(sensorId, range, geo, safePage, safeSize);
                     break;
                 case WARM:
-                    slice = fetchMongoSlice(warmMongoTemplate, DataType.WARM, sensorId, safePage, safeSize);
+                    slice = fetchWarmSlice(sensorId, range, geo, safePage, safeSize);
                     break;
                 default:
                     slice = DataSlice.empty();
@@ -138,7 +165,7 @@ public class CityDataQueryService {
     /**
      * Fetch data from all storage tiers (HOT + WARM + COLD) when no specific type is requested
      */
-    private DataSlice fetchAllTypes(String sensorId, int page, int size) {
+    private DataSlice fetchAllTypes(String sensorId, TimeRange range, GeoFilter geo, int page, int size) {
         log.debug("Fetching from all storage tiers");
         
         // Calculate how many records to fetch from each tier to ensure we have enough for pagination
@@ -149,7 +176,7 @@ public class CityDataQueryService {
         
         // Fetch limited records from HOT (Redis)
         try {
-            DataSlice hotSlice = fetchHotSlice(sensorId, 0, fetchLimit);
+            DataSlice hotSlice = fetchHotSlice(sensorId, range, geo, 0, fetchLimit);
             allData.addAll(hotSlice.records());
             log.debug("Fetched {} HOT records (limit={})", hotSlice.records().size(), fetchLimit);
         } catch (Exception e) {
@@ -158,7 +185,7 @@ public class CityDataQueryService {
         
         // Fetch limited records from WARM (MongoDB) - most recent only
         try {
-            DataSlice warmSlice = fetchMongoSlice(warmMongoTemplate, DataType.WARM, sensorId, 0, fetchLimit);
+            DataSlice warmSlice = fetchWarmSlice(sensorId, range, geo, 0, fetchLimit);
             allData.addAll(warmSlice.records());
             log.debug("Fetched {} WARM records (limit={})", warmSlice.records().size(), fetchLimit);
         } catch (Exception e) {
@@ -167,7 +194,7 @@ public class CityDataQueryService {
         
         // Fetch limited records from COLD (MongoDB) - most recent only
         try {
-            DataSlice coldSlice = fetchMongoSlice(coldMongoTemplate, DataType.COLD, sensorId, 0, fetchLimit);
+            DataSlice coldSlice = fetchColdSlice(sensorId, range, geo, 0, fetchLimit);
             allData.addAll(coldSlice.records());
             log.debug("Fetched {} COLD records (limit={})", coldSlice.records().size(), fetchLimit);
         } catch (Exception e) {
@@ -194,47 +221,117 @@ public class CityDataQueryService {
         return new DataSlice(pageRecords, total);
     }
 
-    private DataSlice fetchMongoSlice(
-            MongoTemplate template,
-            DataType type,
-            String sensorId,
-            int page,
-            int size
-    ) {
-        Query baseQuery = new Query().addCriteria(Criteria.where("dataType").is(type));
-
+    /**
+     * COLD slice đọc qua ColdTierStore (documents hoặc Gorilla blocks được decode)
+     */
+    private DataSlice fetchColdSlice(String sensorId, TimeRange range, GeoFilter geo, int page, int size) {
+        DataSlice promoted = geo == null ? fetchPromotedSlice(DataType.COLD, sensorId, range, page, size) : null;
+        if (promoted != null) {
+            return promoted;
+        }
+        long total = coldTierStore.count(sensorId, range.from(), range.to(), geo);
+        List<CityData> records = coldTierStore.findRecent(sensorId, range.from(), range.to(), geo,
+                page * size, size);
+        log.debug("Cold slice | mode={} records={} total={}",
+                coldTierStore.getStorageMode(), records.size(), total);
         if (StringUtils.hasText(sensorId)) {
-            baseQuery.addCriteria(Criteria.where("sourceId").is(sensorId));
+            readPromotionService.onSensorRead(DataType.COLD, sensorId);
         }
+        return new DataSlice(records, total);
+    }
 
-        long total = template.count(baseQuery, CityData.class);
+    /**
+     * WARM slice đọc qua WarmTierStore để trong suốt với layout documents/time-series và partitioning
+     */
+    private DataSlice fetchWarmSlice(String sensorId, TimeRange range, GeoFilter geo, int page, int size) {
+        DataSlice promoted = geo == null ? fetchPromotedSlice(DataType.WARM, sensorId, range, page, size) : null;
+        if (promoted != null) {
+            return promoted;
+        }
+        Criteria filter = Criteria.where("dataType").is(DataType.WARM);
 
-        Query pagedQuery = baseQuery
-                .with(Sort.by(Sort.Direction.DESC, "timestamp"))
-                .skip((long) page * size)
-                .limit(size);
+        if (StringUtils.hasText(sensorId)) {
+            filter = filter.and("sourceId").is(sensorId);
+        }
+        if (geo != null) {
+            filter = new Criteria().andOperator(filter, geo.within("location"));
+        }
 
-        List<CityData> records = template.find(pagedQuery, CityData.class);
-        log.debug("Mongo slice | type={} records={} total={}", type, records.size(), total);
+        long total = warmTierStore.countRange(filter, range.from(), range.to());
+        List<CityData> records = warmTierStore.findRange(filter, range.from(), range.to(),
+                Sort.Direction.DESC, (long) page * size, size);
+        log.debug("Warm slice | layout={} records={} total={}",
+                warmTierStore.getLayout().getMode(), records.size(), total);
+        if (StringUtils.hasText(sensorId)) {
+            readPromotionService.onSensorRead(DataType.WARM, sensorId);
+        }
         return new DataSlice(records, total);
     }
 
-    private DataSlice fetchHotSlice(String sensorId, int page, int size) {
-        Set<String> keys = redisTemplate.keys(HOT_KEY_PATTERN);
+    /**
+     * Trang theo sensor từ bản promoted trong Redis (sensor được đọc nhiều).
+     * Chỉ trả về khi bản promoted phủ được trang yêu cầu, ngược lại null để đọc tier:
+     * - Không có time range: trang nằm trong các records promoted (total là total lúc promote)
+     * - Có time range: from không cũ hơn record cũ nhất được promote (hoặc đã promote toàn bộ sensor)
+     */
+    private DataSlice fetchPromotedSlice(DataType tier, String sensorId, TimeRange range, int page, int size) {
+        if (!StringUtils.hasText(sensorId)) {
+            return null;
+        }
+        ReadPromotionService.PromotedSlice promoted = readPromotionService.lookupSensor(tier, sensorId);
+        if (promoted == null) {
+            return null;
+        }
+        List<CityData> records = promoted.getRecords();
+        int fromIndex = (int) Math.min((long) page * size, Integer.MAX_VALUE);
+
+        if (range.from() == null && range.to() == null) {
+            if (!promoted.isComplete() && fromIndex + size > records.size()) {
+                return null;
+            }
+            int toIndex = Math.min(fromIndex + size, records.size());
+            List<CityData> pageRecords = fromIndex < toIndex
+                    ? records.subList(fromIndex, toIndex)
+                    : Collections.emptyList();
+            return new DataSlice(pageRecords, promoted.getTotal());
+        }
+
+        Long oldest = records.isEmpty() ? null : records.get(records.size() - 1).getTimestamp();
+        boolean covered = promoted.isComplete()
+                || (range.from() != null && oldest != null && range.from() >= oldest);
+        if (!covered) {
+            return null;
+        }
+        List<CityData> filtered = records.stream()
+                .filter(data -> range.contains(data.getTimestamp()))
+                .collect(Collectors.toList());
+        int toIndex = Math.min(fromIndex + size, filtered.size());
+        List<CityData> pageRecords = fromIndex < toIndex
+                ? filtered.subList(fromIndex, toIndex)
+                : Collections.emptyList();
+        return new DataSlice(pageRecords, filtered.size());
+    }
+
+    private DataSlice fetchHotSlice(String sensorId, TimeRange range, GeoFilter geo, int page, int size) {
+        Set<String> keys = geo != null && hotGeoIndex.isEnabled()
+                ? hotGeoIndex.search(geo).stream()
+                        .map(id -> HotNearCache.KEY_PREFIX + id)
+                        .collect(Collectors.toCollection(LinkedHashSet::new))
+                : redisTemplate.keys(HOT_KEY_PATTERN);
         if (keys == null || keys.isEmpty()) {
             return DataSlice.empty();
         }
 
-        List<CityData> filtered = keys.stream()
-                .map(key -> redisTemplate.opsForValue().get(key))
-                .map(this::convertRedisValue)
-                .filter(Objects::nonNull)
+        List<CityData> filtered = loadHotRecords(keys).stream()
                 .filter(data -> {
                     if (!StringUtils.hasText(sensorId)) {
                         return true;
                     }
                     return sensorId.equalsIgnoreCase(data.getSourceId());
                 })
+                .filter(data -> range.contains(data.getTimestamp()))
+                .filter(data -> geo == null || (data.getLocation() != null
+                        && geo.contains(data.getLocation().lat(), data.getLocation().lng())))
                 .sorted(Comparator.comparingLong(
                         (CityData data) -> data.getTimestamp() != null ? data.getTimestamp() : 0L)
                         .reversed())
@@ -251,6 +348,42 @@ public class CityDataQueryService {
         return new DataSlice(pageRecords, total);
     }
 
+    /**
+     * Records HOT cho các keys: lấy từ near-cache, phần còn thiếu đọc bằng MGET theo chunk
+     * (một round trip mỗi chunk thay vì một GET mỗi key)
+     */
+    private List<CityData> loadHotRecords(Set<String> keys) {
+        List<CityData> records = new ArrayList<>(keys.size());
+        List<String> missing = new ArrayList<>();
+        for (String key : keys) {
+            CityData cached = hotNearCache.get(key.substring(HotNearCache.KEY_PREFIX.length()));
+            if (cached != null) {
+                records.add(cached);
+            } else {
+                missing.add(key);
+            }
+        }
+
+        for (int from = 0; from < missing.size(); from += HOT_MULTI_GET_CHUNK) {
+            List<Object> values = redisTemplate.opsForValue()
+                    .multiGet(missing.subList(from, Math.min(from + HOT_MULTI_GET_CHUNK, missing.size())));
+            if (values == null) {
+                continue;
+            }
+            for (Object value : values) {
+                // null: key hết hạn giữa KEYS và MGET
+                CityData data = value != null ? convertRedisValue(value) : null;
+                if (data != null) {
+                    records.add(data);
+                    hotNearCache.putReadThrough(data);
+                }
+            }
+        }
+        log.debug("HOT records | keys={} near-cache hits={} fetched={}",
+                keys.size(), keys.size() - missing.size(), missing.size());
+        return records;
+    }
+
     private CityData convertRedisValue(Object value) {
         if (value instanceof CityData cityData) {
             return cityData;
@@ -264,9 +397,14 @@ public class CityDataQueryService {
         return null;
     }
 
-    private CityDataResponse toResponse(CityData data) {
+    /**
+     * CityData → DTO trả cho frontend (dùng chung với live stream)
+     */
+    public CityDataResponse toResponse(CityData data) {
         double primaryValue = extractPrimaryValue(data.getPayload());
-        CityDataResponse.Location location = extractLocation(data.getPayload());
+        CityDataResponse.Location location = data.getLocation() != null
+                ? new CityDataResponse.Location(data.getLocation().lat(), data.getLocation().lng())
+                : extractLocation(data.getPayload());
         Map<String, Object> metadata = data.getPayload() != null
                 ? new LinkedHashMap<>(data.getPayload())
                 : Collections.emptyMap();
@@ -352,22 +490,33 @@ public class CityDataQueryService {
     public Object getById(String id) {
         log.info("Searching for record with ID: {}", id);
         
-        // Try Redis (HOT tier)
+        // Try near-cache rồi Redis (HOT tier)
+        CityData cached = hotNearCache.get(id);
+        if (cached != null) {
+            return toResponse(cached);
+        }
         try {
-            Object redisData = redisTemplate.opsForValue().get("hot:citydata:" + id);
+            Object redisData = redisTemplate.opsForValue().get(HotNearCache.KEY_PREFIX + id);
             if (redisData != null) {
                 CityData cityData = objectMapper.convertValue(redisData, CityData.class);
+                hotNearCache.putReadThrough(cityData);
                 return toResponse(cityData);
             }
         } catch (Exception e) {
             log.error("Error searching Redis: {}", e.getMessage());
         }
         
+        // Bản promoted của record WARM/COLD được đọc nhiều
+        CityData promoted = readPromotionService.lookupRecord(id);
+        if (promoted != null) {
+            return toResponse(promoted);
+        }
+        
         // Try MongoDB Warm
         try {
-            CityData warm = warmMongoTemplate.findOne(
-                new Query(Criteria.where("_id").is(id)), CityData.class);
+            CityData warm = warmTierStore.findById(id);
             if (warm != null) {
+                readPromotionService.onRecordRead(warm);
                 return toResponse(warm);
             }
         } catch (Exception e) {
@@ -376,9 +525,9 @@ public class CityDataQueryService {
         
         // Try MongoDB Cold
         try {
-            CityData cold = coldMongoTemplate.findOne(
-                new Query(Criteria.where("_id").is(id)), CityData.class);
+            CityData cold = coldTierStore.findById(id);
             if (cold != null) {
+                readPromotionService.onRecordRead(cold);
                 return toResponse(cold);
             }
         } catch (Exception e) {
@@ -388,6 +537,13 @@ public class CityDataQueryService {
         return null;
     }
 
+    private record TimeRange(Long from, Long to) {
+        boolean contains(Long timestamp) {
+            long value = timestamp != null ? timestamp : 0L;
+            return (from == null || value >= from) && (to == null || value <= to);
+        }
+    }
+
     private record DataSlice(List<CityData> records, long total) {
         static DataSlice empty() {
             return new DataSlice(Collections.emptyList(), 0);
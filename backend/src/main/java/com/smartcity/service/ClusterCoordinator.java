@@ -0,0 +1,300 @@
+/*
+ * Copyright 2025 Haui.HIT - H2K
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.smartcity.service;
+
+import com.smartcity.config.EdgeNodeConfig;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.net.InetAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Cluster Coordinator
+ * Chia edge nodes giữa các backend instance qua Redis:
+ * - Membership: sorted set "cluster:members" (score = thời điểm hết hạn heartbeat)
+ * - Mỗi edge node được gán cho một member bằng rendezvous hashing (node, member);
+ *   member được gán giữ lease "cluster:lease:edge:<node>" (SET NX PX, renew mỗi heartbeat)
+ * - Instance chỉ pull node mà nó đang giữ lease; member join/leave → hash đổi owner,
+ *   owner cũ release ở heartbeat kế tiếp và owner mới acquire
+ * - Job singleton (deferred data, lifecycle, COLD retention/compaction) chỉ chạy trên instance
+ *   giữ lease "cluster:lease:leader"
+ *
+ * cluster.enabled=false (một instance): instance sở hữu mọi node và luôn là leader.
+ */
+@Slf4j
+@Component
+public class ClusterCoordinator {
+
+    private static final String MEMBERS_KEY = "cluster:members";
+    private static final String EDGE_LEASE_PREFIX = "cluster:lease:edge:";
+    private static final String LEADER_LEASE_KEY = "cluster:lease:leader";
+
+    /** Acquire lease nếu trống, renew nếu đang giữ */
+    private static final DefaultRedisScript<Long> ACQUIRE_SCRIPT = new DefaultRedisScript<>(
+            "local owner = redis.call('GET', KEYS[1]) "
+                    + "if owner == ARGV[1] then redis.call('PEXPIRE', KEYS[1], ARGV[2]) return 1 end "
+                    + "if not owner then redis.call('SET', KEYS[1], ARGV[1], 'PX', ARGV[2]) return 1 end "
+                    + "return 0", Long.class);
+
+    /** Chỉ xoá lease nếu instance này đang giữ */
+    private static final DefaultRedisScript<Long> RELEASE_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('GET', KEYS[1]) == ARGV[1] then return redis.call('DEL', KEYS[1]) end "
+                    + "return 0", Long.class);
+
+    private final StringRedisTemplate stringRedisTemplate;
+    private final EdgeNodeRegistry edgeNodeRegistry;
+    private final MetricsService metricsService;
+
+    @Value("${cluster.enabled:false}")
+    private boolean enabled;
+
+    @Value("${cluster.instance-id:}")
+    private String configuredInstanceId;
+
+    @Value("${cluster.lease-ttl-ms:10000}")
+    private long leaseTtlMs;
+
+    @Value("${cluster.heartbeat-ms:2000}")
+    private long heartbeatMs;
+
+    private String instanceId;
+
+    /** Lease đang giữ → thời điểm (local clock) coi như hết hạn */
+    private final Map<String, Long> ownedUntil = new ConcurrentHashMap<>();
+    private volatile long leaderUntil;
+    private volatile List<String> members = List.of();
+
+    public ClusterCoordinator(StringRedisTemplate stringRedisTemplate,
+                              EdgeNodeRegistry edgeNodeRegistry,
+                              MetricsService metricsService) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.edgeNodeRegistry = edgeNodeRegistry;
+        this.metricsService = metricsService;
+    }
+
+    @PostConstruct
+    public void init() {
+        instanceId = configuredInstanceId != null && !configuredInstanceId.isBlank()
+                ? configuredInstanceId
+                : hostName() + "-" + UUID.randomUUID().toString().substring(0, 8);
+        metricsService.registerGauge("cluster.members", () -> enabled ? members.size() : 1);
+        metricsService.registerGauge("cluster.owned_edge_nodes", () -> enabled ? countOwned() : edgeNodeRegistry.getActiveNodeCount());
+        metricsService.registerGauge("cluster.leader", () -> isLeader() ? 1 : 0);
+        if (enabled) {
+            log.info("Cluster mode enabled: instance {} (lease ttl {}ms, heartbeat {}ms)",
+                    instanceId, leaseTtlMs, heartbeatMs);
+        }
+    }
+
+    /**
+     * Heartbeat: gia hạn membership, tính lại phân công và acquire/renew/release leases
+     * Redis lỗi → không renew được, lease local tự hết hạn (instance ngừng pull)
+     */
+    @Scheduled(fixedDelayString = "${cluster.heartbeat-ms:2000}")
+    public void heartbeat() {
+        if (!enabled) {
+            return;
+        }
+        long start = System.currentTimeMillis();
+        // Hết hạn sớm hơn Redis một nhịp heartbeat để không pull khi lease có thể đã sang instance khác
+        long validUntil = start + leaseTtlMs - heartbeatMs;
+        try {
+            members = refreshMembers(start);
+
+            leaderUntil = acquire(LEADER_LEASE_KEY) ? validUntil : 0;
+
+            Set<String> available = new HashSet<>();
+            for (EdgeNodeConfig.EdgeNode node : edgeNodeRegistry.getAvailableNodes()) {
+                available.add(node.getName());
+                if (instanceId.equals(ownerOf(node.getName(), members))) {
+                    if (acquire(EDGE_LEASE_PREFIX + node.getName())) {
+                        if (ownedUntil.put(node.getName(), validUntil) == null) {
+                            log.info("Acquired edge node [{}]", node.getName());
+                            metricsService.incrementCounter("cluster.lease.acquired");
+                        }
+                    } else {
+                        // Owner cũ chưa release: thử lại ở heartbeat sau
+                        ownedUntil.remove(node.getName());
+                    }
+                } else if (ownedUntil.containsKey(node.getName())) {
+                    releaseEdge(node.getName(), "reassigned");
+                }
+            }
+            for (String name : List.copyOf(ownedUntil.keySet())) {
+                if (!available.contains(name)) {
+                    releaseEdge(name, "removed or disabled");
+                }
+            }
+        } catch (Exception e) {
+            metricsService.incrementCounter("cluster.heartbeat.errors");
+            log.warn("Cluster heartbeat failed, leases expire locally: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Instance này có được pull node không
+     */
+    public boolean owns(EdgeNodeConfig.EdgeNode node) {
+        if (!enabled) {
+            return true;
+        }
+        Long until = ownedUntil.get(node.getName());
+        return until != null && System.currentTimeMillis() < until;
+    }
+
+    /**
+     * Instance này có chạy job singleton không
+     */
+    public boolean isLeader() {
+        return !enabled || System.currentTimeMillis() < leaderUntil;
+    }
+
+    public String getInstanceId() {
+        return instanceId;
+    }
+
+    /**
+     * Số instance đang sống (1 khi cluster.enabled=false)
+     */
+    public int getMemberCount() {
+        return enabled ? Math.max(members.size(), 1) : 1;
+    }
+
+    /**
+     * Membership, leader và phân công edge nodes hiện tại
+     */
+    public Map<String, Object> getStatus() {
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("enabled", enabled);
+        status.put("instanceId", instanceId);
+        status.put("leader", isLeader());
+        status.put("members", enabled ? members : List.of(instanceId));
+        Map<String, Object> assignments = new LinkedHashMap<>();
+        for (EdgeNodeConfig.EdgeNode node : edgeNodeRegistry.getAvailableNodes()) {
+            Map<String, Object> assignment = new LinkedHashMap<>();
+            assignment.put("assignedTo", enabled ? ownerOf(node.getName(), members) : instanceId);
+            assignment.put("ownedHere", owns(node));
+            assignments.put(node.getName(), assignment);
+        }
+        status.put("assignments", assignments);
+        return status;
+    }
+
+    /**
+     * Graceful shutdown: rời cluster và release leases để instance khác nhận ngay
+     */
+    @PreDestroy
+    public void leave() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            for (String name : List.copyOf(ownedUntil.keySet())) {
+                releaseEdge(name, "shutdown");
+            }
+            if (leaderUntil > 0) {
+                release(LEADER_LEASE_KEY);
+                leaderUntil = 0;
+            }
+            stringRedisTemplate.opsForZSet().remove(MEMBERS_KEY, instanceId);
+        } catch (Exception e) {
+            log.warn("Cannot leave cluster cleanly, leases expire after {}ms: {}", leaseTtlMs, e.getMessage());
+        }
+    }
+
+    private List<String> refreshMembers(long now) {
+        stringRedisTemplate.opsForZSet().add(MEMBERS_KEY, instanceId, now + leaseTtlMs);
+        stringRedisTemplate.opsForZSet().removeRangeByScore(MEMBERS_KEY, 0, now);
+        Set<String> live = stringRedisTemplate.opsForZSet().range(MEMBERS_KEY, 0, -1);
+        List<String> sorted = live != null ? new ArrayList<>(live) : new ArrayList<>();
+        if (!sorted.contains(instanceId)) {
+            sorted.add(instanceId);
+        }
+        sorted.sort(null);
+        if (!sorted.equals(members)) {
+            log.info("Cluster membership changed: {}", sorted);
+            if (!members.isEmpty()) {
+                metricsService.incrementCounter("cluster.rebalances");
+            }
+        }
+        return sorted;
+    }
+
+    private boolean acquire(String key) {
+        Long result = stringRedisTemplate.execute(ACQUIRE_SCRIPT, List.of(key),
+                instanceId, String.valueOf(leaseTtlMs));
+        return result != null && result == 1L;
+    }
+
+    private void release(String key) {
+        stringRedisTemplate.execute(RELEASE_SCRIPT, List.of(key), instanceId);
+    }
+
+    private void releaseEdge(String name, String reason) {
+        ownedUntil.remove(name);
+        release(EDGE_LEASE_PREFIX + name);
+        metricsService.incrementCounter("cluster.lease.released");
+        log.info("Released edge node [{}] ({})", name, reason);
+    }
+
+    private long countOwned() {
+        long now = System.currentTimeMillis();
+        return ownedUntil.values().stream().filter(until -> now < until).count();
+    }
+
+    /**
+     * Rendezvous (highest random weight) hashing: member có hash(node, member) lớn nhất.
+     * Member join/leave chỉ làm đổi owner của các node liên quan tới member đó.
+     */
+    static String ownerOf(String node, List<String> members) {
+        String owner = null;
+        long best = Long.MIN_VALUE;
+        for (String member : members) {
+            long score = UUID.nameUUIDFromBytes((node + "|" + member).getBytes(StandardCharsets.UTF_8))
+                    .getMostSignificantBits();
+            if (owner == null || score > best) {
+                owner = member;
+                best = score;
+            }
+        }
+        return owner;
+    }
+
+    private static String hostName() {
+        try {
+            return InetAddress.getLocalHost().getHostName();
+        } catch (Exception e) {
+            return "backend";
+        }
+    }
+}
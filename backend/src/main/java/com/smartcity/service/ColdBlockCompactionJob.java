@@ -0,0 +1,65 @@
+/*
+ * Copyright 2025 Haui.HIT - H2K
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.smartcity.service;
+
+import com.smartcity.config.SchedulingConfig;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+/**
+ * Scheduled job seal các open block của COLD tier (chỉ chạy khi storage-mode = blocks)
+ */
+@Slf4j
+@Service
+public class ColdBlockCompactionJob {
+
+    private final ColdTierStore coldTierStore;
+    private final ClusterCoordinator clusterCoordinator;
+    private final ScheduledJobRunner scheduledJobRunner;
+
+    public ColdBlockCompactionJob(ColdTierStore coldTierStore, ClusterCoordinator clusterCoordinator,
+                                  ScheduledJobRunner scheduledJobRunner) {
+        this.coldTierStore = coldTierStore;
+        this.clusterCoordinator = clusterCoordinator;
+        this.scheduledJobRunner = scheduledJobRunner;
+    }
+
+    @Scheduled(fixedDelayString = "${mongodb.cold.block.compaction-interval-ms:60000}",
+               initialDelayString = "${mongodb.cold.block.compaction-interval-ms:60000}",
+               scheduler = SchedulingConfig.MAINTENANCE_SCHEDULER)
+    public void compact() {
+        if (coldTierStore.getStorageMode() != ColdTierStore.StorageMode.BLOCKS || !clusterCoordinator.isLeader()) {
+            return;
+        }
+        scheduledJobRunner.runLocked("cold.compaction", this::sealClosedWindows);
+    }
+
+    private void sealClosedWindows() {
+        try {
+            long start = System.currentTimeMillis();
+            int sealed = coldTierStore.sealClosedWindows();
+            if (sealed > 0) {
+                log.info("COLD block compaction: sealed {} windows in {}ms",
+                        sealed, System.currentTimeMillis() - start);
+            }
+        } catch (Exception e) {
+            log.error("Error during COLD block compaction: {}", e.getMessage(), e);
+            // Lần schedule tiếp theo sẽ retry
+        }
+    }
+}
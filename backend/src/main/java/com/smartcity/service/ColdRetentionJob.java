@@ -0,0 +1,73 @@
+/*
+ * Copyright 2025 Haui.HIT - H2K
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.smartcity.service;
+
+import com.smartcity.config.SchedulingConfig;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Scheduled job áp dụng retention cho COLD tier (mongodb.cold.retention-days, 0 = giữ vĩnh viễn)
+ * Khi bật partitioning, partition hết hạn được drop cả collection thay vì deleteMany từng document.
+ */
+@Slf4j
+@Service
+public class ColdRetentionJob {
+
+    private final ColdTierStore coldTierStore;
+    private final ClusterCoordinator clusterCoordinator;
+    private final ScheduledJobRunner scheduledJobRunner;
+
+    @Value("${mongodb.cold.retention-days:0}")
+    private int retentionDays;
+
+    public ColdRetentionJob(ColdTierStore coldTierStore, ClusterCoordinator clusterCoordinator,
+                            ScheduledJobRunner scheduledJobRunner) {
+        this.coldTierStore = coldTierStore;
+        this.clusterCoordinator = clusterCoordinator;
+        this.scheduledJobRunner = scheduledJobRunner;
+    }
+
+    @Scheduled(fixedDelayString = "${mongodb.cold.retention-interval-ms:3600000}",
+               initialDelayString = "${mongodb.cold.retention-interval-ms:3600000}",
+               scheduler = SchedulingConfig.MAINTENANCE_SCHEDULER)
+    public void applyRetention() {
+        if (retentionDays <= 0 || !clusterCoordinator.isLeader()) {
+            return;
+        }
+        scheduledJobRunner.runLocked("cold.retention", this::deleteExpired);
+    }
+
+    private void deleteExpired() {
+        try {
+            long start = System.currentTimeMillis();
+            long cutoff = start - TimeUnit.DAYS.toMillis(retentionDays);
+            long removed = coldTierStore.applyRetention(cutoff);
+            if (removed > 0) {
+                log.info("COLD retention ({} days): removed {} partitions/documents in {}ms",
+                        retentionDays, removed, System.currentTimeMillis() - start);
+            }
+        } catch (Exception e) {
+            log.error("Error during COLD retention: {}", e.getMessage(), e);
+            // Lần schedule tiếp theo sẽ retry
+        }
+    }
+}
@@ -0,0 +1,594 @@
+/*
+ * Copyright 2025 Haui.HIT - H2K
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.smartcity.service;
+
+import com.smartcity.archive.ColdBlockCodec;
+import com.smartcity.model.CityData;
+import com.smartcity.model.ColdBlock;
+import com.smartcity.model.DataType;
+import com.smartcity.model.TierPartition;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.FindAndReplaceOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.index.GeoSpatialIndexType;
+import org.springframework.data.mongodb.core.index.GeospatialIndex;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.index.IndexOperations;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Service;
+import org.springframework.util.StringUtils;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * COLD tier store
+ * Hai chế độ lưu trữ (mongodb.cold.storage-mode):
+ * - documents: mỗi reading một document trong "city_data" (mặc định)
+ * - blocks: readings của mỗi sensor theo time window được nén Gorilla vào "city_data_blocks"
+ *
+ * Ở chế độ documents có thể bật partitioning (mongodb.cold.partition.enabled): readings được ghi
+ * vào partition theo ngày/tuần, retention drop cả partition hết hạn.
+ */
+@Slf4j
+@Service
+public class ColdTierStore {
+
+    public enum StorageMode {
+        DOCUMENTS,
+        BLOCKS
+    }
+
+    private final MongoTemplate coldMongoTemplate;
+    private final StorageMode storageMode;
+    private final PartitionCatalog partitionCatalog;
+
+    @Value("${mongodb.cold.block.window-ms:3600000}")
+    private long blockWindowMs;
+
+    @Value("${mongodb.cold.block.seal-grace-ms:60000}")
+    private long sealGraceMs;
+
+    @Value("${mongodb.cold.block.max-windows-per-compaction:500}")
+    private int maxWindowsPerCompaction;
+
+    private volatile boolean blockIndexesEnsured = false;
+    private volatile boolean documentGeoIndexEnsured = false;
+
+    public ColdTierStore(
+            @Qualifier("coldMongoTemplate") MongoTemplate coldMongoTemplate,
+            @Value("${mongodb.cold.storage-mode:documents}") String storageMode,
+            @Qualifier("coldPartitionCatalog") PartitionCatalog partitionCatalog) {
+        this.coldMongoTemplate = coldMongoTemplate;
+        this.storageMode = StorageMode.valueOf(storageMode.trim().toUpperCase());
+        this.partitionCatalog = partitionCatalog;
+        log.info("COLD storage mode: {}", this.storageMode);
+        if (this.storageMode == StorageMode.BLOCKS && partitionCatalog.isEnabled()) {
+            log.warn("COLD partitioning applies to storage-mode=documents only; blocks stay in one collection");
+        }
+    }
+
+    public StorageMode getStorageMode() {
+        return storageMode;
+    }
+
+    /**
+     * Ghi một batch COLD readings
+     *
+     * @return Số readings đã ghi
+     */
+    public int insert(List<CityData> records) {
+        if (records == null || records.isEmpty()) {
+            return 0;
+        }
+
+        if (storageMode == StorageMode.DOCUMENTS) {
+            ensureDocumentGeoIndex();
+            int inserted = 0;
+            for (Map.Entry<String, List<CityData>> entry : groupByCollection(records).entrySet()) {
+                BulkOperations bulkOps = coldMongoTemplate.bulkOps(
+                        BulkOperations.BulkMode.UNORDERED,
+                        CityData.class,
+                        entry.getKey());
+                bulkOps.insert(entry.getValue());
+                inserted += bulkOps.execute().getInsertedCount();
+            }
+            return inserted;
+        }
+
+        ensureBlockIndexes();
+
+        // Gom theo (sensor, window) → mỗi nhóm thành một open block
+        Map<String, List<CityData>> groups = new LinkedHashMap<>();
+        for (CityData data : records) {
+            if (data.getTimestamp() == null) {
+                data.setTimestamp(System.currentTimeMillis());
+            }
+            String key = data.getSourceId() + ":" + windowStartOf(data.getTimestamp());
+            groups.computeIfAbsent(key, k -> new ArrayList<>()).add(data);
+        }
+
+        List<ColdBlock> blocks = new ArrayList<>(groups.size());
+        for (List<CityData> group : groups.values()) {
+            CityData first = group.get(0);
+            long windowStart = windowStartOf(first.getTimestamp());
+            String blockId = sealedBlockId(first.getSourceId(), windowStart) + ":" + UUID.randomUUID();
+            blocks.add(ColdBlockCodec.encode(blockId, first.getSourceId(),
+                    windowStart, windowStart + blockWindowMs, group, false));
+        }
+
+        BulkOperations bulkOps = coldMongoTemplate.bulkOps(
+                BulkOperations.BulkMode.UNORDERED,
+                ColdBlock.class);
+        bulkOps.insert(blocks);
+        bulkOps.execute();
+
+        log.debug("Encoded {} COLD readings into {} open blocks", records.size(), blocks.size());
+        return records.size();
+    }
+
+    /**
+     * Ghi idempotent (dùng cho migration có thể chạy lại): documents → replace/upsert theo _id,
+     * blocks → open block mới, trùng lặp được loại khi seal.
+     */
+    public int upsert(List<CityData> records) {
+        if (records == null || records.isEmpty()) {
+            return 0;
+        }
+        if (storageMode == StorageMode.BLOCKS) {
+            return insert(records);
+        }
+
+        int written = 0;
+        for (Map.Entry<String, List<CityData>> entry : groupByCollection(records).entrySet()) {
+            BulkOperations bulkOps = coldMongoTemplate.bulkOps(
+                    BulkOperations.BulkMode.UNORDERED,
+                    CityData.class,
+                    entry.getKey());
+            for (CityData data : entry.getValue()) {
+                bulkOps.replaceOne(new Query(Criteria.where("_id").is(data.getId())), data,
+                        FindAndReplaceOptions.options().upsert());
+            }
+            com.mongodb.bulk.BulkWriteResult result = bulkOps.execute();
+            written += result.getUpserts().size() + result.getModifiedCount();
+        }
+        return written;
+    }
+
+    /**
+     * Đếm số readings (trong danh sách) đã tồn tại ở COLD tier - dùng để verify trước khi xóa ở nơi khác
+     */
+    public long countExisting(List<CityData> records) {
+        if (records == null || records.isEmpty()) {
+            return 0;
+        }
+        if (storageMode == StorageMode.DOCUMENTS) {
+            long existing = 0;
+            for (Map.Entry<String, List<CityData>> entry : groupByCollection(records).entrySet()) {
+                List<String> ids = entry.getValue().stream().map(CityData::getId).toList();
+                existing += coldMongoTemplate.count(new Query(Criteria.where("_id").in(ids)), entry.getKey());
+            }
+            return existing;
+        }
+
+        List<String> ids = records.stream().map(CityData::getId).toList();
+
+        Aggregation aggregation = Aggregation.newAggregation(
+                Aggregation.match(Criteria.where("ids").in(ids)),
+                Aggregation.unwind("ids"),
+                Aggregation.match(Criteria.where("ids").in(ids)),
+                Aggregation.group("ids"),
+                Aggregation.count().as("total"));
+        Document result = coldMongoTemplate.aggregate(aggregation, ColdBlock.class, Document.class)
+                .getUniqueMappedResult();
+        return result != null && result.get("total") instanceof Number total ? total.longValue() : 0L;
+    }
+
+    /**
+     * Readings COLD mới nhất trong khoảng [from, to] (null = không giới hạn), sort timestamp giảm dần, có phân trang
+     */
+    public List<CityData> findRecent(String sensorId, Long from, Long to, int skip, int limit) {
+        return findRecent(sensorId, from, to, null, skip, limit);
+    }
+
+    /**
+     * Như trên, thêm lọc vị trí (null = không lọc): documents dùng $geoWithin trên index 2dsphere,
+     * blocks chỉ decode block có location giao bbox rồi lọc chính xác từng reading
+     */
+    public List<CityData> findRecent(String sensorId, Long from, Long to, GeoFilter geo, int skip, int limit) {
+        if (storageMode == StorageMode.DOCUMENTS) {
+            return PartitionCatalog.pageAcross(partitionCatalog.collectionsFor(from, to, true), skip, limit,
+                    collection -> coldMongoTemplate.count(documentQuery(sensorId, from, to, geo), collection),
+                    (collection, collectionSkip, collectionLimit) -> coldMongoTemplate.find(
+                            documentQuery(sensorId, from, to, geo)
+                                    .with(Sort.by(Sort.Direction.DESC, "timestamp"))
+                                    .skip(collectionSkip)
+                                    .limit(collectionLimit),
+                            CityData.class, collection));
+        }
+
+        Query query = blockQuery(sensorId, from, to, geo).with(Sort.by(Sort.Direction.DESC, "maxTimestamp"));
+        int needed = skip + limit;
+        Comparator<CityData> newestFirst = Comparator.comparingLong(
+                (CityData data) -> data.getTimestamp() != null ? data.getTimestamp() : 0L).reversed();
+
+        // Decode dần các block (mới nhất trước) cho đến khi không block nào còn lại có thể lọt top
+        List<CityData> top = new ArrayList<>();
+        long threshold = Long.MIN_VALUE;
+        try (Stream<ColdBlock> blocks = coldMongoTemplate.stream(query, ColdBlock.class)) {
+            for (ColdBlock block : (Iterable<ColdBlock>) blocks::iterator) {
+                if (top.size() >= needed && block.getMaxTimestamp() < threshold) {
+                    break;
+                }
+                for (CityData data : ColdBlockCodec.decode(block)) {
+                    if (matches(data, from, to, geo)) {
+                        top.add(data);
+                    }
+                }
+                if (top.size() >= needed) {
+                    top.sort(newestFirst);
+                    top.subList(needed, top.size()).clear();
+                    threshold = top.get(needed - 1).getTimestamp();
+                }
+            }
+        }
+
+        top.sort(newestFirst);
+        int fromIndex = Math.min(skip, top.size());
+        return new ArrayList<>(top.subList(fromIndex, Math.min(needed, top.size())));
+    }
+
+    /**
+     * Duyệt readings COLD của sensor trong [from, to] bằng cursor, không giữ cả kết quả trong bộ nhớ.
+     * Blocks: decode lần lượt từng block (chỉ một block trong bộ nhớ); thứ tự giữa các block không đảm bảo.
+     *
+     * @param fields Chỉ đọc các field này (documents mode, null = cả document)
+     */
+    public void streamRange(String sensorId, Long from, Long to, List<String> fields, Consumer<CityData> consumer) {
+        if (storageMode == StorageMode.DOCUMENTS) {
+            for (String collection : partitionCatalog.collectionsFor(from, to, false)) {
+                Query query = documentQuery(sensorId, from, to, null).with(Sort.by(Sort.Direction.ASC, "timestamp"));
+                if (fields != null) {
+                    fields.forEach(field -> query.fields().include(field));
+                }
+                try (Stream<CityData> records = coldMongoTemplate.stream(query, CityData.class, collection)) {
+                    records.forEach(consumer);
+                }
+            }
+            return;
+        }
+
+        Query query = blockQuery(sensorId, from, to, null).with(Sort.by(Sort.Direction.ASC, "windowStart"));
+        try (Stream<ColdBlock> blocks = coldMongoTemplate.stream(query, ColdBlock.class)) {
+            for (ColdBlock block : (Iterable<ColdBlock>) blocks::iterator) {
+                for (CityData data : ColdBlockCodec.decode(block)) {
+                    if (matches(data, from, to, null)) {
+                        consumer.accept(data);
+                    }
+                }
+            }
+        }
+    }
+
+    public long count(String sensorId, Long from, Long to) {
+        return count(sensorId, from, to, null);
+    }
+
+    public long count(String sensorId, Long from, Long to, GeoFilter geo) {
+        if (storageMode == StorageMode.DOCUMENTS) {
+            long total = 0;
+            for (String collection : partitionCatalog.collectionsFor(from, to, true)) {
+                total += coldMongoTemplate.count(documentQuery(sensorId, from, to, geo), collection);
+            }
+            return total;
+        }
+
+        if (geo != null) {
+            // Vị trí chỉ biết sau khi decode: đếm từng reading của các block giao bbox
+            long total = 0;
+            Query query = blockQuery(sensorId, from, to, geo);
+            try (Stream<ColdBlock> blocks = coldMongoTemplate.stream(query, ColdBlock.class)) {
+                for (ColdBlock block : (Iterable<ColdBlock>) blocks::iterator) {
+                    total += ColdBlockCodec.decode(block).stream()
+                            .filter(data -> matches(data, from, to, geo))
+                            .count();
+                }
+            }
+            return total;
+        }
+
+        // Block nằm trọn trong khoảng: cộng count; block cắt biên: decode và đếm
+        List<Criteria> whole = blockCriteria(sensorId, from, to, null);
+        if (from != null) {
+            whole.add(Criteria.where("minTimestamp").gte(from));
+        }
+        if (to != null) {
+            whole.add(Criteria.where("maxTimestamp").lte(to));
+        }
+        Aggregation aggregation = Aggregation.newAggregation(
+                Aggregation.match(whole.isEmpty() ? new Criteria() : new Criteria().andOperator(whole)),
+                Aggregation.group().sum("count").as("total"));
+        Document result = coldMongoTemplate.aggregate(aggregation, ColdBlock.class, Document.class)
+                .getUniqueMappedResult();
+        long total = result != null && result.get("total") instanceof Number sum ? sum.longValue() : 0L;
+
+        if (from != null || to != null) {
+            List<Criteria> edges = new ArrayList<>();
+            if (from != null) {
+                edges.add(Criteria.where("minTimestamp").lt(from));
+            }
+            if (to != null) {
+                edges.add(Criteria.where("maxTimestamp").gt(to));
+            }
+            Query edgeQuery = blockQuery(sensorId, from, to, null)
+                    .addCriteria(new Criteria().orOperator(edges));
+            try (Stream<ColdBlock> blocks = coldMongoTemplate.stream(edgeQuery, ColdBlock.class)) {
+                for (ColdBlock block : (Iterable<ColdBlock>) blocks::iterator) {
+                    total += ColdBlockCodec.decode(block).stream()
+                            .filter(data -> matches(data, from, to, null))
+                            .count();
+                }
+            }
+        }
+        return total;
+    }
+
+    public CityData findById(String id) {
+        if (storageMode == StorageMode.DOCUMENTS) {
+            for (String collection : partitionCatalog.allCollections()) {
+                CityData found = coldMongoTemplate.findOne(
+                        new Query(Criteria.where("_id").is(id)), CityData.class, collection);
+                if (found != null) {
+                    return found;
+                }
+            }
+            return null;
+        }
+
+        ColdBlock block = coldMongoTemplate.findOne(new Query(Criteria.where("ids").is(id)), ColdBlock.class);
+        if (block == null) {
+            return null;
+        }
+        return ColdBlockCodec.decode(block).stream()
+                .filter(data -> id.equals(data.getId()))
+                .findFirst()
+                .orElse(null);
+    }
+
+    /**
+     * Seal các open block của những window đã đóng (quá windowEnd + grace):
+     * decode tất cả block của window, loại trùng theo ID, encode lại thành một sealed block.
+     *
+     * @return Số window đã seal
+     */
+    public int sealClosedWindows() {
+        if (storageMode != StorageMode.BLOCKS) {
+            return 0;
+        }
+        ensureBlockIndexes();
+
+        long cutoff = System.currentTimeMillis() - sealGraceMs;
+        Aggregation aggregation = Aggregation.newAggregation(
+                Aggregation.match(Criteria.where("sealed").is(false).and("windowEnd").lte(cutoff)),
+                Aggregation.group("sourceId", "windowStart"),
+                Aggregation.limit(maxWindowsPerCompaction));
+        List<Document> windows = coldMongoTemplate.aggregate(aggregation, ColdBlock.class, Document.class)
+                .getMappedResults();
+
+        int sealed = 0;
+        for (Document window : windows) {
+            Document key = window.get("_id", Document.class);
+            String sourceId = key != null ? key.getString("sourceId") : window.getString("sourceId");
+            Object windowStartValue = key != null ? key.get("windowStart") : window.get("windowStart");
+            if (!(windowStartValue instanceof Number windowStart)) {
+                continue;
+            }
+            try {
+                if (sealWindow(sourceId, windowStart.longValue())) {
+                    sealed++;
+                }
+            } catch (Exception e) {
+                log.error("Failed to seal COLD block {}:{}: {}", sourceId, windowStart, e.getMessage());
+            }
+        }
+        return sealed;
+    }
+
+    private boolean sealWindow(String sourceId, long windowStart) {
+        Query windowQuery = new Query(Criteria.where("sourceId").is(sourceId).and("windowStart").is(windowStart));
+        List<ColdBlock> blocks = coldMongoTemplate.find(windowQuery, ColdBlock.class);
+
+        List<String> openBlockIds = new ArrayList<>();
+        Map<String, CityData> merged = new LinkedHashMap<>();
+        for (ColdBlock block : blocks) {
+            if (!block.isSealed()) {
+                openBlockIds.add(block.getId());
+            }
+            for (CityData data : ColdBlockCodec.decode(block)) {
+                merged.putIfAbsent(data.getId(), data);
+            }
+        }
+        if (openBlockIds.isEmpty()) {
+            return false;
+        }
+
+        // Ghi sealed block trước, sau đó mới xóa open blocks (crash giữa chừng → lần sau gộp lại, loại trùng theo ID)
+        ColdBlock sealedBlock = ColdBlockCodec.encode(sealedBlockId(sourceId, windowStart), sourceId,
+                windowStart, windowStart + blockWindowMs, new ArrayList<>(merged.values()), true);
+        coldMongoTemplate.save(sealedBlock);
+        coldMongoTemplate.remove(new Query(Criteria.where("_id").in(openBlockIds)), ColdBlock.class);
+
+        log.debug("Sealed COLD block {} ({} readings from {} open blocks)",
+                sealedBlock.getId(), sealedBlock.getCount(), openBlockIds.size());
+        return true;
+    }
+
+    /**
+     * Retention cho COLD tier: xóa readings cũ hơn cutoff
+     * - documents + partitioning: drop cả partition đã hết hạn (collection gốc legacy vẫn xóa theo document)
+     * - documents: deleteMany theo timestamp
+     * - blocks: xóa các block có window đã kết thúc trước cutoff
+     *
+     * @return Số partition đã drop (partitioning) hoặc số document đã xóa
+     */
+    public long applyRetention(long cutoff) {
+        if (storageMode == StorageMode.BLOCKS) {
+            return coldMongoTemplate.remove(
+                    new Query(Criteria.where("windowEnd").lte(cutoff)), ColdBlock.class).getDeletedCount();
+        }
+
+        Query expiredDocuments = new Query(Criteria.where("timestamp").lt(cutoff));
+        if (!partitionCatalog.isEnabled()) {
+            return coldMongoTemplate.remove(expiredDocuments, partitionCatalog.getBaseCollection()).getDeletedCount();
+        }
+
+        long dropped = 0;
+        for (TierPartition partition : partitionCatalog.expiredBefore(cutoff)) {
+            partitionCatalog.drop(partition);
+            dropped++;
+        }
+        if (partitionCatalog.isLegacyPresent()) {
+            coldMongoTemplate.remove(expiredDocuments, partitionCatalog.getBaseCollection());
+        }
+        return dropped;
+    }
+
+    public PartitionCatalog getPartitionCatalog() {
+        return partitionCatalog;
+    }
+
+    private Map<String, List<CityData>> groupByCollection(List<CityData> records) {
+        if (!partitionCatalog.isEnabled()) {
+            return Map.of(partitionCatalog.getBaseCollection(), records);
+        }
+        Map<String, List<CityData>> groups = new LinkedHashMap<>();
+        for (CityData data : records) {
+            if (data.getTimestamp() == null) {
+                data.setTimestamp(System.currentTimeMillis());
+            }
+            groups.computeIfAbsent(partitionCatalog.collectionFor(data.getTimestamp()), k -> new ArrayList<>())
+                    .add(data);
+        }
+        return groups;
+    }
+
+    private Query documentQuery(String sensorId, Long from, Long to, GeoFilter geo) {
+        Query query = new Query().addCriteria(Criteria.where("dataType").is(DataType.COLD));
+        if (StringUtils.hasText(sensorId)) {
+            query.addCriteria(Criteria.where("sourceId").is(sensorId));
+        }
+        if (from != null || to != null) {
+            Criteria timestamp = Criteria.where("timestamp");
+            if (from != null) {
+                timestamp = timestamp.gte(from);
+            }
+            if (to != null) {
+                timestamp = timestamp.lte(to);
+            }
+            query.addCriteria(timestamp);
+        }
+        if (geo != null) {
+            query.addCriteria(geo.within("location"));
+        }
+        return query;
+    }
+
+    /**
+     * Block giao với khoảng [from, to]
+     */
+    private Query blockQuery(String sensorId, Long from, Long to, GeoFilter geo) {
+        Query query = new Query();
+        blockCriteria(sensorId, from, to, geo).forEach(query::addCriteria);
+        return query;
+    }
+
+    private List<Criteria> blockCriteria(String sensorId, Long from, Long to, GeoFilter geo) {
+        List<Criteria> criteria = new ArrayList<>();
+        if (StringUtils.hasText(sensorId)) {
+            criteria.add(Criteria.where("sourceId").is(sensorId));
+        }
+        if (from != null) {
+            criteria.add(Criteria.where("maxTimestamp").gte(from));
+        }
+        if (to != null) {
+            criteria.add(Criteria.where("minTimestamp").lte(to));
+        }
+        if (geo != null) {
+            criteria.add(geo.intersects("locations"));
+        }
+        return criteria;
+    }
+
+    private boolean matches(CityData data, Long from, Long to, GeoFilter geo) {
+        long value = data.getTimestamp() != null ? data.getTimestamp() : 0L;
+        if ((from != null && value < from) || (to != null && value > to)) {
+            return false;
+        }
+        return geo == null || (data.getLocation() != null
+                && geo.contains(data.getLocation().lat(), data.getLocation().lng()));
+    }
+
+    private long windowStartOf(long timestamp) {
+        return Math.floorDiv(timestamp, blockWindowMs) * blockWindowMs;
+    }
+
+    private String sealedBlockId(String sourceId, long windowStart) {
+        return sourceId + ":" + windowStart;
+    }
+
+    /**
+     * Tạo index cho block collection (lazy, vì Cold storage có thể down lúc khởi động)
+     */
+    private void ensureBlockIndexes() {
+        if (blockIndexesEnsured) {
+            return;
+        }
+        IndexOperations indexOps = coldMongoTemplate.indexOps(ColdBlock.class);
+        indexOps.ensureIndex(new Index().on("sourceId", Sort.Direction.ASC).on("windowStart", Sort.Direction.ASC));
+        indexOps.ensureIndex(new Index().on("maxTimestamp", Sort.Direction.DESC));
+        indexOps.ensureIndex(new Index().on("ids", Sort.Direction.ASC));
+        indexOps.ensureIndex(new Index().on("sealed", Sort.Direction.ASC).on("windowEnd", Sort.Direction.ASC));
+        indexOps.ensureIndex(new GeospatialIndex("locations").typed(GeoSpatialIndexType.GEO_2DSPHERE));
+        blockIndexesEnsured = true;
+    }
+
+    /**
+     * Index 2dsphere cho collection COLD không partition (partition mới đã có index từ PartitionCatalog)
+     */
+    private void ensureDocumentGeoIndex() {
+        if (documentGeoIndexEnsured || partitionCatalog.isEnabled()) {
+            return;
+        }
+        coldMongoTemplate.indexOps(partitionCatalog.getBaseCollection())
+                .ensureIndex(new GeospatialIndex("location").typed(GeoSpatialIndexType.GEO_2DSPHERE));
+        documentGeoIndexEnsured = true;
+    }
+}
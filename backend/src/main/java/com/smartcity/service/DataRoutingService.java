@@ -30,6 +30,7 @@
 
 package com.smartcity.service;
 
+import com.smartcity.config.SchedulingConfig;
 import com.smartcity.model.CityData;
 import com.smartcity.model.DataType;
 import com.smartcity.service.SystemHealthService.HealthStatus;
@@ -65,6 +66,14 @@ public class DataRoutingService {
     private final MongoTemplate coldMongoTemplate;
     private final RedisTemplate<String, Object> redisTemplate;
     private final SystemHealthService healthService;
+    private final WarmTierStore warmTierStore;
+    private final ColdTierStore coldTierStore;
+    private final MetricsService metricsService;
+    private final ClusterCoordinator clusterCoordinator;
+    private final ScheduledJobRunner scheduledJobRunner;
+    private final HotNearCache hotNearCache;
+    private final StoredDataPublisher storedDataPublisher;
+    private final RoutingRuleService routingRuleService;
     
     // Collection name for deferred data (persistent queue)
     private static final String DEFERRED_COLLECTION = "deferred_data";
@@ -76,11 +85,27 @@ public class DataRoutingService {
             @Qualifier("warmMongoTemplate") MongoTemplate warmMongoTemplate,
             @Qualifier("coldMongoTemplate") MongoTemplate coldMongoTemplate,
             RedisTemplate<String, Object> redisTemplate,
-            SystemHealthService healthService) {
+            SystemHealthService healthService,
+            WarmTierStore warmTierStore,
+            ColdTierStore coldTierStore,
+            MetricsService metricsService,
+            ClusterCoordinator clusterCoordinator,
+            ScheduledJobRunner scheduledJobRunner,
+            HotNearCache hotNearCache,
+            StoredDataPublisher storedDataPublisher,
+            RoutingRuleService routingRuleService) {
         this.warmMongoTemplate = warmMongoTemplate;
         this.coldMongoTemplate = coldMongoTemplate;
         this.redisTemplate = redisTemplate;
         this.healthService = healthService;
+        this.warmTierStore = warmTierStore;
+        this.coldTierStore = coldTierStore;
+        this.metricsService = metricsService;
+        this.clusterCoordinator = clusterCoordinator;
+        this.scheduledJobRunner = scheduledJobRunner;
+        this.hotNearCache = hotNearCache;
+        this.storedDataPublisher = storedDataPublisher;
+        this.routingRuleService = routingRuleService;
     }
 
     /**
@@ -99,6 +124,9 @@ public class DataRoutingService {
         HealthStatus health = healthService.getCurrentHealth();
         Set<DataType> allowedTypes = healthService.getAllowedDataTypes();
         
+        long routingStart = System.currentTimeMillis();
+        metricsService.routingStarted();
+        
         log.info("========================================");
         log.info("Starting data routing for {} records", batchData.size());
         log.info("System Health: {} | Allowed types: {}", health, allowedTypes);
@@ -113,10 +141,11 @@ public class DataRoutingService {
             for (CityData data : batchData) {
                 // Tạo ID nếu chưa có
                 data.generateId();
+                data.normalizeLocation();
                 
                 // Auto-classify nếu dataType null
                 if (data.getDataType() == null) {
-                    DataType classifiedType = classifyData(data);
+                    DataType classifiedType = routingRuleService.classify(data);
                     data.setDataType(classifiedType);
                     log.debug("Auto-classified data {} as {}", data.getId(), classifiedType);
                 }
@@ -163,6 +192,8 @@ public class DataRoutingService {
                         health, coldList.size());
             }
             
+            metricsService.recordStoreLatency(System.currentTimeMillis() - routingStart);
+            
             log.info("========================================");
             log.info("Data routing completed successfully");
             log.info("========================================");
@@ -170,75 +201,8 @@ public class DataRoutingService {
         } catch (Exception e) {
             log.error("Error during data routing: {}", e.getMessage(), e);
             throw new RuntimeException("Failed to route and store data", e);
-        }
-    }
-
-    /**
-     * Rule-based classification cho data không có dataType
-     * Logic: Dựa vào sensor type và giá trị để phân loại
-     */
-    private DataType classifyData(CityData data) {
-        // Default là WARM
-        DataType result = DataType.WARM;
-        
-        try {
-            // Lấy sensor type từ sourceId hoặc payload
-            String sourceId = data.getSourceId();
-            if (sourceId == null) {
-                return DataType.WARM;
-            }
-            
-            // Rule 1: Emergency sensors → HOT
-            if (sourceId.toLowerCase().contains("emergency") || 
-                sourceId.toLowerCase().contains("alert") ||
-                sourceId.toLowerCase().contains("fire") ||
-                sourceId.toLowerCase().contains("police")) {
-                return DataType.HOT;
-            }
-            
-            // Rule 2: Temperature sensors với ngưỡng cao → HOT
-            if (data.getPayload() != null && data.getPayload().containsKey("temperature")) {
-                Object tempObj = data.getPayload().get("temperature");
-                if (tempObj instanceof Number) {
-                    double temp = ((Number) tempObj).doubleValue();
-                    if (temp > 35 || temp < 0) {  // Nhiệt độ cực đoan
-                        return DataType.HOT;
-                    }
-                }
-            }
-            
-            // Rule 3: Air quality sensors với chất lượng kém → HOT  
-            if (data.getPayload() != null && data.getPayload().containsKey("co2_level")) {
-                Object co2Obj = data.getPayload().get("co2_level");
-                if (co2Obj instanceof Number) {
-                    int co2 = ((Number) co2Obj).intValue();
-                    if (co2 > 1000) {  // CO2 cao
-                        return DataType.HOT;
-                    }
-                }
-            }
-            
-            // Rule 4: Traffic sensors → WARM (thường xuyên truy cập)
-            if (sourceId.toLowerCase().contains("traffic") ||
-                sourceId.toLowerCase().contains("camera") ||
-                sourceId.toLowerCase().contains("parking")) {
-                return DataType.WARM;
-            }
-            
-            // Rule 5: Historical/Archive sensors → COLD
-            if (sourceId.toLowerCase().contains("archive") ||
-                sourceId.toLowerCase().contains("history") ||
-                sourceId.toLowerCase().contains("logger")) {
-                return DataType.COLD;
-            }
-            
-            // Default: WARM
-            return DataType.WARM;
-            
-        } catch (Exception e) {
-            log.warn("Error classifying data {}: {}. Using default WARM", 
-                    data.getId(), e.getMessage());
-            return DataType.WARM;
+        } finally {
+            metricsService.routingFinished();
         }
     }
 
@@ -274,6 +238,8 @@ public class DataRoutingService {
             
             storedCount = hotList.size();
             log.info("Successfully stored {} HOT records to Redis", storedCount);
+            hotNearCache.putAll(hotList);
+            storedDataPublisher.publish(DataType.HOT, hotList);
             
             // BACKUP: Lưu HOT data vào MongoDB Warm để persist sau khi Redis expire
             storeHotAsWarmBackup(hotList);
@@ -296,28 +262,17 @@ public class DataRoutingService {
         log.info("Backing up {} HOT records to MongoDB Warm for persistence", hotList.size());
         
         try {
-            // Clone và đổi dataType sang WARM
+            // Clone và đổi dataType sang WARM (giữ nguyên ID và location)
             List<CityData> warmBackup = new ArrayList<>();
             for (CityData data : hotList) {
-                CityData warm = new CityData();
-                warm.setId(data.getId()); // Giữ nguyên ID
-                warm.setSourceId(data.getSourceId());
-                warm.setTimestamp(data.getTimestamp());
-                warm.setPayload(data.getPayload());
-                warm.setDataType(DataType.WARM); // ← Change to WARM
-                warmBackup.add(warm);
+                warmBackup.add(data.copyAs(DataType.WARM));
             }
             
-            // Bulk insert vào MongoDB Warm
-            BulkOperations bulkOps = warmMongoTemplate.bulkOps(
-                    BulkOperations.BulkMode.UNORDERED,
-                    CityData.class);
-            bulkOps.insert(warmBackup);
-            
-            com.mongodb.bulk.BulkWriteResult result = bulkOps.execute();
+            // Bulk insert vào MongoDB Warm (documents hoặc time-series, tùy layout)
+            int inserted = warmTierStore.insert(warmBackup);
             
             log.info("Successfully backed up {} HOT→WARM records to MongoDB Warm (inserted={})", 
-                    warmBackup.size(), result.getInsertedCount());
+                    warmBackup.size(), inserted);
             
         } catch (Exception e) {
             log.error("Error backing up HOT data to MongoDB Warm: {}", e.getMessage(), e);
@@ -336,20 +291,16 @@ public class DataRoutingService {
             return;
         }
         
-        log.info("Storing {} WARM records to MongoDB Warm using Bulk Insert", warmList.size());
+        log.info("Storing {} WARM records to MongoDB Warm using Bulk Insert (layout={})", 
+                warmList.size(), warmTierStore.getLayout().getMode());
         
         try {
-            // Sử dụng BulkOperations để insert cả batch một lúc
-            BulkOperations bulkOps = warmMongoTemplate.bulkOps(
-                    BulkOperations.BulkMode.UNORDERED, 
-                    CityData.class);
-            
-            bulkOps.insert(warmList);
-            
-            com.mongodb.bulk.BulkWriteResult result = bulkOps.execute();
+            // Insert cả batch một lúc qua WarmTierStore
+            int inserted = warmTierStore.insert(warmList);
             
             log.info("Successfully bulk inserted {} WARM records to MongoDB Warm (inserted={})", 
-                    warmList.size(), result.getInsertedCount());
+                    warmList.size(), inserted);
+            storedDataPublisher.publish(DataType.WARM, warmList);
             
         } catch (Exception e) {
             log.error("Error bulk inserting WARM data to MongoDB: {}", e.getMessage(), e);
@@ -368,20 +319,16 @@ public class DataRoutingService {
             return;
         }
         
-        log.info("Storing {} COLD records to MongoDB Cold using Bulk Insert", coldList.size());
+        log.info("Storing {} COLD records to MongoDB Cold using Bulk Insert (mode={})", 
+                coldList.size(), coldTierStore.getStorageMode());
         
         try {
-            // Sử dụng BulkOperations để insert cả batch một lúc
-            BulkOperations bulkOps = coldMongoTemplate.bulkOps(
-                    BulkOperations.BulkMode.UNORDERED, 
-                    CityData.class);
-            
-            bulkOps.insert(coldList);
-            
-            com.mongodb.bulk.BulkWriteResult result = bulkOps.execute();
+            // Documents: bulk insert; Blocks: encode Gorilla theo (sensor, window) rồi bulk insert
+            int inserted = coldTierStore.insert(coldList);
             
             log.info("Successfully bulk inserted {} COLD records to MongoDB Cold (inserted={})", 
-                    coldList.size(), result.getInsertedCount());
+                    coldList.size(), inserted);
+            storedDataPublisher.publish(DataType.COLD, coldList);
             
         } catch (Exception e) {
             log.error("Error bulk inserting COLD data to MongoDB: {}", e.getMessage(), e);
@@ -433,10 +380,18 @@ public class DataRoutingService {
 
     /**
      * Scheduled task to process deferred data when health recovers
-     * Runs every 30 seconds
+     * Runs every 30 seconds (maintenance scheduler, không chiếm thread của ingestion)
      */
-    @Scheduled(fixedRate = 30000)
+    @Scheduled(fixedRate = 30000, scheduler = SchedulingConfig.MAINTENANCE_SCHEDULER)
     public void processDeferredData() {
+        // Nhiều instance: chỉ leader xử lý deferred collection
+        if (!clusterCoordinator.isLeader()) {
+            return;
+        }
+        scheduledJobRunner.runLocked("deferred.drain", this::drainDeferredData);
+    }
+
+    private void drainDeferredData() {
         try {
             HealthStatus health = healthService.getCurrentHealth();
             
@@ -0,0 +1,269 @@
+/*
+ * Copyright 2025 Haui.HIT - H2K
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.smartcity.service;
+
+import com.smartcity.config.EdgeNodeConfig;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.AmqpConnectException;
+import org.springframework.amqp.rabbit.connection.CachingConnectionFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PreDestroy;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.stream.Collectors;
+
+/**
+ * Edge Connection Manager
+ * Vòng đời connection tới RabbitMQ của từng edge node (do EdgeNodeRegistry điều khiển):
+ * - Lazy open: factory chỉ được tạo khi node được dùng lần đầu
+ * - Warm-up: mở sẵn connection cho node enabled (maintain)
+ * - Đổi host/port/credentials/virtual host → factory cũ bị đóng và tạo lại
+ * - Node bị xoá/disable → đóng connection
+ * - Kết nối lỗi → exponential backoff (có jitter); trong thời gian backoff node bị bỏ qua
+ *   thay vì chặn scheduler thread với connection timeout mỗi tick
+ */
+@Slf4j
+@Component
+public class EdgeConnectionManager {
+
+    private static final int CHANNEL_CACHE_SIZE = 10;
+
+    @Value("${app.edge.connection.connect-timeout-ms:5000}")
+    private int connectTimeoutMs;
+
+    @Value("${app.edge.connection.initial-backoff-ms:1000}")
+    private long initialBackoffMs;
+
+    @Value("${app.edge.connection.max-backoff-ms:60000}")
+    private long maxBackoffMs;
+
+    /** Key: node name */
+    private final Map<String, NodeConnection> connections = new ConcurrentHashMap<>();
+
+    /**
+     * Connection factory của node; tạo mới nếu chưa có hoặc cấu hình kết nối đã thay đổi
+     */
+    public CachingConnectionFactory getConnectionFactory(EdgeNodeConfig.EdgeNode node) {
+        String fingerprint = fingerprint(node);
+        NodeConnection connection = connections.compute(node.getName(), (name, existing) -> {
+            if (existing != null && existing.fingerprint.equals(fingerprint)) {
+                return existing;
+            }
+            if (existing != null) {
+                log.info("Connection settings of [{}] changed, closing previous connection to {}",
+                        name, existing.address);
+                existing.factory.destroy();
+            }
+            return open(node, fingerprint);
+        });
+        return connection.factory;
+    }
+
+    /**
+     * false nếu node đang trong thời gian backoff sau lần kết nối lỗi
+     */
+    public boolean isAvailable(EdgeNodeConfig.EdgeNode node) {
+        NodeConnection connection = connections.get(node.getName());
+        return connection == null || System.currentTimeMillis() >= connection.retryAt;
+    }
+
+    /**
+     * Trạng thái connection đã pool tới broker của node (không mở connection mới)
+     */
+    public boolean isConnected(EdgeNodeConfig.EdgeNode node) {
+        NodeConnection connection = connections.get(node.getName());
+        if (connection == null) {
+            return false;
+        }
+        // CHANNEL cache mode: localPort > 0 khi shared connection đang mở
+        String localPort = connection.factory.getCacheProperties().getProperty("localPort");
+        return localPort != null && !"0".equals(localPort);
+    }
+
+    /**
+     * Mở connection của node (nếu chưa mở)
+     *
+     * @return true nếu broker kết nối được
+     */
+    public boolean warmUp(EdgeNodeConfig.EdgeNode node) {
+        try {
+            // CachingConnectionFactory: close() chỉ trả shared connection về cache, connection vẫn mở
+            getConnectionFactory(node).createConnection().close();
+            recordSuccess(node);
+            return true;
+        } catch (Exception e) {
+            recordFailure(node, e);
+            return false;
+        }
+    }
+
+    public void recordSuccess(EdgeNodeConfig.EdgeNode node) {
+        NodeConnection connection = connections.get(node.getName());
+        if (connection == null) {
+            return;
+        }
+        synchronized (connection) {
+            if (connection.failures > 0) {
+                log.info("Reconnected to [{}] {} after {} failed attempt(s)",
+                        node.getName(), connection.address, connection.failures);
+            }
+            connection.failures = 0;
+            connection.retryAt = 0;
+            connection.lastError = null;
+            connection.connectedAt = System.currentTimeMillis();
+        }
+    }
+
+    /**
+     * Ghi nhận lỗi; chỉ lỗi kết nối (AmqpConnectException trong cause chain) mới kích hoạt backoff
+     */
+    public void recordFailure(EdgeNodeConfig.EdgeNode node, Exception error) {
+        if (!isConnectionError(error)) {
+            return;
+        }
+        NodeConnection connection = connections.get(node.getName());
+        if (connection == null) {
+            return;
+        }
+        synchronized (connection) {
+            connection.failures++;
+            long backoff = Math.min(maxBackoffMs,
+                    initialBackoffMs << Math.min(connection.failures - 1, 20));
+            // Jitter ±20% để các node cùng broker không retry đồng loạt
+            backoff = (long) (backoff * (0.8 + 0.4 * ThreadLocalRandom.current().nextDouble()));
+            connection.retryAt = System.currentTimeMillis() + backoff;
+            connection.lastError = error.getMessage();
+            log.warn("Cannot connect to [{}] {} (attempt {}), retry in {}ms: {}",
+                    node.getName(), connection.address, connection.failures, backoff, error.getMessage());
+        }
+    }
+
+    /**
+     * Warm-up node enabled chưa có connection (hết backoff), đóng connection của node bị xoá/disable
+     */
+    public void maintain(List<EdgeNodeConfig.EdgeNode> nodes) {
+        Set<String> enabled = nodes.stream()
+                .filter(EdgeNodeConfig.EdgeNode::isEnabled)
+                .map(EdgeNodeConfig.EdgeNode::getName)
+                .collect(Collectors.toSet());
+        for (String name : List.copyOf(connections.keySet())) {
+            if (!enabled.contains(name)) {
+                close(name);
+            }
+        }
+        for (EdgeNodeConfig.EdgeNode node : nodes) {
+            if (node.isEnabled() && isAvailable(node) && !isConnected(node)) {
+                warmUp(node);
+            }
+        }
+    }
+
+    /**
+     * Đóng connection của node (node bị xoá hoặc disable)
+     */
+    public void close(String name) {
+        NodeConnection connection = connections.remove(name);
+        if (connection != null) {
+            log.info("Closing connection of [{}] to {}", name, connection.address);
+            connection.factory.destroy();
+        }
+    }
+
+    /**
+     * Trạng thái connection của từng node đang được quản lý
+     */
+    public Map<String, Object> getStates() {
+        long now = System.currentTimeMillis();
+        Map<String, Object> states = new LinkedHashMap<>();
+        connections.forEach((name, connection) -> {
+            synchronized (connection) {
+                Map<String, Object> state = new LinkedHashMap<>();
+                state.put("address", connection.address);
+                state.put("createdAt", connection.createdAt);
+                state.put("connectedAt", connection.connectedAt > 0 ? connection.connectedAt : null);
+                state.put("failures", connection.failures);
+                state.put("retryInMs", Math.max(0, connection.retryAt - now));
+                state.put("lastError", connection.lastError);
+                states.put(name, state);
+            }
+        });
+        return states;
+    }
+
+    @PreDestroy
+    public void closeAll() {
+        connections.values().forEach(connection -> connection.factory.destroy());
+        connections.clear();
+    }
+
+    private NodeConnection open(EdgeNodeConfig.EdgeNode node, String fingerprint) {
+        log.info("Creating connection factory for [{}] {}:{}", node.getName(), node.getHost(), node.getPort());
+        CachingConnectionFactory factory = new CachingConnectionFactory();
+        factory.setHost(node.getHost());
+        factory.setPort(node.getPort());
+        // Use credentials từ node, hoặc default
+        if (node.getUsername() != null && node.getPassword() != null) {
+            factory.setUsername(node.getUsername());
+            factory.setPassword(node.getPassword());
+        }
+        if (node.getVirtualHost() != null) {
+            factory.setVirtualHost(node.getVirtualHost());
+        }
+        factory.setConnectionTimeout(connectTimeoutMs);
+        factory.setChannelCacheSize(CHANNEL_CACHE_SIZE);
+        return new NodeConnection(factory, fingerprint, node.getHost() + ":" + node.getPort());
+    }
+
+    private static boolean isConnectionError(Throwable error) {
+        for (Throwable cause = error; cause != null; cause = cause.getCause()) {
+            if (cause instanceof AmqpConnectException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String fingerprint(EdgeNodeConfig.EdgeNode node) {
+        return node.getHost() + ":" + node.getPort() + "|" + node.getVirtualHost() + "|" + node.getUsername()
+                + "|" + Objects.hashCode(node.getPassword());
+    }
+
+    private static class NodeConnection {
+        private final CachingConnectionFactory factory;
+        private final String fingerprint;
+        private final String address;
+        private final long createdAt = System.currentTimeMillis();
+        private long connectedAt;
+        private int failures;
+        private long retryAt;
+        private String lastError;
+
+        NodeConnection(CachingConnectionFactory factory, String fingerprint, String address) {
+            this.factory = factory;
+            this.fingerprint = fingerprint;
+            this.address = address;
+        }
+    }
+}
@@ -0,0 +1,173 @@
+/*
+ * Copyright 2025 Haui.HIT - H2K
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.smartcity.service;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.luben.zstd.ZstdInputStream;
+import com.smartcity.model.CityData;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.support.converter.MessageConverter;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Edge Message Decoder
+ * Giải mã message từ edge queue thành CityData, hỗ trợ hai format trên cùng một queue:
+ * - Single: một reading JSON mỗi message (format gốc của simulator)
+ * - Envelope: nhiều readings trong một message, body là JSON array hoặc
+ *   {"readings": [...]} với content-type application/vnd.smartcity.envelope+json
+ *
+ * Body có thể được nén, đánh dấu bằng AMQP content-encoding: gzip | zstd.
+ * Envelope được đọc bằng streaming parser và append thẳng từng reading vào batch,
+ * không dựng list/tree trung gian cho cả message.
+ */
+@Slf4j
+@Component
+public class EdgeMessageDecoder {
+
+    public static final String ENVELOPE_CONTENT_TYPE = "application/vnd.smartcity.envelope+json";
+
+    private final MessageConverter messageConverter;
+    private final ObjectMapper objectMapper;
+
+    public EdgeMessageDecoder(MessageConverter messageConverter, ObjectMapper objectMapper) {
+        this.messageConverter = messageConverter;
+        this.objectMapper = objectMapper;
+    }
+
+    /**
+     * Giải mã message và append các readings vào batch
+     *
+     * @return Số readings đã append
+     * @throws IOException nếu body không giải nén/parse được; các readings đã đọc trước lỗi vẫn nằm trong batch
+     */
+    public int decodeInto(Message message, List<CityData> batch) throws IOException {
+        MessageProperties properties = message.getMessageProperties();
+        String encoding = normalizeEncoding(properties.getContentEncoding());
+        boolean envelope = properties.getContentType() != null
+                && properties.getContentType().toLowerCase(Locale.ROOT).startsWith(ENVELOPE_CONTENT_TYPE);
+        byte[] body = message.getBody();
+
+        // Format gốc: giữ nguyên đường MessageConverter (type id headers, ...)
+        if (encoding == null && !envelope && firstNonWhitespace(body) != '[') {
+            CityData data = convertSingle(messageConverter.fromMessage(message));
+            if (data == null) {
+                return 0;
+            }
+            batch.add(data);
+            return 1;
+        }
+
+        try (InputStream in = open(body, encoding); JsonParser parser = objectMapper.createParser(in)) {
+            JsonToken token = parser.nextToken();
+            if (token == JsonToken.START_ARRAY) {
+                return readReadings(parser, batch);
+            }
+            if (token != JsonToken.START_OBJECT) {
+                throw new IOException("Expected JSON object or array, got " + token);
+            }
+            if (!envelope) {
+                // Single reading được nén
+                return add(parser.readValueAs(CityData.class), batch);
+            }
+            int count = 0;
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                JsonToken value = parser.nextToken();
+                if ("readings".equals(field) && value == JsonToken.START_ARRAY) {
+                    count += readReadings(parser, batch);
+                } else {
+                    parser.skipChildren();
+                }
+            }
+            return count;
+        }
+    }
+
+    private int readReadings(JsonParser parser, List<CityData> batch) throws IOException {
+        int count = 0;
+        while (parser.nextToken() == JsonToken.START_OBJECT) {
+            count += add(parser.readValueAs(CityData.class), batch);
+        }
+        return count;
+    }
+
+    private static int add(CityData data, List<CityData> batch) {
+        if (data == null || data.getSourceId() == null) {
+            return 0;
+        }
+        batch.add(data);
+        return 1;
+    }
+
+    private CityData convertSingle(Object message) {
+        if (message instanceof CityData cityData) {
+            return cityData;
+        }
+        if (message instanceof Map) {
+            // LinkedHashMap from JSON deserialization
+            return objectMapper.convertValue(message, CityData.class);
+        }
+        log.warn("Received unknown message type: {}", message == null ? null : message.getClass().getName());
+        return null;
+    }
+
+    private static InputStream open(byte[] body, String encoding) throws IOException {
+        InputStream raw = new ByteArrayInputStream(body);
+        if (encoding == null) {
+            return raw;
+        }
+        return switch (encoding) {
+            case "gzip" -> new GZIPInputStream(raw);
+            case "zstd" -> new ZstdInputStream(raw);
+            default -> throw new IOException("Unsupported content-encoding: " + encoding);
+        };
+    }
+
+    private static String normalizeEncoding(String contentEncoding) {
+        if (contentEncoding == null || contentEncoding.isBlank()) {
+            return null;
+        }
+        String encoding = contentEncoding.trim().toLowerCase(Locale.ROOT);
+        // Spring AMQP mặc định ghi "UTF-8" (charset) vào content-encoding
+        if (encoding.equals("identity") || encoding.startsWith("utf")) {
+            return null;
+        }
+        return encoding.equals("x-gzip") ? "gzip" : encoding;
+    }
+
+    private static int firstNonWhitespace(byte[] body) {
+        for (byte b : body) {
+            if (!Character.isWhitespace(b)) {
+                return b;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,266 @@
+/*
+ * Copyright 2025 Haui.HIT - H2K
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.smartcity.service;
+
+import com.smartcity.config.EdgeNodeConfig;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Edge Monitor
+ * Theo dõi nền từng edge node: queue depth, consumer count (passive declare), trạng thái
+ * connection đã pool, lần pull thành công gần nhất, thời gian pull và messages/sec.
+ *
+ * Việc kiểm tra broker chạy theo lịch (edge.monitor.interval-ms); API chỉ đọc snapshot đã cache.
+ * Mỗi node được export thành gauges "edge.<node>.*" trong /api/stats/metrics.
+ */
+@Slf4j
+@Component
+public class EdgeMonitor {
+
+    private static final double RATE_EWMA_ALPHA = 0.3;
+
+    private final EdgeNodeRegistry edgeNodeRegistry;
+    private final EdgeQueueInspector edgeQueueInspector;
+    private final EdgeConnectionManager edgeConnectionManager;
+    private final MetricsService metricsService;
+    private final ScheduledJobRunner scheduledJobRunner;
+
+    private final Map<String, NodeHealth> nodes = new ConcurrentHashMap<>();
+
+    public EdgeMonitor(EdgeNodeRegistry edgeNodeRegistry,
+                       EdgeQueueInspector edgeQueueInspector,
+                       EdgeConnectionManager edgeConnectionManager,
+                       MetricsService metricsService,
+                       ScheduledJobRunner scheduledJobRunner) {
+        this.edgeNodeRegistry = edgeNodeRegistry;
+        this.edgeQueueInspector = edgeQueueInspector;
+        this.edgeConnectionManager = edgeConnectionManager;
+        this.metricsService = metricsService;
+        this.scheduledJobRunner = scheduledJobRunner;
+    }
+
+    /**
+     * Kiểm tra queue/connection của tất cả nodes và cập nhật messages/sec
+     */
+    @Scheduled(fixedDelayString = "${edge.monitor.interval-ms:5000}",
+               initialDelayString = "${ingestion.schedule.initial-delay}")
+    public void checkNodes() {
+        scheduledJobRunner.run("edge.monitor", this::inspectNodes);
+    }
+
+    private void inspectNodes() {
+        List<EdgeNodeConfig.EdgeNode> all = edgeNodeRegistry.getAllNodes();
+        Set<String> names = all.stream().map(EdgeNodeConfig.EdgeNode::getName).collect(Collectors.toSet());
+        nodes.keySet().removeIf(name -> {
+            if (names.contains(name)) {
+                return false;
+            }
+            metricsService.unregisterGauges(gaugePrefix(name));
+            return true;
+        });
+
+        for (EdgeNodeConfig.EdgeNode node : all) {
+            NodeHealth health = health(node.getName());
+            long now = System.currentTimeMillis();
+            if (!node.isEnabled()) {
+                synchronized (health) {
+                    health.state = "DISABLED";
+                    health.connected = false;
+                    health.updateRate(now);
+                }
+                continue;
+            }
+
+            EdgeQueueInspector.QueueStats stats =
+                    edgeQueueInspector.inspect(node, EdgeQueueInspector.queueName(node));
+            EdgeQueueInspector.QueueStats priority = node.getPriorityQueueName() != null
+                    ? edgeQueueInspector.inspect(node, node.getPriorityQueueName())
+                    : null;
+            boolean connected = edgeConnectionManager.isConnected(node);
+
+            synchronized (health) {
+                health.checkedAt = now;
+                health.connected = connected;
+                if (stats != null) {
+                    health.state = "ONLINE";
+                    health.lastSeenAt = now;
+                    health.queueDepth = stats.messages();
+                    health.consumers = stats.consumers();
+                    health.checkError = null;
+                } else {
+                    health.state = connected ? "QUEUE_UNAVAILABLE" : "UNREACHABLE";
+                    health.queueDepth = -1;
+                    health.consumers = -1;
+                    health.checkError = "Passive declare failed for " + EdgeQueueInspector.queueName(node);
+                }
+                health.priorityQueueDepth = priority != null ? priority.messages() : -1;
+                health.updateRate(now);
+            }
+        }
+    }
+
+    /**
+     * Lượt pull thành công (gọi từ RabbitMQIngestionService)
+     */
+    public void recordPull(String node, long now, int messages, int readings, long durationMs, long queueDepth) {
+        NodeHealth health = health(node);
+        synchronized (health) {
+            health.lastPullAt = now;
+            health.lastPullDurationMs = durationMs;
+            health.lastPullMessages = messages;
+            health.messagesTotal += messages;
+            health.readingsTotal += readings;
+            health.lastSeenAt = now;
+            health.pullError = null;
+            if (queueDepth >= 0) {
+                health.queueDepth = Math.max(0, queueDepth - messages);
+            }
+        }
+    }
+
+    public void recordPullFailure(String node, long now, String error) {
+        NodeHealth health = health(node);
+        synchronized (health) {
+            health.lastPullFailureAt = now;
+            health.pullError = error;
+            health.pullFailures++;
+        }
+    }
+
+    /**
+     * Snapshot đã cache của node; null nếu node chưa được theo dõi
+     */
+    public Map<String, Object> getSnapshot(String node) {
+        NodeHealth health = nodes.get(node);
+        if (health == null) {
+            return null;
+        }
+        synchronized (health) {
+            Map<String, Object> snapshot = new LinkedHashMap<>();
+            snapshot.put("state", health.state);
+            snapshot.put("connected", health.connected);
+            snapshot.put("queueDepth", health.queueDepth);
+            snapshot.put("priorityQueueDepth", health.priorityQueueDepth);
+            snapshot.put("consumers", health.consumers);
+            snapshot.put("messagesPerSecond", Math.round(health.messagesPerSecond * 10) / 10.0);
+            snapshot.put("readingsPerSecond", Math.round(health.readingsPerSecond * 10) / 10.0);
+            snapshot.put("lastSeenAt", health.lastSeenAt > 0 ? health.lastSeenAt : null);
+            snapshot.put("checkedAt", health.checkedAt > 0 ? health.checkedAt : null);
+            snapshot.put("lastPullAt", health.lastPullAt > 0 ? health.lastPullAt : null);
+            snapshot.put("lastPullDurationMs", health.lastPullDurationMs);
+            snapshot.put("lastPullMessages", health.lastPullMessages);
+            snapshot.put("lastPullFailureAt", health.lastPullFailureAt > 0 ? health.lastPullFailureAt : null);
+            snapshot.put("pullFailures", health.pullFailures);
+            snapshot.put("error", health.pullError != null ? health.pullError : health.checkError);
+            return snapshot;
+        }
+    }
+
+    /**
+     * Node được coi là online nếu lần kiểm tra gần nhất đọc được queue
+     * (chưa kiểm tra lần nào: dựa vào enabled)
+     */
+    public boolean isOnline(EdgeNodeConfig.EdgeNode node) {
+        NodeHealth health = nodes.get(node.getName());
+        if (!node.isEnabled()) {
+            return false;
+        }
+        if (health == null) {
+            return true;
+        }
+        synchronized (health) {
+            return health.checkedAt == 0 || "ONLINE".equals(health.state);
+        }
+    }
+
+    private NodeHealth health(String node) {
+        return nodes.computeIfAbsent(node, name -> {
+            NodeHealth health = new NodeHealth();
+            String prefix = gaugePrefix(name);
+            metricsService.registerGauge(prefix + "queue_depth", () -> read(health, h -> h.queueDepth));
+            metricsService.registerGauge(prefix + "priority_queue_depth", () -> read(health, h -> h.priorityQueueDepth));
+            metricsService.registerGauge(prefix + "consumers", () -> read(health, h -> h.consumers));
+            metricsService.registerGauge(prefix + "messages_per_second", () -> read(health, h -> h.messagesPerSecond));
+            metricsService.registerGauge(prefix + "last_pull_duration_ms", () -> read(health, h -> h.lastPullDurationMs));
+            metricsService.registerGauge(prefix + "last_pull_age_seconds", () -> read(health,
+                    h -> h.lastPullAt > 0 ? (System.currentTimeMillis() - h.lastPullAt) / 1000 : -1));
+            metricsService.registerGauge(prefix + "connected", () -> read(health, h -> h.connected ? 1 : 0));
+            metricsService.registerGauge(prefix + "pull_failures", () -> read(health, h -> h.pullFailures));
+            return health;
+        });
+    }
+
+    private static Number read(NodeHealth health, Function<NodeHealth, Number> field) {
+        synchronized (health) {
+            return field.apply(health);
+        }
+    }
+
+    private static String gaugePrefix(String node) {
+        return "edge." + node.toLowerCase(Locale.ROOT).replaceAll("[^a-z0-9]+", "_") + ".";
+    }
+
+    private static class NodeHealth {
+        private String state = "UNKNOWN";
+        private boolean connected;
+        private long queueDepth = -1;
+        private long priorityQueueDepth = -1;
+        private int consumers = -1;
+        private long checkedAt;
+        private long lastSeenAt;
+        private long lastPullAt;
+        private long lastPullDurationMs;
+        private int lastPullMessages;
+        private long lastPullFailureAt;
+        private long pullFailures;
+        private String pullError;
+        private String checkError;
+
+        private long messagesTotal;
+        private long readingsTotal;
+        private long rateSampledAt;
+        private long rateMessagesMark;
+        private long rateReadingsMark;
+        private double messagesPerSecond;
+        private double readingsPerSecond;
+
+        void updateRate(long now) {
+            if (rateSampledAt > 0 && now > rateSampledAt) {
+                double seconds = (now - rateSampledAt) / 1000.0;
+                double messageRate = (messagesTotal - rateMessagesMark) / seconds;
+                double readingRate = (readingsTotal - rateReadingsMark) / seconds;
+                messagesPerSecond = RATE_EWMA_ALPHA * messageRate + (1 - RATE_EWMA_ALPHA) * messagesPerSecond;
+                readingsPerSecond = RATE_EWMA_ALPHA * readingRate + (1 - RATE_EWMA_ALPHA) * readingsPerSecond;
+            }
+            rateSampledAt = now;
+            rateMessagesMark = messagesTotal;
+            rateReadingsMark = readingsTotal;
+        }
+    }
+}
@@ -31,11 +31,23 @@
 package com.smartcity.service;
 
 import com.smartcity.config.EdgeNodeConfig;
+import com.smartcity.model.EdgeRegistrySnapshot;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
 import jakarta.annotation.PostConstruct;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.stream.Collectors;
 
 /**
@@ -45,16 +57,39 @@ import java.util.stream.Collectors;
  * Chức năng:
  * - Load danh sách Edge Nodes từ config
  * - Cung cấp danh sách nodes "Active" để Ingestion Service sử dụng
- * - (Optional) Health check để kiểm tra nodes còn sống
+ * - Quản lý vòng đời connection của từng node qua EdgeConnectionManager
+ *   (warm-up định kỳ, đóng khi node bị xoá/disable)
+ * - Lưu thay đổi vào MongoDB Warm (edge_registry); lần khởi động sau dùng bản đã lưu
+ *   thay cho app.edge.nodes. Password không được lưu: lấy từ app.edge.nodes theo tên node,
+ *   node không có trong config dùng credentials mặc định của spring.rabbitmq sau khi restart
+ * - Nhiều instance: bản lưu được nạp lại mỗi lần maintain khi updatedAt đổi, để thay đổi qua
+ *   /api/nodes trên một instance có hiệu lực ở mọi instance (phân công edge nodes của cluster)
  */
 @Slf4j
 @Service
 public class EdgeNodeRegistry {
 
+    private static final String SNAPSHOT_ID = "edge-nodes";
+
     private final EdgeNodeConfig edgeNodeConfig;
+    private final EdgeConnectionManager edgeConnectionManager;
+    private final MongoTemplate warmMongoTemplate;
+
+    /** Password theo tên node từ app.edge.nodes (trước khi bị thay bằng bản lưu) */
+    private final Map<String, String> configuredPasswords = new HashMap<>();
+
+    /** updatedAt của bản lưu đang áp dụng (instance này ghi hoặc đã nạp) */
+    private volatile Long appliedVersion;
 
-    public EdgeNodeRegistry(EdgeNodeConfig edgeNodeConfig) {
+    @Value("${app.edge.persistence.enabled:true}")
+    private boolean persistenceEnabled;
+
+    public EdgeNodeRegistry(EdgeNodeConfig edgeNodeConfig,
+                            EdgeConnectionManager edgeConnectionManager,
+                            @Qualifier("warmMongoTemplate") MongoTemplate warmMongoTemplate) {
         this.edgeNodeConfig = edgeNodeConfig;
+        this.edgeConnectionManager = edgeConnectionManager;
+        this.warmMongoTemplate = warmMongoTemplate;
     }
 
     /**
@@ -66,6 +101,15 @@ public class EdgeNodeRegistry {
         log.info("Edge Node Registry - Initializing");
         log.info("========================================");
         
+        // Danh sách được đọc từ nhiều scheduler thread trong khi /api/nodes thêm/xoá node
+        edgeNodeConfig.setNodes(new CopyOnWriteArrayList<>(edgeNodeConfig.getNodes()));
+        for (EdgeNodeConfig.EdgeNode node : edgeNodeConfig.getNodes()) {
+            if (node.getPassword() != null) {
+                configuredPasswords.put(node.getName(), node.getPassword());
+            }
+        }
+        loadPersistedNodes();
+        
         List<EdgeNodeConfig.EdgeNode> nodes = getAvailableNodes();
         
         log.info("DNS Resolved: Found {} Edge Storage(s)", nodes.size());
@@ -82,6 +126,41 @@ public class EdgeNodeRegistry {
         log.info("========================================");
     }
 
+    /**
+     * Warm-up connection của nodes enabled, đóng connection của nodes đã bị xoá/disable
+     */
+    @Scheduled(fixedDelayString = "${app.edge.connection.maintain-interval-ms:10000}",
+               initialDelayString = "${ingestion.schedule.initial-delay}")
+    public void maintainConnections() {
+        refreshFromStore();
+        edgeConnectionManager.maintain(List.copyOf(getAllNodes()));
+    }
+
+    /**
+     * Nạp lại bản lưu nếu instance khác đã thay đổi registry (chỉ đọc updatedAt khi không có thay đổi)
+     */
+    public synchronized void refreshFromStore() {
+        if (!persistenceEnabled) {
+            return;
+        }
+        try {
+            Query versionQuery = new Query(Criteria.where("_id").is(SNAPSHOT_ID));
+            versionQuery.fields().include("updatedAt");
+            EdgeRegistrySnapshot head = warmMongoTemplate.findOne(versionQuery, EdgeRegistrySnapshot.class);
+            if (head == null || Objects.equals(head.getUpdatedAt(), appliedVersion)) {
+                return;
+            }
+            EdgeRegistrySnapshot snapshot = warmMongoTemplate.findById(SNAPSHOT_ID, EdgeRegistrySnapshot.class);
+            if (snapshot != null && snapshot.getNodes() != null) {
+                applySnapshot(snapshot);
+                log.info("Edge registry changed on another instance: {} node(s), updated at {}",
+                        snapshot.getNodes().size(), snapshot.getUpdatedAt());
+            }
+        } catch (Exception e) {
+            log.warn("Cannot refresh edge registry, keeping current nodes: {}", e.getMessage());
+        }
+    }
+
     /**
      * Lấy danh sách Edge Nodes đang available (enabled)
      * 
@@ -142,6 +221,8 @@ public class EdgeNodeRegistry {
      * @return true if added successfully, false if node with same name already exists
      */
     public synchronized boolean addNode(EdgeNodeConfig.EdgeNode node) {
+        // Áp dụng thay đổi của instance khác trước để không ghi đè chúng khi lưu
+        refreshFromStore();
         // Check if node with same name already exists
         if (getNodeByName(node.getName()) != null) {
             log.warn("Cannot add node: Node with name '{}' already exists", node.getName());
@@ -150,6 +231,8 @@ public class EdgeNodeRegistry {
         
         edgeNodeConfig.getNodes().add(node);
         log.info("Added new edge node: {} | {}:{}", node.getName(), node.getHost(), node.getPort());
+        // Connection mở lazy ở lần pull đầu tiên hoặc lần maintain kế tiếp
+        persistNodes();
         return true;
     }
     
@@ -161,6 +244,7 @@ public class EdgeNodeRegistry {
      * @return true if updated successfully, false if node not found
      */
     public synchronized boolean updateNodeStatus(String name, boolean enabled) {
+        refreshFromStore();
         EdgeNodeConfig.EdgeNode node = getNodeByName(name);
         if (node == null) {
             log.warn("Cannot update status: Node '{}' not found", name);
@@ -169,6 +253,10 @@ public class EdgeNodeRegistry {
         
         node.setEnabled(enabled);
         log.info("Updated node '{}' status to: {}", name, enabled ? "ENABLED" : "DISABLED");
+        if (!enabled) {
+            edgeConnectionManager.close(name);
+        }
+        persistNodes();
         return true;
     }
     
@@ -179,6 +267,7 @@ public class EdgeNodeRegistry {
      * @return true if deleted successfully, false if node not found
      */
     public synchronized boolean deleteNode(String name) {
+        refreshFromStore();
         EdgeNodeConfig.EdgeNode node = getNodeByName(name);
         if (node == null) {
             log.warn("Cannot delete: Node '{}' not found", name);
@@ -187,8 +276,78 @@ public class EdgeNodeRegistry {
         
         boolean removed = edgeNodeConfig.getNodes().remove(node);
         if (removed) {
+            edgeConnectionManager.close(name);
             log.info("Deleted edge node: {}", name);
+            persistNodes();
         }
         return removed;
     }
+
+    /**
+     * Thay app.edge.nodes bằng danh sách đã lưu (nếu có)
+     * MongoDB Warm không khả dụng → giữ cấu hình từ application.yml
+     */
+    private void loadPersistedNodes() {
+        if (!persistenceEnabled) {
+            return;
+        }
+        try {
+            EdgeRegistrySnapshot snapshot = warmMongoTemplate.findById(SNAPSHOT_ID, EdgeRegistrySnapshot.class);
+            if (snapshot == null || snapshot.getNodes() == null) {
+                log.info("No persisted registry, using app.edge.nodes");
+                return;
+            }
+            applySnapshot(snapshot);
+            log.info("Loaded {} edge node(s) persisted at {}", snapshot.getNodes().size(), snapshot.getUpdatedAt());
+        } catch (Exception e) {
+            log.warn("Cannot load persisted registry, using app.edge.nodes: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Thay danh sách nodes bằng bản lưu (một lần swap, reader không thấy danh sách rỗng).
+     * Password: app.edge.nodes, rồi password đang dùng trong memory (node được thêm qua API trên
+     * instance này), rồi password còn trong bản lưu cũ
+     */
+    private void applySnapshot(EdgeRegistrySnapshot snapshot) {
+        Map<String, String> currentPasswords = new HashMap<>();
+        for (EdgeNodeConfig.EdgeNode node : edgeNodeConfig.getNodes()) {
+            if (node.getPassword() != null) {
+                currentPasswords.put(node.getName(), node.getPassword());
+            }
+        }
+        for (EdgeNodeConfig.EdgeNode node : snapshot.getNodes()) {
+            String password = configuredPasswords.getOrDefault(node.getName(), currentPasswords.get(node.getName()));
+            if (password != null) {
+                node.setPassword(password);
+            } else if (node.getPassword() == null) {
+                log.warn("Edge node [{}] has no password in app.edge.nodes, using spring.rabbitmq credentials",
+                        node.getName());
+            }
+        }
+        edgeNodeConfig.setNodes(new CopyOnWriteArrayList<>(snapshot.getNodes()));
+        appliedVersion = snapshot.getUpdatedAt();
+    }
+
+    /**
+     * Lưu danh sách nodes hiện tại (không có password); lỗi chỉ được log, thay đổi vẫn có hiệu lực trong memory
+     */
+    private void persistNodes() {
+        if (!persistenceEnabled) {
+            return;
+        }
+        try {
+            EdgeRegistrySnapshot snapshot = new EdgeRegistrySnapshot(SNAPSHOT_ID);
+            List<EdgeNodeConfig.EdgeNode> nodes = new ArrayList<>();
+            for (EdgeNodeConfig.EdgeNode node : edgeNodeConfig.getNodes()) {
+                nodes.add(node.withoutPassword());
+            }
+            snapshot.setNodes(nodes);
+            snapshot.setUpdatedAt(System.currentTimeMillis());
+            warmMongoTemplate.save(snapshot);
+            appliedVersion = snapshot.getUpdatedAt();
+        } catch (Exception e) {
+            log.error("Failed to persist edge registry: {}", e.getMessage());
+        }
+    }
 }
@@ -0,0 +1,83 @@
+/*
+ * Copyright 2025 Haui.HIT - H2K
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.smartcity.service;
+
+import com.rabbitmq.client.AMQP;
+import com.smartcity.config.EdgeNodeConfig;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.stereotype.Component;
+
+/**
+ * Edge Queue Inspector
+ * Đọc độ sâu queue của các edge RabbitMQ bằng passive declare
+ * (không tạo queue, không consume message). Connection lấy từ EdgeConnectionManager.
+ */
+@Slf4j
+@Component
+public class EdgeQueueInspector {
+
+    public static final String DEFAULT_QUEUE_NAME = "city-data-queue";
+
+    private final EdgeConnectionManager edgeConnectionManager;
+
+    public EdgeQueueInspector(EdgeConnectionManager edgeConnectionManager) {
+        this.edgeConnectionManager = edgeConnectionManager;
+    }
+
+    public static String queueName(EdgeNodeConfig.EdgeNode node) {
+        return node.getQueueName() != null ? node.getQueueName() : DEFAULT_QUEUE_NAME;
+    }
+
+    /**
+     * Số message đang chờ trong queue của node (passive declare)
+     *
+     * @return message count, -1 nếu không đọc được (broker down, queue chưa tồn tại, ...)
+     */
+    public long getQueueDepth(EdgeNodeConfig.EdgeNode node) {
+        QueueStats stats = inspect(node, queueName(node));
+        return stats != null ? stats.messages() : -1;
+    }
+
+    /**
+     * Message count và consumer count của một queue trên broker của node (passive declare)
+     *
+     * @return null nếu không đọc được hoặc node đang trong thời gian backoff kết nối
+     */
+    public QueueStats inspect(EdgeNodeConfig.EdgeNode node, String queue) {
+        if (!edgeConnectionManager.isAvailable(node)) {
+            return null;
+        }
+        try {
+            RabbitTemplate template = new RabbitTemplate(edgeConnectionManager.getConnectionFactory(node));
+            QueueStats stats = template.execute(channel -> {
+                AMQP.Queue.DeclareOk ok = channel.queueDeclarePassive(queue);
+                return new QueueStats(ok.getMessageCount(), ok.getConsumerCount());
+            });
+            edgeConnectionManager.recordSuccess(node);
+            return stats;
+        } catch (Exception e) {
+            edgeConnectionManager.recordFailure(node, e);
+            log.debug("[{}] - Cannot inspect queue {}: {}", node.getName(), queue, e.getMessage());
+            return null;
+        }
+    }
+
+    public record QueueStats(long messages, int consumers) {
+    }
+}
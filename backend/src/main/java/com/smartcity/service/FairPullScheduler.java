@@ -0,0 +1,267 @@
+/*
+ * Copyright 2025 Haui.HIT - H2K
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.smartcity.service;
+
+import com.smartcity.config.EdgeNodeConfig;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Fair Pull Scheduler
+ * Chia capacity ingestion giữa các edge node có backlog theo Deficit Round Robin:
+ * - Mỗi vòng có round-readings readings; node có backlog được cộng quantum vào deficit,
+ *   quantum = max(weight / tổng weight của các node tham gia vòng, minShare) * round-readings
+ * - Node chỉ được pull tối đa deficit readings (và không quá batch size adaptive của node)
+ * - Node hết backlog bị reset deficit, không tích lũy quyền ưu tiên khi đang rảnh
+ * - Thứ tự phục vụ xoay vòng để node đầu danh sách không luôn được phục vụ trước
+ *
+ * Node có minShare > 0 được kiểm tra queue ở mọi vòng khi node khác đang drain backlog,
+ * kể cả khi chưa đến lượt theo lịch adaptive.
+ */
+@Slf4j
+@Component
+public class FairPullScheduler {
+
+    @Value("${ingestion.fair.enabled:true}")
+    private boolean enabled;
+
+    @Value("${ingestion.fair.round-readings:5000}")
+    private int roundReadings;
+
+    @Value("${ingestion.fair.share-window-ms:60000}")
+    private long shareWindowMs;
+
+    private final Map<String, NodeShare> shares = new ConcurrentHashMap<>();
+    private int rotation;
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Node có share tối thiểu được đảm bảo: kiểm tra queue ở mọi vòng drain
+     */
+    public boolean isGuaranteed(EdgeNodeConfig.EdgeNode node) {
+        return enabled && node.getMinShare() > 0;
+    }
+
+    /**
+     * Thứ tự phục vụ của một vòng: xoay vòng điểm bắt đầu sau mỗi vòng
+     */
+    public synchronized List<EdgeNodeConfig.EdgeNode> roundOrder(List<EdgeNodeConfig.EdgeNode> participants) {
+        if (participants.size() < 2) {
+            return participants;
+        }
+        int start = Math.floorMod(rotation++, participants.size());
+        List<EdgeNodeConfig.EdgeNode> ordered = new ArrayList<>(participants.size());
+        ordered.addAll(participants.subList(start, participants.size()));
+        ordered.addAll(participants.subList(0, start));
+        return ordered;
+    }
+
+    /**
+     * Cộng quantum của vòng này vào deficit của node
+     *
+     * @param participants các node tham gia vòng (để chuẩn hoá weight)
+     * @param batchSize    batch size adaptive hiện tại của node (chặn trên deficit)
+     * @return số readings tối đa node được pull trong lượt này
+     */
+    public int grant(EdgeNodeConfig.EdgeNode node, Collection<EdgeNodeConfig.EdgeNode> participants, int batchSize) {
+        if (!enabled) {
+            return batchSize;
+        }
+        NodeShare share = share(node.getName());
+        synchronized (share) {
+            long quantum = Math.max(1, Math.round(targetShare(node, participants) * roundReadings));
+            // Không để deficit tích lũy quá một lượt pull lớn nhất, tránh burst sau một loạt vòng bị chặn
+            share.deficit = Math.min(share.deficit + quantum, Math.max(quantum, batchSize));
+            return (int) Math.min(batchSize, share.deficit);
+        }
+    }
+
+    /**
+     * Ghi nhận số readings node đã dùng trong lượt
+     *
+     * @param backlog còn message trong queue sau lượt pull
+     */
+    public void consumed(String node, long now, int readings, long queueDepth, boolean backlog) {
+        NodeShare share = share(node);
+        synchronized (share) {
+            share.deficit = backlog ? Math.max(0, share.deficit - readings) : 0;
+            share.queueDepth = queueDepth;
+            if (backlog && share.backlogSince == 0) {
+                share.backlogSince = now;
+            } else if (!backlog) {
+                share.backlogSince = 0;
+            }
+            if (readings > 0) {
+                share.served.addLast(new long[]{now, readings});
+                share.servedInWindow += readings;
+                share.lastServedAt = now;
+            }
+            prune(share, now);
+        }
+    }
+
+    /**
+     * Queue rỗng: reset deficit
+     */
+    public void idle(String node, long now) {
+        consumed(node, now, 0, 0, false);
+    }
+
+    public void retainNodes(Collection<String> nodes) {
+        shares.keySet().retainAll(nodes);
+    }
+
+    /**
+     * Share cấu hình và share thực tế trong share-window-ms, cùng lag của từng node
+     */
+    public Map<String, Object> getShares(List<EdgeNodeConfig.EdgeNode> nodes) {
+        long now = System.currentTimeMillis();
+        List<EdgeNodeConfig.EdgeNode> enabledNodes = nodes.stream().filter(EdgeNodeConfig.EdgeNode::isEnabled).toList();
+
+        long totalServed = 0;
+        for (EdgeNodeConfig.EdgeNode node : enabledNodes) {
+            NodeShare share = share(node.getName());
+            synchronized (share) {
+                prune(share, now);
+                totalServed += share.servedInWindow;
+            }
+        }
+
+        List<Map<String, Object>> result = new ArrayList<>();
+        for (EdgeNodeConfig.EdgeNode node : nodes) {
+            Map<String, Object> entry = new LinkedHashMap<>();
+            entry.put("node", node.getName());
+            entry.put("enabled", node.isEnabled());
+            entry.put("weight", node.getWeight());
+            entry.put("minShare", node.getMinShare());
+            NodeShare share = share(node.getName());
+            synchronized (share) {
+                double ratePerSecond = share.servedInWindow * 1000.0 / shareWindowMs;
+                entry.put("configuredShare", node.isEnabled() ? round(targetShare(node, enabledNodes)) : 0.0);
+                entry.put("actualShare", totalServed > 0 ? round((double) share.servedInWindow / totalServed) : 0.0);
+                entry.put("servedReadings", share.servedInWindow);
+                entry.put("readingsPerSecond", round(ratePerSecond));
+                entry.put("deficit", share.deficit);
+                entry.put("queueDepth", share.queueDepth);
+                entry.put("backlogSince", share.backlogSince > 0 ? share.backlogSince : null);
+                entry.put("lastServedAt", share.lastServedAt > 0 ? share.lastServedAt : null);
+                // Ước lượng thời gian drain backlog hiện tại với tốc độ phục vụ gần đây
+                entry.put("estimatedLagSeconds", share.queueDepth <= 0 ? 0.0
+                        : ratePerSecond > 0 ? round(share.queueDepth / ratePerSecond) : null);
+            }
+            result.add(entry);
+        }
+        Map<String, Object> summary = new LinkedHashMap<>();
+        summary.put("enabled", enabled);
+        summary.put("roundReadings", roundReadings);
+        summary.put("windowMs", shareWindowMs);
+        summary.put("servedReadings", totalServed);
+        summary.put("nodes", result);
+        return summary;
+    }
+
+    /**
+     * Share của node trong nhóm participants: node có minShare được giữ sàn trước,
+     * phần còn lại chia theo weight cho các node khác (lặp cho đến khi không node nào rơi dưới sàn)
+     */
+    private static double targetShare(EdgeNodeConfig.EdgeNode node, Collection<EdgeNodeConfig.EdgeNode> participants) {
+        double totalFloor = 0;
+        for (EdgeNodeConfig.EdgeNode participant : participants) {
+            totalFloor += clampShare(participant.getMinShare());
+        }
+        // Tổng sàn vượt 100%: scale các sàn về tỉ lệ
+        double floorScale = totalFloor > 1.0 ? 1.0 / totalFloor : 1.0;
+
+        Set<String> floored = new HashSet<>();
+        boolean changed = true;
+        double remaining = 1.0;
+        double weightSum = 0;
+        while (changed) {
+            changed = false;
+            remaining = 1.0;
+            weightSum = 0;
+            for (EdgeNodeConfig.EdgeNode participant : participants) {
+                if (floored.contains(participant.getName())) {
+                    remaining -= clampShare(participant.getMinShare()) * floorScale;
+                } else {
+                    weightSum += Math.max(0, participant.getWeight());
+                }
+            }
+            for (EdgeNodeConfig.EdgeNode participant : participants) {
+                if (!floored.contains(participant.getName())
+                        && weightedShare(participant, remaining, weightSum) < clampShare(participant.getMinShare()) * floorScale) {
+                    floored.add(participant.getName());
+                    changed = true;
+                }
+            }
+        }
+        if (floored.contains(node.getName())) {
+            return clampShare(node.getMinShare()) * floorScale;
+        }
+        long unfloored = participants.stream().filter(p -> !floored.contains(p.getName())).count();
+        return weightSum > 0
+                ? weightedShare(node, remaining, weightSum)
+                : Math.max(0, remaining) / Math.max(1, unfloored);
+    }
+
+    private static double weightedShare(EdgeNodeConfig.EdgeNode node, double remaining, double weightSum) {
+        return weightSum > 0 ? Math.max(0, remaining) * Math.max(0, node.getWeight()) / weightSum : 0;
+    }
+
+    private static double clampShare(double share) {
+        return Math.min(1.0, Math.max(0, share));
+    }
+
+    private void prune(NodeShare share, long now) {
+        while (!share.served.isEmpty() && share.served.peekFirst()[0] < now - shareWindowMs) {
+            share.servedInWindow -= share.served.pollFirst()[1];
+        }
+    }
+
+    private static double round(double value) {
+        return Math.round(value * 1000) / 1000.0;
+    }
+
+    private NodeShare share(String node) {
+        return shares.computeIfAbsent(node, k -> new NodeShare());
+    }
+
+    private static class NodeShare {
+        private long deficit;
+        private long queueDepth = -1;
+        private long backlogSince;
+        private long lastServedAt;
+        private long servedInWindow;
+        private final Deque<long[]> served = new ArrayDeque<>();
+    }
+}
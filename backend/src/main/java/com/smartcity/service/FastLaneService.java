@@ -0,0 +1,227 @@
+/*
+ * Copyright 2025 Haui.HIT - H2K
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.smartcity.service;
+
+import com.smartcity.model.CityData;
+import com.smartcity.model.DataType;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Fast Lane Service
+ * Đường ghi ưu tiên cho HOT/emergency readings: ghi thẳng vào Redis (HOT tier) ngay khi nhận,
+ * bỏ qua ML classification theo batch và routing WARM/COLD.
+ * Backup sang MongoDB Warm (như HOT data trong DataRoutingService) chạy nền để không chặn fast lane.
+ *
+ * Nguồn:
+ * - PRIORITY_QUEUE: priority queue của edge node (PriorityQueueConsumers)
+ * - RULE: readings trên queue thường gửi kèm dataType HOT, hoặc không có dataType và được
+ *   routing rules (RoutingRuleService, hot reload) xếp vào HOT; dataType WARM/COLD của sender được giữ
+ */
+@Slf4j
+@Service
+public class FastLaneService {
+
+    public enum Lane { PRIORITY_QUEUE, RULE }
+
+    private final RedisTemplate<String, Object> redisTemplate;
+    private final WarmTierStore warmTierStore;
+    private final MetricsService metricsService;
+    private final HotNearCache hotNearCache;
+    private final StoredDataPublisher storedDataPublisher;
+    private final RoutingRuleService routingRuleService;
+
+    @Value("${fast-lane.enabled:true}")
+    private boolean enabled;
+
+    @Value("${fast-lane.explicit-hot:true}")
+    private boolean explicitHot;
+
+    @Value("${fast-lane.backup-queue-capacity:10000}")
+    private int backupQueueCapacity;
+
+    @Value("${redis.hot-data.ttl}")
+    private long hotDataTtl;
+
+    private ThreadPoolExecutor backupExecutor;
+
+    public FastLaneService(RedisTemplate<String, Object> redisTemplate,
+                           WarmTierStore warmTierStore,
+                           MetricsService metricsService,
+                           HotNearCache hotNearCache,
+                           StoredDataPublisher storedDataPublisher,
+                           RoutingRuleService routingRuleService) {
+        this.redisTemplate = redisTemplate;
+        this.warmTierStore = warmTierStore;
+        this.metricsService = metricsService;
+        this.hotNearCache = hotNearCache;
+        this.storedDataPublisher = storedDataPublisher;
+        this.routingRuleService = routingRuleService;
+    }
+
+    @PostConstruct
+    public void init() {
+        // Một thread backup; queue đầy thì caller tự backup (chậm lại thay vì mất dữ liệu)
+        backupExecutor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, backupQueueCapacity)),
+                r -> {
+                    Thread thread = new Thread(r, "fast-lane-backup");
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.CallerRunsPolicy());
+        metricsService.registerGauge("fast_lane.backup_queue_depth", () -> backupExecutor.getQueue().size());
+        log.info("Fast lane: {} (routing rules HOT, explicit HOT={})",
+                enabled ? "ENABLED" : "DISABLED", explicitHot);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (backupExecutor != null) {
+            backupExecutor.shutdown();
+            try {
+                backupExecutor.awaitTermination(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Reading có đi fast lane không: dataType HOT gửi kèm, hoặc chưa có dataType và routing rules
+     * phân loại HOT (cùng kết quả với đường batch nên tier không đổi, chỉ nhanh hơn)
+     */
+    public boolean matches(CityData data) {
+        if (data.getDataType() != null) {
+            return explicitHot && data.getDataType() == DataType.HOT;
+        }
+        return routingRuleService.classify(data) == DataType.HOT;
+    }
+
+    /**
+     * Tách các readings khớp rules trong batch[fromIndex..] và ghi qua fast lane.
+     * Readings còn lại được dồn về cuối batch theo thứ tự cũ; nếu ghi fast lane lỗi,
+     * readings được trả lại batch để đi đường thường.
+     *
+     * @return Số readings đã ghi qua fast lane
+     */
+    public int extractAndStore(List<CityData> batch, int fromIndex) {
+        if (!enabled || fromIndex >= batch.size()) {
+            return 0;
+        }
+        List<CityData> fast = null;
+        int write = fromIndex;
+        for (int read = fromIndex; read < batch.size(); read++) {
+            CityData data = batch.get(read);
+            if (matches(data)) {
+                if (fast == null) {
+                    fast = new ArrayList<>();
+                }
+                fast.add(data);
+            } else {
+                batch.set(write++, data);
+            }
+        }
+        if (fast == null) {
+            return 0;
+        }
+        batch.subList(write, batch.size()).clear();
+        try {
+            store(fast, Lane.RULE);
+            return fast.size();
+        } catch (Exception e) {
+            log.error("Fast lane write failed, falling back to batch routing: {}", e.getMessage());
+            batch.addAll(fast);
+            return 0;
+        }
+    }
+
+    /**
+     * Ghi readings vào HOT tier (Redis pipeline) rồi xếp backup sang MongoDB Warm
+     *
+     * @throws RuntimeException nếu Redis lỗi (caller quyết định requeue/fallback)
+     */
+    public void store(List<CityData> readings, Lane lane) {
+        if (readings.isEmpty()) {
+            return;
+        }
+        long start = System.currentTimeMillis();
+        for (CityData data : readings) {
+            data.generateId();
+            data.normalizeLocation();
+            data.setDataType(DataType.HOT);
+        }
+
+        redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (CityData data : readings) {
+                redisTemplate.opsForValue().set("hot:citydata:" + data.getId(), data, hotDataTtl, TimeUnit.SECONDS);
+            }
+            return null;
+        });
+        hotNearCache.putAll(readings);
+        storedDataPublisher.publish(DataType.HOT, readings);
+
+        long now = System.currentTimeMillis();
+        metricsService.recordIncoming(readings.size());
+        metricsService.recordProcessed(readings.size());
+        String prefix = "fast_lane." + lane.name().toLowerCase(Locale.ROOT);
+        metricsService.incrementCounter(prefix + ".readings", readings.size());
+        metricsService.recordTimer(prefix + ".store_latency", now - start);
+        for (CityData data : readings) {
+            // Từ thời điểm sensor ghi nhận tới khi có trong Redis (phụ thuộc đồng hồ của edge)
+            if (data.getTimestamp() != null && data.getTimestamp() <= now) {
+                metricsService.recordTimer(prefix + ".end_to_end_latency", now - data.getTimestamp());
+            }
+        }
+        log.debug("Fast lane ({}) stored {} HOT readings in {}ms", lane, readings.size(), now - start);
+
+        backupExecutor.execute(() -> backupToWarm(readings));
+    }
+
+    /**
+     * Backup HOT readings vào MongoDB Warm để persist sau khi Redis TTL expire
+     */
+    private void backupToWarm(List<CityData> readings) {
+        try {
+            List<CityData> warmBackup = new ArrayList<>(readings.size());
+            for (CityData data : readings) {
+                warmBackup.add(data.copyAs(DataType.WARM));
+            }
+            warmTierStore.insert(warmBackup);
+        } catch (Exception e) {
+            metricsService.incrementCounter("fast_lane.backup_failures");
+            log.error("Fast lane backup to MongoDB Warm failed: {}", e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,262 @@
+/*
+ * Copyright 2025 Haui.HIT - H2K
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.smartcity.service;
+
+import com.smartcity.archive.ColdBlockCodec;
+import com.smartcity.config.SchedulingConfig;
+import com.smartcity.model.ColdBlock;
+import com.smartcity.model.GeoPoint;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Geo Backfill
+ * Gán location cho readings WARM/COLD được lưu trước khi có lọc theo vị trí (và các bản backup /
+ * migration từng làm mất location), để $geoWithin / $geoIntersects tìm thấy chúng. Chạy một lần:
+ * - Quét theo _id tăng dần, checkpoint theo từng collection trong geo_backfill_checkpoints (MongoDB Warm);
+ *   collection quét xong không bị quét lại (ghi mới luôn có location)
+ * - Document thiếu field location: tính từ payload.location, không hợp lệ thì ghi null
+ * - COLD blocks thiếu locations: decode block để tính MultiPoint
+ * - Bỏ qua WARM time-series: MongoDB &lt; 7.0 không update được field ngoài metaField,
+ *   readings cũ có location khi lifecycle copy sang COLD (CityData.copyAs)
+ */
+@Slf4j
+@Service
+public class GeoBackfillService {
+
+    private static final String CHECKPOINT_COLLECTION = "geo_backfill_checkpoints";
+
+    private final WarmTierStore warmTierStore;
+    private final ColdTierStore coldTierStore;
+    private final MongoTemplate warmMongoTemplate;
+    private final MongoTemplate coldMongoTemplate;
+    private final MetricsService metricsService;
+    private final ClusterCoordinator clusterCoordinator;
+    private final ScheduledJobRunner scheduledJobRunner;
+
+    @Value("${geo-backfill.enabled:true}")
+    private boolean enabled;
+
+    @Value("${geo-backfill.batch-size:1000}")
+    private int batchSize;
+
+    @Value("${geo-backfill.block-batch-size:50}")
+    private int blockBatchSize;
+
+    @Value("${geo-backfill.max-batches-per-run:20}")
+    private int maxBatchesPerRun;
+
+    /** Mọi collection đã quét xong trong lượt gần nhất */
+    private volatile boolean completed;
+
+    public GeoBackfillService(
+            WarmTierStore warmTierStore,
+            ColdTierStore coldTierStore,
+            @Qualifier("warmMongoTemplate") MongoTemplate warmMongoTemplate,
+            @Qualifier("coldMongoTemplate") MongoTemplate coldMongoTemplate,
+            MetricsService metricsService,
+            ClusterCoordinator clusterCoordinator,
+            ScheduledJobRunner scheduledJobRunner) {
+        this.warmTierStore = warmTierStore;
+        this.coldTierStore = coldTierStore;
+        this.warmMongoTemplate = warmMongoTemplate;
+        this.coldMongoTemplate = coldMongoTemplate;
+        this.metricsService = metricsService;
+        this.clusterCoordinator = clusterCoordinator;
+        this.scheduledJobRunner = scheduledJobRunner;
+    }
+
+    @Scheduled(fixedDelayString = "${geo-backfill.interval-ms:60000}",
+               initialDelayString = "${geo-backfill.interval-ms:60000}",
+               scheduler = SchedulingConfig.MAINTENANCE_SCHEDULER)
+    public void scheduledRun() {
+        // Checkpoint dùng chung, chỉ leader backfill
+        if (!enabled || completed || !clusterCoordinator.isLeader()) {
+            return;
+        }
+        scheduledJobRunner.runLocked("geo.backfill", this::runOnce);
+    }
+
+    /**
+     * Một lượt backfill (tối đa maxBatchesPerRun batch trên tất cả collection)
+     *
+     * @return Số document / block đã cập nhật
+     */
+    public long runOnce() {
+        Set<String> done = loadDone();
+        int[] batchesLeft = {maxBatchesPerRun};
+        long updated = 0;
+        boolean pending = false;
+
+        if (!warmTierStore.getLayout().isTimeSeries()) {
+            for (String collection : warmTierStore.getPartitionCatalog().allCollections()) {
+                if (!done.contains("warm:" + collection)) {
+                    BackfillResult result = backfillDocuments(warmMongoTemplate, "warm:" + collection, collection,
+                            batchesLeft);
+                    updated += result.updated();
+                    pending |= !result.drained();
+                }
+            }
+        }
+
+        try {
+            if (coldTierStore.getStorageMode() == ColdTierStore.StorageMode.BLOCKS) {
+                String collection = coldMongoTemplate.getCollectionName(ColdBlock.class);
+                if (!done.contains("cold-blocks:" + collection)) {
+                    BackfillResult result = backfillBlocks("cold-blocks:" + collection, batchesLeft);
+                    updated += result.updated();
+                    pending |= !result.drained();
+                }
+            } else {
+                for (String collection : coldTierStore.getPartitionCatalog().allCollections()) {
+                    if (!done.contains("cold:" + collection)) {
+                        BackfillResult result = backfillDocuments(coldMongoTemplate, "cold:" + collection,
+                                collection, batchesLeft);
+                        updated += result.updated();
+                        pending |= !result.drained();
+                    }
+                }
+            }
+        } catch (RuntimeException e) {
+            // COLD down: WARM vẫn được backfill, COLD làm tiếp ở lượt sau
+            log.warn("Geo backfill of COLD tier failed: {}", e.getMessage());
+            pending = true;
+        }
+
+        if (updated > 0) {
+            metricsService.incrementCounter("geo_backfill.updated", updated);
+            log.info("Geo backfill: set location on {} WARM/COLD records", updated);
+        }
+        if (!pending) {
+            completed = true;
+            log.info("Geo backfill completed");
+        }
+        return updated;
+    }
+
+    /**
+     * Document chưa có field location, quét theo _id từ checkpoint
+     */
+    private BackfillResult backfillDocuments(MongoTemplate template, String checkpointId, String collection,
+                                             int[] batchesLeft) {
+        Object lastId = loadLastId(checkpointId);
+        long updated = 0;
+        while (batchesLeft[0] > 0) {
+            Query query = new Query(Criteria.where("location").exists(false))
+                    .with(Sort.by(Sort.Direction.ASC, "_id"))
+                    .limit(batchSize);
+            if (lastId != null) {
+                query.addCriteria(Criteria.where("_id").gt(lastId));
+            }
+            query.fields().include("_id").include("payload.location");
+            List<Document> batch = template.find(query, Document.class, collection);
+            if (batch.isEmpty()) {
+                saveCheckpoint(checkpointId, lastId, true);
+                return new BackfillResult(updated, true);
+            }
+            batchesLeft[0]--;
+
+            BulkOperations bulkOps = template.bulkOps(BulkOperations.BulkMode.UNORDERED, collection);
+            for (Document document : batch) {
+                GeoPoint location = GeoPoint.fromPayload(document.get("payload", Document.class));
+                bulkOps.updateOne(new Query(Criteria.where("_id").is(document.get("_id"))),
+                        Update.update("location", location != null ? toGeoJson(location) : null));
+            }
+            bulkOps.execute();
+            updated += batch.size();
+            lastId = batch.get(batch.size() - 1).get("_id");
+            saveCheckpoint(checkpointId, lastId, false);
+        }
+        return new BackfillResult(updated, false);
+    }
+
+    /**
+     * COLD block chưa có field locations: decode để lấy vị trí của readings
+     */
+    private BackfillResult backfillBlocks(String checkpointId, int[] batchesLeft) {
+        String lastId = (String) loadLastId(checkpointId);
+        long updated = 0;
+        while (batchesLeft[0] > 0) {
+            Query query = new Query(Criteria.where("locations").exists(false))
+                    .with(Sort.by(Sort.Direction.ASC, "_id"))
+                    .limit(blockBatchSize);
+            if (lastId != null) {
+                query.addCriteria(Criteria.where("_id").gt(lastId));
+            }
+            List<ColdBlock> batch = coldMongoTemplate.find(query, ColdBlock.class);
+            if (batch.isEmpty()) {
+                saveCheckpoint(checkpointId, lastId, true);
+                return new BackfillResult(updated, true);
+            }
+            batchesLeft[0]--;
+
+            BulkOperations bulkOps = coldMongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, ColdBlock.class);
+            for (ColdBlock block : batch) {
+                bulkOps.updateOne(new Query(Criteria.where("_id").is(block.getId())),
+                        Update.update("locations", ColdBlockCodec.locationsOf(ColdBlockCodec.decode(block))));
+            }
+            bulkOps.execute();
+            updated += batch.size();
+            lastId = batch.get(batch.size() - 1).getId();
+            saveCheckpoint(checkpointId, lastId, false);
+        }
+        return new BackfillResult(updated, false);
+    }
+
+    private Document toGeoJson(GeoPoint location) {
+        return new Document("type", "Point").append("coordinates", List.of(location.lng(), location.lat()));
+    }
+
+    private Set<String> loadDone() {
+        Set<String> done = new HashSet<>();
+        Query query = new Query(Criteria.where("done").is(true));
+        query.fields().include("_id");
+        for (Document checkpoint : warmMongoTemplate.find(query, Document.class, CHECKPOINT_COLLECTION)) {
+            done.add(checkpoint.getString("_id"));
+        }
+        return done;
+    }
+
+    /** _id thô (ObjectId hoặc String) của document cuối đã xử lý */
+    private Object loadLastId(String checkpointId) {
+        Document checkpoint = warmMongoTemplate.findById(checkpointId, Document.class, CHECKPOINT_COLLECTION);
+        return checkpoint != null ? checkpoint.get("lastId") : null;
+    }
+
+    private void saveCheckpoint(String checkpointId, Object lastId, boolean done) {
+        warmMongoTemplate.upsert(new Query(Criteria.where("_id").is(checkpointId)),
+                new Update().set("lastId", lastId).set("done", done).set("updatedAt", System.currentTimeMillis()),
+                CHECKPOINT_COLLECTION);
+    }
+
+    private record BackfillResult(long updated, boolean drained) {
+    }
+}
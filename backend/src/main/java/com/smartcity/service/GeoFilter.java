@@ -0,0 +1,139 @@
+/*
+ * Copyright 2025 Haui.HIT - H2K
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.smartcity.service;
+
+import com.smartcity.model.GeoPoint;
+import org.springframework.data.geo.Circle;
+import org.springframework.data.geo.Point;
+import org.springframework.data.mongodb.core.geo.GeoJsonPolygon;
+import org.springframework.data.mongodb.core.query.Criteria;
+
+/**
+ * Bộ lọc vị trí cho /api/data: bounding box [minLng, minLat, maxLng, maxLat] hoặc bán kính quanh (lat, lng).
+ * Mỗi tier push-down theo cách riêng (2dsphere $geoWithin, GEOSEARCH), rồi {@link #contains} lọc chính xác.
+ */
+public record GeoFilter(double minLng, double minLat, double maxLng, double maxLat,
+                        Double centerLat, Double centerLng, Double radiusMeters) {
+
+    public static final double EARTH_RADIUS_METERS = 6_371_008.8;
+
+    /**
+     * Bbox dạng "minLng,minLat,maxLng,maxLat" (thứ tự GeoJSON)
+     */
+    public static GeoFilter bbox(String bbox) {
+        String[] parts = bbox.split(",");
+        if (parts.length != 4) {
+            throw new IllegalArgumentException("bbox phải có dạng minLng,minLat,maxLng,maxLat");
+        }
+        double[] values = new double[4];
+        for (int i = 0; i < 4; i++) {
+            try {
+                values[i] = Double.parseDouble(parts[i].trim());
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("bbox không hợp lệ: " + bbox);
+            }
+        }
+        if (!GeoPoint.isValid(values[1], values[0]) || !GeoPoint.isValid(values[3], values[2])
+                || values[0] >= values[2] || values[1] >= values[3]) {
+            throw new IllegalArgumentException("bbox không hợp lệ: " + bbox);
+        }
+        return new GeoFilter(values[0], values[1], values[2], values[3], null, null, null);
+    }
+
+    /**
+     * Vòng tròn bán kính radiusMeters quanh (lat, lng); bbox bao ngoài dùng cho tier chỉ lọc được theo hộp
+     */
+    public static GeoFilter radius(double lat, double lng, double radiusMeters) {
+        if (!GeoPoint.isValid(lat, lng) || !(radiusMeters > 0)) {
+            throw new IllegalArgumentException("lat/lng/radius không hợp lệ");
+        }
+        double dLat = Math.toDegrees(radiusMeters / EARTH_RADIUS_METERS);
+        double cosLat = Math.cos(Math.toRadians(lat));
+        double dLng = cosLat > 1e-9 ? Math.min(180, dLat / cosLat) : 180;
+        return new GeoFilter(Math.max(-180, lng - dLng), Math.max(-90, lat - dLat),
+                Math.min(180, lng + dLng), Math.min(90, lat + dLat), lat, lng, radiusMeters);
+    }
+
+    public boolean isRadius() {
+        return radiusMeters != null;
+    }
+
+    public boolean contains(double lat, double lng) {
+        if (isRadius()) {
+            return distanceMeters(centerLat, centerLng, lat, lng) <= radiusMeters;
+        }
+        return lat >= minLat && lat <= maxLat && lng >= minLng && lng <= maxLng;
+    }
+
+    /**
+     * $geoWithin trên field GeoJSON Point (WARM/COLD documents)
+     */
+    public Criteria within(String field) {
+        if (isRadius()) {
+            return Criteria.where(field).withinSphere(
+                    new Circle(new Point(centerLng, centerLat), radiusMeters / EARTH_RADIUS_METERS));
+        }
+        return Criteria.where(field).within(boundingPolygon());
+    }
+
+    /**
+     * $geoIntersects với bbox (bao ngoài) trên field GeoJSON bất kỳ (MultiPoint của COLD block)
+     */
+    public Criteria intersects(String field) {
+        return Criteria.where(field).intersects(boundingPolygon());
+    }
+
+    public double centerLatitude() {
+        return isRadius() ? centerLat : (minLat + maxLat) / 2;
+    }
+
+    public double centerLongitude() {
+        return isRadius() ? centerLng : (minLng + maxLng) / 2;
+    }
+
+    /**
+     * Kích thước bbox theo mét (rộng đo ở vĩ độ gần xích đạo nhất để không hụt)
+     */
+    public double widthMeters() {
+        double lat = minLat <= 0 && maxLat >= 0 ? 0 : Math.min(Math.abs(minLat), Math.abs(maxLat));
+        return Math.toRadians(maxLng - minLng) * EARTH_RADIUS_METERS * Math.cos(Math.toRadians(lat));
+    }
+
+    public double heightMeters() {
+        return Math.toRadians(maxLat - minLat) * EARTH_RADIUS_METERS;
+    }
+
+    public static double distanceMeters(double lat1, double lng1, double lat2, double lng2) {
+        double dLat = Math.toRadians(lat2 - lat1);
+        double dLng = Math.toRadians(lng2 - lng1);
+        double a = Math.sin(dLat / 2) * Math.sin(dLat / 2)
+                + Math.cos(Math.toRadians(lat1)) * Math.cos(Math.toRadians(lat2))
+                * Math.sin(dLng / 2) * Math.sin(dLng / 2);
+        return 2 * EARTH_RADIUS_METERS * Math.asin(Math.min(1, Math.sqrt(a)));
+    }
+
+    /**
+     * Thêm đỉnh giữa mỗi cạnh ngang để không cạnh nào vượt 180° kinh độ (GeoJSON lấy cạnh ngắn hơn)
+     */
+    private GeoJsonPolygon boundingPolygon() {
+        double midLng = (minLng + maxLng) / 2;
+        return new GeoJsonPolygon(
+                new Point(minLng, minLat), new Point(midLng, minLat), new Point(maxLng, minLat),
+                new Point(maxLng, maxLat), new Point(midLng, maxLat), new Point(minLng, maxLat),
+                new Point(minLng, minLat));
+    }
+}
@@ -0,0 +1,223 @@
+/*
+ * Copyright 2025 Haui.HIT - H2K
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.smartcity.service;
+
+import com.smartcity.model.CityData;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Group Commit Publisher
+ * Gom các single publish (POST /api/publish?async=true) đồng thời thành micro-batch:
+ * một batch được commit khi đủ max-batch-size record hoặc hết window-ms kể từ record đầu tiên.
+ * Mỗi caller nhận lại CityData (id + tier đã phân loại) khi batch chứa nó được lưu xong,
+ * nên số round trip tới Redis/Mongo tỉ lệ với số batch thay vì số request.
+ */
+@Slf4j
+@Service
+public class GroupCommitPublisher {
+
+    private final DataRoutingService dataRoutingService;
+
+    @Value("${publish.group-commit.enabled:true}")
+    private boolean enabled;
+
+    @Value("${publish.group-commit.max-batch-size:500}")
+    private int maxBatchSize;
+
+    @Value("${publish.group-commit.window-ms:20}")
+    private long windowMs;
+
+    @Value("${publish.group-commit.queue-capacity:10000}")
+    private int queueCapacity;
+
+    private BlockingQueue<PendingPublish> queue;
+    private Thread committer;
+    private volatile boolean running;
+
+    private final AtomicLong committedRecords = new AtomicLong();
+    private final AtomicLong committedBatches = new AtomicLong();
+    private final AtomicLong failedBatches = new AtomicLong();
+    private final AtomicLong rejectedRecords = new AtomicLong();
+
+    public GroupCommitPublisher(DataRoutingService dataRoutingService) {
+        this.dataRoutingService = dataRoutingService;
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!enabled) {
+            log.info("Group commit for single publishes: DISABLED");
+            return;
+        }
+        queue = new ArrayBlockingQueue<>(queueCapacity);
+        running = true;
+        committer = new Thread(this::commitLoop, "publish-group-commit");
+        committer.setDaemon(true);
+        committer.start();
+        log.info("Group commit for single publishes: max-batch-size={}, window={}ms, queue-capacity={}",
+                maxBatchSize, windowMs, queueCapacity);
+    }
+
+    @PreDestroy
+    public void stop() {
+        running = false;
+        if (committer != null) {
+            committer.interrupt();
+            try {
+                committer.join(TimeUnit.SECONDS.toMillis(5));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Xếp một record vào group commit kế tiếp
+     *
+     * @return Future hoàn thành với chính record (đã có id và dataType) sau khi batch được lưu;
+     *         fail ngay với RejectedExecutionException nếu queue đầy
+     */
+    public CompletableFuture<CityData> submit(CityData data) {
+        CompletableFuture<CityData> future = new CompletableFuture<>();
+        if (!enabled || !running) {
+            future.completeExceptionally(new RejectedExecutionException("Group commit is not running"));
+            return future;
+        }
+        data.generateId();
+        if (!queue.offer(new PendingPublish(data, future))) {
+            rejectedRecords.incrementAndGet();
+            future.completeExceptionally(new RejectedExecutionException("Group commit queue is full"));
+        }
+        return future;
+    }
+
+    /**
+     * Số record đang chờ commit
+     */
+    public int getQueueDepth() {
+        return queue != null ? queue.size() : 0;
+    }
+
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    public Map<String, Object> getStats() {
+        long batches = committedBatches.get();
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("queueDepth", getQueueDepth());
+        stats.put("committedRecords", committedRecords.get());
+        stats.put("committedBatches", batches);
+        stats.put("averageBatchSize", batches > 0 ? (double) committedRecords.get() / batches : 0);
+        stats.put("failedBatches", failedBatches.get());
+        stats.put("rejectedRecords", rejectedRecords.get());
+        return stats;
+    }
+
+    private void commitLoop() {
+        List<PendingPublish> batch = new ArrayList<>(maxBatchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                PendingPublish first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+
+                // Gom thêm cho tới khi đủ batch hoặc hết window
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(windowMs);
+                while (batch.size() < maxBatchSize) {
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0) {
+                        queue.drainTo(batch, maxBatchSize - batch.size());
+                        break;
+                    }
+                    PendingPublish next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                    queue.drainTo(batch, maxBatchSize - batch.size());
+                }
+
+                commit(batch);
+
+            } catch (InterruptedException e) {
+                // Shutdown: commit nốt phần còn lại trong queue
+                queue.drainTo(batch);
+                commit(batch);
+                if (running) {
+                    running = false;
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void commit(List<PendingPublish> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+
+        List<CityData> records = new ArrayList<>(batch.size());
+        for (PendingPublish pending : batch) {
+            records.add(pending.data());
+        }
+
+        try {
+            dataRoutingService.routeAndStore(records);
+            committedRecords.addAndGet(records.size());
+            committedBatches.incrementAndGet();
+            for (PendingPublish pending : batch) {
+                pending.future().complete(pending.data());
+            }
+            log.debug("Group commit: {} single publishes in one batch", records.size());
+        } catch (Exception e) {
+            failedBatches.incrementAndGet();
+            log.error("Group commit of {} records failed: {}", records.size(), e.getMessage());
+            for (PendingPublish pending : batch) {
+                pending.future().completeExceptionally(e);
+            }
+        }
+    }
+
+    private record PendingPublish(CityData data, CompletableFuture<CityData> future) {
+    }
+}
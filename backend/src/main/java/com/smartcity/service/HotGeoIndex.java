@@ -0,0 +1,164 @@
+/*
+ * Copyright 2025 Haui.HIT - H2K
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.smartcity.service;
+
+import com.smartcity.model.CityData;
+import com.smartcity.model.DataType;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.geo.Distance;
+import org.springframework.data.geo.GeoResult;
+import org.springframework.data.geo.GeoResults;
+import org.springframework.data.geo.Point;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisGeoCommands;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.domain.geo.GeoReference;
+import org.springframework.data.redis.domain.geo.GeoShape;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Geo index cho HOT tier: Redis GEO (sorted set geohash 52-bit) chia theo bucket thời gian ghi
+ * "hot:geo:<bucketStart>", để index hết hạn theo cùng TTL với các key hot:citydata:* mà không cần xoá từng member.
+ * - Ghi: sau khi records HOT được lưu (StoredDataListener), một pipeline GEOADD + PEXPIREAT mỗi bucket;
+ *   vị trí có |lat| > {@value #MAX_LATITUDE} bị bỏ qua
+ * - Đọc: GEOSEARCH (BYBOX/BYRADIUS) trên các bucket còn sống, lọc chính xác lại theo {@link GeoFilter#contains};
+ *   id có thể đã hết hạn ở Redis, caller MGET và bỏ qua id thiếu
+ * Nằm trong Redis (không phải JVM) để mọi instance thấy cùng một index như chính HOT tier.
+ */
+@Slf4j
+@Service
+public class HotGeoIndex implements StoredDataListener {
+
+    static final String KEY_PREFIX = "hot:geo:";
+    /** Giới hạn vĩ độ của Redis GEO (EPSG:3857); GEOADD ngoài khoảng này lỗi cả lệnh */
+    static final double MAX_LATITUDE = 85.05112878;
+
+    private final StringRedisTemplate stringRedisTemplate;
+    private final MetricsService metricsService;
+
+    @Value("${hot-geo.enabled:true}")
+    private boolean enabled;
+
+    @Value("${hot-geo.bucket-ms:600000}")
+    private long bucketMs;
+
+    @Value("${hot-geo.max-results:10000}")
+    private int maxResults;
+
+    @Value("${redis.hot-data.ttl}")
+    private long hotDataTtl;
+
+    public HotGeoIndex(StringRedisTemplate stringRedisTemplate, MetricsService metricsService) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.metricsService = metricsService;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    @Override
+    public void onStored(DataType tier, List<CityData> records) {
+        if (!enabled || tier != DataType.HOT) {
+            return;
+        }
+        Map<byte[], Point> members = new HashMap<>();
+        int skipped = 0;
+        for (CityData data : records) {
+            if (data.getLocation() == null || data.getId() == null) {
+                continue;
+            }
+            // Vùng cực không index được ở HOT (vẫn lọc được ở WARM/COLD qua 2dsphere)
+            if (Math.abs(data.getLocation().lat()) > MAX_LATITUDE) {
+                skipped++;
+                continue;
+            }
+            members.put(data.getId().getBytes(StandardCharsets.UTF_8),
+                    new Point(data.getLocation().lng(), data.getLocation().lat()));
+        }
+        if (skipped > 0) {
+            metricsService.incrementCounter("hot_geo.skipped", skipped);
+        }
+        if (members.isEmpty()) {
+            return;
+        }
+        long bucketStart = bucketOf(System.currentTimeMillis());
+        byte[] key = (KEY_PREFIX + bucketStart).getBytes(StandardCharsets.UTF_8);
+        long expireAt = bucketStart + bucketMs + hotDataTtl * 1000;
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            index(connection, key, members, expireAt);
+            return null;
+        });
+        metricsService.incrementCounter("hot_geo.indexed", members.size());
+    }
+
+    /**
+     * Id các record HOT trong vùng (tối đa max-results mỗi bucket, gần tâm trước)
+     */
+    public Set<String> search(GeoFilter filter) {
+        long start = System.currentTimeMillis();
+        GeoReference<String> center = GeoReference.fromCoordinate(filter.centerLongitude(), filter.centerLatitude());
+        // Nới nhẹ vùng tìm: Redis đo khoảng cách với bán kính Trái Đất hơi khác, kết quả được lọc lại chính xác
+        GeoShape shape = filter.isRadius()
+                ? GeoShape.byRadius(new Distance(filter.radiusMeters() * 1.01, RedisGeoCommands.DistanceUnit.METERS))
+                : GeoShape.byBox(filter.widthMeters() * 1.01, filter.heightMeters() * 1.01,
+                        RedisGeoCommands.DistanceUnit.METERS);
+        RedisGeoCommands.GeoSearchCommandArgs args = RedisGeoCommands.GeoSearchCommandArgs.newGeoSearchArgs()
+                .includeCoordinates()
+                .sortAscending()
+                .limit(maxResults);
+
+        Set<String> ids = new LinkedHashSet<>();
+        long newest = bucketOf(start);
+        for (long bucket = bucketOf(start - hotDataTtl * 1000); bucket <= newest; bucket += bucketMs) {
+            GeoResults<RedisGeoCommands.GeoLocation<String>> results =
+                    stringRedisTemplate.opsForGeo().search(KEY_PREFIX + bucket, center, shape, args);
+            if (results == null) {
+                continue;
+            }
+            if (results.getContent().size() >= maxResults) {
+                metricsService.incrementCounter("hot_geo.truncated");
+            }
+            for (GeoResult<RedisGeoCommands.GeoLocation<String>> result : results) {
+                Point point = result.getContent().getPoint();
+                if (point == null || filter.contains(point.getY(), point.getX())) {
+                    ids.add(result.getContent().getName());
+                }
+            }
+        }
+        metricsService.recordTimer("hot_geo.search", System.currentTimeMillis() - start);
+        return ids;
+    }
+
+    private void index(RedisConnection connection, byte[] key, Map<byte[], Point> members, long expireAt) {
+        connection.geoCommands().geoAdd(key, members);
+        connection.keyCommands().pExpireAt(key, expireAt);
+    }
+
+    private long bucketOf(long timestamp) {
+        return Math.floorDiv(timestamp, bucketMs) * bucketMs;
+    }
+}
@@ -0,0 +1,269 @@
+/*
+ * Copyright 2025 Haui.HIT - H2K
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.smartcity.service;
+
+import com.smartcity.cache.TinyLfuCache;
+import com.smartcity.model.CityData;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.PatternTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * HOT Near-Cache
+ * Cache CityData HOT trong JVM (W-TinyLFU, giới hạn số entry) đứng trước Redis cho getById và trang HOT.
+ * - Write-through: DataRoutingService/FastLaneService đưa records vào cache sau khi ghi Redis thành công,
+ *   hết hạn cùng lúc với TTL của key Redis
+ * - Read-through: record đọc từ Redis được cache tối đa read-through-ttl-ms (không biết TTL còn lại của key)
+ * - Nhất quán giữa các instance: id do sender gửi (có thể ghi đè record cũ) được publish lên channel
+ *   hot:invalidate, instance khác evict; id vừa tạo ở instance này không cần broadcast;
+ *   tuỳ chọn nghe keyspace events expired/del (Redis cần notify-keyspace-events chứa "Exg")
+ */
+@Slf4j
+@Service
+public class HotNearCache {
+
+    public static final String KEY_PREFIX = "hot:citydata:";
+    static final String INVALIDATION_CHANNEL = "hot:invalidate";
+    private static final char ORIGIN_SEPARATOR = '|';
+
+    private final StringRedisTemplate stringRedisTemplate;
+    private final RedisConnectionFactory connectionFactory;
+    private final ClusterCoordinator clusterCoordinator;
+    private final MetricsService metricsService;
+
+    @Value("${hot-cache.enabled:true}")
+    private boolean enabled;
+
+    @Value("${hot-cache.max-entries:50000}")
+    private int maxEntries;
+
+    @Value("${hot-cache.read-through-ttl-ms:30000}")
+    private long readThroughTtlMs;
+
+    @Value("${hot-cache.invalidation.publish:true}")
+    private boolean publishInvalidations;
+
+    @Value("${hot-cache.invalidation.keyspace-events:false}")
+    private boolean keyspaceEvents;
+
+    @Value("${redis.hot-data.ttl}")
+    private long hotDataTtl;
+
+    private TinyLfuCache<String, CityData> cache;
+    private RedisMessageListenerContainer listenerContainer;
+
+    public HotNearCache(StringRedisTemplate stringRedisTemplate,
+                        RedisConnectionFactory connectionFactory,
+                        ClusterCoordinator clusterCoordinator,
+                        MetricsService metricsService) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.connectionFactory = connectionFactory;
+        this.clusterCoordinator = clusterCoordinator;
+        this.metricsService = metricsService;
+    }
+
+    @PostConstruct
+    public void init() {
+        if (!enabled) {
+            log.info("HOT near-cache: DISABLED");
+            return;
+        }
+        cache = new TinyLfuCache<>(maxEntries);
+        metricsService.registerGauge("hot_cache.size", cache::size);
+        metricsService.registerGauge("hot_cache.evictions", cache::getEvictions);
+        metricsService.registerGauge("hot_cache.admission_rejections", cache::getRejections);
+        startListener();
+        log.info("HOT near-cache: ENABLED (max entries={}, read-through TTL={}ms, keyspace events={})",
+                cache.getMaximumSize(), readThroughTtlMs, keyspaceEvents);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (listenerContainer != null) {
+            try {
+                listenerContainer.destroy();
+            } catch (Exception e) {
+                log.debug("Error stopping HOT cache listener: {}", e.getMessage());
+            }
+        }
+    }
+
+    public boolean isEnabled() {
+        return cache != null;
+    }
+
+    /**
+     * @return record HOT trong cache hoặc null (miss)
+     */
+    public CityData get(String id) {
+        if (cache == null) {
+            return null;
+        }
+        CityData data = cache.get(id, System.currentTimeMillis());
+        metricsService.incrementCounter(data != null ? "hot_cache.hits" : "hot_cache.misses");
+        return data;
+    }
+
+    /**
+     * Write-through sau khi records đã được ghi vào Redis với TTL = redis.hot-data.ttl
+     */
+    public void putAll(Collection<CityData> records) {
+        if (cache == null || records.isEmpty()) {
+            return;
+        }
+        long expiresAt = System.currentTimeMillis() + hotDataTtl * 1000;
+        int written = 0;
+        // Id vừa tạo trong process này chưa thể nằm trong cache của instance khác: chỉ broadcast id do sender gửi
+        List<String> overwritable = new ArrayList<>();
+        for (CityData data : records) {
+            if (data.getId() != null) {
+                cache.put(data.getId(), data, expiresAt);
+                written++;
+                if (!data.isIdGenerated()) {
+                    overwritable.add(data.getId());
+                }
+            }
+        }
+        metricsService.incrementCounter("hot_cache.writes", written);
+        publishInvalidation(overwritable);
+    }
+
+    /**
+     * Cache record vừa đọc từ Redis
+     */
+    public void putReadThrough(CityData data) {
+        if (cache == null || data.getId() == null) {
+            return;
+        }
+        long ttlMs = Math.min(readThroughTtlMs, hotDataTtl * 1000);
+        cache.put(data.getId(), data, System.currentTimeMillis() + ttlMs);
+    }
+
+    public void invalidate(String id) {
+        if (cache != null && cache.remove(id)) {
+            metricsService.incrementCounter("hot_cache.invalidations");
+        }
+    }
+
+    /**
+     * Dọn entry hết hạn để không chiếm chỗ của entry còn dùng được
+     */
+    @Scheduled(fixedDelayString = "${hot-cache.cleanup-interval-ms:60000}",
+               initialDelayString = "${hot-cache.cleanup-interval-ms:60000}")
+    public void cleanup() {
+        if (cache == null) {
+            return;
+        }
+        int removed = cache.removeExpired(System.currentTimeMillis());
+        if (removed > 0) {
+            metricsService.incrementCounter("hot_cache.expired", removed);
+            log.debug("HOT near-cache: removed {} expired entries", removed);
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", cache != null);
+        if (cache != null) {
+            long hits = metricsService.getCounter("hot_cache.hits");
+            long misses = metricsService.getCounter("hot_cache.misses");
+            stats.put("size", cache.size());
+            stats.put("maxEntries", cache.getMaximumSize());
+            stats.put("hits", hits);
+            stats.put("misses", misses);
+            stats.put("hitRatio", hits + misses > 0 ? Math.round(1000.0 * hits / (hits + misses)) / 1000.0 : 0.0);
+            stats.put("evictions", cache.getEvictions());
+            stats.put("invalidations", metricsService.getCounter("hot_cache.invalidations"));
+            stats.put("keyspaceEvents", keyspaceEvents);
+        }
+        return stats;
+    }
+
+    private void publishInvalidation(List<String> ids) {
+        if (!publishInvalidations || ids.isEmpty()) {
+            return;
+        }
+        try {
+            String message = clusterCoordinator.getInstanceId() + ORIGIN_SEPARATOR + String.join(",", ids);
+            stringRedisTemplate.convertAndSend(INVALIDATION_CHANNEL, message);
+        } catch (Exception e) {
+            // Instance khác vẫn tự hết hạn entry theo TTL
+            metricsService.incrementCounter("hot_cache.publish_errors");
+            log.debug("HOT cache invalidation publish failed: {}", e.getMessage());
+        }
+    }
+
+    private void startListener() {
+        if (!publishInvalidations && !keyspaceEvents) {
+            return;
+        }
+        try {
+            listenerContainer = new RedisMessageListenerContainer();
+            listenerContainer.setConnectionFactory(connectionFactory);
+            if (publishInvalidations) {
+                listenerContainer.addMessageListener((message, pattern) -> onInvalidation(message),
+                        new ChannelTopic(INVALIDATION_CHANNEL));
+            }
+            if (keyspaceEvents) {
+                listenerContainer.addMessageListener((message, pattern) -> onKeyEvent(message),
+                        List.of(new PatternTopic("__keyevent@*__:expired"),
+                                new PatternTopic("__keyevent@*__:del"),
+                                new PatternTopic("__keyevent@*__:evicted")));
+            }
+            listenerContainer.afterPropertiesSet();
+            listenerContainer.start();
+        } catch (Exception e) {
+            // Không có pub/sub: entry vẫn hết hạn theo TTL
+            log.warn("HOT cache invalidation listener unavailable: {}", e.getMessage());
+        }
+    }
+
+    private void onInvalidation(Message message) {
+        String body = new String(message.getBody(), StandardCharsets.UTF_8);
+        int separator = body.indexOf(ORIGIN_SEPARATOR);
+        if (separator < 0 || body.substring(0, separator).equals(clusterCoordinator.getInstanceId())) {
+            return;
+        }
+        for (String id : body.substring(separator + 1).split(",")) {
+            invalidate(id);
+        }
+    }
+
+    private void onKeyEvent(Message message) {
+        String key = new String(message.getBody(), StandardCharsets.UTF_8);
+        if (key.startsWith(KEY_PREFIX)) {
+            invalidate(key.substring(KEY_PREFIX.length()));
+        }
+    }
+}
@@ -0,0 +1,504 @@
+/*
+ * Copyright 2025 Haui.HIT - H2K
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.smartcity.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.smartcity.dto.CityDataResponse;
+import com.smartcity.model.CityData;
+import com.smartcity.model.DataType;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.http.MediaType;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.util.StringUtils;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Live Stream Service
+ * Đẩy readings vừa lưu tới dashboard qua Server-Sent Events (GET /api/data/stream) thay cho polling /api/data.
+ * - Nguồn: StoredDataListener (DataRoutingService, FastLaneService) sau mỗi lần ghi thành công
+ * - Filter theo subscriber: type, sensorId
+ * - Mỗi subscriber có buffer giới hạn; client chậm thì DROP (bỏ reading cũ nhất) hoặc
+ *   COALESCE (chỉ giữ reading mới nhất mỗi sensor), số reading bị bỏ được gửi kèm event kế tiếp
+ * - SseEmitter dùng async servlet nên không giữ thread mỗi connection; một fan-out thread
+ *   phân phối batch và một pool nhỏ gửi event cho các subscriber có dữ liệu
+ * - Nhiều instance: batch lưu trên instance này được publish lên channel live:stored để subscriber
+ *   ở instance khác cũng nhận (mỗi instance bỏ qua message của chính nó)
+ */
+@Slf4j
+@Service
+public class LiveStreamService implements StoredDataListener {
+
+    public enum Overflow { DROP, COALESCE }
+
+    static final String CLUSTER_CHANNEL = "live:stored";
+
+    private final CityDataQueryService cityDataQueryService;
+    private final MetricsService metricsService;
+    private final StringRedisTemplate stringRedisTemplate;
+    private final RedisConnectionFactory connectionFactory;
+    private final ClusterCoordinator clusterCoordinator;
+    private final ObjectMapper objectMapper;
+
+    @Value("${live-stream.enabled:true}")
+    private boolean enabled;
+
+    @Value("${live-stream.max-subscribers:5000}")
+    private int maxSubscribers;
+
+    @Value("${live-stream.buffer-size:256}")
+    private int bufferSize;
+
+    @Value("${live-stream.max-event-readings:100}")
+    private int maxEventReadings;
+
+    @Value("${live-stream.fan-out-queue-capacity:1000}")
+    private int fanOutQueueCapacity;
+
+    @Value("${live-stream.sender-threads:4}")
+    private int senderThreads;
+
+    @Value("${live-stream.emitter-timeout-ms:1800000}")
+    private long emitterTimeoutMs;
+
+    @Value("${live-stream.cluster-fan-out:true}")
+    private boolean clusterFanOut;
+
+    private final Map<Long, Subscriber> subscribers = new ConcurrentHashMap<>();
+    // Subscribers có filter sensorId được index theo sensorId (lowercase) để fan-out không duyệt hết
+    private final Map<String, Set<Subscriber>> bySensor = new ConcurrentHashMap<>();
+    private final Set<Subscriber> unfiltered = ConcurrentHashMap.newKeySet();
+    private final AtomicLong nextId = new AtomicLong();
+
+    private BlockingQueue<StoredBatch> fanOutQueue;
+    private Thread fanOutThread;
+    private ExecutorService senders;
+    private volatile boolean running;
+    private RedisMessageListenerContainer listenerContainer;
+
+    /** records: batch lưu trên instance này; readings: batch nhận từ instance khác */
+    private record StoredBatch(DataType tier, List<CityData> records, List<CityDataResponse> readings) {
+    }
+
+    /** Message trên channel live:stored */
+    record ClusterBatch(String origin, DataType tier, List<CityDataResponse> readings) {
+    }
+
+    public LiveStreamService(CityDataQueryService cityDataQueryService, MetricsService metricsService,
+                             StringRedisTemplate stringRedisTemplate, RedisConnectionFactory connectionFactory,
+                             ClusterCoordinator clusterCoordinator, ObjectMapper objectMapper) {
+        this.cityDataQueryService = cityDataQueryService;
+        this.metricsService = metricsService;
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.connectionFactory = connectionFactory;
+        this.clusterCoordinator = clusterCoordinator;
+        this.objectMapper = objectMapper;
+    }
+
+    @PostConstruct
+    public void init() {
+        if (!enabled) {
+            log.info("Live stream: DISABLED");
+            return;
+        }
+        fanOutQueue = new ArrayBlockingQueue<>(Math.max(1, fanOutQueueCapacity));
+        AtomicInteger senderIndex = new AtomicInteger();
+        senders = Executors.newFixedThreadPool(Math.max(1, senderThreads), r -> {
+            Thread thread = new Thread(r, "live-stream-sender-" + senderIndex.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        running = true;
+        fanOutThread = new Thread(this::fanOutLoop, "live-stream-fan-out");
+        fanOutThread.setDaemon(true);
+        fanOutThread.start();
+        metricsService.registerGauge("live_stream.subscribers", subscribers::size);
+        metricsService.registerGauge("live_stream.fan_out_queue_depth", fanOutQueue::size);
+        startListener();
+        log.info("Live stream: ENABLED (max subscribers={}, buffer={}, sender threads={}, cluster fan-out={})",
+                maxSubscribers, bufferSize, senderThreads, listenerContainer != null);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        running = false;
+        if (fanOutThread != null) {
+            fanOutThread.interrupt();
+        }
+        subscribers.values().forEach(subscriber -> subscriber.emitter.complete());
+        if (senders != null) {
+            senders.shutdownNow();
+        }
+        if (listenerContainer != null) {
+            try {
+                listenerContainer.destroy();
+            } catch (Exception e) {
+                log.debug("Error stopping live stream listener: {}", e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Đăng ký subscriber mới
+     *
+     * @return emitter, hoặc null nếu stream bị tắt hoặc đã đủ max-subscribers
+     */
+    public SseEmitter subscribe(DataType type, String sensorId, Overflow overflow) {
+        if (!enabled || subscribers.size() >= maxSubscribers) {
+            metricsService.incrementCounter("live_stream.rejected");
+            return null;
+        }
+        SseEmitter emitter = new SseEmitter(emitterTimeoutMs);
+        String sensorKey = StringUtils.hasText(sensorId) ? sensorId.toLowerCase(Locale.ROOT) : null;
+        Subscriber subscriber = new Subscriber(nextId.incrementAndGet(), emitter, type, sensorKey, overflow);
+        subscribers.put(subscriber.id, subscriber);
+        if (sensorKey != null) {
+            bySensor.computeIfAbsent(sensorKey, k -> ConcurrentHashMap.newKeySet()).add(subscriber);
+        } else {
+            unfiltered.add(subscriber);
+        }
+        emitter.onCompletion(() -> remove(subscriber));
+        emitter.onTimeout(() -> remove(subscriber));
+        emitter.onError(e -> remove(subscriber));
+
+        Map<String, Object> hello = new LinkedHashMap<>();
+        hello.put("subscriberId", subscriber.id);
+        hello.put("type", type);
+        hello.put("sensorId", sensorId);
+        hello.put("overflow", overflow);
+        hello.put("bufferSize", bufferSize);
+        try {
+            emitter.send(SseEmitter.event().name("subscribed").data(hello, MediaType.APPLICATION_JSON));
+        } catch (Exception e) {
+            remove(subscriber);
+            return emitter;
+        }
+        metricsService.incrementCounter("live_stream.subscriptions");
+        log.debug("Live stream subscriber {} (type={}, sensorId={}, overflow={})", subscriber.id, type, sensorId, overflow);
+        return emitter;
+    }
+
+    @Override
+    public void onStored(DataType tier, List<CityData> records) {
+        if (!running || (subscribers.isEmpty() && !publishToCluster())) {
+            return;
+        }
+        enqueue(new StoredBatch(tier, List.copyOf(records), null));
+    }
+
+    /**
+     * Comment SSE định kỳ để proxy không đóng connection rảnh và phát hiện client đã ngắt
+     */
+    @Scheduled(fixedDelayString = "${live-stream.heartbeat-ms:15000}")
+    public void heartbeat() {
+        for (Subscriber subscriber : subscribers.values()) {
+            subscriber.heartbeatDue = true;
+            schedule(subscriber);
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("subscribers", subscribers.size());
+        stats.put("maxSubscribers", maxSubscribers);
+        stats.put("fanOutQueueDepth", fanOutQueue != null ? fanOutQueue.size() : 0);
+        stats.put("delivered", metricsService.getCounter("live_stream.readings_sent"));
+        stats.put("dropped", metricsService.getCounter("live_stream.readings_dropped"));
+        stats.put("coalesced", metricsService.getCounter("live_stream.readings_coalesced"));
+        return stats;
+    }
+
+    private void fanOutLoop() {
+        while (running) {
+            try {
+                StoredBatch batch = fanOutQueue.take();
+                fanOut(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                log.warn("Live stream fan-out failed: {}", e.getMessage());
+            }
+        }
+    }
+
+    private void enqueue(StoredBatch batch) {
+        // Không block đường ghi / listener: fan-out chậm thì bỏ batch
+        if (!fanOutQueue.offer(batch)) {
+            metricsService.incrementCounter("live_stream.batches_dropped");
+        }
+    }
+
+    private void fanOut(StoredBatch batch) {
+        if (batch.readings() != null) {
+            fanOut(batch.tier(), batch.readings(), CityDataResponse::sensorId, Function.identity());
+            return;
+        }
+        if (!publishToCluster()) {
+            fanOut(batch.tier(), batch.records(), CityData::getSourceId, cityDataQueryService::toResponse);
+            return;
+        }
+        List<CityDataResponse> readings = batch.records().stream().map(cityDataQueryService::toResponse).toList();
+        publish(batch.tier(), readings);
+        fanOut(batch.tier(), readings, CityDataResponse::sensorId, Function.identity());
+    }
+
+    private <T> void fanOut(DataType tier, List<T> items, Function<T, String> sensorIdOf,
+                            Function<T, CityDataResponse> toResponse) {
+        // Convert mỗi record tối đa một lần, chỉ khi có subscriber khớp
+        Map<T, CityDataResponse> converted = new IdentityHashMap<>();
+        Set<Subscriber> touched = new HashSet<>();
+        for (T item : items) {
+            for (Subscriber subscriber : unfiltered) {
+                deliver(subscriber, tier, item, toResponse, converted, touched);
+            }
+            String sensorId = sensorIdOf.apply(item);
+            if (sensorId != null && !bySensor.isEmpty()) {
+                Set<Subscriber> sensorSubscribers = bySensor.get(sensorId.toLowerCase(Locale.ROOT));
+                if (sensorSubscribers != null) {
+                    for (Subscriber subscriber : sensorSubscribers) {
+                        deliver(subscriber, tier, item, toResponse, converted, touched);
+                    }
+                }
+            }
+        }
+        touched.forEach(this::schedule);
+    }
+
+    private <T> void deliver(Subscriber subscriber, DataType tier, T item, Function<T, CityDataResponse> toResponse,
+                             Map<T, CityDataResponse> converted, Set<Subscriber> touched) {
+        if (subscriber.type != null && subscriber.type != tier) {
+            return;
+        }
+        CityDataResponse response = converted.computeIfAbsent(item, toResponse);
+        subscriber.offer(response);
+        touched.add(subscriber);
+    }
+
+    /**
+     * Chỉ publish khi cluster có instance khác (deploy một instance không tốn serialize)
+     */
+    private boolean publishToCluster() {
+        return listenerContainer != null && clusterCoordinator.getMemberCount() > 1;
+    }
+
+    private void publish(DataType tier, List<CityDataResponse> readings) {
+        try {
+            String message = objectMapper.writeValueAsString(
+                    new ClusterBatch(clusterCoordinator.getInstanceId(), tier, readings));
+            stringRedisTemplate.convertAndSend(CLUSTER_CHANNEL, message);
+            metricsService.incrementCounter("live_stream.batches_published");
+        } catch (Exception e) {
+            // Subscriber trên instance khác bỏ lỡ batch này
+            metricsService.incrementCounter("live_stream.publish_errors");
+            log.debug("Live stream publish failed: {}", e.getMessage());
+        }
+    }
+
+    private void startListener() {
+        if (!clusterFanOut) {
+            return;
+        }
+        try {
+            listenerContainer = new RedisMessageListenerContainer();
+            listenerContainer.setConnectionFactory(connectionFactory);
+            listenerContainer.addMessageListener((message, pattern) -> onClusterBatch(message),
+                    new ChannelTopic(CLUSTER_CHANNEL));
+            listenerContainer.afterPropertiesSet();
+            listenerContainer.start();
+        } catch (Exception e) {
+            // Không có pub/sub: subscriber chỉ nhận readings lưu trên instance này
+            listenerContainer = null;
+            log.warn("Live stream cluster fan-out unavailable: {}", e.getMessage());
+        }
+    }
+
+    private void onClusterBatch(Message message) {
+        if (!running || subscribers.isEmpty()) {
+            return;
+        }
+        try {
+            ClusterBatch batch = objectMapper.readValue(message.getBody(), ClusterBatch.class);
+            if (clusterCoordinator.getInstanceId().equals(batch.origin()) || batch.readings() == null) {
+                return;
+            }
+            enqueue(new StoredBatch(batch.tier(), null, batch.readings()));
+        } catch (Exception e) {
+            log.debug("Invalid live stream message: {}", e.getMessage());
+        }
+    }
+
+    private void schedule(Subscriber subscriber) {
+        if (subscriber.scheduled.compareAndSet(false, true)) {
+            try {
+                senders.execute(() -> flush(subscriber));
+            } catch (Exception e) {
+                subscriber.scheduled.set(false);
+            }
+        }
+    }
+
+    /**
+     * Gửi buffer của subscriber; mỗi subscriber chỉ được flush bởi một sender tại một thời điểm
+     */
+    private void flush(Subscriber subscriber) {
+        try {
+            while (true) {
+                List<CityDataResponse> readings;
+                long dropped;
+                boolean heartbeat;
+                synchronized (subscriber) {
+                    readings = subscriber.drain(maxEventReadings);
+                    dropped = subscriber.dropped;
+                    subscriber.dropped = 0;
+                    heartbeat = subscriber.heartbeatDue;
+                    subscriber.heartbeatDue = false;
+                }
+                if (readings.isEmpty()) {
+                    if (heartbeat) {
+                        subscriber.emitter.send(SseEmitter.event().comment("heartbeat"));
+                    }
+                    return;
+                }
+                Map<String, Object> event = new LinkedHashMap<>();
+                event.put("readings", readings);
+                event.put("dropped", dropped);
+                subscriber.emitter.send(SseEmitter.event().name("readings").data(event, MediaType.APPLICATION_JSON));
+                metricsService.incrementCounter("live_stream.readings_sent", readings.size());
+            }
+        } catch (Exception e) {
+            // Client đã ngắt hoặc connection lỗi
+            log.debug("Live stream subscriber {} closed: {}", subscriber.id, e.getMessage());
+            remove(subscriber);
+            subscriber.emitter.completeWithError(e);
+        } finally {
+            subscriber.scheduled.set(false);
+            if (subscriber.hasPending() && subscribers.containsKey(subscriber.id)) {
+                schedule(subscriber);
+            }
+        }
+    }
+
+    private void remove(Subscriber subscriber) {
+        if (subscribers.remove(subscriber.id) == null) {
+            return;
+        }
+        if (subscriber.sensorKey != null) {
+            bySensor.computeIfPresent(subscriber.sensorKey, (k, set) -> {
+                set.remove(subscriber);
+                return set.isEmpty() ? null : set;
+            });
+        } else {
+            unfiltered.remove(subscriber);
+        }
+        log.debug("Live stream subscriber {} removed", subscriber.id);
+    }
+
+    private final class Subscriber {
+        final long id;
+        final SseEmitter emitter;
+        final DataType type;
+        final String sensorKey;
+        final Overflow overflow;
+        final AtomicBoolean scheduled = new AtomicBoolean();
+        // DROP: FIFO; COALESCE: reading mới nhất theo sensor (thứ tự lần đầu xuất hiện)
+        final ArrayDeque<CityDataResponse> queue = new ArrayDeque<>();
+        final LinkedHashMap<String, CityDataResponse> latestBySensor = new LinkedHashMap<>();
+        long dropped;
+        volatile boolean heartbeatDue;
+
+        Subscriber(long id, SseEmitter emitter, DataType type, String sensorKey, Overflow overflow) {
+            this.id = id;
+            this.emitter = emitter;
+            this.type = type;
+            this.sensorKey = sensorKey;
+            this.overflow = overflow;
+        }
+
+        synchronized void offer(CityDataResponse reading) {
+            if (overflow == Overflow.COALESCE) {
+                String key = String.valueOf(reading.sensorId());
+                if (latestBySensor.put(key, reading) != null) {
+                    metricsService.incrementCounter("live_stream.readings_coalesced");
+                    return;
+                }
+                if (latestBySensor.size() > bufferSize) {
+                    String oldest = latestBySensor.keySet().iterator().next();
+                    latestBySensor.remove(oldest);
+                    dropped++;
+                    metricsService.incrementCounter("live_stream.readings_dropped");
+                }
+                return;
+            }
+            if (queue.size() >= bufferSize) {
+                queue.pollFirst();
+                dropped++;
+                metricsService.incrementCounter("live_stream.readings_dropped");
+            }
+            queue.addLast(reading);
+        }
+
+        synchronized List<CityDataResponse> drain(int max) {
+            List<CityDataResponse> out = new ArrayList<>(Math.min(max, Math.max(queue.size(), latestBySensor.size())));
+            if (overflow == Overflow.COALESCE) {
+                var it = latestBySensor.values().iterator();
+                while (it.hasNext() && out.size() < max) {
+                    out.add(it.next());
+                    it.remove();
+                }
+            } else {
+                while (!queue.isEmpty() && out.size() < max) {
+                    out.add(queue.pollFirst());
+                }
+            }
+            return out;
+        }
+
+        synchronized boolean hasPending() {
+            return !queue.isEmpty() || !latestBySensor.isEmpty() || heartbeatDue;
+        }
+    }
+}
@@ -0,0 +1,232 @@
+/*
+ * Copyright 2025 Haui.HIT - H2K
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.smartcity.service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Downsample time series về tối đa maxPoints điểm theo Largest-Triangle-Three-Buckets (biến thể MinMaxLTTB):
+ * - Khoảng [from, to] chia thành maxPoints - 2 bucket theo thời gian; điểm đầu / cuối luôn được giữ
+ * - Mỗi bucket chỉ giữ min/max của từng sub-bucket làm ứng viên + tổng để tính trung bình,
+ *   nên bộ nhớ O(maxPoints) bất kể số điểm đầu vào và điểm có thể đến không theo thứ tự
+ * - Kết thúc: duyệt bucket, chọn ứng viên tạo tam giác lớn nhất với điểm đã chọn trước đó
+ *   và trung bình của bucket kế tiếp
+ * Nếu tổng số điểm ≤ maxPoints thì trả về nguyên dữ liệu.
+ *
+ * Không thread-safe.
+ */
+public class LttbDownsampler {
+
+    private final long from;
+    private final long span;
+    private final int maxPoints;
+    private final int bucketCount;
+    private final int subBuckets;
+    private final Bucket[] buckets;
+
+    // Giữ nguyên dữ liệu cho tới khi vượt maxPoints
+    private long[] rawTimestamps;
+    private double[] rawValues;
+    private int rawSize;
+
+    private long count;
+    private long firstTimestamp = Long.MAX_VALUE;
+    private double firstValue;
+    private long lastTimestamp = Long.MIN_VALUE;
+    private double lastValue;
+
+    private final class Bucket {
+        final long[] minTimestamps = new long[subBuckets];
+        final double[] minValues = new double[subBuckets];
+        final long[] maxTimestamps = new long[subBuckets];
+        final double[] maxValues = new double[subBuckets];
+        final boolean[] present = new boolean[subBuckets];
+        double sumX;
+        double sumY;
+        long count;
+
+        void add(int sub, long timestamp, double value) {
+            if (!present[sub]) {
+                present[sub] = true;
+                minTimestamps[sub] = maxTimestamps[sub] = timestamp;
+                minValues[sub] = maxValues[sub] = value;
+            } else if (value < minValues[sub]) {
+                minTimestamps[sub] = timestamp;
+                minValues[sub] = value;
+            } else if (value > maxValues[sub]) {
+                maxTimestamps[sub] = timestamp;
+                maxValues[sub] = value;
+            }
+            sumX += timestamp - from;
+            sumY += value;
+            count++;
+        }
+    }
+
+    /**
+     * @param subBuckets Số sub-bucket mỗi bucket (ứng viên = 2 x subBuckets)
+     */
+    public LttbDownsampler(long from, long to, int maxPoints, int subBuckets) {
+        if (to < from) {
+            throw new IllegalArgumentException("to must be >= from");
+        }
+        this.from = from;
+        this.span = to - from + 1;
+        this.maxPoints = Math.max(3, maxPoints);
+        this.bucketCount = this.maxPoints - 2;
+        this.subBuckets = Math.max(1, subBuckets);
+        this.buckets = new Bucket[bucketCount];
+        this.rawTimestamps = new long[Math.min(this.maxPoints, 1024)];
+        this.rawValues = new double[rawTimestamps.length];
+    }
+
+    /**
+     * Thêm một điểm; điểm ngoài [from, to] bị bỏ qua
+     */
+    public void add(long timestamp, double value) {
+        long offset = timestamp - from;
+        if (offset < 0 || offset >= span || Double.isNaN(value) || Double.isInfinite(value)) {
+            return;
+        }
+        count++;
+        if (timestamp < firstTimestamp) {
+            firstTimestamp = timestamp;
+            firstValue = value;
+        }
+        if (timestamp > lastTimestamp) {
+            lastTimestamp = timestamp;
+            lastValue = value;
+        }
+        if (count <= maxPoints) {
+            if (rawSize == rawTimestamps.length) {
+                int grown = Math.min(maxPoints, rawTimestamps.length * 2);
+                rawTimestamps = Arrays.copyOf(rawTimestamps, grown);
+                rawValues = Arrays.copyOf(rawValues, grown);
+            }
+            rawTimestamps[rawSize] = timestamp;
+            rawValues[rawSize] = value;
+            rawSize++;
+        } else if (rawTimestamps != null) {
+            rawTimestamps = null;
+            rawValues = null;
+        }
+
+        // Vị trí trong cả range theo đơn vị sub-bucket
+        long slot = (long) ((double) offset / span * bucketCount * subBuckets);
+        int index = (int) Math.min(bucketCount - 1, slot / subBuckets);
+        int sub = (int) Math.min(subBuckets - 1, slot - (long) index * subBuckets);
+        Bucket bucket = buckets[index];
+        if (bucket == null) {
+            bucket = new Bucket();
+            buckets[index] = bucket;
+        }
+        bucket.add(sub, timestamp, value);
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public boolean isDownsampled() {
+        return count > maxPoints;
+    }
+
+    /**
+     * Các điểm [timestamp, value] theo timestamp tăng dần
+     */
+    public List<Object[]> result() {
+        List<Object[]> points = new ArrayList<>();
+        if (count == 0) {
+            return points;
+        }
+        if (!isDownsampled()) {
+            Integer[] order = new Integer[rawSize];
+            for (int i = 0; i < rawSize; i++) {
+                order[i] = i;
+            }
+            Arrays.sort(order, (a, b) -> Long.compare(rawTimestamps[a], rawTimestamps[b]));
+            for (int i : order) {
+                points.add(new Object[]{rawTimestamps[i], rawValues[i]});
+            }
+            return points;
+        }
+
+        points.add(new Object[]{firstTimestamp, firstValue});
+        double ax = firstTimestamp - from;
+        double ay = firstValue;
+        int next = nextBucket(-1);
+        while (next >= 0) {
+            int current = next;
+            next = nextBucket(current);
+            double cx;
+            double cy;
+            if (next >= 0) {
+                cx = buckets[next].sumX / buckets[next].count;
+                cy = buckets[next].sumY / buckets[next].count;
+            } else {
+                cx = lastTimestamp - from;
+                cy = lastValue;
+            }
+
+            Bucket bucket = buckets[current];
+            long bestTimestamp = 0;
+            double bestValue = 0;
+            double bestArea = -1;
+            for (int sub = 0; sub < subBuckets; sub++) {
+                if (!bucket.present[sub]) {
+                    continue;
+                }
+                for (int side = 0; side < 2; side++) {
+                    long timestamp = side == 0 ? bucket.minTimestamps[sub] : bucket.maxTimestamps[sub];
+                    double value = side == 0 ? bucket.minValues[sub] : bucket.maxValues[sub];
+                    if (timestamp == firstTimestamp || timestamp == lastTimestamp) {
+                        continue;
+                    }
+                    double bx = timestamp - from;
+                    // Hai lần diện tích tam giác (A, B, C)
+                    double area = Math.abs((ax - cx) * (value - ay) - (ax - bx) * (cy - ay));
+                    if (area > bestArea) {
+                        bestArea = area;
+                        bestTimestamp = timestamp;
+                        bestValue = value;
+                    }
+                }
+            }
+            if (bestArea >= 0) {
+                points.add(new Object[]{bestTimestamp, bestValue});
+                ax = bestTimestamp - from;
+                ay = bestValue;
+            }
+        }
+        if (lastTimestamp != firstTimestamp) {
+            points.add(new Object[]{lastTimestamp, lastValue});
+        }
+        return points;
+    }
+
+    private int nextBucket(int after) {
+        for (int i = after + 1; i < bucketCount; i++) {
+            if (buckets[i] != null) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
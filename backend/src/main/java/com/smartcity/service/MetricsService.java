@@ -38,10 +38,16 @@ import org.springframework.stereotype.Service;
 import java.time.Instant;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
 
 /**
  * Service để track ingestion metrics với historical data cho biểu đồ
@@ -61,6 +67,20 @@ public class MetricsService {
     private volatile int incomingRate = 0;
     private volatile int processedRate = 0;
     
+    // Latency của routeAndStore (EWMA, milliseconds) - dùng để throttle các job nền
+    private static final double LATENCY_EWMA_ALPHA = 0.2;
+    private static final long LATENCY_STALE_AFTER_MS = 60_000;
+    private volatile double storeLatencyEwmaMs = 0;
+    private volatile long lastStoreLatencyAt = 0;
+    
+    // Số lời gọi routeAndStore đang chạy (độ sâu pipeline ghi)
+    private final AtomicInteger routingInFlight = new AtomicInteger(0);
+    
+    // Named counters/gauges được export qua /api/stats/metrics
+    private final Map<String, LongAdder> counters = new ConcurrentHashMap<>();
+    private final Map<String, Supplier<? extends Number>> gauges = new ConcurrentHashMap<>();
+    private final Map<String, Timer> timers = new ConcurrentHashMap<>();
+    
     // Rate history for chart visualization (last 10 minutes)
     private final ConcurrentLinkedQueue<RateSnapshot> rateHistory = new ConcurrentLinkedQueue<>();
     private static final int MAX_HISTORY_SIZE = 60; // 60 snapshots = 10 minutes at 10s intervals
@@ -90,6 +110,160 @@ public class MetricsService {
         processedCount.addAndGet(count);
     }
     
+    /**
+     * Record thời gian ghi một batch vào các storage tiers
+     */
+    public synchronized void recordStoreLatency(long latencyMs) {
+        storeLatencyEwmaMs = lastStoreLatencyAt == 0
+                ? latencyMs
+                : LATENCY_EWMA_ALPHA * latencyMs + (1 - LATENCY_EWMA_ALPHA) * storeLatencyEwmaMs;
+        lastStoreLatencyAt = Instant.now().toEpochMilli();
+    }
+    
+    /**
+     * Latency ghi gần đây (EWMA, ms); 0 nếu không có batch nào trong 60 giây gần nhất
+     */
+    public long getStoreLatencyMs() {
+        if (Instant.now().toEpochMilli() - lastStoreLatencyAt > LATENCY_STALE_AFTER_MS) {
+            return 0;
+        }
+        return (long) storeLatencyEwmaMs;
+    }
+    
+    public void routingStarted() {
+        routingInFlight.incrementAndGet();
+    }
+    
+    public void routingFinished() {
+        routingInFlight.decrementAndGet();
+    }
+    
+    public int getRoutingInFlight() {
+        return routingInFlight.get();
+    }
+    
+    /**
+     * Tăng named counter (tên dạng "publish.admission.accepted")
+     */
+    public void incrementCounter(String name) {
+        incrementCounter(name, 1);
+    }
+    
+    public void incrementCounter(String name, long delta) {
+        counters.computeIfAbsent(name, k -> new LongAdder()).add(delta);
+    }
+    
+    public long getCounter(String name) {
+        LongAdder counter = counters.get(name);
+        return counter != null ? counter.sum() : 0L;
+    }
+    
+    /**
+     * Đăng ký gauge được đọc lại mỗi lần export
+     */
+    public void registerGauge(String name, Supplier<? extends Number> supplier) {
+        gauges.put(name, supplier);
+    }
+    
+    /**
+     * Bỏ các gauges có tên bắt đầu bằng prefix (VD: gauges của một edge node đã bị xoá)
+     */
+    public void unregisterGauges(String prefix) {
+        gauges.keySet().removeIf(name -> name.startsWith(prefix));
+    }
+    
+    /**
+     * Ghi nhận một latency sample (ms) cho named timer.
+     * Export thành counters "<name>.count", "<name>.sum_ms" và gauges "<name>.ewma_ms", "<name>.max_ms"
+     * (max trong 60 giây gần nhất)
+     */
+    public void recordTimer(String name, long latencyMs) {
+        timers.computeIfAbsent(name, k -> new Timer()).record(Math.max(0, latencyMs));
+    }
+    
+    /**
+     * Snapshot của tất cả counters và gauges (sắp xếp theo tên)
+     */
+    public Map<String, Object> getMetricsSnapshot() {
+        Map<String, Long> counterValues = new TreeMap<>();
+        counters.forEach((name, counter) -> counterValues.put(name, counter.sum()));
+        
+        Map<String, Number> gaugeValues = new TreeMap<>();
+        gaugeValues.put("ingestion.store_latency_ms", getStoreLatencyMs());
+        gaugeValues.put("ingestion.routing_in_flight", getRoutingInFlight());
+        timers.forEach((name, timer) -> timer.export(name, counterValues, gaugeValues));
+        gauges.forEach((name, supplier) -> {
+            try {
+                gaugeValues.put(name, supplier.get());
+            } catch (Exception e) {
+                log.debug("Gauge {} unavailable: {}", name, e.getMessage());
+            }
+        });
+        
+        Map<String, Object> snapshot = new LinkedHashMap<>();
+        snapshot.put("counters", counterValues);
+        snapshot.put("gauges", gaugeValues);
+        return snapshot;
+    }
+    
+    /**
+     * Export counters/gauges theo Prometheus text format (counter có hậu tố "_total")
+     */
+    @SuppressWarnings("unchecked")
+    public String toPrometheusText() {
+        Map<String, Object> snapshot = getMetricsSnapshot();
+        StringBuilder out = new StringBuilder();
+        ((Map<String, Long>) snapshot.get("counters")).forEach((name, value) -> {
+            String metric = "smartcity_" + name.replaceAll("[^a-zA-Z0-9_]", "_") + "_total";
+            out.append("# TYPE ").append(metric).append(" counter\n")
+                    .append(metric).append(' ').append(value).append('\n');
+        });
+        ((Map<String, Number>) snapshot.get("gauges")).forEach((name, value) -> {
+            String metric = "smartcity_" + name.replaceAll("[^a-zA-Z0-9_]", "_");
+            out.append("# TYPE ").append(metric).append(" gauge\n")
+                    .append(metric).append(' ').append(value).append('\n');
+        });
+        return out.toString();
+    }
+    
+    /**
+     * Latency timer: count/sum tích lũy, EWMA và max theo cửa sổ 60 giây
+     */
+    private static class Timer {
+        private long count;
+        private long sumMs;
+        private double ewmaMs;
+        private long windowMaxMs;
+        private long previousWindowMaxMs;
+        private long windowStartedAt = Instant.now().toEpochMilli();
+        
+        synchronized void record(long latencyMs) {
+            rollWindow();
+            ewmaMs = count == 0 ? latencyMs : LATENCY_EWMA_ALPHA * latencyMs + (1 - LATENCY_EWMA_ALPHA) * ewmaMs;
+            count++;
+            sumMs += latencyMs;
+            windowMaxMs = Math.max(windowMaxMs, latencyMs);
+        }
+        
+        synchronized void export(String name, Map<String, Long> counterValues, Map<String, Number> gaugeValues) {
+            rollWindow();
+            counterValues.put(name + ".count", count);
+            counterValues.put(name + ".sum_ms", sumMs);
+            gaugeValues.put(name + ".ewma_ms", Math.round(ewmaMs * 10) / 10.0);
+            gaugeValues.put(name + ".max_ms", Math.max(windowMaxMs, previousWindowMaxMs));
+        }
+        
+        private void rollWindow() {
+            long now = Instant.now().toEpochMilli();
+            if (now - windowStartedAt >= LATENCY_STALE_AFTER_MS) {
+                // Cửa sổ trước chỉ còn ý nghĩa nếu vừa kết thúc
+                previousWindowMaxMs = now - windowStartedAt < 2 * LATENCY_STALE_AFTER_MS ? windowMaxMs : 0;
+                windowMaxMs = 0;
+                windowStartedAt = now;
+            }
+        }
+    }
+    
     /**
      * Calculate rates, reset counters, and store in history
      * Should be called periodically (e.g., every 10 seconds)
@@ -0,0 +1,323 @@
+/*
+ * Copyright 2025 Haui.HIT - H2K
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.smartcity.service;
+
+import com.smartcity.model.TierPartition;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.ToLongFunction;
+
+/**
+ * Partition catalog của một tier (WARM hoặc COLD)
+ * Readings được ghi vào collection theo ngày/tuần (VD: city_data_20251204) thay vì một collection duy nhất:
+ * - Query chỉ đọc các partition giao với khoảng thời gian được yêu cầu
+ * - Retention drop cả collection thay vì deleteMany từng document
+ *
+ * Collection gốc (dữ liệu trước khi bật partitioning) được coi là partition "legacy" cũ nhất.
+ * Bean được tạo trong MongoConfig (warmPartitionCatalog, coldPartitionCatalog).
+ */
+@Slf4j
+public class PartitionCatalog {
+
+    public enum Period {
+        DAY,
+        WEEK;
+
+        private static final long DAY_MS = TimeUnit.DAYS.toMillis(1);
+
+        /**
+         * Đầu partition chứa timestamp (UTC; tuần bắt đầu từ thứ Hai)
+         */
+        public long startOf(long timestamp) {
+            long epochDay = Math.floorDiv(timestamp, DAY_MS);
+            if (this == WEEK) {
+                // 1970-01-01 là thứ Năm → lùi về thứ Hai
+                epochDay -= Math.floorMod(epochDay + 3, 7);
+            }
+            return epochDay * DAY_MS;
+        }
+
+        public long lengthMs() {
+            return this == WEEK ? 7 * DAY_MS : DAY_MS;
+        }
+
+        String suffix(long rangeStart) {
+            String date = SUFFIX_FORMAT.format(Instant.ofEpochMilli(rangeStart));
+            return this == WEEK ? "w" + date : date;
+        }
+    }
+
+    private static final DateTimeFormatter SUFFIX_FORMAT =
+            DateTimeFormatter.ofPattern("yyyyMMdd").withZone(ZoneOffset.UTC);
+    private static final long REFRESH_INTERVAL_MS = 30_000;
+
+    private final MongoTemplate template;
+    private final String baseCollection;
+    private final Period period;
+    private final Consumer<String> collectionInitializer;
+
+    // rangeStart → partition (đã sắp xếp theo thời gian)
+    private final NavigableMap<Long, TierPartition> partitions = new ConcurrentSkipListMap<>();
+    private volatile long lastRefreshAt = 0;
+    private volatile boolean legacyPresent = false;
+
+    /**
+     * @param period                null = tắt partitioning, mọi thao tác dùng baseCollection
+     * @param collectionInitializer tạo collection/index cho partition mới (idempotent)
+     */
+    public PartitionCatalog(MongoTemplate template, String baseCollection, Period period,
+                            Consumer<String> collectionInitializer) {
+        this.template = template;
+        this.baseCollection = baseCollection;
+        this.period = period;
+        this.collectionInitializer = collectionInitializer;
+    }
+
+    public static PartitionCatalog disabled(MongoTemplate template, String baseCollection) {
+        return new PartitionCatalog(template, baseCollection, null, name -> { });
+    }
+
+    public boolean isEnabled() {
+        return period != null;
+    }
+
+    public Period getPeriod() {
+        return period;
+    }
+
+    public String getBaseCollection() {
+        return baseCollection;
+    }
+
+    /**
+     * Collection để ghi reading có timestamp này (tạo và đăng ký partition nếu chưa có)
+     */
+    public String collectionFor(Long timestamp) {
+        if (!isEnabled()) {
+            return baseCollection;
+        }
+        refreshIfStale();
+
+        long rangeStart = period.startOf(timestamp != null ? timestamp : System.currentTimeMillis());
+        TierPartition partition = partitions.get(rangeStart);
+        if (partition == null) {
+            partition = register(rangeStart);
+        }
+        return partition.getId();
+    }
+
+    /**
+     * Các collection giao với khoảng [from, to] (null = không giới hạn), partition legacy luôn ở đầu cũ nhất
+     */
+    public List<String> collectionsFor(Long from, Long to, boolean newestFirst) {
+        if (!isEnabled()) {
+            return List.of(baseCollection);
+        }
+        refreshIfStale();
+
+        List<String> result = new ArrayList<>();
+        for (TierPartition partition : partitions.values()) {
+            boolean afterFrom = from == null || partition.getRangeEnd() > from;
+            boolean beforeTo = to == null || partition.getRangeStart() <= to;
+            if (afterFrom && beforeTo) {
+                result.add(partition.getId());
+            }
+        }
+        if (newestFirst) {
+            Collections.reverse(result);
+        }
+        if (legacyPresent) {
+            if (newestFirst) {
+                result.add(baseCollection);
+            } else {
+                result.add(0, baseCollection);
+            }
+        }
+        return result;
+    }
+
+    public List<String> allCollections() {
+        return collectionsFor(null, null, true);
+    }
+
+    public boolean isLegacyPresent() {
+        if (isEnabled()) {
+            refreshIfStale();
+        }
+        return legacyPresent;
+    }
+
+    /**
+     * Các partition đã kết thúc hoàn toàn trước cutoff (cũ nhất trước)
+     */
+    public List<TierPartition> expiredBefore(long cutoff) {
+        if (!isEnabled()) {
+            return List.of();
+        }
+        refreshIfStale();
+
+        List<TierPartition> expired = new ArrayList<>();
+        for (TierPartition partition : partitions.values()) {
+            if (partition.getRangeEnd() > cutoff) {
+                break;
+            }
+            expired.add(partition);
+        }
+        return expired;
+    }
+
+    public List<TierPartition> list() {
+        if (isEnabled()) {
+            refreshIfStale();
+        }
+        return new ArrayList<>(partitions.values());
+    }
+
+    /**
+     * Drop cả collection của partition và xóa khỏi catalog
+     */
+    public void drop(TierPartition partition) {
+        template.dropCollection(partition.getId());
+        template.remove(new Query(Criteria.where("_id").is(partition.getId())), TierPartition.class);
+        partitions.remove(partition.getRangeStart());
+        log.info("Dropped partition '{}' [{} - {})",
+                partition.getId(), partition.getRangeStart(), partition.getRangeEnd());
+    }
+
+    /**
+     * Drop collection gốc khi dữ liệu legacy đã được chuyển hết (chỉ khi partitioning bật:
+     * readings mới luôn vào partition nên collection gốc không còn nhận ghi)
+     */
+    public void dropLegacy() {
+        if (!isEnabled()) {
+            throw new IllegalStateException("Partitioning is disabled, '" + baseCollection + "' is the live collection");
+        }
+        template.dropCollection(baseCollection);
+        legacyPresent = false;
+        log.info("Dropped legacy collection '{}'", baseCollection);
+    }
+
+    /**
+     * Ghép kết quả phân trang qua nhiều partition theo thứ tự thời gian.
+     * Partition không chồng lấn nhau → nối tuần tự là đúng thứ tự; skip được trừ bằng count
+     * để không phải đọc các partition bị bỏ qua.
+     */
+    public static <T> List<T> pageAcross(List<String> collections, long skip, int limit,
+                                         ToLongFunction<String> counter, PageFetcher<T> fetcher) {
+        List<T> results = new ArrayList<>();
+        if (limit <= 0) {
+            return results;
+        }
+        if (collections.size() == 1) {
+            return fetcher.fetch(collections.get(0), skip, limit);
+        }
+
+        long remainingSkip = skip;
+        for (String collection : collections) {
+            if (remainingSkip > 0) {
+                long count = counter.applyAsLong(collection);
+                if (count <= remainingSkip) {
+                    remainingSkip -= count;
+                    continue;
+                }
+            }
+            results.addAll(fetcher.fetch(collection, remainingSkip, limit - results.size()));
+            remainingSkip = 0;
+            if (results.size() >= limit) {
+                break;
+            }
+        }
+        return results;
+    }
+
+    @FunctionalInterface
+    public interface PageFetcher<T> {
+        List<T> fetch(String collection, long skip, int limit);
+    }
+
+    private synchronized TierPartition register(long rangeStart) {
+        TierPartition existing = partitions.get(rangeStart);
+        if (existing != null) {
+            return existing;
+        }
+
+        String name = baseCollection + "_" + period.suffix(rangeStart);
+        collectionInitializer.accept(name);
+
+        TierPartition partition = TierPartition.builder()
+                .id(name)
+                .baseCollection(baseCollection)
+                .period(period.name())
+                .rangeStart(rangeStart)
+                .rangeEnd(rangeStart + period.lengthMs())
+                .createdAt(Instant.now().toEpochMilli())
+                .build();
+        template.save(partition);
+        partitions.put(rangeStart, partition);
+
+        log.info("Created partition '{}' for {}", name, baseCollection);
+        return partition;
+    }
+
+    /**
+     * Đồng bộ cache với catalog (partition có thể được tạo/drop bởi instance khác)
+     */
+    private void refreshIfStale() {
+        long now = System.currentTimeMillis();
+        if (now - lastRefreshAt < REFRESH_INTERVAL_MS) {
+            return;
+        }
+        synchronized (this) {
+            if (now - lastRefreshAt < REFRESH_INTERVAL_MS) {
+                return;
+            }
+            try {
+                List<TierPartition> stored = template.find(
+                        new Query(Criteria.where("baseCollection").is(baseCollection)
+                                .and("period").is(period.name())),
+                        TierPartition.class);
+                Map<Long, TierPartition> latest = new HashMap<>();
+                for (TierPartition partition : stored) {
+                    latest.put(partition.getRangeStart(), partition);
+                }
+                partitions.keySet().retainAll(latest.keySet());
+                partitions.putAll(latest);
+                legacyPresent = template.collectionExists(baseCollection)
+                        && template.getCollection(baseCollection).estimatedDocumentCount() > 0;
+                lastRefreshAt = now;
+            } catch (Exception e) {
+                // Giữ cache cũ, thử lại ở lần gọi sau
+                log.warn("Cannot refresh partition catalog for '{}': {}", baseCollection, e.getMessage());
+            }
+        }
+    }
+}
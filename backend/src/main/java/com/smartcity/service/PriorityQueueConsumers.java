@@ -0,0 +1,169 @@
+/*
+ * Copyright 2025 Haui.HIT - H2K
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.smartcity.service;
+
+import com.smartcity.config.EdgeNodeConfig;
+import com.smartcity.model.CityData;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.core.AcknowledgeMode;
+import org.springframework.amqp.core.MessageListener;
+import org.springframework.amqp.core.Queue;
+import org.springframework.amqp.rabbit.connection.CachingConnectionFactory;
+import org.springframework.amqp.rabbit.core.RabbitAdmin;
+import org.springframework.amqp.rabbit.listener.SimpleMessageListenerContainer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Priority Queue Consumers
+ * Consume liên tục (push, không theo lịch pull) priority queue của từng edge node
+ * và ghi qua FastLaneService. Message chỉ được ack sau khi đã có trong Redis;
+ * Redis lỗi → message được requeue.
+ *
+ * Danh sách consumer được đồng bộ định kỳ với EdgeNodeRegistry (node thêm/xoá/toggle).
+ */
+@Slf4j
+@Component
+public class PriorityQueueConsumers {
+
+    private final EdgeNodeRegistry edgeNodeRegistry;
+    private final EdgeConnectionManager edgeConnectionManager;
+    private final EdgeMessageDecoder edgeMessageDecoder;
+    private final FastLaneService fastLaneService;
+    private final MetricsService metricsService;
+
+    @Value("${fast-lane.consumers:1}")
+    private int consumers;
+
+    @Value("${fast-lane.prefetch:250}")
+    private int prefetch;
+
+    /** Key: node name → container đang consume priority queue của node */
+    private final Map<String, Consumer> containers = new ConcurrentHashMap<>();
+
+    public PriorityQueueConsumers(EdgeNodeRegistry edgeNodeRegistry,
+                                  EdgeConnectionManager edgeConnectionManager,
+                                  EdgeMessageDecoder edgeMessageDecoder,
+                                  FastLaneService fastLaneService,
+                                  MetricsService metricsService) {
+        this.edgeNodeRegistry = edgeNodeRegistry;
+        this.edgeConnectionManager = edgeConnectionManager;
+        this.edgeMessageDecoder = edgeMessageDecoder;
+        this.fastLaneService = fastLaneService;
+        this.metricsService = metricsService;
+    }
+
+    /**
+     * Start/stop consumers theo registry hiện tại
+     */
+    @Scheduled(fixedDelayString = "${fast-lane.sync-interval-ms:10000}",
+               initialDelayString = "${ingestion.schedule.initial-delay}")
+    public synchronized void syncConsumers() {
+        Map<String, EdgeNodeConfig.EdgeNode> wanted = new LinkedHashMap<>();
+        if (fastLaneService.isEnabled()) {
+            for (EdgeNodeConfig.EdgeNode node : edgeNodeRegistry.getAvailableNodes()) {
+                if (node.getPriorityQueueName() != null && !node.getPriorityQueueName().isBlank()) {
+                    wanted.put(node.getName(), node);
+                }
+            }
+        }
+
+        // Dừng consumer của node đã bị xoá/disable, đổi queue hoặc đổi connection (host, credentials, ...)
+        containers.entrySet().removeIf(entry -> {
+            EdgeNodeConfig.EdgeNode node = wanted.get(entry.getKey());
+            if (node != null && entry.getValue().matches(node, edgeConnectionManager.getConnectionFactory(node))) {
+                return false;
+            }
+            log.info("Stopping fast lane consumer for [{}]", entry.getKey());
+            entry.getValue().container().stop();
+            return true;
+        });
+
+        for (EdgeNodeConfig.EdgeNode node : wanted.values()) {
+            if (!containers.containsKey(node.getName()) && edgeConnectionManager.isAvailable(node)) {
+                try {
+                    containers.put(node.getName(), start(node));
+                } catch (Exception e) {
+                    // Broker chưa sẵn sàng: thử lại ở lần sync sau (sau backoff nếu lỗi kết nối)
+                    edgeConnectionManager.recordFailure(node, e);
+                    log.warn("Cannot start fast lane consumer for [{}]: {}", node.getName(), e.getMessage());
+                }
+            }
+        }
+    }
+
+    private Consumer start(EdgeNodeConfig.EdgeNode node) {
+        String queue = node.getPriorityQueueName();
+        CachingConnectionFactory connectionFactory = edgeConnectionManager.getConnectionFactory(node);
+        // Priority queue là queue của backend: declare (durable) nếu chưa có
+        new RabbitAdmin(connectionFactory).declareQueue(new Queue(queue, true));
+
+        SimpleMessageListenerContainer container = new SimpleMessageListenerContainer(connectionFactory);
+        container.setQueueNames(queue);
+        container.setConcurrentConsumers(Math.max(1, consumers));
+        container.setPrefetchCount(prefetch);
+        container.setAcknowledgeMode(AcknowledgeMode.AUTO);
+        container.setDefaultRequeueRejected(true);
+        container.setMessageListener((MessageListener) message -> {
+            List<CityData> readings = new ArrayList<>();
+            try {
+                edgeMessageDecoder.decodeInto(message, readings);
+            } catch (Exception e) {
+                // Message hỏng: không requeue, chỉ giữ các readings đọc được
+                metricsService.incrementCounter("ingestion.edge.decode_errors");
+                log.error("[{}] - Error decoding priority message: {}", node.getName(), e.getMessage());
+            }
+            // Exception ở đây (Redis lỗi) → container reject + requeue
+            fastLaneService.store(readings, FastLaneService.Lane.PRIORITY_QUEUE);
+        });
+        container.start();
+        log.info("Fast lane consumer started for [{}] on queue {} (consumers={}, prefetch={})",
+                node.getName(), queue, consumers, prefetch);
+        return new Consumer(connectionFactory, queue, container);
+    }
+
+    /**
+     * Node → priority queue đang được consume
+     */
+    public Map<String, String> getActiveConsumers() {
+        Map<String, String> active = new LinkedHashMap<>();
+        containers.forEach((node, consumer) -> active.put(node, consumer.queue()));
+        return active;
+    }
+
+    @PreDestroy
+    public synchronized void stopAll() {
+        containers.values().forEach(consumer -> consumer.container().stop());
+        containers.clear();
+    }
+
+    private record Consumer(CachingConnectionFactory connectionFactory, String queue,
+                            SimpleMessageListenerContainer container) {
+        boolean matches(EdgeNodeConfig.EdgeNode node, CachingConnectionFactory current) {
+            return connectionFactory == current && queue.equals(node.getPriorityQueueName());
+        }
+    }
+}
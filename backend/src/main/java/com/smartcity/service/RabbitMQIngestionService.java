@@ -30,26 +30,27 @@
 
 package com.smartcity.service;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
 import com.smartcity.config.EdgeNodeConfig;
+import com.smartcity.config.SchedulingConfig;
 import com.smartcity.model.CityData;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.amqp.rabbit.connection.CachingConnectionFactory;
+import org.springframework.amqp.core.Message;
 import org.springframework.amqp.rabbit.core.RabbitTemplate;
-import org.springframework.amqp.support.converter.MessageConverter;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
+import java.util.stream.Collectors;
 
 /**
  * RabbitMQ Ingestion Service
  * Service chủ động PULL dữ liệu từ RabbitMQ theo batch
  * 
- * Sử dụng EdgeNodeRegistry để quản lý danh sách Edge Storage động
+ * Sử dụng EdgeNodeRegistry để quản lý danh sách Edge Storage động.
+ * Batch size và nhịp pull của từng node do AdaptivePullController quyết định
+ * dựa trên độ sâu queue (passive declare) và latency của từng stage.
  */
 @Slf4j
 @Service
@@ -58,45 +59,127 @@ public class RabbitMQIngestionService {
     private final EdgeNodeRegistry edgeNodeRegistry;
     private final DataRoutingService dataRoutingService;
     private final MLServiceClient mlServiceClient;
-    private final MessageConverter messageConverter;
-    private final ObjectMapper objectMapper;
+    private final EdgeMessageDecoder edgeMessageDecoder;
+    private final EdgeQueueInspector edgeQueueInspector;
+    private final EdgeConnectionManager edgeConnectionManager;
+    private final AdaptivePullController adaptivePullController;
+    private final FairPullScheduler fairPullScheduler;
+    private final FastLaneService fastLaneService;
+    private final EdgeMonitor edgeMonitor;
+    private final ClusterCoordinator clusterCoordinator;
+    private final ScheduledJobRunner scheduledJobRunner;
     private final MetricsService metricsService;
     
-    @Value("${ingestion.batch.size}")
-    private int batchSize;
-    
     @Value("${ingestion.batch.max-size}")
     private int maxBatchSize;
+    
+    @Value("${ingestion.adaptive.max-drain-ms:2000}")
+    private long maxDrainMs;
+    
+    private final Object pullLock = new Object();
 
     public RabbitMQIngestionService(
             EdgeNodeRegistry edgeNodeRegistry,
             DataRoutingService dataRoutingService,
             MLServiceClient mlServiceClient,
-            MessageConverter messageConverter,
-            ObjectMapper objectMapper,
+            EdgeMessageDecoder edgeMessageDecoder,
+            EdgeQueueInspector edgeQueueInspector,
+            EdgeConnectionManager edgeConnectionManager,
+            AdaptivePullController adaptivePullController,
+            FairPullScheduler fairPullScheduler,
+            FastLaneService fastLaneService,
+            EdgeMonitor edgeMonitor,
+            ClusterCoordinator clusterCoordinator,
+            ScheduledJobRunner scheduledJobRunner,
             MetricsService metricsService) {
         this.edgeNodeRegistry = edgeNodeRegistry;
         this.dataRoutingService = dataRoutingService;
         this.mlServiceClient = mlServiceClient;
-        this.messageConverter = messageConverter;
-        this.objectMapper = objectMapper;
+        this.edgeMessageDecoder = edgeMessageDecoder;
+        this.edgeQueueInspector = edgeQueueInspector;
+        this.edgeConnectionManager = edgeConnectionManager;
+        this.adaptivePullController = adaptivePullController;
+        this.fairPullScheduler = fairPullScheduler;
+        this.fastLaneService = fastLaneService;
+        this.edgeMonitor = edgeMonitor;
+        this.clusterCoordinator = clusterCoordinator;
+        this.scheduledJobRunner = scheduledJobRunner;
         this.metricsService = metricsService;
     }
 
     /**
-     * Scheduled Task - Chạy mỗi 10 giây
-     * Kéo dữ liệu từ tất cả Edge Nodes có trong Registry
+     * Scheduled Task - tick ngắn (ingestion.adaptive.tick-ms)
+     * Chỉ pull các node đã đến lượt; node còn backlog được pull lại ngay trong cùng tick
+     * (tối đa max-drain-ms để không chiếm scheduler thread của các job khác).
+     * Mỗi vòng lặp là một vòng Deficit Round Robin của FairPullScheduler.
+     * Chạy nhiều instance: chỉ pull các node mà instance đang giữ lease (ClusterCoordinator).
+     */
+    @Scheduled(fixedDelayString = "${ingestion.adaptive.tick-ms:200}", 
+               initialDelayString = "${ingestion.schedule.initial-delay}",
+               scheduler = SchedulingConfig.INGESTION_SCHEDULER)
+    public void pullDueEdges() {
+        scheduledJobRunner.run("ingestion.pull", this::drainDueEdges);
+    }
+
+    private void drainDueEdges() {
+        synchronized (pullLock) {
+            try {
+                List<EdgeNodeConfig.EdgeNode> availableNodes = edgeNodeRegistry.getAvailableNodes();
+                List<String> knownNodes = edgeNodeRegistry.getAllNodes().stream()
+                        .map(EdgeNodeConfig.EdgeNode::getName)
+                        .collect(Collectors.toList());
+                adaptivePullController.retainNodes(knownNodes);
+                fairPullScheduler.retainNodes(knownNodes);
+                
+                long deadline = System.currentTimeMillis() + maxDrainMs;
+                boolean draining = false;
+                while (System.currentTimeMillis() < deadline) {
+                    long now = System.currentTimeMillis();
+                    // Node đến lượt + node có share đảm bảo khi đang có node khác drain backlog
+                    List<EdgeNodeConfig.EdgeNode> participants = new ArrayList<>();
+                    for (EdgeNodeConfig.EdgeNode node : availableNodes) {
+                        if (!clusterCoordinator.owns(node)) {
+                            continue;
+                        }
+                        if (adaptivePullController.isDue(node.getName(), now)
+                                || (draining && fairPullScheduler.isGuaranteed(node))) {
+                            participants.add(node);
+                        }
+                    }
+                    if (participants.isEmpty()) {
+                        break;
+                    }
+                    
+                    draining = false;
+                    for (EdgeNodeConfig.EdgeNode node : fairPullScheduler.roundOrder(participants)) {
+                        boolean peek = !adaptivePullController.isDue(node.getName(), now);
+                        draining |= pullNode(node, participants, peek);
+                    }
+                    if (!draining) {
+                        break;
+                    }
+                }
+                
+            } catch (Exception e) {
+                log.error("Error during adaptive pull: {}", e.getMessage(), e);
+                // Hệ thống không crash - tick tiếp theo sẽ retry
+            }
+        }
+    }
+
+    /**
+     * Pull một lượt từ tất cả Edge Nodes có trong Registry (mà instance đang sở hữu), bỏ qua lịch adaptive
      */
-    @Scheduled(fixedRateString = "${ingestion.schedule.fixed-rate}", 
-               initialDelayString = "${ingestion.schedule.initial-delay}")
     public void pullDataFromAllEdges() {
         log.info("========================================");
-        log.info("Starting scheduled batch pull from all edge nodes");
+        log.info("Starting batch pull from all edge nodes");
         log.info("========================================");
         
-        try {
+        synchronized (pullLock) {
             // Lấy danh sách Edge Nodes từ Registry (DNS Resolution)
-            List<EdgeNodeConfig.EdgeNode> availableNodes = edgeNodeRegistry.getAvailableNodes();
+            List<EdgeNodeConfig.EdgeNode> availableNodes = edgeNodeRegistry.getAvailableNodes().stream()
+                    .filter(clusterCoordinator::owns)
+                    .collect(Collectors.toList());
             
             if (availableNodes.isEmpty()) {
                 log.warn("No available edge nodes found in registry");
@@ -105,126 +188,146 @@ public class RabbitMQIngestionService {
             
             log.info("DNS Resolved: Found {} Edge Storage(s)", availableNodes.size());
             
-            // Collect tất cả dữ liệu từ các nodes
-            List<CityData> allData = new ArrayList<>();
-            
-            // Loop qua từng Edge Node
             for (EdgeNodeConfig.EdgeNode node : availableNodes) {
-                try {
-                    log.info("Pulling batch from [{}] ({}:{})", 
-                            node.getName(), node.getHost(), node.getPort());
-                    
-                    List<CityData> nodeData = pullBatchFromEdge(node);
-                    allData.addAll(nodeData);
-                    
-                    log.info("  → Received {} messages from [{}]", 
-                            nodeData.size(), node.getName());
-                    
-                } catch (Exception e) {
-                    // Resilience: Nếu một node fail, tiếp tục với node khác
-                    log.error("Failed to pull from [{}]: {}", node.getName(), e.getMessage());
-                    log.debug("Continuing with other nodes...");
+                pullNode(node, availableNodes, false);
+            }
+        }
+        
+        log.info("========================================");
+        log.info("Batch pull completed");
+        log.info("========================================");
+    }
+
+    /**
+     * Một lượt pull → classify → store cho một node, kết quả được báo cho
+     * AdaptivePullController (batch size, lịch pull) và FairPullScheduler (deficit, share)
+     * 
+     * @param participants Các node cùng vòng (chia share theo weight)
+     * @param peek Node chưa đến lượt theo lịch adaptive, chỉ pull nếu queue có dữ liệu
+     * @return true nếu node vẫn còn backlog sau lượt pull
+     */
+    private boolean pullNode(EdgeNodeConfig.EdgeNode node, List<EdgeNodeConfig.EdgeNode> participants, boolean peek) {
+        String name = node.getName();
+        if (!edgeConnectionManager.isAvailable(node)) {
+            // Broker lỗi kết nối gần đây: chờ hết backoff
+            return false;
+        }
+        try {
+            long queueDepth = edgeQueueInspector.getQueueDepth(node);
+            if (queueDepth == 0) {
+                if (!peek) {
+                    adaptivePullController.recordIdle(name, System.currentTimeMillis());
                 }
+                fairPullScheduler.idle(name, System.currentTimeMillis());
+                return false;
             }
             
-            // Tổng hợp
-            log.info("Total messages received from all nodes: {}", allData.size());
+            int batchSize = fairPullScheduler.grant(node, participants, adaptivePullController.batchSizeFor(name));
+            log.debug("Pulling batch of {} from [{}] ({}:{}), queue depth {}", 
+                    batchSize, name, node.getHost(), node.getPort(), queueDepth);
             
-            // Record metrics for incoming messages
-            if (!allData.isEmpty()) {
-                metricsService.recordIncoming(allData.size());
-            }
+            PulledBatch batch = pullBatchFromEdge(node, batchSize);
+            List<CityData> nodeData = batch.data();
             
-            // Route và lưu trữ dữ liệu
-            if (!allData.isEmpty()) {
-                dataRoutingService.routeAndStore(allData);
+            long storeMs = 0;
+            if (!nodeData.isEmpty()) {
+                log.info("  → Received {} readings in {} messages from [{}]", 
+                        nodeData.size(), batch.messages(), name);
+                
+                // Record metrics for incoming messages
+                metricsService.recordIncoming(nodeData.size());
+                
+                // Route và lưu trữ dữ liệu
+                long storeStart = System.currentTimeMillis();
+                dataRoutingService.routeAndStore(nodeData);
+                storeMs = System.currentTimeMillis() - storeStart;
+                
                 // Record as processed after storage
-                metricsService.recordProcessed(allData.size());
-            } else {
-                log.info("No data to process in this cycle");
+                metricsService.recordProcessed(nodeData.size());
             }
             
+            long now = System.currentTimeMillis();
+            boolean backlog = adaptivePullController.recordPull(name, now, queueDepth, 
+                    batch.messages(), batch.readings(), batch.pullMs(), batch.classifyMs(), storeMs);
+            fairPullScheduler.consumed(name, now, batch.readings(), 
+                    queueDepth >= 0 ? Math.max(0, queueDepth - batch.messages()) : -1, backlog);
+            edgeMonitor.recordPull(name, now, batch.messages(), batch.readings(), 
+                    batch.pullMs() + batch.classifyMs() + storeMs, queueDepth);
+            return backlog;
+            
         } catch (Exception e) {
-            log.error("Error during batch pull: {}", e.getMessage(), e);
-            // Hệ thống không crash - lần schedule tiếp theo sẽ retry
+            // Resilience: Nếu một node fail, tiếp tục với node khác
+            log.error("Failed to pull from [{}]: {}", name, e.getMessage());
+            adaptivePullController.recordFailure(name, System.currentTimeMillis(), e.getMessage());
+            edgeConnectionManager.recordFailure(node, e);
+            edgeMonitor.recordPullFailure(name, System.currentTimeMillis(), e.getMessage());
+            fairPullScheduler.idle(name, System.currentTimeMillis());
+            return false;
         }
-        
-        log.info("========================================");
-        log.info("Batch pull completed");
-        log.info("========================================");
     }
 
     /**
      * Pull một batch dữ liệu từ một edge node
      * 
      * @param node Edge Node configuration
-     * @return List các CityData đã nhận được
+     * @param batchSize Số readings mục tiêu của batch
+     * @return Các CityData đã nhận được (đã classify) cùng thời gian pull/classify
      */
-    private List<CityData> pullBatchFromEdge(EdgeNodeConfig.EdgeNode node) {
-        List<CityData> batchData = new ArrayList<>();
-        
-        RabbitTemplate rabbitTemplate = null;
-        CachingConnectionFactory connectionFactory = null;
+    private PulledBatch pullBatchFromEdge(EdgeNodeConfig.EdgeNode node, int batchSize) {
+        List<CityData> batchData = new ArrayList<>(batchSize);
+        int messageCount = 0;
+        int receivedCount = 0;
+        long pullStart = System.currentTimeMillis();
+        long pullMs;
+        long classifyMs;
         
         try {
-            // Tạo connection động dựa vào node config
-            connectionFactory = getOrCreateConnectionFactory(node);
-            rabbitTemplate = new RabbitTemplate(connectionFactory);
-            
-            // Set MessageConverter để deserialize JSON
-            rabbitTemplate.setMessageConverter(messageConverter);
+            // Connection được pool trong EdgeConnectionManager
+            RabbitTemplate rabbitTemplate = new RabbitTemplate(edgeConnectionManager.getConnectionFactory(node));
             
             // Set receive timeout ngắn để không chờ lâu (100ms thay vì default)
             rabbitTemplate.setReceiveTimeout(100);
             
             // Set default queue
-            String queueName = node.getQueueName() != null ? 
-                    node.getQueueName() : "city-data-queue";
-            rabbitTemplate.setDefaultReceiveQueue(queueName);
-            
-            int receivedCount = 0;
+            rabbitTemplate.setDefaultReceiveQueue(EdgeQueueInspector.queueName(node));
             
             // STEP 1: Pull all messages first (without classifying)
-            // Loop để lấy messages cho đến khi:
-            // 1. Đạt max batch size
-            // 2. Queue rỗng (receiveAndConvert trả về null)
+            // Mỗi message có thể là một reading hoặc một envelope nhiều readings (EdgeMessageDecoder),
+            // readings được append thẳng vào batchData. Loop dừng khi:
+            // 1. Đã nhận max batch size messages
+            // 2. Queue rỗng (receive trả về null)
+            // 3. Số readings đạt batch size
             for (int i = 0; i < maxBatchSize; i++) {
-                Object message = rabbitTemplate.receiveAndConvert();
+                Message message = rabbitTemplate.receive();
                 
                 if (message == null) {
                     // Queue đã rỗng
-                    log.debug("[{}] - Queue empty after {} messages", 
+                    log.debug("[{}] - Queue empty after {} readings", 
                             node.getName(), receivedCount);
                     break;
                 }
+                messageCount++;
                 
-                // Convert message to CityData
-                CityData cityData = null;
-                if (message instanceof CityData) {
-                    cityData = (CityData) message;
-                } else if (message instanceof Map) {
-                    // LinkedHashMap from JSON deserialization
-                    try {
-                        cityData = objectMapper.convertValue(message, CityData.class);
-                    } catch (Exception e) {
-                        log.error("[{}] - Error converting Map to CityData: {}", 
-                                node.getName(), e.getMessage());
-                    }
-                } else {
-                    log.warn("[{}] - Received unknown message type: {}", 
-                            node.getName(), message.getClass().getName());
+                int before = batchData.size();
+                try {
+                    int decoded = edgeMessageDecoder.decodeInto(message, batchData);
+                    receivedCount += decoded;
+                    metricsService.incrementCounter("ingestion.edge.messages");
+                    metricsService.incrementCounter("ingestion.edge.readings", decoded);
+                } catch (Exception e) {
+                    // Readings đã đọc trước lỗi vẫn được giữ trong batch
+                    receivedCount += batchData.size() - before;
+                    metricsService.incrementCounter("ingestion.edge.decode_errors");
+                    log.error("[{}] - Error decoding message: {}", node.getName(), e.getMessage());
                 }
                 
-                if (cityData != null) {
-                    // Don't classify here - defer to batch
-                    batchData.add(cityData);
-                    receivedCount++;
-                    
-                    // Log mỗi 500 messages
-                    if (receivedCount % 500 == 0) {
-                        log.debug("[{}] - Pulled {} messages...", 
-                                node.getName(), receivedCount);
-                    }
+                // Readings khớp fast-path rules được ghi thẳng vào HOT tier, không chờ hết batch
+                fastLaneService.extractAndStore(batchData, before);
+                
+                // Log mỗi 500 messages
+                if (messageCount % 500 == 0) {
+                    log.debug("[{}] - Pulled {} messages ({} readings)...", 
+                            node.getName(), messageCount, receivedCount);
                 }
                 
                 // Đạt batch size mong muốn - break để tăng tốc
@@ -234,11 +337,11 @@ public class RabbitMQIngestionService {
                     break;
                 }
             }
+            pullMs = System.currentTimeMillis() - pullStart;
             
             // STEP 2: Batch classify all messages at once
+            long classifyStart = System.currentTimeMillis();
             if (!batchData.isEmpty()) {
-                long classifyStart = System.currentTimeMillis();
-                
                 try {
                     List<com.smartcity.model.DataType> dataTypes = 
                             mlServiceClient.classifyDataBatch(batchData);
@@ -262,45 +365,21 @@ public class RabbitMQIngestionService {
                 }
             }
             
+            classifyMs = System.currentTimeMillis() - classifyStart;
+            
         } catch (Exception e) {
             log.error("[{}] - Error pulling batch: {}", node.getName(), e.getMessage());
             throw new RuntimeException("Failed to pull from " + node.getName(), e);
             
         }
-        // Note: Don't destroy connection - it's pooled now
         
-        return batchData;
+        return new PulledBatch(batchData, messageCount, receivedCount, pullMs, classifyMs);
     }
-    /**
-     * Connection pool để tránh tạo/hủy connection mỗi lần pull
-     * Key: host:port
-     */
-    private final java.util.concurrent.ConcurrentHashMap<String, CachingConnectionFactory> 
-            connectionPool = new java.util.concurrent.ConcurrentHashMap<>();
 
     /**
-     * Get or create connection factory for edge node (pooled)
+     * @param readings Tổng readings đã decode, gồm cả readings đã đi fast lane (không nằm trong data)
      */
-    private CachingConnectionFactory getOrCreateConnectionFactory(EdgeNodeConfig.EdgeNode node) {
-        String key = node.getHost() + ":" + node.getPort();
-        
-        return connectionPool.computeIfAbsent(key, k -> {
-            log.info("Creating new connection to {}:{}", node.getHost(), node.getPort());
-            CachingConnectionFactory factory = new CachingConnectionFactory();
-            factory.setHost(node.getHost());
-            factory.setPort(node.getPort());
-            
-            // Use credentials từ node, hoặc default
-            if (node.getUsername() != null && node.getPassword() != null) {
-                factory.setUsername(node.getUsername());
-                factory.setPassword(node.getPassword());
-            }
-            
-            // Configure channel cache size for better performance
-            factory.setChannelCacheSize(10);
-            
-            return factory;
-        });
+    private record PulledBatch(List<CityData> data, int messages, int readings, long pullMs, long classifyMs) {
     }
 
     /**
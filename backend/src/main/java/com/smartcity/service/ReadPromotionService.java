@@ -0,0 +1,330 @@
+/*
+ * Copyright 2025 Haui.HIT - H2K
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.smartcity.service;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.smartcity.cache.CountMinSketch;
+import com.smartcity.model.CityData;
+import com.smartcity.model.DataType;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Read Promotion Service
+ * Tier của record được quyết định một lần lúc ingest; service này đếm tần suất đọc WARM/COLD
+ * (CountMinSketch có aging) và promote record / sensor được đọc nhiều vào Redis với TTL ngắn:
+ * - Record: promoted:citydata:{id} (getById)
+ * - Sensor: promoted:sensor:{tier}:{sensorId} = các records mới nhất + total lúc promote (trang theo sensor)
+ * Key riêng, không nằm trong hot:citydata:* nên không lẫn vào trang HOT / thống kê HOT.
+ * Chỉ tra Redis khi key đã vượt ngưỡng để read thường không tốn thêm round trip.
+ * Sensor có readings mới được lưu (StoredDataListener) bị xóa slice promoted: gom theo sensor,
+ * một DEL chạy nền trên cùng thread với promotion nên slice đang load dở cũng bị xóa sau khi ghi.
+ * HOT được backup sang WARM nên làm mất hiệu lực slice WARM.
+ */
+@Slf4j
+@Service
+public class ReadPromotionService implements StoredDataListener {
+
+    private static final String RECORD_KEY_PREFIX = "promoted:citydata:";
+    private static final String SENSOR_KEY_PREFIX = "promoted:sensor:";
+
+    private final RedisTemplate<String, Object> redisTemplate;
+    private final ObjectMapper objectMapper;
+    private final WarmTierStore warmTierStore;
+    private final ColdTierStore coldTierStore;
+    private final MetricsService metricsService;
+
+    @Value("${read-promotion.enabled:true}")
+    private boolean enabled;
+
+    @Value("${read-promotion.record-threshold:3}")
+    private int recordThreshold;
+
+    @Value("${read-promotion.sensor-threshold:5}")
+    private int sensorThreshold;
+
+    @Value("${read-promotion.ttl-seconds:60}")
+    private long ttlSeconds;
+
+    @Value("${read-promotion.max-sensor-records:300}")
+    private int maxSensorRecords;
+
+    @Value("${read-promotion.expected-keys:100000}")
+    private int expectedKeys;
+
+    @Value("${read-promotion.aging-samples:100000}")
+    private long agingSamples;
+
+    private CountMinSketch recordSketch;
+    private CountMinSketch sensorSketch;
+    private final Set<String> pending = ConcurrentHashMap.newKeySet();
+    private final Set<String> staleSensorKeys = ConcurrentHashMap.newKeySet();
+    private final AtomicBoolean invalidationScheduled = new AtomicBoolean();
+    private ThreadPoolExecutor promotionExecutor;
+
+    /**
+     * Records mới nhất (timestamp giảm dần) của một sensor trong một tier
+     */
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class PromotedSlice {
+        private List<CityData> records;
+        private long total;          // Tổng số records của sensor lúc promote
+        private long promotedAt;
+
+        /**
+         * records chứa toàn bộ dữ liệu của sensor (lúc promote)
+         */
+        @JsonIgnore
+        public boolean isComplete() {
+            return records.size() >= total;
+        }
+    }
+
+    public ReadPromotionService(RedisTemplate<String, Object> redisTemplate,
+                                ObjectMapper objectMapper,
+                                WarmTierStore warmTierStore,
+                                ColdTierStore coldTierStore,
+                                MetricsService metricsService) {
+        this.redisTemplate = redisTemplate;
+        this.objectMapper = objectMapper;
+        this.warmTierStore = warmTierStore;
+        this.coldTierStore = coldTierStore;
+        this.metricsService = metricsService;
+    }
+
+    @PostConstruct
+    public void init() {
+        // Ngưỡng cao nhất cần phân biệt là threshold, giữ thêm khoảng trống cho aging
+        int maxCount = Math.max(15, 2 * Math.max(recordThreshold, sensorThreshold));
+        recordSketch = new CountMinSketch(expectedKeys, maxCount, agingSamples);
+        sensorSketch = new CountMinSketch(Math.max(1024, expectedKeys / 100), maxCount, agingSamples / 10);
+        // Promotion là tối ưu: queue đầy thì bỏ qua, lần đọc sau sẽ thử lại
+        promotionExecutor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(1000),
+                r -> {
+                    Thread thread = new Thread(r, "read-promotion");
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+        metricsService.registerGauge("read_promotion.pending", pending::size);
+        log.info("Read promotion: {} (record threshold={}, sensor threshold={}, TTL={}s)",
+                enabled ? "ENABLED" : "DISABLED", recordThreshold, sensorThreshold, ttlSeconds);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (promotionExecutor != null) {
+            promotionExecutor.shutdownNow();
+        }
+    }
+
+    /**
+     * Ghi nhận một lần đọc record theo id và trả về bản promoted nếu có
+     */
+    public CityData lookupRecord(String id) {
+        if (!enabled || increment(recordSketch, id) < recordThreshold) {
+            return null;
+        }
+        try {
+            Object value = redisTemplate.opsForValue().get(RECORD_KEY_PREFIX + id);
+            if (value != null) {
+                metricsService.incrementCounter("read_promotion.record_hits");
+                return objectMapper.convertValue(value, CityData.class);
+            }
+        } catch (Exception e) {
+            metricsService.incrementCounter("read_promotion.errors");
+            log.debug("Promoted record lookup failed for {}: {}", id, e.getMessage());
+        }
+        return null;
+    }
+
+    /**
+     * Record vừa được đọc từ WARM/COLD: promote nếu đã vượt ngưỡng
+     */
+    public void onRecordRead(CityData data) {
+        if (!enabled || data.getId() == null || estimate(recordSketch, data.getId()) < recordThreshold) {
+            return;
+        }
+        submit(RECORD_KEY_PREFIX + data.getId(), () -> {
+            redisTemplate.opsForValue().set(RECORD_KEY_PREFIX + data.getId(), data, ttlSeconds, TimeUnit.SECONDS);
+            metricsService.incrementCounter("read_promotion.records_promoted");
+        });
+    }
+
+    /**
+     * Ghi nhận một lần đọc trang theo sensor và trả về slice promoted nếu có
+     */
+    public PromotedSlice lookupSensor(DataType tier, String sensorId) {
+        if (!enabled || increment(sensorSketch, sensorKey(tier, sensorId)) < sensorThreshold) {
+            return null;
+        }
+        try {
+            Object value = redisTemplate.opsForValue().get(sensorKey(tier, sensorId));
+            if (value != null) {
+                metricsService.incrementCounter("read_promotion.sensor_hits");
+                return objectMapper.convertValue(value, PromotedSlice.class);
+            }
+        } catch (Exception e) {
+            metricsService.incrementCounter("read_promotion.errors");
+            log.debug("Promoted sensor lookup failed for {}: {}", sensorId, e.getMessage());
+        }
+        return null;
+    }
+
+    /**
+     * Trang của sensor vừa được đọc từ tier: promote các records mới nhất nếu đã vượt ngưỡng
+     */
+    public void onSensorRead(DataType tier, String sensorId) {
+        String key = sensorKey(tier, sensorId);
+        if (!enabled || estimate(sensorSketch, key) < sensorThreshold) {
+            return;
+        }
+        submit(key, () -> {
+            PromotedSlice slice = loadSensor(tier, sensorId);
+            redisTemplate.opsForValue().set(key, slice, ttlSeconds, TimeUnit.SECONDS);
+            metricsService.incrementCounter("read_promotion.sensors_promoted");
+            log.debug("Promoted {} {} records of sensor {} (total={})",
+                    slice.getRecords().size(), tier, sensorId, slice.getTotal());
+        });
+    }
+
+    /**
+     * Readings mới của sensor làm slice promoted cũ (trang mới nhất, range không có "to")
+     */
+    @Override
+    public void onStored(DataType tier, List<CityData> records) {
+        if (!enabled) {
+            return;
+        }
+        DataType sliceTier = tier == DataType.COLD ? DataType.COLD : DataType.WARM;
+        for (CityData data : records) {
+            if (data.getSourceId() != null) {
+                staleSensorKeys.add(sensorKey(sliceTier, data.getSourceId()));
+            }
+        }
+        scheduleInvalidation();
+    }
+
+    private void scheduleInvalidation() {
+        if (staleSensorKeys.isEmpty() || !invalidationScheduled.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            promotionExecutor.execute(this::invalidateStaleSensors);
+        } catch (RejectedExecutionException e) {
+            // Keys vẫn nằm trong staleSensorKeys, lần ghi sau thử lại
+            invalidationScheduled.set(false);
+        }
+    }
+
+    private void invalidateStaleSensors() {
+        invalidationScheduled.set(false);
+        List<String> keys = new ArrayList<>(staleSensorKeys);
+        staleSensorKeys.removeAll(keys);
+        if (keys.isEmpty()) {
+            return;
+        }
+        try {
+            Long deleted = redisTemplate.delete(keys);
+            if (deleted != null && deleted > 0) {
+                metricsService.incrementCounter("read_promotion.sensors_invalidated", deleted);
+            }
+        } catch (Exception e) {
+            // Slice hết hạn theo TTL
+            metricsService.incrementCounter("read_promotion.errors");
+            log.warn("Cannot invalidate {} promoted sensor slices: {}", keys.size(), e.getMessage());
+        }
+    }
+
+    private PromotedSlice loadSensor(DataType tier, String sensorId) {
+        List<CityData> records;
+        long total;
+        if (tier == DataType.COLD) {
+            total = coldTierStore.count(sensorId, null, null);
+            records = coldTierStore.findRecent(sensorId, null, null, 0, maxSensorRecords);
+        } else {
+            Criteria filter = Criteria.where("dataType").is(DataType.WARM).and("sourceId").is(sensorId);
+            total = warmTierStore.countRange(filter, null, null);
+            records = warmTierStore.findRange(filter, null, null, Sort.Direction.DESC, 0, maxSensorRecords);
+        }
+        // ArrayList: Redis JSON serializer ghi kèm kiểu collection
+        return new PromotedSlice(new ArrayList<>(records), total, System.currentTimeMillis());
+    }
+
+    private void submit(String key, Runnable promotion) {
+        if (!pending.add(key)) {
+            return;
+        }
+        try {
+            promotionExecutor.execute(() -> {
+                try {
+                    promotion.run();
+                } catch (Exception e) {
+                    metricsService.incrementCounter("read_promotion.errors");
+                    log.warn("Read promotion of {} failed: {}", key, e.getMessage());
+                } finally {
+                    pending.remove(key);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // Lần đọc sau sẽ thử lại
+            pending.remove(key);
+            metricsService.incrementCounter("read_promotion.dropped");
+        }
+    }
+
+    private static String sensorKey(DataType tier, String sensorId) {
+        return SENSOR_KEY_PREFIX + tier.name().toLowerCase(Locale.ROOT) + ":" + sensorId;
+    }
+
+    private static int increment(CountMinSketch sketch, String key) {
+        synchronized (sketch) {
+            return sketch.increment(key);
+        }
+    }
+
+    private static int estimate(CountMinSketch sketch, String key) {
+        synchronized (sketch) {
+            return sketch.estimate(key);
+        }
+    }
+}
@@ -0,0 +1,418 @@
+/*
+ * Copyright 2025 Haui.HIT - H2K
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.smartcity.service;
+
+import com.mongodb.bulk.BulkWriteError;
+import com.smartcity.config.SchedulingConfig;
+import com.smartcity.model.CityData;
+import com.smartcity.model.DataType;
+import com.smartcity.model.SensorRollup;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.index.IndexOperations;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.util.StringUtils;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Rollup Service
+ * Tổng hợp readings theo (sensor, metric, bucket 1 phút / 1 giờ) ngay khi được lưu (StoredDataListener),
+ * giữ delta trong bộ nhớ và flush định kỳ vào MongoDB Warm (sensor_rollups) bằng $inc/$min/$max.
+ * Biểu đồ lịch sử đọc rollups (GET /api/data/aggregates) thay vì page qua raw readings.
+ *
+ * Metric = mỗi field số ở top-level của payload.
+ */
+@Slf4j
+@Service
+public class RollupService implements StoredDataListener {
+
+    public enum Resolution {
+        MINUTE("1m", TimeUnit.MINUTES.toMillis(1)),
+        HOUR("1h", TimeUnit.HOURS.toMillis(1));
+
+        private final String label;
+        private final long millis;
+
+        Resolution(String label, long millis) {
+            this.label = label;
+            this.millis = millis;
+        }
+
+        public String getLabel() {
+            return label;
+        }
+
+        public long getMillis() {
+            return millis;
+        }
+
+        public long bucketStart(long timestamp) {
+            return Math.floorDiv(timestamp, millis) * millis;
+        }
+
+        public static Resolution fromLabel(String label) {
+            for (Resolution resolution : values()) {
+                if (resolution.label.equalsIgnoreCase(label)) {
+                    return resolution;
+                }
+            }
+            throw new IllegalArgumentException("Unknown resolution: " + label + " (expected 1m or 1h)");
+        }
+    }
+
+    private record RollupKey(String sensorId, String metric, Resolution resolution, long bucketStart) {
+    }
+
+    /**
+     * count/min/max/sum/sum of squares, gộp được (merge)
+     */
+    static final class Accumulator {
+        long count;
+        double min = Double.POSITIVE_INFINITY;
+        double max = Double.NEGATIVE_INFINITY;
+        double sum;
+        double sumSquares;
+
+        void add(double value) {
+            count++;
+            min = Math.min(min, value);
+            max = Math.max(max, value);
+            sum += value;
+            sumSquares += value * value;
+        }
+
+        void merge(long otherCount, double otherMin, double otherMax, double otherSum, double otherSumSquares) {
+            count += otherCount;
+            min = Math.min(min, otherMin);
+            max = Math.max(max, otherMax);
+            sum += otherSum;
+            sumSquares += otherSumSquares;
+        }
+
+        void merge(Accumulator other) {
+            merge(other.count, other.min, other.max, other.sum, other.sumSquares);
+        }
+
+        Map<String, Object> toMap() {
+            Map<String, Object> result = new LinkedHashMap<>();
+            double mean = count > 0 ? sum / count : 0;
+            result.put("count", count);
+            result.put("min", count > 0 ? min : null);
+            result.put("max", count > 0 ? max : null);
+            result.put("avg", count > 0 ? mean : null);
+            result.put("stddev", count > 0 ? Math.sqrt(Math.max(0, sumSquares / count - mean * mean)) : null);
+            return result;
+        }
+    }
+
+    private final MongoTemplate warmMongoTemplate;
+    private final MetricsService metricsService;
+    private final ScheduledJobRunner scheduledJobRunner;
+
+    // Delta chưa flush; compute()/remove() trên cùng key được ConcurrentHashMap tuần tự hoá
+    private final ConcurrentHashMap<RollupKey, Accumulator> pending = new ConcurrentHashMap<>();
+    private volatile boolean indexesEnsured;
+
+    @Value("${rollup.enabled:true}")
+    private boolean enabled;
+
+    @Value("${rollup.max-pending-buckets:200000}")
+    private int maxPendingBuckets;
+
+    @Value("${rollup.max-query-buckets:10000}")
+    private int maxQueryBuckets;
+
+    @Value("${rollup.retention.minute-days:30}")
+    private int minuteRetentionDays;
+
+    @Value("${rollup.retention.hour-days:0}")
+    private int hourRetentionDays;
+
+    public RollupService(@Qualifier("warmMongoTemplate") MongoTemplate warmMongoTemplate,
+                         MetricsService metricsService,
+                         ScheduledJobRunner scheduledJobRunner) {
+        this.warmMongoTemplate = warmMongoTemplate;
+        this.metricsService = metricsService;
+        this.scheduledJobRunner = scheduledJobRunner;
+    }
+
+    @PostConstruct
+    public void init() {
+        metricsService.registerGauge("rollup.pending_buckets", pending::size);
+        log.info("Rollups: {} (1m retention={}d, 1h retention={}d)",
+                enabled ? "ENABLED" : "DISABLED", minuteRetentionDays, hourRetentionDays);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (enabled && !pending.isEmpty()) {
+            flush();
+        }
+    }
+
+    @Override
+    public void onStored(DataType tier, List<CityData> records) {
+        if (!enabled) {
+            return;
+        }
+        for (CityData data : records) {
+            if (data.getSourceId() == null || data.getTimestamp() == null || data.getPayload() == null) {
+                continue;
+            }
+            for (Map.Entry<String, Object> field : data.getPayload().entrySet()) {
+                if (!(field.getValue() instanceof Number number)) {
+                    continue;
+                }
+                double value = number.doubleValue();
+                if (Double.isNaN(value) || Double.isInfinite(value)) {
+                    continue;
+                }
+                for (Resolution resolution : Resolution.values()) {
+                    RollupKey key = new RollupKey(data.getSourceId(), field.getKey(), resolution,
+                            resolution.bucketStart(data.getTimestamp()));
+                    accumulate(key, value);
+                }
+            }
+        }
+    }
+
+    private void accumulate(RollupKey key, double value) {
+        if (pending.size() >= maxPendingBuckets && !pending.containsKey(key)) {
+            // MongoDB không flush được trong thời gian dài: bỏ bucket mới thay vì hết bộ nhớ
+            metricsService.incrementCounter("rollup.dropped_values");
+            return;
+        }
+        pending.compute(key, (k, acc) -> {
+            Accumulator target = acc != null ? acc : new Accumulator();
+            // Đồng bộ với aggregate() đọc delta chưa flush
+            synchronized (target) {
+                target.add(value);
+            }
+            return target;
+        });
+    }
+
+    @Scheduled(fixedDelayString = "${rollup.flush-interval-ms:10000}",
+               initialDelayString = "${rollup.flush-interval-ms:10000}",
+               scheduler = SchedulingConfig.PERIODIC_SCHEDULER)
+    public void scheduledFlush() {
+        if (enabled) {
+            scheduledJobRunner.run("rollup.flush", this::flush);
+        }
+    }
+
+    /**
+     * Ghi các delta đang chờ vào sensor_rollups (upsert cộng dồn); lỗi thì trả delta về để flush lần sau
+     * (lỗi một phần: chỉ trả lại các upsert bị lỗi)
+     */
+    public void flush() {
+        if (pending.isEmpty()) {
+            return;
+        }
+        Map<RollupKey, Accumulator> batch = new LinkedHashMap<>();
+        for (RollupKey key : new ArrayList<>(pending.keySet())) {
+            Accumulator acc = pending.remove(key);
+            if (acc != null) {
+                batch.put(key, acc);
+            }
+        }
+        if (batch.isEmpty()) {
+            return;
+        }
+        try {
+            ensureIndexes();
+            BulkOperations bulkOps = warmMongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, SensorRollup.class);
+            batch.forEach((key, acc) -> {
+                Update update = new Update()
+                        .inc("count", acc.count)
+                        .inc("sum", acc.sum)
+                        .inc("sumSquares", acc.sumSquares)
+                        .min("min", acc.min)
+                        .max("max", acc.max)
+                        .setOnInsert("sensorId", key.sensorId())
+                        .setOnInsert("metric", key.metric())
+                        .setOnInsert("resolution", key.resolution().getLabel())
+                        .setOnInsert("bucketStart", key.bucketStart());
+                Date expireAt = expireAt(key);
+                if (expireAt != null) {
+                    update.setOnInsert("expireAt", expireAt);
+                }
+                bulkOps.upsert(Query.query(Criteria.where("_id").is(rollupId(key))), update);
+            });
+            bulkOps.execute();
+            metricsService.incrementCounter("rollup.buckets_flushed", batch.size());
+            log.debug("Flushed {} rollup buckets", batch.size());
+        } catch (BulkOperationException e) {
+            // UNORDERED: các upsert không nằm trong errors đã được áp dụng, trả lại chúng sẽ bị cộng hai lần
+            List<RollupKey> keys = new ArrayList<>(batch.keySet());
+            int failed = 0;
+            for (BulkWriteError error : e.getErrors()) {
+                RollupKey key = keys.get(error.getIndex());
+                requeue(key, batch.get(key));
+                failed++;
+            }
+            metricsService.incrementCounter("rollup.buckets_flushed", batch.size() - failed);
+            metricsService.incrementCounter("rollup.flush_failures");
+            log.warn("Rollup flush partially failed ({} of {} buckets kept for retry): {}",
+                    failed, batch.size(), e.getMessage());
+        } catch (Exception e) {
+            batch.forEach(this::requeue);
+            metricsService.incrementCounter("rollup.flush_failures");
+            log.warn("Rollup flush failed ({} buckets kept for retry): {}", batch.size(), e.getMessage());
+        }
+    }
+
+    private void requeue(RollupKey key, Accumulator acc) {
+        pending.merge(key, acc, (current, failed) -> {
+            synchronized (current) {
+                current.merge(failed);
+            }
+            return current;
+        });
+    }
+
+    /**
+     * Aggregates của một sensor trong [from, to]: theo bucket (gộp theo stepMs nếu có) và tổng cho cả range.
+     * Bucket được tính nếu bucketStart nằm trong range (độ chính xác ở hai đầu = độ dài bucket).
+     * Bao gồm cả delta chưa flush.
+     *
+     * @param metric null = mọi metric của sensor
+     * @param resolution null = tự chọn (1m nếu range ≤ 1 ngày, ngược lại 1h)
+     * @param stepMs null = theo resolution; phải là bội của độ dài bucket
+     */
+    public Map<String, Object> aggregate(String sensorId, String metric, long from, long to,
+                                         Resolution resolution, Long stepMs) {
+        if (!StringUtils.hasText(sensorId)) {
+            throw new IllegalArgumentException("sensorId is required");
+        }
+        if (to < from) {
+            throw new IllegalArgumentException("to must be >= from");
+        }
+        Resolution effective = resolution != null ? resolution
+                : (to - from <= TimeUnit.DAYS.toMillis(1) ? Resolution.MINUTE : Resolution.HOUR);
+        long step = stepMs != null ? stepMs : effective.getMillis();
+        if (step <= 0 || step % effective.getMillis() != 0) {
+            throw new IllegalArgumentException("stepMs must be a positive multiple of " + effective.getMillis());
+        }
+        long firstBucket = effective.bucketStart(from);
+
+        Criteria criteria = Criteria.where("sensorId").is(sensorId)
+                .and("resolution").is(effective.getLabel())
+                .and("bucketStart").gte(firstBucket).lte(to);
+        if (StringUtils.hasText(metric)) {
+            criteria = criteria.and("metric").is(metric);
+        }
+        Query query = Query.query(criteria)
+                .with(Sort.by(Sort.Direction.ASC, "bucketStart"))
+                .limit(maxQueryBuckets);
+        List<SensorRollup> stored = warmMongoTemplate.find(query, SensorRollup.class);
+
+        // metric → step start → accumulator
+        Map<String, TreeMap<Long, Accumulator>> series = new TreeMap<>();
+        for (SensorRollup rollup : stored) {
+            long stepStart = Math.floorDiv(rollup.getBucketStart(), step) * step;
+            series.computeIfAbsent(rollup.getMetric(), k -> new TreeMap<>())
+                    .computeIfAbsent(stepStart, k -> new Accumulator())
+                    .merge(rollup.getCount(), rollup.getMin(), rollup.getMax(), rollup.getSum(), rollup.getSumSquares());
+        }
+        pending.forEach((key, acc) -> {
+            if (key.sensorId().equals(sensorId) && key.resolution() == effective
+                    && key.bucketStart() >= firstBucket && key.bucketStart() <= to
+                    && (!StringUtils.hasText(metric) || key.metric().equals(metric))) {
+                long stepStart = Math.floorDiv(key.bucketStart(), step) * step;
+                synchronized (acc) {
+                    series.computeIfAbsent(key.metric(), k -> new TreeMap<>())
+                            .computeIfAbsent(stepStart, k -> new Accumulator())
+                            .merge(acc);
+                }
+            }
+        });
+
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        series.forEach((name, buckets) -> {
+            Accumulator total = new Accumulator();
+            List<Map<String, Object>> points = new ArrayList<>(buckets.size());
+            buckets.forEach((start, acc) -> {
+                total.merge(acc);
+                Map<String, Object> point = new LinkedHashMap<>();
+                point.put("bucketStart", start);
+                point.putAll(acc.toMap());
+                points.add(point);
+            });
+            Map<String, Object> entry = new LinkedHashMap<>();
+            entry.put("summary", total.toMap());
+            entry.put("buckets", points);
+            metrics.put(name, entry);
+        });
+
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("sensorId", sensorId);
+        result.put("from", from);
+        result.put("to", to);
+        result.put("resolution", effective.getLabel());
+        result.put("stepMs", step);
+        result.put("truncated", stored.size() >= maxQueryBuckets);
+        result.put("metrics", metrics);
+        return result;
+    }
+
+    private Date expireAt(RollupKey key) {
+        int days = key.resolution() == Resolution.MINUTE ? minuteRetentionDays : hourRetentionDays;
+        return days > 0 ? new Date(key.bucketStart() + key.resolution().getMillis() + TimeUnit.DAYS.toMillis(days)) : null;
+    }
+
+    private static String rollupId(RollupKey key) {
+        return key.sensorId() + "|" + key.metric() + "|" + key.resolution().getLabel() + "|" + key.bucketStart();
+    }
+
+    /**
+     * Tạo index lần flush đầu tiên (MongoDB có thể chưa sẵn sàng lúc khởi động)
+     */
+    private void ensureIndexes() {
+        if (indexesEnsured) {
+            return;
+        }
+        IndexOperations indexOps = warmMongoTemplate.indexOps(SensorRollup.class);
+        indexOps.ensureIndex(new Index()
+                .on("sensorId", Sort.Direction.ASC)
+                .on("resolution", Sort.Direction.ASC)
+                .on("bucketStart", Sort.Direction.ASC));
+        indexOps.ensureIndex(new Index().on("expireAt", Sort.Direction.ASC).expire(0));
+        indexesEnsured = true;
+    }
+}
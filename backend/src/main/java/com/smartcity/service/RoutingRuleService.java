@@ -0,0 +1,176 @@
+/*
+ * Copyright 2025 Haui.HIT - H2K
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.smartcity.service;
+
+import com.smartcity.config.SchedulingConfig;
+import com.smartcity.model.CityData;
+import com.smartcity.model.DataType;
+import com.smartcity.routing.RoutingRules;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.ResourceLoader;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Rules phân loại tier cho readings không có dataType (thay cho chuỗi if/contains cố định)
+ * - Rules đọc từ routing.rules.location (classpath: hoặc file:), compile thành {@link RoutingRules}
+ * - Hot reload: job định kỳ đọc lại file, nội dung đổi thì compile và thay bộ rules đang dùng;
+ *   lỗi cú pháp giữ nguyên bộ rules cũ. POST /api/system/routing-rules/reload để reload ngay
+ * - Mỗi instance đọc file của chính nó (mount chung config giữa các instance)
+ * - Khởi động: file cấu hình lỗi → dùng rules đóng gói {@value #BUNDLED_LOCATION}; cả hai lỗi → dừng khởi động
+ */
+@Slf4j
+@Service
+public class RoutingRuleService {
+
+    /** Rules đóng gói theo bản build, dùng khi file cấu hình lỗi lúc khởi động */
+    private static final String BUNDLED_LOCATION = "classpath:routing-rules.conf";
+
+    private final ResourceLoader resourceLoader;
+    private final MetricsService metricsService;
+    private final ScheduledJobRunner scheduledJobRunner;
+
+    @Value("${routing.rules.location:classpath:routing-rules.conf}")
+    private String location;
+
+    @Value("${routing.rules.memo-max-entries:100000}")
+    private int memoMaxEntries;
+
+    private volatile RoutingRules rules;
+    /** Nội dung đọc lần gần nhất (kể cả khi lỗi cú pháp) để job chỉ compile khi file đổi */
+    private volatile String seenText;
+    private volatile Instant loadedAt;
+    private volatile String lastError;
+
+    public RoutingRuleService(ResourceLoader resourceLoader, MetricsService metricsService,
+                              ScheduledJobRunner scheduledJobRunner) {
+        this.resourceLoader = resourceLoader;
+        this.metricsService = metricsService;
+        this.scheduledJobRunner = scheduledJobRunner;
+    }
+
+    @PostConstruct
+    public void init() {
+        try {
+            reload();
+        } catch (RuntimeException e) {
+            if (BUNDLED_LOCATION.equals(location)) {
+                throw new IllegalStateException("Cannot load routing rules from " + location + ": " + e.getMessage(), e);
+            }
+            log.error("Cannot load routing rules from {}: {}. Using {}", location, e.getMessage(), BUNDLED_LOCATION);
+            try {
+                apply(read(BUNDLED_LOCATION), BUNDLED_LOCATION);
+            } catch (RuntimeException bundled) {
+                throw new IllegalStateException("Cannot load routing rules from " + location + " or "
+                        + BUNDLED_LOCATION + ": " + bundled.getMessage(), bundled);
+            }
+            lastError = e.getMessage();
+        }
+        metricsService.registerGauge("routing.rules.count", () -> rules.getRules().size());
+    }
+
+    /**
+     * Tier cho reading chưa có dataType; lỗi bất ngờ → WARM
+     */
+    public DataType classify(CityData data) {
+        try {
+            return rules.classify(data.getSourceId(), data.getPayload());
+        } catch (Exception e) {
+            log.warn("Error classifying data {}: {}. Using default WARM", data.getId(), e.getMessage());
+            return DataType.WARM;
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${routing.rules.reload-interval-ms:10000}",
+               initialDelayString = "${routing.rules.reload-interval-ms:10000}",
+               scheduler = SchedulingConfig.PERIODIC_SCHEDULER)
+    public void scheduledReload() {
+        scheduledJobRunner.run("routing.rules.reload", this::reloadIfChanged);
+    }
+
+    /**
+     * Đọc lại và compile rules (kể cả khi nội dung không đổi)
+     *
+     * @throws IllegalArgumentException rules sai cú pháp (bộ rules cũ vẫn được dùng)
+     * @throws UncheckedIOException không đọc được file
+     */
+    public Map<String, Object> reload() {
+        apply(read(location), location);
+        return getStatus();
+    }
+
+    public Map<String, Object> getStatus() {
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("location", location);
+        status.put("loadedAt", loadedAt != null ? loadedAt.toString() : null);
+        status.put("lastError", lastError);
+        status.put("rules", rules.getRules());
+        status.putAll(rules.getStats());
+        return status;
+    }
+
+    /**
+     * Compile khi nội dung file khác lần đọc trước (nội dung lỗi chỉ báo lỗi một lần)
+     */
+    private void reloadIfChanged() {
+        String text = read(location);
+        if (!text.equals(seenText)) {
+            apply(text, location);
+        }
+    }
+
+    private synchronized void apply(String text, String source) {
+        try {
+            RoutingRules compiled = RoutingRules.parse(text, memoMaxEntries);
+            boolean initial = rules == null;
+            rules = compiled;
+            seenText = text;
+            loadedAt = Instant.now();
+            lastError = null;
+            if (!initial) {
+                metricsService.incrementCounter("routing.rules.reloads");
+            }
+            log.info("Routing rules {} from {} ({})", initial ? "loaded" : "reloaded", source, compiled.getStats());
+        } catch (IllegalArgumentException e) {
+            metricsService.incrementCounter("routing.rules.reload_errors");
+            log.error("Invalid routing rules in {}, keeping current rules: {}", source, e.getMessage());
+            lastError = e.getMessage();
+            seenText = text;
+            throw e;
+        }
+    }
+
+    private String read(String from) {
+        Resource resource = resourceLoader.getResource(from);
+        try (InputStream input = resource.getInputStream()) {
+            return new String(input.readAllBytes(), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot read " + from, e);
+        }
+    }
+}
@@ -0,0 +1,158 @@
+/*
+ * Copyright 2025 Haui.HIT - H2K
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.smartcity.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Scheduled Job Runner
+ * Bọc thân của các job nền:
+ * - Overrun protection: lượt mới bị bỏ qua nếu lượt trước của cùng job chưa xong
+ *   (VD: lượt scheduled và lượt trigger thủ công chạy trên hai thread khác nhau)
+ * - Metrics: timer "job.<name>.duration", counters "job.<name>.runs/.skipped/.failures"
+ * - runLocked: thêm Redis lock "lock:job:<name>" để job chỉ chạy trên một instance tại một thời điểm
+ *   (scheduling.distributed-lock.enabled)
+ */
+@Slf4j
+@Component
+public class ScheduledJobRunner {
+
+    private static final String LOCK_PREFIX = "lock:job:";
+
+    /** Chỉ xoá lock nếu token khớp (lock chưa hết hạn và bị instance khác lấy) */
+    private static final DefaultRedisScript<Long> UNLOCK_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('GET', KEYS[1]) == ARGV[1] then return redis.call('DEL', KEYS[1]) end "
+                    + "return 0", Long.class);
+
+    private final StringRedisTemplate stringRedisTemplate;
+    private final MetricsService metricsService;
+
+    @Value("${scheduling.distributed-lock.enabled:false}")
+    private boolean distributedLockEnabled;
+
+    @Value("${scheduling.distributed-lock.ttl-ms:600000}")
+    private long lockTtlMs;
+
+    private final Map<String, JobState> jobs = new ConcurrentHashMap<>();
+
+    public ScheduledJobRunner(StringRedisTemplate stringRedisTemplate, MetricsService metricsService) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.metricsService = metricsService;
+    }
+
+    /**
+     * Chạy job nếu lượt trước đã xong
+     *
+     * @return false nếu bị bỏ qua
+     */
+    public boolean run(String name, Runnable task) {
+        JobState state = jobs.computeIfAbsent(name, k -> new JobState());
+        if (!state.running.compareAndSet(false, true)) {
+            metricsService.incrementCounter("job." + name + ".skipped");
+            log.debug("Job {} still running, skipping this run", name);
+            return false;
+        }
+        long start = System.currentTimeMillis();
+        try {
+            task.run();
+            state.lastOutcome = "OK";
+            return true;
+        } catch (RuntimeException e) {
+            state.lastOutcome = "FAILED: " + e.getMessage();
+            metricsService.incrementCounter("job." + name + ".failures");
+            throw e;
+        } finally {
+            long duration = System.currentTimeMillis() - start;
+            state.lastRunAt = start;
+            state.lastDurationMs = duration;
+            state.running.set(false);
+            metricsService.incrementCounter("job." + name + ".runs");
+            metricsService.recordTimer("job." + name + ".duration", duration);
+        }
+    }
+
+    /**
+     * Như run, thêm Redis lock khi bật distributed lock; không lấy được lock (instance khác đang chạy
+     * hoặc Redis lỗi) → bỏ qua lượt này
+     */
+    public boolean runLocked(String name, Runnable task) {
+        if (!distributedLockEnabled) {
+            return run(name, task);
+        }
+        String key = LOCK_PREFIX + name;
+        String token = UUID.randomUUID().toString();
+        Boolean locked;
+        try {
+            locked = stringRedisTemplate.opsForValue().setIfAbsent(key, token, Duration.ofMillis(lockTtlMs));
+        } catch (Exception e) {
+            metricsService.incrementCounter("job." + name + ".lock_errors");
+            log.warn("Cannot acquire lock for job {}, skipping: {}", name, e.getMessage());
+            return false;
+        }
+        if (!Boolean.TRUE.equals(locked)) {
+            metricsService.incrementCounter("job." + name + ".lock_busy");
+            log.debug("Job {} is running on another instance, skipping", name);
+            return false;
+        }
+        try {
+            return run(name, task);
+        } finally {
+            try {
+                stringRedisTemplate.execute(UNLOCK_SCRIPT, List.of(key), token);
+            } catch (Exception e) {
+                // Lock tự hết hạn sau ttl
+                log.warn("Cannot release lock for job {}: {}", name, e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Trạng thái lượt chạy gần nhất của từng job
+     */
+    public Map<String, Object> getJobs() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        jobs.forEach((name, state) -> {
+            Map<String, Object> job = new LinkedHashMap<>();
+            job.put("running", state.running.get());
+            job.put("lastRunAt", state.lastRunAt > 0 ? state.lastRunAt : null);
+            job.put("lastDurationMs", state.lastDurationMs);
+            job.put("lastOutcome", state.lastOutcome);
+            result.put(name, job);
+        });
+        return result;
+    }
+
+    private static class JobState {
+        private final AtomicBoolean running = new AtomicBoolean(false);
+        private volatile long lastRunAt;
+        private volatile long lastDurationMs;
+        private volatile String lastOutcome = "NOT_STARTED";
+    }
+}
@@ -0,0 +1,314 @@
+/*
+ * Copyright 2025 Haui.HIT - H2K
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.smartcity.service;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.smartcity.cache.SensorStateTable;
+import com.smartcity.config.SchedulingConfig;
+import com.smartcity.model.CityData;
+import com.smartcity.model.DataType;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Sensor State Store
+ * State mới nhất của mỗi sensor (last value, EWMA, rolling min/max theo metric) cập nhật ngay khi readings
+ * được lưu ở bất kỳ tier nào (StoredDataListener), để "giá trị mới nhất của mọi sensor" không cần query cross-tier.
+ * - Dữ liệu nằm trong {@link SensorStateTable} (mảng primitive); GET /api/data/latest stream JSON thẳng từ bảng
+ * - Snapshot định kỳ ra file local (ghi file tạm rồi rename), nạp lại lúc khởi động
+ * - Mỗi instance giữ state của readings nó ingest (cluster: sensors của edge nodes instance đó sở hữu);
+ *   response ghi rõ scope "instance", instanceId và số instance, client gộp kết quả khi cần view toàn cluster
+ */
+@Slf4j
+@Service
+public class SensorStateService implements StoredDataListener {
+
+    private final ObjectMapper objectMapper;
+    private final MetricsService metricsService;
+    private final ScheduledJobRunner scheduledJobRunner;
+    private final ClusterCoordinator clusterCoordinator;
+
+    @Value("${sensor-state.enabled:true}")
+    private boolean enabled;
+
+    @Value("${sensor-state.max-sensors:100000}")
+    private int maxSensors;
+
+    @Value("${sensor-state.max-metrics:1024}")
+    private int maxMetrics;
+
+    @Value("${sensor-state.metrics-per-sensor:8}")
+    private int metricsPerSensor;
+
+    @Value("${sensor-state.rolling-window-ms:3600000}")
+    private long rollingWindowMs;
+
+    @Value("${sensor-state.rolling-buckets:6}")
+    private int rollingBuckets;
+
+    @Value("${sensor-state.ewma-half-life-ms:300000}")
+    private long ewmaHalfLifeMs;
+
+    @Value("${sensor-state.snapshot.enabled:true}")
+    private boolean snapshotEnabled;
+
+    @Value("${sensor-state.snapshot.path:data/sensor-state.snap}")
+    private String snapshotPath;
+
+    private SensorStateTable table;
+    /** Số lần cập nhật, snapshot bỏ qua khi không có gì mới */
+    private final AtomicLong updates = new AtomicLong();
+    private volatile long snapshotUpdates = -1;
+
+    public SensorStateService(ObjectMapper objectMapper, MetricsService metricsService,
+                              ScheduledJobRunner scheduledJobRunner, ClusterCoordinator clusterCoordinator) {
+        this.objectMapper = objectMapper;
+        this.metricsService = metricsService;
+        this.scheduledJobRunner = scheduledJobRunner;
+        this.clusterCoordinator = clusterCoordinator;
+    }
+
+    @PostConstruct
+    public void init() {
+        if (!enabled) {
+            log.info("Sensor state store: DISABLED");
+            return;
+        }
+        table = newTable();
+        if (snapshotEnabled) {
+            restore();
+        }
+        metricsService.registerGauge("sensor_state.sensors", table::getSensorCount);
+        metricsService.registerGauge("sensor_state.metrics", table::getMetricCount);
+        metricsService.registerGauge("sensor_state.rejected_sensors", table::getRejectedSensors);
+        metricsService.registerGauge("sensor_state.rejected_metrics", table::getRejectedMetrics);
+        log.info("Sensor state store: ENABLED (max sensors={}, max metrics={}, metrics per sensor={}, "
+                + "window={}ms/{} buckets, EWMA half-life={}ms)", maxSensors, maxMetrics, metricsPerSensor,
+                rollingWindowMs, rollingBuckets, ewmaHalfLifeMs);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (table != null && snapshotEnabled) {
+            try {
+                snapshot();
+            } catch (RuntimeException e) {
+                log.warn("Cannot write sensor state snapshot on shutdown: {}", e.getMessage());
+            }
+        }
+    }
+
+    public boolean isEnabled() {
+        return table != null;
+    }
+
+    @Override
+    public void onStored(DataType tier, List<CityData> records) {
+        if (table == null) {
+            return;
+        }
+        for (CityData data : records) {
+            if (data.getSourceId() == null || data.getTimestamp() == null) {
+                continue;
+            }
+            double lat = data.getLocation() != null ? data.getLocation().lat() : Double.NaN;
+            double lng = data.getLocation() != null ? data.getLocation().lng() : Double.NaN;
+            table.record(data.getSourceId(), data.getTimestamp(), lat, lng, data.getPayload());
+        }
+        updates.addAndGet(records.size());
+    }
+
+    /**
+     * Sensor đã có state chưa (sensorId phân biệt hoa thường như khi ingest)
+     */
+    public boolean hasSensor(String sensorId) {
+        try {
+            return table != null && table.visit(sensorId, System.currentTimeMillis(), view -> { });
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Instance trả lời GET /api/data/latest (state chỉ của instance này)
+     */
+    public String getInstanceId() {
+        return clusterCoordinator.getInstanceId();
+    }
+
+    /**
+     * Ghi JSON state mới nhất trực tiếp từ bảng ra output (không dựng object trung gian theo sensor)
+     *
+     * @param sensorId null = mọi sensor
+     * @param metric   null = mọi metric; có giá trị thì bỏ sensor không có metric này
+     */
+    public void writeLatest(OutputStream output, String sensorId, String metric) throws IOException {
+        long now = System.currentTimeMillis();
+        long[] written = new long[1];
+        try (JsonGenerator generator = objectMapper.getFactory().createGenerator(output)) {
+            generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            generator.writeStartObject();
+            generator.writeNumberField("generatedAt", now);
+            // State chỉ gồm readings instance này ingest, không phải toàn cluster
+            generator.writeStringField("scope", "instance");
+            generator.writeStringField("instanceId", clusterCoordinator.getInstanceId());
+            generator.writeNumberField("clusterMembers", clusterCoordinator.getMemberCount());
+            generator.writeArrayFieldStart("data");
+            SensorStateTable.Visitor visitor = view -> {
+                if (writeSensor(generator, view, metric)) {
+                    written[0]++;
+                }
+            };
+            if (sensorId != null) {
+                table.visit(sensorId, now, visitor);
+            } else {
+                table.forEach(now, visitor);
+            }
+            generator.writeEndArray();
+            generator.writeNumberField("count", written[0]);
+            generator.writeEndObject();
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${sensor-state.snapshot.interval-ms:60000}",
+               initialDelayString = "${sensor-state.snapshot.interval-ms:60000}",
+               scheduler = SchedulingConfig.PERIODIC_SCHEDULER)
+    public void scheduledSnapshot() {
+        if (table != null && snapshotEnabled) {
+            scheduledJobRunner.run("sensor_state.snapshot", this::snapshot);
+        }
+    }
+
+    /**
+     * Ghi snapshot ra file tạm rồi rename (file cũ vẫn nguyên nếu ghi lỗi)
+     */
+    public void snapshot() {
+        long current = updates.get();
+        if (current == snapshotUpdates) {
+            return;
+        }
+        long start = System.currentTimeMillis();
+        Path target = Path.of(snapshotPath);
+        try {
+            Path parent = target.toAbsolutePath().getParent();
+            if (parent != null) {
+                Files.createDirectories(parent);
+            }
+            Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+                table.writeTo(out);
+            }
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            snapshotUpdates = current;
+            metricsService.recordTimer("sensor_state.snapshot", System.currentTimeMillis() - start);
+            log.debug("Sensor state snapshot written: {} sensors", table.getSensorCount());
+        } catch (IOException e) {
+            metricsService.incrementCounter("sensor_state.snapshot_errors");
+            throw new UncheckedIOException("Cannot write sensor state snapshot " + target, e);
+        }
+    }
+
+    private void restore() {
+        Path source = Path.of(snapshotPath);
+        if (!Files.exists(source)) {
+            return;
+        }
+        long start = System.currentTimeMillis();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(source)))) {
+            int sensors = table.readFrom(in);
+            log.info("Sensor state restored from {}: {} sensors in {}ms",
+                    source, sensors, System.currentTimeMillis() - start);
+        } catch (IOException e) {
+            // Snapshot hỏng: bắt đầu rỗng, state được dựng lại từ readings mới
+            log.warn("Cannot restore sensor state from {}: {}. Starting empty", source, e.toString());
+            table = newTable();
+        }
+    }
+
+    private boolean writeSensor(JsonGenerator generator, SensorStateTable.SensorView view, String metric)
+            throws IOException {
+        if (metric != null && !hasMetric(view, metric)) {
+            return false;
+        }
+        generator.writeStartObject();
+        generator.writeStringField("sensorId", view.getSensorId());
+        generator.writeNumberField("lastSeen", view.getLastSeen());
+        if (!Double.isNaN(view.getLat())) {
+            generator.writeObjectFieldStart("location");
+            generator.writeNumberField("lat", view.getLat());
+            generator.writeNumberField("lng", view.getLng());
+            generator.writeEndObject();
+        }
+        generator.writeObjectFieldStart("metrics");
+        for (int i = 0; i < view.getMetricCount(); i++) {
+            if (metric != null && !metric.equals(view.getMetric(i))) {
+                continue;
+            }
+            generator.writeObjectFieldStart(view.getMetric(i));
+            generator.writeNumberField("value", view.getValue(i));
+            generator.writeNumberField("timestamp", view.getTimestamp(i));
+            generator.writeNumberField("ewma", view.getEwma(i));
+            writeNullable(generator, "min", view.getMin(i));
+            writeNullable(generator, "max", view.getMax(i));
+            generator.writeNumberField("count", view.getCount(i));
+            generator.writeEndObject();
+        }
+        generator.writeEndObject();
+        generator.writeEndObject();
+        return true;
+    }
+
+    private boolean hasMetric(SensorStateTable.SensorView view, String metric) {
+        for (int i = 0; i < view.getMetricCount(); i++) {
+            if (metric.equals(view.getMetric(i))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void writeNullable(JsonGenerator generator, String field, double value) throws IOException {
+        if (Double.isNaN(value)) {
+            generator.writeNullField(field);
+        } else {
+            generator.writeNumberField(field, value);
+        }
+    }
+
+    private SensorStateTable newTable() {
+        return new SensorStateTable(maxSensors, maxMetrics, metricsPerSensor, rollingWindowMs, rollingBuckets,
+                ewmaHalfLifeMs);
+    }
+}
@@ -0,0 +1,33 @@
+/*
+ * Copyright 2025 Haui.HIT - H2K
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.smartcity.service;
+
+import com.smartcity.model.CityData;
+import com.smartcity.model.DataType;
+
+import java.util.List;
+
+/**
+ * Nhận records ngay sau khi được lưu thành công vào một storage tier
+ * (DataRoutingService: HOT/WARM/COLD, FastLaneService: HOT).
+ * Được gọi trên thread ghi: implementation phải nhanh và không block.
+ */
+public interface StoredDataListener {
+
+    void onStored(DataType tier, List<CityData> records);
+}
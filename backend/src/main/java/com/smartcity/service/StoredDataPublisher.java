@@ -0,0 +1,55 @@
+/*
+ * Copyright 2025 Haui.HIT - H2K
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.smartcity.service;
+
+import com.smartcity.model.CityData;
+import com.smartcity.model.DataType;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * Phát records vừa lưu tới mọi StoredDataListener; lỗi của một listener không ảnh hưởng đường ghi
+ */
+@Slf4j
+@Component
+public class StoredDataPublisher {
+
+    private final List<StoredDataListener> listeners;
+    private final MetricsService metricsService;
+
+    public StoredDataPublisher(List<StoredDataListener> listeners, MetricsService metricsService) {
+        this.listeners = listeners;
+        this.metricsService = metricsService;
+    }
+
+    public void publish(DataType tier, List<CityData> records) {
+        if (records.isEmpty()) {
+            return;
+        }
+        for (StoredDataListener listener : listeners) {
+            try {
+                listener.onStored(tier, records);
+            } catch (Exception e) {
+                metricsService.incrementCounter("stored_data.listener_errors");
+                log.warn("Stored data listener {} failed: {}", listener.getClass().getSimpleName(), e.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,241 @@
+/*
+ * Copyright 2025 Haui.HIT - H2K
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.smartcity.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.smartcity.dto.PublishDataRequest;
+import com.smartcity.dto.StreamIngestResponse;
+import com.smartcity.dto.StreamIngestResponse.LineError;
+import com.smartcity.model.CityData;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Streaming Ingest Service
+ * Đọc NDJSON (mỗi dòng một PublishDataRequest) trực tiếp từ request body:
+ * - Không giữ toàn bộ body trong memory: chỉ một dòng + một chunk CityData tại một thời điểm
+ * - Mỗi chunk đầy được đưa vào DataRoutingService.routeAndStore (health-aware như các đường ingest khác)
+ * - Dòng lỗi được báo cáo theo số dòng và byte offset, không làm hỏng cả request
+ * - Mỗi chunk sau chunk đầu chờ AdmissionControlService (một token của client, pipeline không quá tải)
+ */
+@Slf4j
+@Service
+public class StreamingIngestService {
+
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+
+    private final DataRoutingService dataRoutingService;
+    private final AdmissionControlService admissionControlService;
+    private final ObjectMapper objectMapper;
+
+    @Value("${ingestion.stream.chunk-size:1000}")
+    private int chunkSize;
+
+    @Value("${ingestion.stream.max-line-bytes:65536}")
+    private int maxLineBytes;
+
+    @Value("${ingestion.stream.max-reported-errors:1000}")
+    private int maxReportedErrors;
+
+    public StreamingIngestService(DataRoutingService dataRoutingService,
+                                  AdmissionControlService admissionControlService, ObjectMapper objectMapper) {
+        this.dataRoutingService = dataRoutingService;
+        this.admissionControlService = admissionControlService;
+        this.objectMapper = objectMapper;
+    }
+
+    /**
+     * Ingest toàn bộ NDJSON stream
+     * Lỗi lưu trữ của một chunk dừng ingest; các chunk trước đó đã được lưu (xem committedThroughLine).
+     *
+     * @param clientKey Client trả token cho từng chunk (null = không giới hạn)
+     */
+    public StreamIngestResponse ingest(InputStream body, String clientKey) throws IOException {
+        IngestState state = new IngestState(System.currentTimeMillis(), clientKey);
+
+        byte[] buffer = new byte[READ_BUFFER_SIZE];
+        byte[] line = new byte[Math.min(1024, maxLineBytes)];
+        int lineLength = 0;
+        boolean lineOverflow = false;
+        long lineStart = 0;
+        long position = 0;
+
+        try {
+            int read;
+            while ((read = body.read(buffer)) != -1) {
+                for (int i = 0; i < read; i++) {
+                    byte b = buffer[i];
+                    position++;
+                    if (b == '\n') {
+                        processLine(state, line, lineLength, lineOverflow, lineStart);
+                        lineLength = 0;
+                        lineOverflow = false;
+                        lineStart = position;
+                        continue;
+                    }
+                    if (lineLength >= maxLineBytes) {
+                        lineOverflow = true;
+                        continue;
+                    }
+                    if (lineLength == line.length) {
+                        line = Arrays.copyOf(line, Math.min(line.length * 2, maxLineBytes));
+                    }
+                    line[lineLength++] = b;
+                }
+            }
+            if (lineLength > 0 || lineOverflow) {
+                processLine(state, line, lineLength, lineOverflow, lineStart);
+            }
+            flush(state);
+
+        } catch (ChunkStoreException e) {
+            log.error("Stream ingest aborted at line {}: {}", state.lineNumber, e.getMessage());
+            return state.toResponse(false, "Storage failed, committed through line "
+                    + state.committedThroughLine + ": " + e.getMessage());
+        }
+
+        log.info("Stream ingest completed: lines={}, accepted={}, rejected={}, chunks={} in {}ms",
+                state.lineNumber, state.accepted, state.rejected, state.chunks,
+                System.currentTimeMillis() - state.startedAt);
+        return state.toResponse(true, state.accepted + " records published successfully");
+    }
+
+    private void processLine(IngestState state, byte[] line, int length, boolean overflow, long offset) {
+        state.lineNumber++;
+
+        // Bỏ "\r" (CRLF) và dòng trống
+        int end = length;
+        while (end > 0 && (line[end - 1] == '\r' || line[end - 1] == ' ' || line[end - 1] == '\t')) {
+            end--;
+        }
+        if (end == 0 && !overflow) {
+            return;
+        }
+
+        if (overflow) {
+            state.reject(offset, "Line exceeds " + maxLineBytes + " bytes");
+            return;
+        }
+
+        PublishDataRequest request;
+        try {
+            request = objectMapper.readValue(line, 0, end, PublishDataRequest.class);
+        } catch (JsonProcessingException e) {
+            state.reject(offset, "Invalid JSON: " + e.getOriginalMessage());
+            return;
+        } catch (IOException e) {
+            state.reject(offset, "Invalid JSON: " + e.getMessage());
+            return;
+        }
+
+        if (request == null) {
+            state.reject(offset, "Record must be a JSON object");
+            return;
+        }
+        if (request.getSourceId() == null || request.getSourceId().isEmpty()) {
+            state.reject(offset, "Source ID is required");
+            return;
+        }
+        if (request.getPayload() == null || request.getPayload().isEmpty()) {
+            state.reject(offset, "Payload is required");
+            return;
+        }
+
+        state.chunk.add(CityData.builder()
+                .sourceId(request.getSourceId())
+                .payload(request.getPayload())
+                .dataType(request.getDataType())
+                .timestamp(request.getTimestamp() != null ? request.getTimestamp() : System.currentTimeMillis())
+                .build());
+
+        if (state.chunk.size() >= chunkSize) {
+            flush(state);
+        }
+    }
+
+    private void flush(IngestState state) {
+        if (state.chunk.isEmpty()) {
+            state.committedThroughLine = state.lineNumber;
+            return;
+        }
+        try {
+            // Chunk đầu đã trả token lúc admit request
+            if (state.clientKey != null && state.chunks > 0) {
+                admissionControlService.awaitChunk(state.clientKey);
+            }
+            dataRoutingService.routeAndStore(state.chunk);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ChunkStoreException(e);
+        } catch (Exception e) {
+            throw new ChunkStoreException(e);
+        }
+        state.accepted += state.chunk.size();
+        state.chunks++;
+        state.committedThroughLine = state.lineNumber;
+        state.chunk = new ArrayList<>(chunkSize);
+    }
+
+    /**
+     * Trạng thái của một request (bounded: chunk hiện tại + tối đa maxReportedErrors lỗi)
+     */
+    private class IngestState {
+        private final long startedAt;
+        private final String clientKey;
+        private List<CityData> chunk = new ArrayList<>(chunkSize);
+        private final List<LineError> errors = new ArrayList<>();
+        private long lineNumber;
+        private long accepted;
+        private long rejected;
+        private int chunks;
+        private long committedThroughLine;
+
+        IngestState(long startedAt, String clientKey) {
+            this.startedAt = startedAt;
+            this.clientKey = clientKey;
+        }
+
+        void reject(long offset, String error) {
+            rejected++;
+            if (errors.size() < maxReportedErrors) {
+                errors.add(new LineError(lineNumber, offset, error));
+            }
+        }
+
+        StreamIngestResponse toResponse(boolean success, String message) {
+            return new StreamIngestResponse(success, lineNumber, accepted, rejected, chunks,
+                    committedThroughLine, System.currentTimeMillis() - startedAt,
+                    errors, rejected > errors.size(), message);
+        }
+    }
+
+    private static class ChunkStoreException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        ChunkStoreException(Throwable cause) {
+            super(cause.getMessage(), cause);
+        }
+    }
+}
@@ -0,0 +1,340 @@
+/*
+ * Copyright 2025 Haui.HIT - H2K
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.smartcity.service;
+
+import com.smartcity.config.SchedulingConfig;
+import com.smartcity.model.CityData;
+import com.smartcity.model.DataType;
+import com.smartcity.model.LifecycleCheckpoint;
+import com.smartcity.model.TierPartition;
+import com.smartcity.service.SystemHealthService.HealthStatus;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Tier Lifecycle Service
+ * Di chuyển dữ liệu WARM (dữ liệu tuần) quá hạn sang COLD (dữ liệu tháng):
+ * - Theo batch giới hạn, resume được nhờ checkpoint (vị trí keyset theo từng collection) trong MongoDB Warm
+ * - Tạm dừng khi latency ghi của ingestion vượt ngưỡng
+ * - Verify dữ liệu đã có ở COLD trước khi xóa khỏi WARM
+ * - Khi WARM được partition: partition hết hạn được copy rồi drop cả collection
+ */
+@Slf4j
+@Service
+public class TierLifecycleService {
+
+    private static final String CHECKPOINT_ID = "warm-to-cold";
+
+    private final WarmTierStore warmTierStore;
+    private final ColdTierStore coldTierStore;
+    private final MongoTemplate warmMongoTemplate;
+    private final SystemHealthService healthService;
+    private final MetricsService metricsService;
+    private final ClusterCoordinator clusterCoordinator;
+    private final ScheduledJobRunner scheduledJobRunner;
+
+    @Value("${lifecycle.warm-to-cold.enabled:true}")
+    private boolean enabled;
+
+    @Value("${lifecycle.warm-to-cold.max-age-days:7}")
+    private int maxAgeDays;
+
+    @Value("${lifecycle.warm-to-cold.batch-size:1000}")
+    private int batchSize;
+
+    @Value("${lifecycle.warm-to-cold.max-batches-per-run:50}")
+    private int maxBatchesPerRun;
+
+    @Value("${lifecycle.warm-to-cold.pause-between-batches-ms:200}")
+    private long pauseBetweenBatchesMs;
+
+    @Value("${lifecycle.warm-to-cold.throttle.max-ingest-latency-ms:2000}")
+    private long maxIngestLatencyMs;
+
+    private final AtomicBoolean running = new AtomicBoolean(false);
+    private final AtomicLong throttledRuns = new AtomicLong();
+    private volatile String lastOutcome = "NOT_STARTED";
+    private volatile Long lastRunAt;
+    private volatile long lastRunMigrated;
+
+    public TierLifecycleService(
+            WarmTierStore warmTierStore,
+            ColdTierStore coldTierStore,
+            @Qualifier("warmMongoTemplate") MongoTemplate warmMongoTemplate,
+            SystemHealthService healthService,
+            MetricsService metricsService,
+            ClusterCoordinator clusterCoordinator,
+            ScheduledJobRunner scheduledJobRunner) {
+        this.warmTierStore = warmTierStore;
+        this.coldTierStore = coldTierStore;
+        this.warmMongoTemplate = warmMongoTemplate;
+        this.healthService = healthService;
+        this.metricsService = metricsService;
+        this.clusterCoordinator = clusterCoordinator;
+        this.scheduledJobRunner = scheduledJobRunner;
+    }
+
+    @Scheduled(fixedDelayString = "${lifecycle.warm-to-cold.interval-ms:60000}",
+               initialDelayString = "${lifecycle.warm-to-cold.interval-ms:60000}",
+               scheduler = SchedulingConfig.MAINTENANCE_SCHEDULER)
+    public void scheduledRun() {
+        // Nhiều instance: checkpoint dùng chung, chỉ leader migrate
+        if (!enabled || !clusterCoordinator.isLeader()) {
+            return;
+        }
+        scheduledJobRunner.runLocked("lifecycle.warm_to_cold", this::runOnce);
+    }
+
+    /**
+     * Chạy một lượt migration (tối đa maxBatchesPerRun batch)
+     *
+     * @return Số readings đã migrate trong lượt này
+     */
+    public long runOnce() {
+        if (!running.compareAndSet(false, true)) {
+            log.debug("Lifecycle migration already running, skipping");
+            return 0;
+        }
+
+        long migrated = 0;
+        try {
+            lastRunAt = Instant.now().toEpochMilli();
+
+            if (healthService.getCurrentHealth() != HealthStatus.UP) {
+                lastOutcome = "SKIPPED_HEALTH";
+                return 0;
+            }
+
+            LifecycleCheckpoint checkpoint = loadCheckpoint();
+            long cutoff = cutoffMillis();
+            PartitionCatalog catalog = warmTierStore.getPartitionCatalog();
+            int[] batchesLeft = {maxBatchesPerRun};
+            lastOutcome = "COMPLETED";
+            List<TierPartition> expired = catalog.expiredBefore(cutoff);
+            // Vị trí của partition đã bị drop ngoài job (retention thủ công...) không còn dùng
+            checkpoint.getPositions().keySet().removeIf(name -> !name.equals(catalog.getBaseCollection())
+                    && expired.stream().noneMatch(partition -> partition.getId().equals(name)));
+
+            // 1. Collection gốc (không partition, hoặc dữ liệu legacy trước khi bật partitioning):
+            //    copy sang COLD rồi xóa theo ID. Time-series (luôn partition, không xóa được theo _id
+            //    trước MongoDB 7.0): chỉ copy, collection gốc bị drop khi mọi reading đã copy xong
+            if (!catalog.isEnabled() || catalog.isLegacyPresent()) {
+                String base = catalog.getBaseCollection();
+                boolean deleteCopied = !warmTierStore.getLayout().isTimeSeries();
+                MigrationResult result = migrateCollection(base, cutoff - 1, deleteCopied, checkpoint, batchesLeft);
+                migrated += result.migrated();
+                if (result.drained() && deleteCopied) {
+                    // Quét lại từ đầu ở lượt sau để gom readings đến muộn
+                    resetPosition(checkpoint, base);
+                } else if (result.drained() && catalog.isEnabled()
+                        && warmTierStore.count(base, new Query(warmTierStore.timestampCriteria(cutoff, null))) == 0) {
+                    // Không còn reading nào chưa hết hạn và collection gốc không nhận ghi mới
+                    catalog.dropLegacy();
+                    resetPosition(checkpoint, base);
+                }
+            }
+
+            // 2. Partition đã hết hạn hoàn toàn: copy sang COLD rồi drop cả collection
+            for (TierPartition partition : expired) {
+                if (!"COMPLETED".equals(lastOutcome)) {
+                    break;
+                }
+                MigrationResult result = migrateCollection(partition.getId(), null,
+                        false, checkpoint, batchesLeft);
+                migrated += result.migrated();
+                if (!result.drained()) {
+                    break;
+                }
+                catalog.drop(partition);
+                checkpoint.setPartitionsDropped(checkpoint.getPartitionsDropped() + 1);
+                resetPosition(checkpoint, partition.getId());
+            }
+
+            if (migrated > 0) {
+                log.info("Lifecycle migration moved {} WARM records older than {} days to COLD",
+                        migrated, maxAgeDays);
+            }
+
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            lastOutcome = "INTERRUPTED";
+        } catch (Exception e) {
+            log.error("Error during lifecycle migration: {}", e.getMessage(), e);
+            lastOutcome = "ERROR: " + e.getMessage();
+            // Checkpoint giữ nguyên - lần schedule tiếp theo sẽ resume
+        } finally {
+            lastRunMigrated = migrated;
+            running.set(false);
+        }
+        return migrated;
+    }
+
+    /**
+     * Quét một collection WARM theo keyset (timestamp, _id) từ checkpoint và migrate từng batch
+     *
+     * @param upperBound   Chỉ migrate readings có timestamp ≤ upperBound (null = toàn bộ collection)
+     * @param deleteCopied Xóa readings khỏi WARM sau khi verify (false khi cả partition sẽ bị drop)
+     */
+    private MigrationResult migrateCollection(String collection, Long upperBound, boolean deleteCopied,
+                                              LifecycleCheckpoint checkpoint, int[] batchesLeft)
+            throws InterruptedException {
+        checkpoint.setCollection(collection);
+        LifecycleCheckpoint.Position position = checkpoint.positionOf(collection);
+
+        long migrated = 0;
+        while (batchesLeft[0] > 0) {
+            if (isIngestionUnderPressure()) {
+                throttledRuns.incrementAndGet();
+                lastOutcome = "THROTTLED";
+                log.info("Lifecycle migration throttled: ingest latency {}ms > {}ms",
+                        metricsService.getStoreLatencyMs(), maxIngestLatencyMs);
+                return new MigrationResult(migrated, false);
+            }
+
+            List<CityData> batch = warmTierStore.find(collection, warmTierStore.keysetQuery(
+                    position.getLastTimestamp(), position.getLastId(), upperBound, batchSize));
+            if (batch.isEmpty()) {
+                return new MigrationResult(migrated, true);
+            }
+
+            batchesLeft[0]--;
+            if (!migrateBatch(collection, batch, deleteCopied, checkpoint, position)) {
+                lastOutcome = "VERIFICATION_FAILED";
+                return new MigrationResult(migrated, false);
+            }
+            migrated += batch.size();
+
+            if (pauseBetweenBatchesMs > 0) {
+                TimeUnit.MILLISECONDS.sleep(pauseBetweenBatchesMs);
+            }
+        }
+        return new MigrationResult(migrated, false);
+    }
+
+    /**
+     * Ghi batch sang COLD → verify → (xóa khỏi WARM) → cập nhật checkpoint.
+     * Upsert ở COLD là idempotent nên crash giữa chừng chỉ khiến batch được làm lại.
+     */
+    private boolean migrateBatch(String collection, List<CityData> batch, boolean deleteCopied,
+                                 LifecycleCheckpoint checkpoint, LifecycleCheckpoint.Position position) {
+        CityData last = batch.get(batch.size() - 1);
+        List<String> ids = new ArrayList<>(batch.size());
+        List<CityData> coldCopies = new ArrayList<>(batch.size());
+        for (CityData data : batch) {
+            ids.add(data.getId());
+            coldCopies.add(data.copyAs(DataType.COLD));
+        }
+
+        coldTierStore.upsert(coldCopies);
+
+        long verified = coldTierStore.countExisting(coldCopies);
+        if (verified < ids.size()) {
+            checkpoint.setVerificationFailures(checkpoint.getVerificationFailures() + 1);
+            saveCheckpoint(checkpoint);
+            log.error("Lifecycle verification failed: {} of {} records found in COLD. WARM copies kept",
+                    verified, ids.size());
+            return false;
+        }
+
+        if (deleteCopied) {
+            warmTierStore.removeByIds(collection, ids);
+        }
+
+        position.setLastTimestamp(last.getTimestamp());
+        position.setLastId(last.getId());
+        checkpoint.setMigratedTotal(checkpoint.getMigratedTotal() + ids.size());
+        checkpoint.setBatchesCompleted(checkpoint.getBatchesCompleted() + 1);
+        saveCheckpoint(checkpoint);
+        return true;
+    }
+
+    private void resetPosition(LifecycleCheckpoint checkpoint, String collection) {
+        checkpoint.getPositions().remove(collection);
+        if (collection.equals(checkpoint.getCollection())) {
+            checkpoint.setCollection(null);
+        }
+        saveCheckpoint(checkpoint);
+    }
+
+    private boolean isIngestionUnderPressure() {
+        return maxIngestLatencyMs > 0 && metricsService.getStoreLatencyMs() > maxIngestLatencyMs;
+    }
+
+    private long cutoffMillis() {
+        return Instant.now().toEpochMilli() - TimeUnit.DAYS.toMillis(maxAgeDays);
+    }
+
+    private LifecycleCheckpoint loadCheckpoint() {
+        LifecycleCheckpoint checkpoint = warmMongoTemplate.findById(CHECKPOINT_ID, LifecycleCheckpoint.class);
+        return checkpoint != null ? checkpoint : new LifecycleCheckpoint(CHECKPOINT_ID);
+    }
+
+    private void saveCheckpoint(LifecycleCheckpoint checkpoint) {
+        checkpoint.setUpdatedAt(Instant.now().toEpochMilli());
+        warmMongoTemplate.save(checkpoint);
+    }
+
+    /**
+     * Tiến độ migration cho API / dashboard
+     */
+    public Map<String, Object> getStatus() {
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("enabled", enabled);
+        status.put("running", running.get());
+        status.put("maxAgeDays", maxAgeDays);
+        status.put("batchSize", batchSize);
+        status.put("cutoff", cutoffMillis());
+        status.put("lastRunAt", lastRunAt);
+        status.put("lastOutcome", lastOutcome);
+        status.put("lastRunMigrated", lastRunMigrated);
+        status.put("throttledRuns", throttledRuns.get());
+        status.put("ingestLatencyMs", metricsService.getStoreLatencyMs());
+
+        try {
+            LifecycleCheckpoint checkpoint = loadCheckpoint();
+            status.put("migratedTotal", checkpoint.getMigratedTotal());
+            status.put("batchesCompleted", checkpoint.getBatchesCompleted());
+            status.put("verificationFailures", checkpoint.getVerificationFailures());
+            status.put("partitionsDropped", checkpoint.getPartitionsDropped());
+            status.put("checkpointCollection", checkpoint.getCollection());
+            status.put("checkpointTimestamp", checkpoint.getCollection() != null
+                    ? checkpoint.positionOf(checkpoint.getCollection()).getLastTimestamp() : null);
+            status.put("expiredPartitions", warmTierStore.getPartitionCatalog().expiredBefore(cutoffMillis()).size());
+            status.put("pendingEstimate", warmTierStore.countRange(null, null, cutoffMillis() - 1));
+        } catch (Exception e) {
+            log.warn("Cannot read lifecycle checkpoint: {}", e.getMessage());
+        }
+        return status;
+    }
+
+    private record MigrationResult(long migrated, boolean drained) {
+    }
+}
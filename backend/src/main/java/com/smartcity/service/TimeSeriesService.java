@@ -0,0 +1,110 @@
+/*
+ * Copyright 2025 Haui.HIT - H2K
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.smartcity.service;
+
+import com.smartcity.model.CityData;
+import com.smartcity.model.DataType;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.stereotype.Service;
+import org.springframework.util.StringUtils;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Time Series Service
+ * Chuỗi giá trị của một metric của sensor trong [from, to] cho biểu đồ: duyệt readings WARM + COLD bằng cursor
+ * và downsample ngay khi đọc (LttbDownsampler) nên payload và bộ nhớ không phụ thuộc độ dài range.
+ * HOT readings có mặt qua bản backup trong WARM.
+ */
+@Slf4j
+@Service
+public class TimeSeriesService {
+
+    private final WarmTierStore warmTierStore;
+    private final ColdTierStore coldTierStore;
+    private final MetricsService metricsService;
+
+    @Value("${series.default-points:1000}")
+    private int defaultPoints;
+
+    @Value("${series.max-points:5000}")
+    private int maxPoints;
+
+    @Value("${series.sub-buckets:2}")
+    private int subBuckets;
+
+    public TimeSeriesService(WarmTierStore warmTierStore,
+                             ColdTierStore coldTierStore,
+                             MetricsService metricsService) {
+        this.warmTierStore = warmTierStore;
+        this.coldTierStore = coldTierStore;
+        this.metricsService = metricsService;
+    }
+
+    /**
+     * @param points Số điểm tối đa (null = series.default-points, giới hạn bởi series.max-points)
+     */
+    public Map<String, Object> series(String sensorId, String metric, long from, long to, Integer points) {
+        if (!StringUtils.hasText(sensorId) || !StringUtils.hasText(metric)) {
+            throw new IllegalArgumentException("sensorId and metric are required");
+        }
+        if (to < from) {
+            throw new IllegalArgumentException("to must be >= from");
+        }
+        int target = Math.min(Math.max(points != null ? points : defaultPoints, 3), maxPoints);
+        long start = System.currentTimeMillis();
+
+        LttbDownsampler downsampler = new LttbDownsampler(from, to, target, subBuckets);
+        Consumer<CityData> sink = data -> {
+            if (data.getTimestamp() != null && data.getPayload() != null
+                    && data.getPayload().get(metric) instanceof Number value) {
+                downsampler.add(data.getTimestamp(), value.doubleValue());
+            }
+        };
+        List<String> fields = List.of("timestamp", "payload." + metric);
+
+        coldTierStore.streamRange(sensorId, from, to, fields, sink);
+        long coldPoints = downsampler.getCount();
+        warmTierStore.streamRange(Criteria.where("dataType").is(DataType.WARM).and("sourceId").is(sensorId),
+                from, to, fields, sink);
+        long warmPoints = downsampler.getCount() - coldPoints;
+
+        List<Object[]> result = downsampler.result();
+        long durationMs = System.currentTimeMillis() - start;
+        metricsService.recordTimer("series.query", durationMs);
+        metricsService.incrementCounter("series.points_scanned", downsampler.getCount());
+        log.debug("Series {}:{} [{}, {}] | scanned={} (warm={}, cold={}) returned={} in {}ms",
+                sensorId, metric, from, to, downsampler.getCount(), warmPoints, coldPoints, result.size(), durationMs);
+
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("sensorId", sensorId);
+        response.put("metric", metric);
+        response.put("from", from);
+        response.put("to", to);
+        response.put("requestedPoints", target);
+        response.put("rawCount", downsampler.getCount());
+        response.put("downsampled", downsampler.isDownsampled());
+        response.put("points", result);
+        return response;
+    }
+}
@@ -0,0 +1,361 @@
+/*
+ * Copyright 2025 Haui.HIT - H2K
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.smartcity.service;
+
+import com.smartcity.config.WarmStorageLayout;
+import com.smartcity.model.CityData;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.convert.MongoConverter;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * WARM tier store
+ * Đọc/ghi CityData vào MongoDB Warm theo layout hiện tại (documents hoặc time-series).
+ *
+ * Time-series collection yêu cầu timeField là BSON Date, trong khi CityData.timestamp
+ * là epoch millis → store chuyển đổi qua lại để các service khác không cần biết layout.
+ * Khi bật partitioning (mongodb.warm.partition.enabled), readings được ghi vào partition
+ * theo ngày/tuần và query theo khoảng thời gian chỉ đọc các partition liên quan.
+ */
+@Slf4j
+@Service
+public class WarmTierStore {
+
+    private final MongoTemplate warmMongoTemplate;
+    private final WarmStorageLayout layout;
+    private final PartitionCatalog partitionCatalog;
+    private final MongoConverter converter;
+
+    // Throughput của layout đang chạy (phục vụ so sánh storage/throughput)
+    private final AtomicLong insertedRecords = new AtomicLong();
+    private final AtomicLong insertNanos = new AtomicLong();
+
+    public WarmTierStore(
+            @Qualifier("warmMongoTemplate") MongoTemplate warmMongoTemplate,
+            WarmStorageLayout layout,
+            @Qualifier("warmPartitionCatalog") PartitionCatalog partitionCatalog) {
+        this.warmMongoTemplate = warmMongoTemplate;
+        this.layout = layout;
+        this.partitionCatalog = partitionCatalog;
+        this.converter = warmMongoTemplate.getConverter();
+    }
+
+    public WarmStorageLayout getLayout() {
+        return layout;
+    }
+
+    public PartitionCatalog getPartitionCatalog() {
+        return partitionCatalog;
+    }
+
+    /**
+     * Bulk insert một batch vào WARM tier (nhóm theo partition nếu bật partitioning)
+     *
+     * @return Số document đã insert
+     */
+    public int insert(List<CityData> records) {
+        if (records == null || records.isEmpty()) {
+            return 0;
+        }
+
+        long start = System.nanoTime();
+        int inserted = 0;
+
+        for (Map.Entry<String, List<CityData>> entry : groupByCollection(records).entrySet()) {
+            BulkOperations bulkOps;
+            if (layout.isTimeSeries()) {
+                List<Document> documents = new ArrayList<>(entry.getValue().size());
+                for (CityData data : entry.getValue()) {
+                    documents.add(toTimeSeriesDocument(data));
+                }
+                bulkOps = warmMongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, entry.getKey());
+                bulkOps.insert(documents);
+            } else {
+                bulkOps = warmMongoTemplate.bulkOps(
+                        BulkOperations.BulkMode.UNORDERED,
+                        CityData.class,
+                        entry.getKey());
+                bulkOps.insert(entry.getValue());
+            }
+            inserted += bulkOps.execute().getInsertedCount();
+        }
+
+        insertNanos.addAndGet(System.nanoTime() - start);
+        insertedRecords.addAndGet(inserted);
+        return inserted;
+    }
+
+    /**
+     * Readings trong khoảng [from, to] (null = không giới hạn) sort theo timestamp, có phân trang.
+     * Chỉ đọc các partition giao với khoảng thời gian.
+     *
+     * @param filter Điều kiện thêm (không chứa "timestamp"), có thể null
+     */
+    public List<CityData> findRange(Criteria filter, Long from, Long to,
+                                    Sort.Direction order, long skip, int limit) {
+        List<String> collections = partitionCatalog.collectionsFor(from, to, order == Sort.Direction.DESC);
+        return PartitionCatalog.pageAcross(collections, skip, limit,
+                collection -> count(collection, rangeQuery(filter, from, to)),
+                (collection, collectionSkip, collectionLimit) -> find(collection, rangeQuery(filter, from, to)
+                        .with(Sort.by(order, "timestamp"))
+                        .skip(collectionSkip)
+                        .limit(collectionLimit)));
+    }
+
+    /**
+     * Duyệt readings trong [from, to] bằng cursor theo từng partition (không giữ cả kết quả trong bộ nhớ)
+     *
+     * @param fields Chỉ đọc các field này (null = cả document)
+     */
+    public void streamRange(Criteria filter, Long from, Long to, List<String> fields, Consumer<CityData> consumer) {
+        for (String collection : partitionCatalog.collectionsFor(from, to, false)) {
+            Query query = rangeQuery(filter, from, to).with(Sort.by(Sort.Direction.ASC, "timestamp"));
+            if (fields != null) {
+                fields.forEach(field -> query.fields().include(field));
+            }
+            if (layout.isTimeSeries()) {
+                try (Stream<Document> documents = warmMongoTemplate.stream(query, Document.class, collection)) {
+                    documents.forEach(document -> consumer.accept(fromTimeSeriesDocument(document)));
+                }
+            } else {
+                try (Stream<CityData> records = warmMongoTemplate.stream(query, CityData.class, collection)) {
+                    records.forEach(consumer);
+                }
+            }
+        }
+    }
+
+    public long countRange(Criteria filter, Long from, Long to) {
+        long total = 0;
+        for (String collection : partitionCatalog.collectionsFor(from, to, true)) {
+            total += count(collection, rangeQuery(filter, from, to));
+        }
+        return total;
+    }
+
+    /**
+     * Find trên một collection cụ thể (criteria trên "timestamp" phải tạo bằng {@link #timestampCriteria})
+     */
+    public List<CityData> find(String collection, Query query) {
+        if (!layout.isTimeSeries()) {
+            return warmMongoTemplate.find(query, CityData.class, collection);
+        }
+
+        List<Document> documents = warmMongoTemplate.find(query, Document.class, collection);
+        List<CityData> records = new ArrayList<>(documents.size());
+        for (Document document : documents) {
+            records.add(fromTimeSeriesDocument(document));
+        }
+        return records;
+    }
+
+    public long count(String collection, Query query) {
+        return warmMongoTemplate.count(query, collection);
+    }
+
+    public CityData findById(String id) {
+        Query query = new Query(Criteria.where("_id").is(id)).limit(1);
+        for (String collection : partitionCatalog.allCollections()) {
+            List<CityData> found = find(collection, query);
+            if (!found.isEmpty()) {
+                return found.get(0);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Xóa theo danh sách ID trên một collection (chỉ layout documents: time-series collection
+     * cần MongoDB 7.0+ cho delete tùy ý, lifecycle drop partition sau khi copy)
+     *
+     * @return Số document đã xóa
+     */
+    public long removeByIds(String collection, Collection<String> ids) {
+        if (ids == null || ids.isEmpty()) {
+            return 0;
+        }
+        return warmMongoTemplate.remove(new Query(Criteria.where("_id").in(ids)), collection).getDeletedCount();
+    }
+
+    /**
+     * Criteria khoảng thời gian theo đúng kiểu dữ liệu của layout (Long hoặc Date)
+     */
+    public Criteria timestampCriteria(Long fromMillis, Long toMillis) {
+        Criteria criteria = Criteria.where("timestamp");
+        if (fromMillis != null) {
+            criteria = criteria.gte(toTimestampValue(fromMillis));
+        }
+        if (toMillis != null) {
+            criteria = criteria.lte(toTimestampValue(toMillis));
+        }
+        return criteria;
+    }
+
+    /**
+     * Query keyset theo (timestamp, _id) tăng dần: các reading sau vị trí (afterTimestamp, afterId)
+     * và không muộn hơn toMillis. Dùng để quét một collection theo batch mà không cần skip.
+     */
+    public Query keysetQuery(Long afterTimestamp, String afterId, Long toMillis, int limit) {
+        List<Criteria> conditions = new ArrayList<>();
+        if (afterTimestamp != null) {
+            Object timestamp = toTimestampValue(afterTimestamp);
+            conditions.add(new Criteria().orOperator(
+                    Criteria.where("timestamp").gt(timestamp),
+                    Criteria.where("timestamp").is(timestamp).and("_id").gt(afterId != null ? afterId : "")));
+        }
+        if (toMillis != null) {
+            conditions.add(Criteria.where("timestamp").lte(toTimestampValue(toMillis)));
+        }
+
+        Query query = conditions.isEmpty() ? new Query() : new Query(new Criteria().andOperator(conditions));
+        return query
+                .with(Sort.by(Sort.Direction.ASC, "timestamp").and(Sort.by(Sort.Direction.ASC, "_id")))
+                .limit(limit);
+    }
+
+    /**
+     * So sánh storage giữa collection "city_data" cũ và time-series collection,
+     * kèm throughput ghi của layout đang chạy.
+     */
+    public Map<String, Object> storageComparison() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("activeLayout", layout.getMode());
+        result.put("activeCollection", layout.getCollectionName());
+        result.put("documents", collectionStats(WarmStorageLayout.LEGACY_COLLECTION));
+        if (layout.isTimeSeries()) {
+            result.put("timeSeries", collectionStats(layout.getCollectionName()));
+        }
+        if (partitionCatalog.isEnabled()) {
+            result.put("partitioning", Map.of(
+                    "period", partitionCatalog.getPeriod(),
+                    "partitions", partitionCatalog.list().size(),
+                    "legacyPresent", partitionCatalog.isLegacyPresent()));
+        }
+
+        long records = insertedRecords.get();
+        long nanos = insertNanos.get();
+        Map<String, Object> throughput = new LinkedHashMap<>();
+        throughput.put("insertedRecords", records);
+        throughput.put("insertTimeMs", nanos / 1_000_000);
+        throughput.put("recordsPerSecond", nanos > 0 ? (long) (records / (nanos / 1e9)) : 0);
+        result.put("writeThroughput", throughput);
+        return result;
+    }
+
+    private Map<String, List<CityData>> groupByCollection(List<CityData> records) {
+        if (!partitionCatalog.isEnabled()) {
+            return Map.of(partitionCatalog.getBaseCollection(), records);
+        }
+        Map<String, List<CityData>> groups = new LinkedHashMap<>();
+        for (CityData data : records) {
+            if (data.getTimestamp() == null) {
+                data.setTimestamp(System.currentTimeMillis());
+            }
+            groups.computeIfAbsent(partitionCatalog.collectionFor(data.getTimestamp()), k -> new ArrayList<>())
+                    .add(data);
+        }
+        return groups;
+    }
+
+    private Query rangeQuery(Criteria filter, Long from, Long to) {
+        Query query = new Query();
+        if (filter != null) {
+            query.addCriteria(filter);
+        }
+        if (from != null || to != null) {
+            query.addCriteria(timestampCriteria(from, to));
+        }
+        return query;
+    }
+
+    private Map<String, Object> collectionStats(String collectionName) {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        try {
+            if (!warmMongoTemplate.collectionExists(collectionName)) {
+                stats.put("exists", false);
+                return stats;
+            }
+            Document collStats = warmMongoTemplate.getDb().runCommand(new Document("collStats", collectionName));
+            long count = toLong(collStats.get("count"));
+            long storageSize = toLong(collStats.get("storageSize"));
+            long indexSize = toLong(collStats.get("totalIndexSize"));
+
+            stats.put("exists", true);
+            stats.put("count", count);
+            stats.put("storageSizeBytes", storageSize);
+            stats.put("totalIndexSizeBytes", indexSize);
+            stats.put("bytesPerReading", count > 0 ? (storageSize + indexSize) / count : 0);
+
+            // Time-series: count ở top-level là số bucket, số measurement nằm trong "timeseries"
+            Object timeseries = collStats.get("timeseries");
+            if (timeseries instanceof Document ts) {
+                long buckets = toLong(ts.get("bucketCount"));
+                long measurements = toLong(ts.get("numMeasurements"));
+                stats.put("bucketCount", buckets);
+                stats.put("count", measurements > 0 ? measurements : count);
+                stats.put("bytesPerReading", measurements > 0 ? (storageSize + indexSize) / measurements : 0);
+            }
+        } catch (Exception e) {
+            log.warn("Cannot read collStats for '{}': {}", collectionName, e.getMessage());
+            stats.put("error", e.getMessage());
+        }
+        return stats;
+    }
+
+    private Object toTimestampValue(long millis) {
+        return layout.isTimeSeries() ? new Date(millis) : millis;
+    }
+
+    private Document toTimeSeriesDocument(CityData data) {
+        Document document = new Document();
+        converter.write(data, document);
+        document.remove("_class");
+
+        long timestamp = data.getTimestamp() != null ? data.getTimestamp() : System.currentTimeMillis();
+        document.put("timestamp", new Date(timestamp));
+        return document;
+    }
+
+    private CityData fromTimeSeriesDocument(Document document) {
+        Object timestamp = document.get("timestamp");
+        if (timestamp instanceof Date date) {
+            document.put("timestamp", date.getTime());
+        }
+        return converter.read(CityData.class, document);
+    }
+
+    private long toLong(Object value) {
+        return value instanceof Number number ? number.longValue() : 0L;
+    }
+}
@@ -0,0 +1,190 @@
+/*
+ * Copyright 2025 Haui.HIT - H2K
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.smartcity.grpc;
+
+import com.smartcity.grpc.ingest.DataType;
+import com.smartcity.grpc.ingest.Hello;
+import com.smartcity.grpc.ingest.IngestFrame;
+import com.smartcity.grpc.ingest.IngestReply;
+import com.smartcity.grpc.ingest.IngestServiceGrpc;
+import com.smartcity.grpc.ingest.Reading;
+import com.smartcity.grpc.ingest.ReadingBatch;
+import io.grpc.ManagedChannel;
+import io.grpc.netty.shaded.io.grpc.netty.NettyChannelBuilder;
+import io.grpc.stub.StreamObserver;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Load generator cho gRPC IngestService (benchmark cục bộ, nằm trong test sources nên không vào jar của backend).
+ *
+ * Mỗi gateway mở một stream, gửi batch theo credit server cấp và đo latency tới BatchAck.
+ *
+ * <pre>
+ * mvn -q test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=com.smartcity.grpc.IngestLoadGenerator \
+ *     -Dexec.args="--target localhost:9090 --gateways 4 --batches 500 --batch-size 500"
+ * </pre>
+ */
+public class IngestLoadGenerator {
+
+    private static final String[] METRICS = {"temperature", "humidity", "pm25", "noise"};
+
+    public static void main(String[] args) throws InterruptedException {
+        Map<String, String> options = parseArgs(args);
+        String target = options.getOrDefault("target", "localhost:9090");
+        int gateways = Integer.parseInt(options.getOrDefault("gateways", "4"));
+        int batches = Integer.parseInt(options.getOrDefault("batches", "200"));
+        int batchSize = Integer.parseInt(options.getOrDefault("batch-size", "500"));
+        int sensors = Integer.parseInt(options.getOrDefault("sensors", "1000"));
+
+        ManagedChannel channel = NettyChannelBuilder.forTarget(target)
+                .usePlaintext()
+                .build();
+        System.out.printf("Target=%s gateways=%d batches/gateway=%d batch-size=%d%n",
+                target, gateways, batches, batchSize);
+
+        List<Long> ackLatenciesMicros = Collections.synchronizedList(new ArrayList<>());
+        AtomicLong accepted = new AtomicLong();
+        AtomicLong rejected = new AtomicLong();
+        AtomicLong failedBatches = new AtomicLong();
+        CountDownLatch done = new CountDownLatch(gateways);
+
+        long startedAt = System.nanoTime();
+        for (int g = 0; g < gateways; g++) {
+            String gatewayId = "loadgen-" + g;
+            Thread thread = new Thread(() -> {
+                try {
+                    runGateway(channel, gatewayId, batches, batchSize, sensors,
+                            ackLatenciesMicros, accepted, rejected, failedBatches);
+                } catch (Exception e) {
+                    System.err.printf("[%s] %s%n", gatewayId, e.getMessage());
+                } finally {
+                    done.countDown();
+                }
+            }, gatewayId);
+            thread.start();
+        }
+        done.await();
+        double seconds = (System.nanoTime() - startedAt) / 1e9;
+
+        channel.shutdown().awaitTermination(5, TimeUnit.SECONDS);
+
+        List<Long> latencies = new ArrayList<>(ackLatenciesMicros);
+        Collections.sort(latencies);
+        System.out.printf("Accepted=%d rejected=%d failed-batches=%d in %.2fs -> %.0f readings/s%n",
+                accepted.get(), rejected.get(), failedBatches.get(), seconds, accepted.get() / seconds);
+        if (!latencies.isEmpty()) {
+            System.out.printf("Ack latency (ms): p50=%.1f p95=%.1f p99=%.1f max=%.1f%n",
+                    percentile(latencies, 0.50), percentile(latencies, 0.95),
+                    percentile(latencies, 0.99), latencies.get(latencies.size() - 1) / 1000.0);
+        }
+    }
+
+    private static void runGateway(ManagedChannel channel, String gatewayId, int batches, int batchSize,
+                                   int sensors, List<Long> ackLatenciesMicros, AtomicLong accepted,
+                                   AtomicLong rejected, AtomicLong failedBatches) throws InterruptedException {
+        Semaphore credits = new Semaphore(0);
+        CountDownLatch finished = new CountDownLatch(1);
+        Map<Long, Long> sentAt = new ConcurrentHashMap<>();
+
+        StreamObserver<IngestFrame> requests = IngestServiceGrpc.newStub(channel)
+                .streamReadings(new StreamObserver<>() {
+                    @Override
+                    public void onNext(IngestReply reply) {
+                        if (reply.hasCredit()) {
+                            credits.release(reply.getCredit().getBatches());
+                            return;
+                        }
+                        Long sent = sentAt.remove(reply.getAck().getSequence());
+                        if (sent != null) {
+                            ackLatenciesMicros.add((System.nanoTime() - sent) / 1000);
+                        }
+                        accepted.addAndGet(reply.getAck().getAccepted());
+                        rejected.addAndGet(reply.getAck().getRejected());
+                        if (!reply.getAck().getOk()) {
+                            failedBatches.incrementAndGet();
+                        }
+                        credits.release(reply.getAck().getCredits());
+                    }
+
+                    @Override
+                    public void onError(Throwable t) {
+                        System.err.printf("[%s] stream failed: %s%n", gatewayId, t.getMessage());
+                        credits.release(Integer.MAX_VALUE / 2);
+                        finished.countDown();
+                    }
+
+                    @Override
+                    public void onCompleted() {
+                        finished.countDown();
+                    }
+                });
+
+        requests.onNext(IngestFrame.newBuilder()
+                .setHello(Hello.newBuilder().setGatewayId(gatewayId))
+                .build());
+
+        for (long seq = 1; seq <= batches && finished.getCount() > 0; seq++) {
+            credits.acquire();
+            ReadingBatch batch = randomBatch(seq, batchSize, sensors);
+            sentAt.put(seq, System.nanoTime());
+            requests.onNext(IngestFrame.newBuilder().setBatch(batch).build());
+        }
+        requests.onCompleted();
+        finished.await();
+    }
+
+    private static ReadingBatch randomBatch(long sequence, int batchSize, int sensors) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long now = System.currentTimeMillis();
+        ReadingBatch.Builder batch = ReadingBatch.newBuilder().setSequence(sequence);
+        for (int i = 0; i < batchSize; i++) {
+            Reading.Builder reading = Reading.newBuilder()
+                    .setSourceId(String.format("SENSOR_%04d", random.nextInt(sensors)))
+                    .setTimestamp(now)
+                    .setDataType(random.nextInt(10) == 0 ? DataType.HOT : DataType.WARM);
+            for (String metric : METRICS) {
+                reading.putMetrics(metric, Math.round(random.nextDouble(0, 100) * 10) / 10.0);
+            }
+            batch.addReadings(reading);
+        }
+        return batch.build();
+    }
+
+    private static double percentile(List<Long> sortedMicros, double p) {
+        int index = (int) Math.min(sortedMicros.size() - 1, Math.ceil(p * sortedMicros.size()) - 1);
+        return sortedMicros.get(Math.max(0, index)) / 1000.0;
+    }
+
+    private static Map<String, String> parseArgs(String[] args) {
+        Map<String, String> options = new ConcurrentHashMap<>();
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            options.put(args[i].replaceFirst("^--", ""), args[i + 1]);
+        }
+        return options;
+    }
+}
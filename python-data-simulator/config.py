@@ -49,6 +49,14 @@ NUM_THREADS = 20
 # Số threads cho mỗi edge node
 THREADS_PER_EDGE = NUM_THREADS // 2
 
+# Số readings mỗi AMQP message
+# 1 = một reading mỗi message (format gốc)
+# > 1 = envelope {"readings": [...]}, giảm số lượng deliveries/acks trên broker
+ENVELOPE_SIZE = 1
+
+# Nén envelope: None | "gzip" | "zstd" (zstd cần package 'zstandard')
+ENVELOPE_ENCODING = None
+
 # ============================================================
 # SENSOR DATA SETTINGS
 # ============================================================
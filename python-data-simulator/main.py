@@ -17,6 +17,7 @@ IoT Data Simulator - Main Script
 Giả lập 40 triệu requests tới RabbitMQ với multi-threading
 """
 
+import gzip
 import json
 import random
 import time
@@ -25,6 +26,13 @@ from datetime import datetime
 import pika
 import config
 
+try:
+    import zstandard
+except ImportError:
+    zstandard = None
+
+ENVELOPE_CONTENT_TYPE = "application/vnd.smartcity.envelope+json"
+
 
 class SensorSimulator(threading.Thread):
     """
@@ -52,6 +60,9 @@ class SensorSimulator(threading.Thread):
         """
         Sinh dữ liệu cảm biến giả (tối ưu tốc độ)
         Hỗ trợ inject anomaly để tạo dữ liệu bất thường
+        
+        Returns:
+            dict một reading (chưa serialize)
         """
         sensor_id = f"SENSOR_{random.randint(1, config.NUM_SENSORS):03d}"
         
@@ -95,7 +106,31 @@ class SensorSimulator(threading.Thread):
             "is_anomaly": inject_anomaly  # Flag for debugging (optional)
         }
         
-        return json.dumps(data)
+        return data
+    
+    def build_message(self, count):
+        """
+        Tạo body + properties cho một AMQP message
+        - ENVELOPE_SIZE <= 1: một reading JSON mỗi message (format gốc)
+        - ENVELOPE_SIZE > 1: envelope {"readings": [...]}, nén theo ENVELOPE_ENCODING
+        """
+        if config.ENVELOPE_SIZE <= 1:
+            body = json.dumps(self.generate_sensor_data())
+            return body, pika.BasicProperties(delivery_mode=2)  # Make message persistent
+        
+        readings = [self.generate_sensor_data() for _ in range(count)]
+        body = json.dumps({"readings": readings}).encode("utf-8")
+        encoding = config.ENVELOPE_ENCODING
+        if encoding == "gzip":
+            body = gzip.compress(body)
+        elif encoding == "zstd":
+            body = zstandard.ZstdCompressor().compress(body)
+        
+        return body, pika.BasicProperties(
+            delivery_mode=2,
+            content_type=ENVELOPE_CONTENT_TYPE,
+            content_encoding=encoding,
+        )
     
     def connect_rabbitmq(self):
         """
@@ -150,24 +185,25 @@ class SensorSimulator(threading.Thread):
             # Gửi messages
             start_time = time.time()
             
-            for i in range(self.request_limit):
-                # Generate sensor data
-                message = self.generate_sensor_data()
+            envelope_size = max(1, config.ENVELOPE_SIZE)
+            while self.sent_count < self.request_limit:
+                # Generate sensor data (một reading hoặc một envelope)
+                count = min(envelope_size, self.request_limit - self.sent_count)
+                body, properties = self.build_message(count)
                 
                 # Publish message
                 channel.basic_publish(
                     exchange='',
                     routing_key=self.queue_name,
-                    body=message,
-                    properties=pika.BasicProperties(
-                        delivery_mode=2,  # Make message persistent
-                    )
+                    body=body,
+                    properties=properties
                 )
                 
-                self.sent_count += 1
+                previous = self.sent_count
+                self.sent_count += count
                 
-                # Log progress mỗi 100,000 messages
-                if self.sent_count % 100_000 == 0:
+                # Log progress mỗi 100,000 readings
+                if self.sent_count // 100_000 > previous // 100_000:
                     elapsed = time.time() - start_time
                     rate = self.sent_count / elapsed if elapsed > 0 else 0
                     print(f"[Thread-{self.thread_id}] Progress: {self.sent_count:,}/{self.request_limit:,} "
@@ -201,6 +237,10 @@ def main():
     print(f"Number of Threads: {config.NUM_THREADS}")
     print(f"Edge Node 1: {config.EDGE1_HOST}:{config.EDGE1_PORT} → {config.EDGE1_QUEUE}")
     print(f"Edge Node 2: {config.EDGE2_HOST}:{config.EDGE2_PORT} → {config.EDGE2_QUEUE}")
+    if config.ENVELOPE_SIZE > 1:
+        if config.ENVELOPE_ENCODING == "zstd" and zstandard is None:
+            raise SystemExit("ENVELOPE_ENCODING = 'zstd' cần package 'zstandard' (pip install zstandard)")
+        print(f"Envelope: {config.ENVELOPE_SIZE} readings/message, encoding={config.ENVELOPE_ENCODING or 'none'}")
     
     # Show anomaly injection status
     if config.INJECT_ANOMALY: